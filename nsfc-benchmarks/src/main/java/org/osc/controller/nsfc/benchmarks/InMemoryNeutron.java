@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.benchmarks;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.UnaryOperator;
+
+import org.openstack4j.api.Builders;
+import org.openstack4j.api.OSClient.OSClientV3;
+import org.openstack4j.api.networking.NetworkingService;
+import org.openstack4j.api.networking.PortService;
+import org.openstack4j.api.networking.ext.FlowClassifierService;
+import org.openstack4j.api.networking.ext.PortChainService;
+import org.openstack4j.api.networking.ext.PortPairGroupService;
+import org.openstack4j.api.networking.ext.PortPairService;
+import org.openstack4j.api.networking.ext.ServiceFunctionChainService;
+import org.openstack4j.model.common.ActionResponse;
+import org.openstack4j.model.common.Resource;
+import org.openstack4j.model.network.ext.FlowClassifier;
+import org.openstack4j.model.network.ext.PortChain;
+import org.openstack4j.model.network.ext.PortPair;
+import org.openstack4j.model.network.ext.PortPairGroup;
+
+/**
+ * In-process Neutron SFC behind an {@link OSClientV3}, for benchmarks of the whole plugin.
+ *
+ * Every port pair, port pair group, port chain and flow classifier call waits for the configured
+ * latency before it is served, on the calling thread as a blocking HTTP request would. Like Neutron,
+ * reads return copies, so callers never share the stored resources, and updates replace them.
+ *
+ * The client has no token, so the plugin uses it as is on every thread. The port list, which the
+ * plugin loads with the SFC topology, is empty. Other services are not stubbed.
+ */
+public class InMemoryNeutron {
+
+    private final long latencyNanos;
+
+    private final AtomicLong callCount = new AtomicLong();
+
+    private final Resources<PortPair> portPairs = new PortPairs();
+    private final Resources<PortPairGroup> portPairGroups = new PortPairGroups();
+    private final Resources<PortChain> portChains = new PortChains();
+    private final Resources<FlowClassifier> flowClassifiers = new FlowClassifiers();
+
+    private final OSClientV3 client;
+
+    public InMemoryNeutron(long latencyMicros) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+
+        Map<String, Object> sfc = new HashMap<>();
+        sfc.put("portpairs", this.portPairs);
+        sfc.put("portpairgroups", this.portPairGroups);
+        sfc.put("portchains", this.portChains);
+        sfc.put("flowclassifiers", this.flowClassifiers);
+        Map<String, Object> services = singletonMap("sfc", Stubs.stub(ServiceFunctionChainService.class, sfc));
+        services.put("networking", Stubs.stub(NetworkingService.class,
+                singletonMap("port", Stubs.stub(PortService.class, singletonMap("list", emptyList())))));
+        this.client = Stubs.stub(OSClientV3.class, services);
+    }
+
+    /**
+     * Adds {@code size} port pairs, each in its own port pair group, and as many port chains, each with
+     * one of the groups and one flow classifier. Member {@code i} has the ids {@code pp-i}, {@code ppg-i},
+     * {@code pc-i} and {@code fc-i}, its port pair the ingress and egress {@code ingress-i} and
+     * {@code egress-i}. Waits for no latency.
+     */
+    public void populate(int size) {
+        for (int i = 0; i < size; i++) {
+            PortPair portPair = Builders.portPair()
+                    .name("pp-" + i)
+                    .ingressId("ingress-" + i)
+                    .egressId("egress-" + i)
+                    .build();
+            this.portPairs.put("pp-" + i, portPair);
+
+            PortPairGroup portPairGroup = Builders.portPairGroup()
+                    .name("ppg-" + i)
+                    .portPairs(singletonList("pp-" + i))
+                    .build();
+            this.portPairGroups.put("ppg-" + i, portPairGroup);
+
+            FlowClassifier flowClassifier = Builders.flowClassifier()
+                    .name("fc-" + i)
+                    .logicalDestinationPort("inspected-" + i)
+                    .build();
+            this.flowClassifiers.put("fc-" + i, flowClassifier);
+
+            PortChain portChain = Builders.portChain()
+                    .name("pc-" + i)
+                    .portPairGroups(singletonList("ppg-" + i))
+                    .flowClassifiers(singletonList("fc-" + i))
+                    .build();
+            this.portChains.put("pc-" + i, portChain);
+        }
+    }
+
+    public OSClientV3 getClient() {
+        return this.client;
+    }
+
+    /**
+     * Number of SFC calls served, to relate the plugin's operations to the Neutron load they cause.
+     */
+    public long getCallCount() {
+        return this.callCount.get();
+    }
+
+    public int getPortPairCount() {
+        return this.portPairs.resources.size();
+    }
+
+    public int getPortPairGroupCount() {
+        return this.portPairGroups.resources.size();
+    }
+
+    public int getFlowClassifierCount() {
+        return this.flowClassifiers.resources.size();
+    }
+
+    private void serve() {
+        this.callCount.incrementAndGet();
+        if (this.latencyNanos > 0) {
+            long deadline = System.nanoTime() + this.latencyNanos;
+            for (long remaining = this.latencyNanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+    }
+
+    private static Map<String, Object> singletonMap(String key, Object value) {
+        Map<String, Object> map = new HashMap<>();
+        map.put(key, value);
+        return map;
+    }
+
+    private static <T> List<T> copyOf(List<T> list) {
+        return list == null ? null : new ArrayList<>(list);
+    }
+
+    private class Resources<T extends Resource> {
+
+        private final Map<String, T> resources = new ConcurrentHashMap<>();
+        private final UnaryOperator<T> copier;
+
+        Resources(UnaryOperator<T> copier) {
+            this.copier = copier;
+        }
+
+        public List<? extends T> list() {
+            serve();
+            List<T> list = new ArrayList<>(this.resources.size());
+            this.resources.values().forEach(resource -> list.add(this.copier.apply(resource)));
+            return list;
+        }
+
+        public T get(String id) {
+            if (id == null) {
+                throw new IllegalArgumentException("id cannot be null");
+            }
+            serve();
+            T resource = this.resources.get(id);
+            return resource == null ? null : this.copier.apply(resource);
+        }
+
+        public T create(T resource) {
+            serve();
+            return put(UUID.randomUUID().toString(), resource);
+        }
+
+        public T update(String id, T resource) {
+            if (id == null) {
+                throw new IllegalArgumentException("id cannot be null");
+            }
+            serve();
+            if (!this.resources.containsKey(id)) {
+                return null;
+            }
+            return put(id, resource);
+        }
+
+        public ActionResponse delete(String id) {
+            if (id == null) {
+                throw new IllegalArgumentException("id cannot be null");
+            }
+            serve();
+            return this.resources.remove(id) != null ? ActionResponse.actionSuccess()
+                    : ActionResponse.actionFailed("Not found: " + id, 404);
+        }
+
+        private T put(String id, T resource) {
+            T stored = this.copier.apply(resource);
+            stored.setId(id);
+            this.resources.put(id, stored);
+            return this.copier.apply(stored);
+        }
+    }
+
+    private final class PortPairs extends Resources<PortPair> implements PortPairService {
+        PortPairs() {
+            super(portPair -> {
+                PortPair copy = Builders.portPair()
+                        .name(portPair.getName())
+                        .description(portPair.getDescription())
+                        .ingressId(portPair.getIngressId())
+                        .egressId(portPair.getEgressId())
+                        .build();
+                copy.setId(portPair.getId());
+                return copy;
+            });
+        }
+    }
+
+    private final class PortPairGroups extends Resources<PortPairGroup> implements PortPairGroupService {
+        PortPairGroups() {
+            super(portPairGroup -> {
+                PortPairGroup copy = Builders.portPairGroup()
+                        .name(portPairGroup.getName())
+                        .description(portPairGroup.getDescription())
+                        .portPairs(copyOf(portPairGroup.getPortPairs()))
+                        .build();
+                copy.setId(portPairGroup.getId());
+                return copy;
+            });
+        }
+    }
+
+    private final class PortChains extends Resources<PortChain> implements PortChainService {
+        PortChains() {
+            super(portChain -> {
+                PortChain copy = Builders.portChain()
+                        .name(portChain.getName())
+                        .description(portChain.getDescription())
+                        .portPairGroups(copyOf(portChain.getPortPairGroups()))
+                        .flowClassifiers(copyOf(portChain.getFlowClassifiers()))
+                        .build();
+                copy.setId(portChain.getId());
+                return copy;
+            });
+        }
+    }
+
+    private final class FlowClassifiers extends Resources<FlowClassifier> implements FlowClassifierService {
+        FlowClassifiers() {
+            super(flowClassifier -> {
+                FlowClassifier copy = Builders.flowClassifier()
+                        .name(flowClassifier.getName())
+                        .description(flowClassifier.getDescription())
+                        .logicalDestinationPort(flowClassifier.getLogicalDestinationPort())
+                        .build();
+                copy.setId(flowClassifier.getId());
+                return copy;
+            });
+        }
+    }
+}
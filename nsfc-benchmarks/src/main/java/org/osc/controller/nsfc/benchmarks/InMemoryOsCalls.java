@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.benchmarks;
+
+import static java.util.Collections.singletonList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openstack4j.api.Builders;
+import org.openstack4j.model.network.ext.PortChain;
+import org.openstack4j.model.network.ext.PortPair;
+import org.openstack4j.model.network.ext.PortPairGroup;
+import org.osc.controller.nsfc.utils.OsCalls;
+import org.osc.controller.nsfc.utils.OsCallsCache;
+import org.osc.controller.nsfc.utils.SfcIndex;
+
+/**
+ * {@link OsCalls} over an SFC topology held in memory, so that benchmarks measure the plugin's
+ * lookups rather than Neutron.
+ *
+ * The topology has {@code size} port pairs, each in its own port pair group, and as many port
+ * chains, each with one of the groups and one flow classifier. Member {@code i} has the ids
+ * {@code pp-i}, {@code ingress-i}, {@code egress-i}, {@code ppg-i}, {@code pc-i} and {@code fc-i}.
+ *
+ * With {@code indexed} set the membership index is built once and stays complete, and port pair
+ * filters are applied as Neutron would apply them. Otherwise the index stays empty and port pair
+ * filters are ignored, as with a Neutron that does not support them, so every lookup lists and
+ * scans the whole topology.
+ */
+public class InMemoryOsCalls extends OsCalls {
+
+    private final boolean indexed;
+
+    private final List<PortPair> portPairs;
+    private final List<PortPairGroup> portPairGroups;
+    private final List<PortChain> portChains;
+
+    private final Map<String, PortPair> portPairsByIngressEgress;
+    private final Map<String, PortPairGroup> portPairGroupsById;
+    private final Map<String, PortChain> portChainsById;
+
+    public InMemoryOsCalls(int size, boolean indexed) {
+        super(null, OsCallsCache.disabled(), null, new SfcIndex());
+        this.indexed = indexed;
+
+        this.portPairs = new ArrayList<>(size);
+        this.portPairGroups = new ArrayList<>(size);
+        this.portChains = new ArrayList<>(size);
+        this.portPairsByIngressEgress = new HashMap<>(size * 2);
+        this.portPairGroupsById = new HashMap<>(size * 2);
+        this.portChainsById = new HashMap<>(size * 2);
+
+        for (int i = 0; i < size; i++) {
+            PortPair portPair = Builders.portPair()
+                    .ingressId("ingress-" + i)
+                    .egressId("egress-" + i)
+                    .build();
+            portPair.setId("pp-" + i);
+            this.portPairs.add(portPair);
+            this.portPairsByIngressEgress.put(key(portPair.getIngressId(), portPair.getEgressId()), portPair);
+
+            PortPairGroup portPairGroup = Builders.portPairGroup()
+                    .portPairs(new ArrayList<>(singletonList(portPair.getId())))
+                    .build();
+            portPairGroup.setId("ppg-" + i);
+            this.portPairGroups.add(portPairGroup);
+            this.portPairGroupsById.put(portPairGroup.getId(), portPairGroup);
+
+            PortChain portChain = Builders.portChain()
+                    .portPairGroups(new ArrayList<>(singletonList(portPairGroup.getId())))
+                    .flowClassifiers(new ArrayList<>(singletonList("fc-" + i)))
+                    .build();
+            portChain.setId("pc-" + i);
+            this.portChains.add(portChain);
+            this.portChainsById.put(portChain.getId(), portChain);
+        }
+
+        if (indexed) {
+            getIndex().rebuildPortPairGroups(this.portPairGroups, getIndex().getVersion());
+            getIndex().rebuildPortChains(this.portChains, getIndex().getVersion());
+        }
+    }
+
+    @Override
+    public List<? extends PortPair> listPortPairs() {
+        return this.portPairs;
+    }
+
+    @Override
+    public List<? extends PortPair> listPortPairs(Map<String, String> filters) {
+        if (!this.indexed) {
+            return this.portPairs;
+        }
+
+        PortPair portPair = this.portPairsByIngressEgress.get(key(filters.get("ingress"), filters.get("egress")));
+        return portPair == null ? new ArrayList<>() : singletonList(portPair);
+    }
+
+    @Override
+    public List<? extends PortPairGroup> listPortPairGroups() {
+        return this.portPairGroups;
+    }
+
+    @Override
+    public List<? extends PortChain> listPortChains() {
+        return this.portChains;
+    }
+
+    @Override
+    public PortPairGroup getPortPairGroup(String portPairGroupId) {
+        return this.portPairGroupsById.get(portPairGroupId);
+    }
+
+    @Override
+    public PortChain getPortChain(String portChainId) {
+        return this.portChainsById.get(portChainId);
+    }
+
+    private static String key(String ingressId, String egressId) {
+        return ingressId + "/" + egressId;
+    }
+}
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.benchmarks;
+
+import static java.util.Collections.singletonList;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.osc.controller.nsfc.api.NeutronSfcSdnRedirectionApi;
+import org.osc.controller.nsfc.entities.NetworkElementImpl;
+import org.osc.controller.nsfc.entities.PortPairElement;
+import org.osc.controller.nsfc.utils.NeutronSfcQueryService;
+import org.osc.controller.nsfc.utils.OsCallsCache;
+import org.osc.controller.nsfc.utils.OsClientPool;
+import org.osc.controller.nsfc.utils.VcSession;
+import org.osc.sdk.controller.element.InspectionPortElement;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+
+/**
+ * Operations per second and latency of whole {@link NeutronSfcSdnRedirectionApi} operations against
+ * an {@link InMemoryNeutron} that waits {@code latencyMicros} on every call.
+ *
+ * {@code plugin=baseline} is the redirection API as the unit tests build it: no cache, no index
+ * kept across calls, no limits and port chain updates applied one at a time. {@code plugin=session}
+ * is the API of a VC session with its cache turned on and its default index, coalescer and limits.
+ * The session variant turns off conditional updates and Neutron side port pair filters, which need
+ * the HTTP API the stub does not serve. Its updates are plain read-modify-writes and its port pair
+ * lookups list all port pairs when the index misses, so it shows neither the cost of revision
+ * retries nor the savings of the filters.
+ *
+ * Registering, installing and removing are measured on their own. Each thread registers the port or
+ * installs the hook a removal needs, and removes what a registration or an installation created,
+ * in per invocation fixtures outside of the measurement, so the topology keeps its size. The fixture
+ * overhead is small next to the Neutron round trips of the operations, but it does distort the
+ * {@code latencyMicros=0} runs of the fastest operations.
+ *
+ * Run on its own, the suite samples the latency of each operation. {@link #main} runs it at 1, 4, 16
+ * and 64 threads, reporting ops/s and the latency percentiles, see the module README.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedirectionApiThroughputBenchmark {
+
+    private static final int[] THREADS = { 1, 4, 16, 64 };
+
+    @State(Scope.Benchmark)
+    public static class Plugin {
+
+        @Param({"baseline", "session"})
+        String plugin;
+
+        @Param({"1000", "10000"})
+        int size;
+
+        @Param({"0", "1000"})
+        long latencyMicros;
+
+        InMemoryNeutron neutron;
+        NeutronSfcSdnRedirectionApi api;
+        OsClientPool pool;
+
+        final AtomicLong nextPortId = new AtomicLong();
+
+        @Setup(Level.Trial)
+        public void setup() {
+            this.neutron = new InMemoryNeutron(this.latencyMicros);
+            this.neutron.populate(this.size);
+
+            if ("session".equals(this.plugin)) {
+                this.pool = new OsClientPool(vc -> this.neutron.getClient());
+                VcSession session = this.pool.getSession(benchmarkVc());
+                session.getQueryService().disablePortPairFiltering();
+                this.api = new NeutronSfcSdnRedirectionApi(session.getClient(), session);
+            } else {
+                this.api = new NeutronSfcSdnRedirectionApi(this.neutron.getClient());
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            this.api.close();
+            if (this.pool != null) {
+                this.pool.close();
+            }
+        }
+
+        InspectionPortElement newInspectionPort() {
+            long id = this.nextPortId.incrementAndGet();
+            return new PortPairElement(null, null, port("bench-ingress-" + id), port("bench-egress-" + id));
+        }
+
+        String installInspectionHook() throws Exception {
+            int member = ThreadLocalRandom.current().nextInt(this.size);
+            return this.api.installInspectionHook(port("bench-inspected-" + this.nextPortId.incrementAndGet()),
+                    new PortPairElement("pc-" + member, null, null, null), null, null, null, null);
+        }
+
+        private static NetworkElementImpl port(String id) {
+            return new NetworkElementImpl(id, singletonList("aa:bb:cc:dd:ee:ff"), singletonList("10.0.0.1"), null);
+        }
+
+        private static VirtualizationConnectorElement benchmarkVc() {
+            Map<String, String> attributes = new HashMap<>();
+            attributes.put(NeutronSfcQueryService.MAX_UPDATE_ATTEMPTS_ATTRIBUTE, "0");
+            attributes.put(OsCallsCache.ENABLED_ATTRIBUTE, "true");
+
+            Map<String, Object> answers = new HashMap<>();
+            answers.put("getName", "benchmark");
+            answers.put("getProviderIpAddress", "127.0.0.1");
+            answers.put("getProviderAttributes", attributes);
+            return Stubs.stub(VirtualizationConnectorElement.class, answers);
+        }
+    }
+
+    /**
+     * Inspection port of a thread, registered before each invocation for the invocation to remove.
+     */
+    @State(Scope.Thread)
+    public static class RegisteredPort {
+
+        InspectionPortElement port;
+
+        @Setup(Level.Invocation)
+        public void register(Plugin plugin) throws Exception {
+            this.port = (InspectionPortElement) plugin.api.registerInspectionPort(plugin.newInspectionPort());
+        }
+    }
+
+    /**
+     * Inspection port an invocation of a thread registered, removed after it.
+     */
+    @State(Scope.Thread)
+    public static class PortCleanup {
+
+        InspectionPortElement port;
+
+        @TearDown(Level.Invocation)
+        public void remove(Plugin plugin) throws Exception {
+            plugin.api.removeInspectionPort(this.port);
+        }
+    }
+
+    /**
+     * Inspection hook of a thread, installed before each invocation for the invocation to remove.
+     */
+    @State(Scope.Thread)
+    public static class InstalledHook {
+
+        String hookId;
+
+        @Setup(Level.Invocation)
+        public void install(Plugin plugin) throws Exception {
+            this.hookId = plugin.installInspectionHook();
+        }
+    }
+
+    /**
+     * Inspection hook an invocation of a thread installed, removed after it.
+     */
+    @State(Scope.Thread)
+    public static class HookCleanup {
+
+        String hookId;
+
+        @TearDown(Level.Invocation)
+        public void remove(Plugin plugin) throws Exception {
+            plugin.api.removeInspectionHook(this.hookId);
+        }
+    }
+
+    @Benchmark
+    public void registerInspectionPort(Plugin plugin, PortCleanup cleanup) throws Exception {
+        cleanup.port = (InspectionPortElement) plugin.api.registerInspectionPort(plugin.newInspectionPort());
+    }
+
+    @Benchmark
+    public void removeInspectionPort(Plugin plugin, RegisteredPort registered) throws Exception {
+        plugin.api.removeInspectionPort(registered.port);
+    }
+
+    @Benchmark
+    public void installInspectionHook(Plugin plugin, HookCleanup cleanup) throws Exception {
+        cleanup.hookId = plugin.installInspectionHook();
+    }
+
+    @Benchmark
+    public void removeInspectionHook(Plugin plugin, InstalledHook installed) throws Exception {
+        plugin.api.removeInspectionHook(installed.hookId);
+    }
+
+    /**
+     * Measures ops/s, then samples the latency, at each thread count. Takes the usual JMH options
+     * except for the mode, time unit and threads.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        for (int threads : THREADS) {
+            run(commandLine, threads, Mode.Throughput, TimeUnit.SECONDS);
+            run(commandLine, threads, Mode.SampleTime, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private static void run(CommandLineOptions commandLine, int threads, Mode mode, TimeUnit timeUnit)
+            throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .parent(commandLine)
+                .include(RedirectionApiThroughputBenchmark.class.getSimpleName())
+                .threads(threads)
+                .mode(mode)
+                .timeUnit(timeUnit)
+                .build()).run();
+    }
+}
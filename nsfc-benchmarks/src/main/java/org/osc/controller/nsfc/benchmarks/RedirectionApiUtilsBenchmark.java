@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.benchmarks;
+
+import static java.util.Collections.singletonList;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openstack4j.model.network.ext.PortChain;
+import org.openstack4j.model.network.ext.PortPair;
+import org.openstack4j.model.network.ext.PortPairGroup;
+import org.osc.controller.nsfc.entities.NetworkElementImpl;
+import org.osc.controller.nsfc.utils.RedirectionApiUtils;
+
+/**
+ * Lookups of {@link RedirectionApiUtils} against topologies of 1k, 10k and 100k port pairs,
+ * with and without the membership index and Neutron side port pair filtering.
+ *
+ * Each call looks up the next of 1024 members picked at random, with their ids built up front,
+ * so the scans find their match half way through the list on average. Run with {@code -prof gc}
+ * to also measure allocation per lookup, see the module README.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class RedirectionApiUtilsBenchmark {
+
+    private static final int TARGETS = 1024;
+
+    @Param({"1000", "10000", "100000"})
+    private int size;
+
+    @Param({"false", "true"})
+    private boolean indexed;
+
+    private RedirectionApiUtils utils;
+
+    private String[] portPairIds;
+    private String[] portPairGroupIds;
+    private String[] flowClassifierIds;
+    private NetworkElementImpl[] ingressElements;
+    private NetworkElementImpl[] egressElements;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.utils = new RedirectionApiUtils(new InMemoryOsCalls(this.size, this.indexed));
+
+        Random random = new Random(42);
+        this.portPairIds = new String[TARGETS];
+        this.portPairGroupIds = new String[TARGETS];
+        this.flowClassifierIds = new String[TARGETS];
+        this.ingressElements = new NetworkElementImpl[TARGETS];
+        this.egressElements = new NetworkElementImpl[TARGETS];
+        for (int i = 0; i < TARGETS; i++) {
+            int target = random.nextInt(this.size);
+            this.portPairIds[i] = "pp-" + target;
+            this.portPairGroupIds[i] = "ppg-" + target;
+            this.flowClassifierIds[i] = "fc-" + target;
+            this.ingressElements[i] = new NetworkElementImpl("ingress-" + target, singletonList("aa:bb:cc:dd:ee:01"),
+                    singletonList("10.0.0.1"), null);
+            this.egressElements[i] = new NetworkElementImpl("egress-" + target, singletonList("aa:bb:cc:dd:ee:02"),
+                    singletonList("10.0.0.2"), null);
+        }
+    }
+
+    @Benchmark
+    public PortPair fetchPortPairByNetworkElements() {
+        int i = nextTarget();
+        return this.utils.fetchPortPairByNetworkElements(this.ingressElements[i], this.egressElements[i]);
+    }
+
+    @Benchmark
+    public PortPairGroup fetchContainingPortPairGroup() {
+        return this.utils.fetchContainingPortPairGroup(this.portPairIds[nextTarget()]);
+    }
+
+    @Benchmark
+    public PortChain fetchContainingPortChain() {
+        return this.utils.fetchContainingPortChain(this.portPairGroupIds[nextTarget()]);
+    }
+
+    @Benchmark
+    public PortChain fetchContainingPortChainForFC() {
+        return this.utils.fetchContainingPortChainForFC(this.flowClassifierIds[nextTarget()]);
+    }
+
+    private int nextTarget() {
+        int i = this.next;
+        this.next = (i + 1) & (TARGETS - 1);
+        return i;
+    }
+}
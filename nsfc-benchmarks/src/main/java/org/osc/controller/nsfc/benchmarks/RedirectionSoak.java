@@ -0,0 +1,394 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.benchmarks;
+
+import static java.util.Collections.singletonList;
+import static org.osc.controller.nsfc.simulator.NeutronSimulator.idOf;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import org.osc.controller.nsfc.api.NeutronSfcSdnControllerApi;
+import org.osc.controller.nsfc.entities.FlowClassifierElement;
+import org.osc.controller.nsfc.entities.NetworkElementImpl;
+import org.osc.controller.nsfc.entities.PortPairElement;
+import org.osc.controller.nsfc.entities.ServiceFunctionChainElement;
+import org.osc.controller.nsfc.simulator.Latency;
+import org.osc.controller.nsfc.simulator.NeutronSimulator;
+import org.osc.controller.nsfc.simulator.ResourceType;
+import org.osc.sdk.controller.api.SdnRedirectionApi;
+import org.osc.sdk.controller.element.Element;
+import org.osc.sdk.controller.element.InspectionPortElement;
+import org.osc.sdk.controller.element.NetworkElement;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+
+/**
+ * Runs the redirection workflows of OSC for hours through {@link NeutronSfcSdnControllerApi#createRedirectionApi}
+ * against a {@link NeutronSimulator} on {@code <host>:5000}, where the plugin looks for Keystone, to find leaks
+ * and operations that slow down as the topology grows.
+ *
+ * The run registers {@code ports} inspection ports, builds {@code chains} port chains of their groups with
+ * {@code registerNetworkElement} and then, for {@code duration}, installs, moves and removes the hooks of
+ * {@code hooks} workload ports on random chains. Each thread owns a share of the workload ports, so a hook is
+ * only ever changed by one thread. The hooks are removed at the end, then the chains and inspection ports.
+ *
+ * Throughput and latency percentiles of every operation are printed every {@code report-interval} and for every
+ * phase, with the GC pauses and the heap left after collections, see {@link SoakMetrics}. The heap is also
+ * measured after a full GC once the chains are built and again once the hooks are removed, when Neutron holds
+ * the same resources, so that growth between the two is what the plugin kept. The run exits with 1 if any
+ * resource it created is left in the simulator.
+ */
+public final class RedirectionSoak {
+
+    private static final int DEFAULT_PORTS = 1000;
+    private static final int DEFAULT_CHAINS = 100;
+    private static final int DEFAULT_HOOKS = 1000;
+    private static final int DEFAULT_THREADS = 16;
+
+    private final Map<String, String> options;
+
+    private final int portCount;
+    private final int chainCount;
+    private final int hookCount;
+    private final int threads;
+    private final long durationNanos;
+    private final long reportIntervalNanos;
+
+    private final NeutronSimulator simulator;
+    private final SoakMetrics metrics = new SoakMetrics(System.out);
+
+    private final SoakMetrics.Operation registerInspectionPort = this.metrics.operation("registerInspectionPort");
+    private final SoakMetrics.Operation registerNetworkElement = this.metrics.operation("registerNetworkElement");
+    private final SoakMetrics.Operation installInspectionHook = this.metrics.operation("installInspectionHook");
+    private final SoakMetrics.Operation updateInspectionHook = this.metrics.operation("updateInspectionHook");
+    private final SoakMetrics.Operation removeInspectionHook = this.metrics.operation("removeInspectionHook");
+    private final SoakMetrics.Operation removeHookAtEnd = this.metrics.operation("removeHookAtEnd");
+    private final SoakMetrics.Operation deleteNetworkElement = this.metrics.operation("deleteNetworkElement");
+    private final SoakMetrics.Operation removeInspectionPort = this.metrics.operation("removeInspectionPort");
+
+    private final InspectionPortElement[] inspectionPorts;
+    private final String[] chainIds;
+    private final String[] hookIds;
+    private final int[] hookChains;
+    private final AtomicInteger liveHookCount = new AtomicInteger();
+
+    private SdnRedirectionApi api;
+
+    private RedirectionSoak(Map<String, String> options) {
+        this.options = options;
+        this.portCount = intOption("ports", DEFAULT_PORTS);
+        this.chainCount = Math.min(intOption("chains", DEFAULT_CHAINS), this.portCount);
+        this.hookCount = intOption("hooks", DEFAULT_HOOKS);
+        this.threads = intOption("threads", DEFAULT_THREADS);
+        this.durationNanos = durationOption("duration", TimeUnit.MINUTES.toNanos(10));
+        this.reportIntervalNanos = durationOption("report-interval", TimeUnit.MINUTES.toNanos(1));
+
+        this.simulator = new NeutronSimulator(options.getOrDefault("host", NeutronSimulator.DEFAULT_HOST),
+                NeutronSimulator.DEFAULT_PORT, intOption("workers", NeutronSimulator.DEFAULT_WORKERS));
+        this.simulator.setReadLatency(Latency.parse(options.getOrDefault("read-latency", "none")));
+        this.simulator.setWriteLatency(Latency.parse(options.getOrDefault("write-latency", "none")));
+        this.simulator.setErrorRate(Double.parseDouble(options.getOrDefault("error-rate", "0")));
+        if (options.containsKey("token-ttl-minutes")) {
+            this.simulator.setTokenTtlMillis(
+                    TimeUnit.MINUTES.toMillis(Long.parseLong(options.get("token-ttl-minutes"))));
+        }
+
+        this.inspectionPorts = new InspectionPortElement[this.portCount];
+        this.chainIds = new String[this.chainCount];
+        this.hookIds = new String[this.hookCount];
+        this.hookChains = new int[this.hookCount];
+    }
+
+    /**
+     * Options, all optional: {@code --ports}, {@code --chains}, {@code --hooks}, {@code --threads},
+     * {@code --duration} and {@code --report-interval} (e.g. {@code 90s}, {@code 30m} or {@code 4h}),
+     * {@code --host}, {@code --workers}, {@code --read-latency} and {@code --write-latency} as in
+     * {@link Latency#parse}, {@code --error-rate} and {@code --token-ttl-minutes}.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected --<option> <value>, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+
+        System.exit(new RedirectionSoak(options).run() ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        System.out.printf("Soak with %s%n", this.options);
+        this.simulator.populatePorts(this.hookCount);
+        this.simulator.start();
+        this.metrics.startGcMonitoring();
+
+        NeutronSfcSdnControllerApi controller = new NeutronSfcSdnControllerApi();
+        this.api = controller.createRedirectionApi(soakVc(), null);
+        try {
+            phase("Register inspection ports", this.portCount, this::registerInspectionPort,
+                    this.registerInspectionPort);
+            phase("Build chains", this.chainCount, this::registerNetworkElement, this.registerNetworkElement);
+            long baselineHeap = SoakMetrics.heapAfterFullGc();
+
+            soak();
+            phase("Remove hooks", this.hookCount, hook -> removeHook(hook, this.removeHookAtEnd),
+                    this.removeHookAtEnd);
+            long finalHeap = SoakMetrics.heapAfterFullGc();
+            this.metrics.stopGcMonitoring();
+            this.metrics.reportGcTotals(baselineHeap, finalHeap);
+
+            phase("Delete chains", this.chainCount, this::deleteNetworkElement, this.deleteNetworkElement);
+            phase("Remove inspection ports", this.portCount, this::removeInspectionPort, this.removeInspectionPort);
+            return checkNothingLeft();
+        } finally {
+            this.api.close();
+            controller.close();
+            this.simulator.close();
+        }
+    }
+
+    private void soak() throws InterruptedException {
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(() -> this.metrics.reportInterval(neutronSummary()), this.reportIntervalNanos,
+                this.reportIntervalNanos, TimeUnit.NANOSECONDS);
+
+        long start = System.nanoTime();
+        long deadline = start + this.durationNanos;
+        ExecutorService workers = Executors.newFixedThreadPool(this.threads);
+        for (int i = 0; i < this.threads; i++) {
+            int first = i;
+            workers.execute(() -> churnHooks(first, deadline));
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        reporter.shutdownNow();
+        reporter.awaitTermination(1, TimeUnit.MINUTES);
+
+        this.metrics.reportTotals("Soak", System.nanoTime() - start, this.installInspectionHook,
+                this.updateInspectionHook, this.removeInspectionHook);
+    }
+
+    /**
+     * Changes the hooks of the workload ports {@code first}, {@code first + threads}, ... until the deadline.
+     * A port without a hook gets one, a hooked port is moved to another chain or unhooked with even odds.
+     */
+    private void churnHooks(int first, long deadline) {
+        int owned = (this.hookCount - first + this.threads - 1) / this.threads;
+        if (owned <= 0 || this.chainCount == 0) {
+            return;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            int hook = first + random.nextInt(owned) * this.threads;
+            if (this.hookIds[hook] == null) {
+                installHook(hook, random.nextInt(this.chainCount));
+            } else if (random.nextBoolean()) {
+                moveHook(hook, random.nextInt(this.chainCount));
+            } else {
+                removeHook(hook, this.removeInspectionHook);
+            }
+        }
+    }
+
+    private void registerInspectionPort(int i) {
+        InspectionPortElement inspectionPort = new PortPairElement(null, null,
+                port(idOf("soak-ingress-" + i), "192.168.0.1"), port(idOf("soak-egress-" + i), "192.168.0.2"));
+        Element registered = this.registerInspectionPort.call(() -> this.api.registerInspectionPort(inspectionPort));
+        this.inspectionPorts[i] = registered instanceof InspectionPortElement
+                ? (InspectionPortElement) registered : null;
+    }
+
+    private void registerNetworkElement(int i) {
+        InspectionPortElement inspectionPort = this.inspectionPorts[i];
+        if (inspectionPort == null) {
+            return;
+        }
+
+        NetworkElement portPairGroup = new NetworkElementImpl(inspectionPort.getParentId(), null, null, null);
+        NetworkElement chain = this.registerNetworkElement.call(
+                () -> this.api.registerNetworkElement(singletonList(portPairGroup)));
+        this.chainIds[i] = chain != null ? chain.getElementId() : null;
+    }
+
+    private void installHook(int hook, int chain) {
+        if (this.chainIds[chain] == null) {
+            return;
+        }
+
+        PortPairElement inspectionPort = new PortPairElement(this.chainIds[chain], null, null, null);
+        String hookId = this.installInspectionHook.call(() -> this.api.installInspectionHook(workloadPort(hook),
+                inspectionPort, null, null, null, null));
+        if (hookId != null) {
+            this.hookIds[hook] = hookId;
+            this.hookChains[hook] = chain;
+            this.liveHookCount.incrementAndGet();
+        }
+    }
+
+    private void moveHook(int hook, int chain) {
+        if (this.chainIds[chain] == null || chain == this.hookChains[hook]) {
+            return;
+        }
+
+        FlowClassifierElement movedHook = new FlowClassifierElement(this.hookIds[hook], workloadPort(hook),
+                new ServiceFunctionChainElement(this.chainIds[chain]));
+        if (this.updateInspectionHook.call(() -> {
+            this.api.updateInspectionHook(movedHook);
+            return true;
+        }) != null) {
+            this.hookChains[hook] = chain;
+        }
+    }
+
+    private void removeHook(int hook, SoakMetrics.Operation operation) {
+        String hookId = this.hookIds[hook];
+        if (hookId == null) {
+            return;
+        }
+
+        if (operation.call(() -> {
+            this.api.removeInspectionHook(hookId);
+            return true;
+        }) != null) {
+            this.hookIds[hook] = null;
+            this.liveHookCount.decrementAndGet();
+        }
+    }
+
+    private void deleteNetworkElement(int i) {
+        String chainId = this.chainIds[i];
+        if (chainId != null) {
+            this.deleteNetworkElement.call(() -> {
+                this.api.deleteNetworkElement(new ServiceFunctionChainElement(chainId));
+                return true;
+            });
+        }
+    }
+
+    private void removeInspectionPort(int i) {
+        InspectionPortElement inspectionPort = this.inspectionPorts[i];
+        if (inspectionPort != null) {
+            this.removeInspectionPort.call(() -> {
+                this.api.removeInspectionPort(inspectionPort);
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Runs the action for 0 to {@code count - 1} on all threads and reports the operation's totals.
+     */
+    private void phase(String name, int count, IntConsumer action, SoakMetrics.Operation operation)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(this.threads);
+        for (int i = 0; i < this.threads; i++) {
+            workers.execute(() -> {
+                for (int item = next.getAndIncrement(); item < count; item = next.getAndIncrement()) {
+                    action.accept(item);
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        this.metrics.reportTotals(name, System.nanoTime() - start, operation);
+        System.out.println(neutronSummary());
+    }
+
+    private boolean checkNothingLeft() {
+        boolean clean = true;
+        for (ResourceType type : new ResourceType[] { ResourceType.FlowClassifier, ResourceType.PortChain,
+                ResourceType.PortPairGroup, ResourceType.PortPair }) {
+            int left = this.simulator.getResourceCount(type);
+            if (left > 0) {
+                System.out.printf("LEAK: %d %s left in Neutron%n", left, type);
+                clean = false;
+            }
+        }
+        return clean;
+    }
+
+    private String neutronSummary() {
+        return String.format("Neutron: %d requests, %d port pairs, %d port pair groups, %d port chains, "
+                + "%d flow classifiers, %d hooks installed", this.simulator.getRequestCount(),
+                this.simulator.getResourceCount(ResourceType.PortPair),
+                this.simulator.getResourceCount(ResourceType.PortPairGroup),
+                this.simulator.getResourceCount(ResourceType.PortChain),
+                this.simulator.getResourceCount(ResourceType.FlowClassifier), this.liveHookCount.get());
+    }
+
+    private static NetworkElementImpl workloadPort(int i) {
+        return port(idOf("port-" + i), NeutronSimulator.portIpOf(i));
+    }
+
+    private static NetworkElementImpl port(String id, String ip) {
+        return new NetworkElementImpl(id, singletonList("fa:16:3e:00:00:01"), singletonList(ip), null);
+    }
+
+    private VirtualizationConnectorElement soakVc() {
+        Map<String, Object> answers = new HashMap<>();
+        answers.put("getName", "soak");
+        answers.put("getProviderIpAddress", this.options.getOrDefault("host", NeutronSimulator.DEFAULT_HOST));
+        answers.put("getProviderUsername", "admin");
+        answers.put("getProviderPassword", "admin123");
+        answers.put("getProviderAdminDomainId", "default");
+        answers.put("getProviderAdminTenantName", "admin");
+        answers.put("getProviderAttributes", Collections.emptyMap());
+        return Stubs.stub(VirtualizationConnectorElement.class, answers);
+    }
+
+    private int intOption(String name, int defaultValue) {
+        String value = this.options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private long durationOption(String name, long defaultNanos) {
+        String value = this.options.get(name);
+        if (value == null) {
+            return defaultNanos;
+        }
+
+        TimeUnit unit;
+        switch (value.charAt(value.length() - 1)) {
+        case 'h':
+            unit = TimeUnit.HOURS;
+            break;
+        case 'm':
+            unit = TimeUnit.MINUTES;
+            break;
+        case 's':
+            unit = TimeUnit.SECONDS;
+            break;
+        default:
+            return TimeUnit.SECONDS.toNanos(Long.parseLong(value));
+        }
+        return unit.toNanos(Long.parseLong(value.substring(0, value.length() - 1)));
+    }
+}
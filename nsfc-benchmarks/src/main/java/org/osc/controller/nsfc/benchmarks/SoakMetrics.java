@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.benchmarks;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.osc.controller.nsfc.utils.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Latency of each operation of a {@link RedirectionSoak} run, its GC pauses and the heap left after
+ * each collection, reported per interval and in total.
+ *
+ * GC pauses are the durations the collectors report per collection. For the old generation of CMS
+ * that includes the concurrent phases, so the pauses are best read with a stop-the-world collector
+ * such as G1 or parallel. The heap after GC of an interval is its lowest heap use right after a
+ * collection, a floor that keeps rising when the plugin leaks.
+ */
+class SoakMetrics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SoakMetrics.class);
+
+    private static final int LOGGED_ERRORS = 10;
+    private static final double MEGABYTE = 1024 * 1024;
+
+    private final PrintStream out;
+
+    private final List<Operation> operations = new ArrayList<>();
+
+    private final Set<String> heapPools = new HashSet<>();
+    private final List<NotificationEmitter> collectors = new ArrayList<>();
+    private final NotificationListener gcListener = this::onGc;
+
+    private final LatencyHistogram gcPauses = new LatencyHistogram();
+    private final AtomicReference<LatencyHistogram> intervalGcPauses = new AtomicReference<>(new LatencyHistogram());
+    private final AtomicLong intervalMinHeapAfterGc = new AtomicLong(Long.MAX_VALUE);
+
+    private final List<long[]> heapSamples = new ArrayList<>();
+
+    private final long startNanos = System.nanoTime();
+    private long intervalStartNanos = this.startNanos;
+
+    SoakMetrics(PrintStream out) {
+        this.out = out;
+    }
+
+    synchronized Operation operation(String name) {
+        Operation operation = new Operation(name);
+        this.operations.add(operation);
+        return operation;
+    }
+
+    void startGcMonitoring() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                this.heapPools.add(pool.getName());
+            }
+        }
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) collector;
+                emitter.addNotificationListener(this.gcListener, null, null);
+                this.collectors.add(emitter);
+            }
+        }
+    }
+
+    void stopGcMonitoring() {
+        for (NotificationEmitter emitter : this.collectors) {
+            try {
+                emitter.removeNotificationListener(this.gcListener);
+            } catch (Exception e) {
+                LOG.warn("Failed to remove GC listener", e);
+            }
+        }
+        this.collectors.clear();
+    }
+
+    /**
+     * Collects twice and returns the heap still in use, the live set plus whatever the collector keeps.
+     */
+    static long heapAfterFullGc() {
+        System.gc();
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Prints the throughput and latency of the interval since the last report and starts a new interval.
+     */
+    synchronized void reportInterval(String extra) {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - this.intervalStartNanos) / 1e9;
+        this.intervalStartNanos = now;
+
+        this.out.printf("--- %s ---%n", elapsed(now - this.startNanos));
+        printHeader();
+        for (Operation operation : this.operations) {
+            LatencyHistogram latencies = operation.interval.getAndSet(new LatencyHistogram());
+            long errors = operation.intervalErrorCount.getAndSet(0);
+            if (latencies.getCount() > 0 || errors > 0) {
+                printRow(operation.name, latencies, latencies.getCount() / seconds, errors);
+            }
+        }
+
+        LatencyHistogram pauses = this.intervalGcPauses.getAndSet(new LatencyHistogram());
+        long minHeap = this.intervalMinHeapAfterGc.getAndSet(Long.MAX_VALUE);
+        if (minHeap != Long.MAX_VALUE) {
+            this.heapSamples.add(new long[] { now - this.startNanos, minHeap });
+        }
+        this.out.printf("GC: %d pauses, %d ms total, p99 %s ms, max %s ms; heap after GC %s MB%n",
+                pauses.getCount(), TimeUnit.NANOSECONDS.toMillis(pauses.getMeanNanos() * pauses.getCount()),
+                millis(pauses.getValueAtPercentile(99)), millis(pauses.getMaxNanos()),
+                minHeap == Long.MAX_VALUE ? "-" : megabytes(minHeap));
+        if (extra != null) {
+            this.out.println(extra);
+        }
+        this.out.flush();
+    }
+
+    /**
+     * Prints the totals of the given operations, run over {@code elapsedNanos}.
+     */
+    synchronized void reportTotals(String phase, long elapsedNanos, Operation... phaseOperations) {
+        double seconds = Math.max(1, elapsedNanos) / 1e9;
+        this.out.printf("=== %s, %s ===%n", phase, elapsed(elapsedNanos));
+        printHeader();
+        for (Operation operation : phaseOperations) {
+            printRow(operation.name, operation.total, operation.total.getCount() / seconds,
+                    operation.errorCount.get());
+        }
+        this.out.flush();
+    }
+
+    synchronized void reportGcTotals(long baselineHeap, long finalHeap) {
+        this.out.printf("=== GC and heap ===%n");
+        this.out.printf("GC: %d pauses, p50 %s ms, p99 %s ms, p99.9 %s ms, max %s ms%n", this.gcPauses.getCount(),
+                millis(this.gcPauses.getValueAtPercentile(50)), millis(this.gcPauses.getValueAtPercentile(99)),
+                millis(this.gcPauses.getValueAtPercentile(99.9)), millis(this.gcPauses.getMaxNanos()));
+        this.out.printf("Heap after full GC: %s MB after setup, %s MB at the end, growth %s MB%n",
+                megabytes(baselineHeap), megabytes(finalHeap), megabytes(finalHeap - baselineHeap));
+        if (this.heapSamples.size() > 1) {
+            this.out.printf("Heap after GC grew %s MB per hour over %d intervals%n",
+                    megabytes((long) (heapSlopePerNano() * TimeUnit.HOURS.toNanos(1))), this.heapSamples.size());
+        }
+        this.out.flush();
+    }
+
+    /**
+     * Least squares slope of the interval heap floors, in bytes per nanosecond.
+     */
+    private double heapSlopePerNano() {
+        double meanTime = this.heapSamples.stream().mapToDouble(sample -> sample[0]).average().orElse(0);
+        double meanHeap = this.heapSamples.stream().mapToDouble(sample -> sample[1]).average().orElse(0);
+        double covariance = 0;
+        double variance = 0;
+        for (long[] sample : this.heapSamples) {
+            covariance += (sample[0] - meanTime) * (sample[1] - meanHeap);
+            variance += (sample[0] - meanTime) * (sample[0] - meanTime);
+        }
+        return variance == 0 ? 0 : covariance / variance;
+    }
+
+    private void onGc(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+
+        GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        long pauseNanos = TimeUnit.MILLISECONDS.toNanos(info.getGcInfo().getDuration());
+        this.gcPauses.record(pauseNanos);
+        this.intervalGcPauses.get().record(pauseNanos);
+
+        long heapAfterGc = 0;
+        for (Map.Entry<String, MemoryUsage> pool : info.getGcInfo().getMemoryUsageAfterGc().entrySet()) {
+            if (this.heapPools.contains(pool.getKey())) {
+                heapAfterGc += pool.getValue().getUsed();
+            }
+        }
+        this.intervalMinHeapAfterGc.accumulateAndGet(heapAfterGc, Math::min);
+    }
+
+    private void printHeader() {
+        this.out.printf("%-24s %10s %10s %10s %10s %10s %10s %8s%n", "operation", "count", "ops/s", "p50 ms",
+                "p99 ms", "p99.9 ms", "max ms", "errors");
+    }
+
+    private void printRow(String name, LatencyHistogram latencies, double opsPerSecond, long errors) {
+        this.out.printf("%-24s %10d %10.1f %10s %10s %10s %10s %8d%n", name, latencies.getCount(), opsPerSecond,
+                millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(99)),
+                millis(latencies.getValueAtPercentile(99.9)), millis(latencies.getMaxNanos()), errors);
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.1f", bytes / MEGABYTE);
+    }
+
+    private static String elapsed(long nanos) {
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+        return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    /**
+     * Latencies and failures of one operation. Only successful calls are timed.
+     */
+    static final class Operation {
+
+        private final String name;
+
+        private final LatencyHistogram total = new LatencyHistogram();
+        private final AtomicReference<LatencyHistogram> interval = new AtomicReference<>(new LatencyHistogram());
+        private final AtomicLong errorCount = new AtomicLong();
+        private final AtomicLong intervalErrorCount = new AtomicLong();
+
+        private Operation(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the result of the call, null if it failed
+         */
+        <T> T call(Callable<T> call) {
+            long start = System.nanoTime();
+            try {
+                T result = call.call();
+                long nanos = System.nanoTime() - start;
+                this.total.record(nanos);
+                this.interval.get().record(nanos);
+                return result;
+            } catch (Exception e) {
+                long errors = this.errorCount.incrementAndGet();
+                this.intervalErrorCount.incrementAndGet();
+                if (errors <= LOGGED_ERRORS) {
+                    LOG.warn("{} failed", this.name, e);
+                } else if (errors % 1000 == 0) {
+                    LOG.warn("{} failed {} times, last with {}", this.name, errors, e.toString());
+                }
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.benchmarks;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * Interface implementations for the benchmarks that answer a few methods by name, for the
+ * openstack4j and SDK interfaces too large to implement by hand.
+ */
+final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * @return an implementation returning the given answer for each named method, and null, false
+     * or 0 for the others
+     */
+    static <T> T stub(Class<T> type, Map<String, Object> answers) {
+        Object stub = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return type.getSimpleName() + answers;
+                    default:
+                        break;
+                    }
+
+                    if (answers.containsKey(method.getName())) {
+                        return answers.get(method.getName());
+                    }
+                    Class<?> returnType = method.getReturnType();
+                    if (returnType.isPrimitive() && returnType != void.class) {
+                        // The zero value of the primitive type, boxed
+                        return Array.get(Array.newInstance(returnType, 1), 0);
+                    }
+                    return null;
+                });
+        return type.cast(stub);
+    }
+}
@@ -18,6 +18,7 @@ package org.osc.controller.nsfc.api;
 
 import static org.osc.sdk.controller.Constants.*;
 
+import java.lang.management.ManagementFactory;
 import java.util.HashMap;
 
 import org.apache.commons.lang.NotImplementedException;
@@ -25,13 +26,25 @@ import org.openstack4j.api.OSClient.OSClientV3;
 import org.openstack4j.api.client.IOSClientBuilder.V3;
 import org.openstack4j.model.common.Identifier;
 import org.openstack4j.openstack.OSFactory;
+import org.osc.controller.nsfc.utils.CircuitBreaker;
+import org.osc.controller.nsfc.utils.CircuitBreaker.State;
+import org.osc.controller.nsfc.utils.ConnectorSettings;
+import org.osc.controller.nsfc.utils.NeutronCallMetricsService;
+import org.osc.controller.nsfc.utils.OsClientPool;
+import org.osc.controller.nsfc.utils.VcSession;
 import org.osc.sdk.controller.FlowInfo;
 import org.osc.sdk.controller.FlowPortInfo;
 import org.osc.sdk.controller.Status;
 import org.osc.sdk.controller.api.SdnControllerApi;
 import org.osc.sdk.controller.api.SdnRedirectionApi;
 import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @Component(configurationPid = "org.osc.nsfc.SdnController",
     property = { PLUGIN_NAME + "=Neutron-sfc",
@@ -44,19 +57,45 @@ import org.osgi.service.component.annotations.Component;
                  SUPPORT_NEUTRON_SFC + ":Boolean=true"})
 public class NeutronSfcSdnControllerApi implements SdnControllerApi {
 
+    private static final Logger LOG = LoggerFactory.getLogger(NeutronSfcSdnControllerApi.class);
+
     private static final String VERSION = "0.1";
     private static final String NAME = "Neutron-sfc";
 
     private static final String AUTH_URL_LOCAL = "/v3";
     private static final int AUTH_URL_PORT = 5000;
 
+    private final OsClientPool clientPool = new OsClientPool(this::authenticate);
+
+    private volatile ConnectorSettings connectorSettings = ConnectorSettings.DEFAULTS;
+
+    private ServiceRegistration<NeutronCallMetricsService> callMetricsRegistration;
+
     public NeutronSfcSdnControllerApi() {
         // For dependency injection. could be package private?
     }
 
+    /**
+     * Reports the controller as down while the circuit breaker of the VC's Neutron endpoint is open.
+     * A VC without a session has made no calls yet and is reported up.
+     */
     @Override
     public Status getStatus(VirtualizationConnectorElement vc, String region) throws Exception {
-        return new Status(NAME, VERSION, true);
+        if (vc == null || vc.getProviderIpAddress() == null) {
+            return new Status(NAME, VERSION, true);
+        }
+
+        CircuitBreaker circuitBreaker = this.clientPool.findCircuitBreaker(vc);
+        if (circuitBreaker == null) {
+            return new Status(NAME, VERSION, true);
+        }
+
+        State state = circuitBreaker.getState();
+        if (state != State.Closed) {
+            LOG.info("Circuit breaker of Neutron at {} is {}, {} calls rejected", circuitBreaker.getEndpoint(), state,
+                    circuitBreaker.getRejectedCount());
+        }
+        return new Status(NAME, VERSION, state != State.Open);
     }
 
     @Override
@@ -65,19 +104,9 @@ public class NeutronSfcSdnControllerApi implements SdnControllerApi {
             throw new IllegalArgumentException("Non-null VC with non-empty name required!");
         }
 
-        String domain = vc.getProviderAdminDomainId();
-        String username = vc.getProviderUsername();
-        String password = vc.getProviderPassword();
-        String tenantName = vc.getProviderAdminTenantName();
-
-        V3 v3 = OSFactory.builderV3()
-                .endpoint(authUrl(vc.getProviderIpAddress()))
-                .credentials(username, password, Identifier.byName(domain))
-                .scopeToProject(Identifier.byName(tenantName), Identifier.byName(domain));
-
-        OSClientV3 osClient = v3.authenticate();
+        VcSession session = this.clientPool.getSession(vc);
 
-        return new NeutronSfcSdnRedirectionApi(osClient);
+        return new NeutronSfcSdnRedirectionApi(session.getClient(), session);
     }
 
     @Override
@@ -91,6 +120,46 @@ public class NeutronSfcSdnControllerApi implements SdnControllerApi {
         //no-op
     }
 
+    @Activate
+    void activate(BundleContext context, NeutronSfcSdnControllerConfig config) {
+        this.connectorSettings = new ConnectorSettings(config.httpConnectTimeoutMillis(),
+                config.httpReadTimeoutMillis());
+        this.clientPool.setConnectorConfig(this.connectorSettings.getConfig());
+        LOG.info("Using {}", this.connectorSettings);
+
+        this.clientPool.startTokenRefresh(OsClientPool.DEFAULT_REFRESH_LEAD_MILLIS,
+                OsClientPool.DEFAULT_REFRESH_PERIOD_MILLIS);
+
+        this.clientPool.getCallMetrics().registerMBeans(ManagementFactory.getPlatformMBeanServer());
+        this.callMetricsRegistration = context.registerService(NeutronCallMetricsService.class,
+                this.clientPool.getCallMetrics(), null);
+    }
+
+    @Deactivate
+    void deactivate() {
+        if (this.callMetricsRegistration != null) {
+            this.callMetricsRegistration.unregister();
+            this.callMetricsRegistration = null;
+        }
+        this.clientPool.getCallMetrics().unregisterMBeans();
+        this.clientPool.close();
+    }
+
+    private OSClientV3 authenticate(VirtualizationConnectorElement vc) {
+        String domain = vc.getProviderAdminDomainId();
+        String username = vc.getProviderUsername();
+        String password = vc.getProviderPassword();
+        String tenantName = vc.getProviderAdminTenantName();
+
+        V3 v3 = OSFactory.builderV3()
+                .withConfig(this.connectorSettings.getConfig())
+                .endpoint(authUrl(vc.getProviderIpAddress()))
+                .credentials(username, password, Identifier.byName(domain))
+                .scopeToProject(Identifier.byName(tenantName), Identifier.byName(domain));
+
+        return v3.authenticate();
+    }
+
     private static String authUrl(String ip) {
         return "http://" + ip + ":" + AUTH_URL_PORT + AUTH_URL_LOCAL;
     }
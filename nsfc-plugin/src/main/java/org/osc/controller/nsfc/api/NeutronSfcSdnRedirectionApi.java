@@ -17,32 +17,55 @@
 package org.osc.controller.nsfc.api;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.stream.Collectors.toList;
 import static org.osc.controller.nsfc.utils.ArgumentCheckUtil.throwExceptionIfNullOrEmptyNetworkElementList;
+import static org.osc.controller.nsfc.utils.AsyncOsCalls.await;
+import static org.osc.controller.nsfc.utils.AsyncOsCalls.cancelPending;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import org.openstack4j.api.Builders;
 import org.openstack4j.api.OSClient.OSClientV3;
+import org.openstack4j.api.exceptions.ResponseException;
 import org.openstack4j.model.network.Port;
 import org.openstack4j.model.network.ext.FlowClassifier;
 import org.openstack4j.model.network.ext.PortChain;
 import org.openstack4j.model.network.ext.PortPair;
 import org.openstack4j.model.network.ext.PortPairGroup;
 import org.osc.controller.nsfc.entities.FlowClassifierElement;
+import org.osc.controller.nsfc.entities.InspectionHookResult;
 import org.osc.controller.nsfc.entities.NetworkElementImpl;
 import org.osc.controller.nsfc.entities.PortPairElement;
 import org.osc.controller.nsfc.entities.PortPairGroupElement;
 import org.osc.controller.nsfc.entities.ServiceFunctionChainElement;
+import org.osc.controller.nsfc.exceptions.SdnControllerResponseNsfcException;
+import org.osc.controller.nsfc.utils.AsyncOsCalls;
+import org.osc.controller.nsfc.utils.CallAccounting;
+import org.osc.controller.nsfc.utils.CallAccounting.Scope;
+import org.osc.controller.nsfc.utils.NeutronCallMetrics;
 import org.osc.controller.nsfc.utils.OsCalls;
+import org.osc.controller.nsfc.utils.PortChainMutationCoalescer;
 import org.osc.controller.nsfc.utils.RedirectionApiUtils;
+import org.osc.controller.nsfc.utils.ResourceLocks;
+import org.osc.controller.nsfc.utils.VcSession;
 import org.osc.sdk.controller.FailurePolicyType;
 import org.osc.sdk.controller.TagEncapsulationType;
 import org.osc.sdk.controller.api.SdnRedirectionApi;
@@ -60,18 +83,50 @@ public class NeutronSfcSdnRedirectionApi implements SdnRedirectionApi {
 
     private RedirectionApiUtils utils;
     private OsCalls osCalls;
+    private AsyncOsCalls asyncOsCalls;
+    private PortChainMutationCoalescer coalescer;
+    private ResourceLocks locks;
+    private CallAccounting accounting = CallAccounting.disabled();
 
     public NeutronSfcSdnRedirectionApi() {
     }
 
     public NeutronSfcSdnRedirectionApi(OSClientV3 osClient) {
-        this.osCalls = new OsCalls(osClient);
+        this(osClient, CallAccounting.disabled());
+    }
+
+    /**
+     * Makes every Neutron call on the calling thread; only a {@link VcSession} has workers to run
+     * them concurrently.
+     *
+     * @param accounting accounts the Neutron requests of every operation, e.g. to hold them to a budget
+     */
+    public NeutronSfcSdnRedirectionApi(OSClientV3 osClient, CallAccounting accounting) {
+        this.osCalls = new OsCalls(osClient, new NeutronCallMetrics(null, accounting));
+        this.accounting = accounting;
+        this.asyncOsCalls = new AsyncOsCalls(this.osCalls, Runnable::run, AsyncOsCalls.DEFAULT_MAX_IN_FLIGHT);
+        this.locks = new ResourceLocks();
+        this.coalescer = PortChainMutationCoalescer.immediate(this.locks);
         this.utils = new RedirectionApiUtils(this.osCalls);
     }
 
+    public NeutronSfcSdnRedirectionApi(OSClientV3 osClient, VcSession session) {
+        this.osCalls = session.newOsCalls(osClient);
+        this.asyncOsCalls = new AsyncOsCalls(this.osCalls, session.getWorkers(), session.getAsyncPermits());
+        this.locks = session.getLocks();
+        this.coalescer = session.getCoalescer();
+        this.utils = new RedirectionApiUtils(this.osCalls, session::getTopology);
+        this.accounting = session.getCallMetrics().getAccounting();
+        session.loadTopology(this.osCalls);
+    }
+
     // Inspection port methods
     @Override
     public InspectionPortElement getInspectionPort(InspectionPortElement inspectionPort) throws Exception {
+        return accounted("getInspectionPort", () -> doGetInspectionPort(inspectionPort));
+    }
+
+    private InspectionPortElement doGetInspectionPort(InspectionPortElement inspectionPort) throws Exception {
         if (inspectionPort == null) {
             LOG.warn("Attempt to find null InspectionPort");
             return null;
@@ -104,107 +159,240 @@ public class NeutronSfcSdnRedirectionApi implements SdnRedirectionApi {
 
     @Override
     public Element registerInspectionPort(InspectionPortElement inspectionPort) throws Exception {
+        return accounted("registerInspectionPort", () -> doRegisterInspectionPort(inspectionPort));
+    }
+
+    private Element doRegisterInspectionPort(InspectionPortElement inspectionPort) throws Exception {
         if (inspectionPort == null) {
             throw new IllegalArgumentException("Attempt to register null InspectionPort");
         }
         PortPairGroup portPairGroup = null;
         String inspectionPortPairGroupId = inspectionPort.getParentId();
+        NetworkElement ingress = inspectionPort.getIngressPort();
+        NetworkElement egress = inspectionPort.getEgressPort();
+
+        // The group and the port pair lookups are independent
+        CompletableFuture<PortPairGroup> portPairGroupFuture = inspectionPortPairGroupId != null
+                ? this.asyncOsCalls.getPortPairGroup(inspectionPortPairGroupId) : completedFuture(null);
+        PortPair portPair;
+        try {
+            portPair = this.utils.fetchPortPairByNetworkElements(ingress, egress);
+        } catch (RuntimeException e) {
+            cancelPending(Collections.singletonList(portPairGroupFuture));
+            throw e;
+        }
 
         if (inspectionPortPairGroupId != null) {
-            portPairGroup = this.osCalls.getPortPairGroup(inspectionPortPairGroupId);
+            portPairGroup = await(portPairGroupFuture);
             checkArgument(portPairGroup != null,
                     "Cannot find %s by id: %s!", "Port Pair Group", inspectionPortPairGroupId);
         }
 
-        NetworkElement ingress = inspectionPort.getIngressPort();
-        NetworkElement egress = inspectionPort.getEgressPort();
-        PortPair portPair = this.utils.fetchPortPairByNetworkElements(ingress, egress);
-
         if (portPair == null) {
-            portPair = Builders.portPair().egressId(egress.getElementId())
-                            .ingressId(ingress.getElementId())
-                            .name("OSCPortPair-" + UUID.randomUUID().toString().substring(0, 8))
-                            .description("Port Pair created by OSC")
-                            .build();
-            portPair = this.osCalls.createPortPair(portPair);
+            portPair = this.osCalls.createPortPair(newPortPair(ingress, egress));
             checkArgument(portPair != null, "Failed to create port pair for ingress %s, egress %s!",
                           ingress.getElementId(), egress.getElementId());
         }
 
         if (portPairGroup == null) {
-            portPairGroup = Builders.portPairGroup()
-                    .description("Port Pair Group created by OSC")
-                    .name("OSCPortPairGroup-" + UUID.randomUUID().toString().substring(0, 8))
-                    .portPairs(new ArrayList<>())
-                    .build();
-            portPairGroup.getPortPairs().add(portPair.getId());
-            portPairGroup = this.osCalls.createPortPairGroup(portPairGroup);
+            portPairGroup = this.osCalls.createPortPairGroup(newPortPairGroup(portPair.getId()));
             inspectionPortPairGroupId = portPairGroup.getId();
         } else {
+            addPortPairs(portPairGroup.getId(), Collections.singletonList(portPair.getId()));
+        }
 
-            if (!portPairGroup.getPortPairs().contains(portPair.getId())) {
-                portPairGroup.getPortPairs().add(portPair.getId());
-            }
+        return registeredInspectionPort(portPair.getId(), inspectionPortPairGroupId, ingress, egress);
+    }
 
-            this.osCalls.updatePortPairGroup(portPairGroup.getId(), portPairGroup);
+    /**
+     * Registers many inspection ports at once, e.g. for a scaled out VNF. The port pairs are looked up with
+     * a single list, missing ones are created concurrently and each existing port pair group is updated once.
+     * Inspection ports without a parent get their own new group, as with {@link #registerInspectionPort}.
+     *
+     * If any call fails, the groups and port pairs created for the batch are deleted again before the failure
+     * is thrown. Port pairs already added to an existing group stay and are reused by a retry.
+     *
+     * @return the registered elements, in the order of the given inspection ports
+     */
+    public List<Element> registerInspectionPorts(List<InspectionPortElement> inspectionPorts) throws Exception {
+        return accounted("registerInspectionPorts", () -> doRegisterInspectionPorts(inspectionPorts));
+    }
+
+    private List<Element> doRegisterInspectionPorts(List<InspectionPortElement> inspectionPorts) throws Exception {
+        checkArgument(inspectionPorts != null, "null passed for %s !", "Inspection Ports");
+        if (inspectionPorts.contains(null)) {
+            throw new IllegalArgumentException("Attempt to register null InspectionPort");
         }
 
-        NetworkElementImpl ingressElement = null;
-        NetworkElementImpl egressElement = null;
+        // Fetch the parent groups while listing the port pairs
+        Map<String, CompletableFuture<PortPairGroup>> portPairGroupFutures = new LinkedHashMap<>();
+        inspectionPorts.stream().map(InspectionPortElement::getParentId).filter(Objects::nonNull).distinct()
+                .forEach(ppgId -> portPairGroupFutures.put(ppgId, this.asyncOsCalls.getPortPairGroup(ppgId)));
 
-        if (ingress != null) {
-            ingressElement = new NetworkElementImpl(ingress.getElementId(), ingress.getMacAddresses(),
-                                                     ingress.getPortIPs(), ingress.getParentId());
+        Map<List<String>, PortPair> portPairs = new HashMap<>();
+        Map<String, PortPairGroup> portPairGroups = new HashMap<>();
+        try {
+            for (PortPair portPair : this.osCalls.listPortPairs()) {
+                portPairs.putIfAbsent(asList(portPair.getIngressId(), portPair.getEgressId()), portPair);
+            }
+
+            for (Map.Entry<String, CompletableFuture<PortPairGroup>> entry : portPairGroupFutures.entrySet()) {
+                PortPairGroup portPairGroup = await(entry.getValue());
+                checkArgument(portPairGroup != null, "Cannot find %s by id: %s!", "Port Pair Group", entry.getKey());
+                portPairGroups.put(entry.getKey(), portPairGroup);
+            }
+        } catch (RuntimeException e) {
+            cancelPending(portPairGroupFutures.values());
+            throw e;
         }
 
-        if (egress != null) {
-            egressElement = new NetworkElementImpl(egress.getElementId(), egress.getMacAddresses(),
-                    egress.getPortIPs(), egress.getParentId());
+        // Create each missing port pair once, even if several inspection ports name it
+        Map<List<String>, CompletableFuture<PortPair>> created = new LinkedHashMap<>();
+        for (InspectionPortElement inspectionPort : inspectionPorts) {
+            List<String> key = portPairKey(inspectionPort);
+            if (!portPairs.containsKey(key) && !created.containsKey(key)) {
+                created.put(key, this.asyncOsCalls.createPortPair(
+                        newPortPair(inspectionPort.getIngressPort(), inspectionPort.getEgressPort())));
+            }
         }
 
-        // Only parent id of the return value is ever used
-        PortPairGroupElement ppgElement = new PortPairGroupElement(inspectionPortPairGroupId);
-        PortPairElement retVal = new PortPairElement(portPair.getId(), ppgElement, ingressElement, egressElement);
-        ppgElement.getPortPairs().add(retVal);
-        return retVal;
+        Map<String, Set<String>> addedPortPairIds = new LinkedHashMap<>();
+        Map<Integer, CompletableFuture<PortPairGroup>> newGroups = new HashMap<>();
+        Map<String, CompletableFuture<PortPairGroup>> updates = new LinkedHashMap<>();
+        try {
+            created.forEach((key, future) -> portPairs.put(key, await(future)));
+
+            for (int i = 0; i < inspectionPorts.size(); i++) {
+                InspectionPortElement inspectionPort = inspectionPorts.get(i);
+                String portPairId = portPairs.get(portPairKey(inspectionPort)).getId();
+
+                if (inspectionPort.getParentId() == null) {
+                    newGroups.put(i, this.asyncOsCalls.createPortPairGroup(newPortPairGroup(portPairId)));
+                } else {
+                    PortPairGroup portPairGroup = portPairGroups.get(inspectionPort.getParentId());
+                    if (!portPairGroup.getPortPairs().contains(portPairId)) {
+                        addedPortPairIds.computeIfAbsent(portPairGroup.getId(), ppgId -> new LinkedHashSet<>())
+                                .add(portPairId);
+                    }
+                }
+            }
+
+            addedPortPairIds.forEach((ppgId, portPairIds) ->
+                    updates.put(ppgId, this.asyncOsCalls.supply(() -> addPortPairs(ppgId, portPairIds))));
+            updates.values().forEach(AsyncOsCalls::await);
+
+            List<Element> registered = new ArrayList<>();
+            for (int i = 0; i < inspectionPorts.size(); i++) {
+                InspectionPortElement inspectionPort = inspectionPorts.get(i);
+                String portPairGroupId = newGroups.containsKey(i) ? await(newGroups.get(i)).getId()
+                        : inspectionPort.getParentId();
+                registered.add(registeredInspectionPort(portPairs.get(portPairKey(inspectionPort)).getId(),
+                        portPairGroupId, inspectionPort.getIngressPort(), inspectionPort.getEgressPort()));
+            }
+            return registered;
+        } catch (RuntimeException e) {
+            LOG.error("Failed to register {} Inspection Ports, deleting what was created for them",
+                    inspectionPorts.size(), e);
+            deleteCreatedForRegistration(created.values(), newGroups.values(), updates, addedPortPairIds);
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes what a failed {@link #registerInspectionPorts} created once all its calls are done: the new
+     * groups first, then the new port pairs that were not added to an existing group. Cleanup failures are
+     * only logged so that the caller gets the registration failure.
+     */
+    private void deleteCreatedForRegistration(Collection<CompletableFuture<PortPair>> createdPortPairs,
+                                              Collection<CompletableFuture<PortPairGroup>> newGroups,
+                                              Map<String, CompletableFuture<PortPairGroup>> updates,
+                                              Map<String, Set<String>> addedPortPairIds) {
+        List<CompletableFuture<?>> calls = new ArrayList<>(createdPortPairs);
+        calls.addAll(newGroups);
+        calls.addAll(updates.values());
+        calls.forEach(call -> call.handle((r, e) -> null).join());
+
+        Set<String> addedToExistingGroups = new HashSet<>();
+        updates.forEach((ppgId, update) -> {
+            if (!update.isCompletedExceptionally()) {
+                addedToExistingGroups.addAll(addedPortPairIds.get(ppgId));
+            }
+        });
+
+        newGroups.stream().filter(group -> !group.isCompletedExceptionally())
+                .map(group -> this.asyncOsCalls.deletePortPairGroup(group.join().getId())).collect(toList())
+                .forEach(delete -> delete.handle((r, e) -> logCleanupFailure("Port Pair Group", e)).join());
+
+        createdPortPairs.stream().filter(portPair -> !portPair.isCompletedExceptionally())
+                .map(portPair -> portPair.join().getId())
+                .filter(portPairId -> !addedToExistingGroups.contains(portPairId))
+                .map(this.asyncOsCalls::deletePortPair).collect(toList())
+                .forEach(delete -> delete.handle((r, e) -> logCleanupFailure("Port Pair", e)).join());
+    }
+
+    private static Void logCleanupFailure(String resource, Throwable failure) {
+        if (failure != null) {
+            LOG.warn("Failed to delete {} created for a failed registration", resource, failure);
+        }
+        return null;
     }
 
     @Override
     public void removeInspectionPort(InspectionPortElement inspectionPort)
             throws NetworkPortNotFoundException, Exception {
+        accounted("removeInspectionPort", () -> {
+            doRemoveInspectionPort(inspectionPort);
+            return null;
+        });
+    }
+
+    private void doRemoveInspectionPort(InspectionPortElement inspectionPort)
+            throws NetworkPortNotFoundException, Exception {
         if (inspectionPort == null) {
             LOG.warn("Attempt to remove a null Inspection Port");
             return;
         }
 
-        PortPair portPair = this.utils.fetchPortPairForInspectionPort(inspectionPort);
+        // The parent id names the group the port pair was registered into. Prefetch the group
+        // while looking up the port pair, and its chain once the port pair is known to exist, as
+        // finding the chain may list them all. Use both if the group still matches. Both are
+        // awaited before any update so that no read overlaps our own writes.
+        String parentId = inspectionPort.getParentId();
+        CompletableFuture<PortPairGroup> parentGroupFuture = parentId == null ? completedFuture(null)
+                : this.asyncOsCalls.getPortPairGroup(parentId);
+
+        PortPair portPair;
+        try {
+            portPair = this.utils.fetchPortPairForInspectionPort(inspectionPort);
+        } catch (RuntimeException e) {
+            cancelPending(asList(parentGroupFuture));
+            throw e;
+        }
 
         if (portPair != null) {
-            PortPairGroup portPairGroup = this.utils.fetchContainingPortPairGroup(portPair.getId());
+            CompletableFuture<PortChain> parentChainFuture = parentId == null ? completedFuture(null)
+                    : this.asyncOsCalls.supply(() -> this.utils.fetchContainingPortChain(parentId));
+            PortPairGroup portPairGroup;
+            try {
+                portPairGroup = await(parentGroupFuture);
+            } catch (RuntimeException e) {
+                cancelPending(asList(parentChainFuture));
+                throw e;
+            }
+            PortChain parentPortChain = await(parentChainFuture);
+            boolean parentGroupMatches = portPairGroup != null && portPairGroup.getPortPairs() != null
+                    && portPairGroup.getPortPairs().contains(portPair.getId());
+            if (!parentGroupMatches) {
+                portPairGroup = this.utils.fetchContainingPortPairGroup(portPair.getId());
+            }
 
             if (portPairGroup != null) {
-                portPairGroup.getPortPairs().remove(portPair.getId());
-
-                if (portPairGroup.getPortPairs().size() > 0) {
-                    PortPairGroup ppgUpdate = Builders.portPairGroup().portPairs(portPairGroup.getPortPairs()).build();
-                    this.osCalls.updatePortPairGroup(portPairGroup.getId(), ppgUpdate);
-                } else {
-                    PortChain portChain = this.utils.fetchContainingPortChain(portPairGroup.getId());
-
-                    if (portChain != null) {
-                        List<String> ppgIds = portChain.getPortPairGroups();
-                        ppgIds.remove(portPairGroup.getId());
-
-                        // service function chain with with no port pair should be allowed to exist?
-                        PortChain portChainUpdate = Builders.portChain().portPairGroups(ppgIds).build();
-                        this.osCalls.updatePortChain(portChain.getId(), portChainUpdate);
-                    }
-                    this.osCalls.deletePortPairGroup(portPairGroup.getId());
-                }
+                removePortPair(portPairGroup.getId(), portPair.getId(), parentGroupMatches ? parentPortChain : null);
             }
 
             this.osCalls.deletePortPair(portPair.getId());
         } else {
+            cancelPending(asList(parentGroupFuture));
             LOG.warn("Attempt to remove nonexistent Port Pair for ingress {} and egress {}",
                     inspectionPort.getIngressPort(), inspectionPort.getEgressPort());
         }
@@ -217,6 +405,15 @@ public class NeutronSfcSdnRedirectionApi implements SdnRedirectionApi {
                                         TagEncapsulationType encType, Long order,
                                         FailurePolicyType failurePolicyType)
             throws NetworkPortNotFoundException, Exception {
+        return accounted("installInspectionHook", () -> doInstallInspectionHook(inspectedPortElement,
+                inspectionPortElement, tag, encType, order, failurePolicyType));
+    }
+
+    private String doInstallInspectionHook(NetworkElement inspectedPortElement,
+                                           InspectionPortElement inspectionPortElement, Long tag,
+                                           TagEncapsulationType encType, Long order,
+                                           FailurePolicyType failurePolicyType)
+            throws NetworkPortNotFoundException, Exception {
 
         checkArgument(inspectedPortElement != null && inspectedPortElement.getElementId() != null,
                       "null passed for %s !", "Inspected Port");
@@ -233,14 +430,104 @@ public class NeutronSfcSdnRedirectionApi implements SdnRedirectionApi {
         FlowClassifier flowClassifier = this.utils.buildFlowClassifier(inspectedPortElement.getElementId());
 
         flowClassifier = this.osCalls.createFlowClassifier(flowClassifier);
-        portChain.getFlowClassifiers().add(flowClassifier.getId());
-        this.osCalls.updatePortChain(portChain.getId(), portChain);
+        await(this.coalescer.addFlowClassifier(this.osCalls, portChain.getId(), flowClassifier.getId()));
 
         return flowClassifier.getId();
     }
 
+    /**
+     * Installs the inspection hooks of many inspected ports on one inspection port. The flow classifiers
+     * are created concurrently and the port chain is updated once with all of them. Tag, encapsulation,
+     * order and failure policy are ignored as in {@link #installInspectionHook}.
+     *
+     * The port chain is looked up first, nothing is created if it does not exist. A port whose flow classifier
+     * cannot be created fails on its own. If the port chain update fails, the flow classifiers created for
+     * the batch are deleted and every port reports that failure.
+     *
+     * @return one result per inspected port, in order
+     */
+    public List<InspectionHookResult> installInspectionHooks(List<NetworkElement> inspectedPortElements,
+                                                             InspectionPortElement inspectionPortElement, Long tag,
+                                                             TagEncapsulationType encType, Long order,
+                                                             FailurePolicyType failurePolicyType)
+            throws Exception {
+        return accounted("installInspectionHooks", () -> doInstallInspectionHooks(inspectedPortElements,
+                inspectionPortElement, tag, encType, order, failurePolicyType));
+    }
+
+    private List<InspectionHookResult> doInstallInspectionHooks(List<NetworkElement> inspectedPortElements,
+                                                                InspectionPortElement inspectionPortElement, Long tag,
+                                                                TagEncapsulationType encType, Long order,
+                                                                FailurePolicyType failurePolicyType)
+            throws Exception {
+
+        checkArgument(inspectedPortElements != null, "null passed for %s !", "Inspected Ports");
+        checkArgument(inspectionPortElement != null && inspectionPortElement.getElementId() != null,
+                      "null passed for %s !", "Service Function Chain");
+
+        LOG.info("Installing {} Inspection Hooks for Inspection Port {}", inspectedPortElements.size(),
+                inspectionPortElement);
+
+        PortChain portChain = this.osCalls.getPortChain(inspectionPortElement.getElementId());
+        checkArgument(portChain != null,
+                      "Cannot find %s by id: %s!", "Service Function Chain", inspectionPortElement.getElementId());
+
+        List<CompletableFuture<FlowClassifier>> creates = new ArrayList<>();
+        for (NetworkElement inspectedPortElement : inspectedPortElements) {
+            if (inspectedPortElement == null || inspectedPortElement.getElementId() == null) {
+                CompletableFuture<FlowClassifier> invalid = new CompletableFuture<>();
+                invalid.completeExceptionally(new IllegalArgumentException("null passed for Inspected Port !"));
+                creates.add(invalid);
+            } else {
+                creates.add(this.asyncOsCalls.createFlowClassifier(
+                        this.utils.buildFlowClassifier(inspectedPortElement.getElementId())));
+            }
+        }
+
+        List<InspectionHookResult> results = new ArrayList<>();
+        List<String> createdIds = new ArrayList<>();
+        for (int i = 0; i < inspectedPortElements.size(); i++) {
+            NetworkElement inspectedPortElement = inspectedPortElements.get(i);
+            try {
+                String hookId = await(creates.get(i)).getId();
+                createdIds.add(hookId);
+                results.add(InspectionHookResult.installed(inspectedPortElement, hookId));
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to create Flow Classifier for Inspected Port {}", inspectedPortElement, e);
+                results.add(InspectionHookResult.failed(inspectedPortElement, e));
+            }
+        }
+
+        if (createdIds.isEmpty()) {
+            return results;
+        }
+
+        try {
+            await(this.coalescer.addFlowClassifiers(this.osCalls, portChain.getId(), createdIds));
+        } catch (RuntimeException e) {
+            LOG.error("Failed to add {} Flow Classifiers to Service Function Chain {}", createdIds.size(),
+                    inspectionPortElement.getElementId(), e);
+            createdIds.stream().map(this.asyncOsCalls::deleteFlowClassifier).collect(toList())
+                    .forEach(delete -> delete.handle((r, deleteFailure) -> null).join());
+            // Hooks that already failed keep their own failure
+            return results.stream()
+                    .map(result -> result.isInstalled() ? InspectionHookResult.failed(result.getInspectedPort(), e)
+                            : result)
+                    .collect(toList());
+        }
+
+        return results;
+    }
+
     @Override
     public void updateInspectionHook(InspectionHookElement providedHook) throws Exception {
+        accounted("updateInspectionHook", () -> {
+            doUpdateInspectionHook(providedHook);
+            return null;
+        });
+    }
+
+    private void doUpdateInspectionHook(InspectionHookElement providedHook) throws Exception {
 
         if (providedHook == null || providedHook.getHookId() == null) {
             throw new IllegalArgumentException("Attempt to update a null Inspection Hook!");
@@ -255,42 +542,63 @@ public class NeutronSfcSdnRedirectionApi implements SdnRedirectionApi {
         checkArgument(providedInspectionPort != null && providedInspectionPort.getElementId() != null,
                       "null passed for %s !", "Service Function Chain");
 
-        FlowClassifier flowClassifier = this.osCalls.getFlowClassifier(providedHook.getHookId());
-        checkArgument(flowClassifier != null, "Cannot find Flow Classifier %s", providedHook.getHookId());;
-
-        Port protectedPort = this.utils.fetchProtectedPort(flowClassifier);
+        // Only the protected port depends on another read, the chain lookups run alongside
+        String hookId = providedHook.getHookId();
+        CompletableFuture<PortChain> providedPortChainFuture =
+                this.asyncOsCalls.getPortChain(providedInspectionPort.getElementId());
+        CompletableFuture<PortChain> currentPortChainFuture =
+                this.asyncOsCalls.supply(() -> this.utils.fetchContainingPortChainForFC(hookId));
+
+        FlowClassifier flowClassifier;
+        PortChain providedPortChain;
+        try {
+            flowClassifier = this.osCalls.getFlowClassifier(hookId);
+            checkArgument(flowClassifier != null, "Cannot find Flow Classifier %s", hookId);
+
+            Port protectedPort = this.utils.fetchProtectedPort(flowClassifier);
+
+            // Detect attempt to re-write the inspected hook
+            Set<String> ipsProtected = protectedPort.getFixedIps().stream().map(ip -> ip.getIpAddress())
+                    .collect(Collectors.toSet());
+            // We don't really handle multiple ip addresses yet.
+            if (!ipsProtected.containsAll(providedInspectedPort.getPortIPs())) {
+                throw new IllegalStateException(
+                        String.format("Cannot update Inspected Port from %s to %s for the Flow Classifier %s",
+                                providedInspectedPort.getElementId(), protectedPort.getId(), flowClassifier.getId()));
+            }
 
-        // Detect attempt to re-write the inspected hook
-        Set<String> ipsProtected = protectedPort.getFixedIps().stream().map(ip -> ip.getIpAddress()).collect(Collectors.toSet());
-        // We don't really handle multiple ip addresses yet.
-        if (!ipsProtected.containsAll(providedInspectedPort.getPortIPs())) {
-            throw new IllegalStateException(
-                    String.format("Cannot update Inspected Port from %s to %s for the Flow Classifier %s",
-                            providedInspectedPort.getElementId(), protectedPort.getId(), flowClassifier.getId()));
+            providedPortChain = await(providedPortChainFuture);
+            checkArgument(providedPortChain != null, "null passed for %s !", "Service Function Chain");
+        } catch (RuntimeException e) {
+            cancelPending(asList(providedPortChainFuture, currentPortChainFuture));
+            throw e;
         }
 
-        PortChain providedPortChain = this.osCalls.getPortChain(providedInspectionPort.getElementId());
-        checkArgument(providedPortChain != null, "null passed for %s !", "Service Function Chain");
-
-        PortChain currentPortChain = this.utils.fetchContainingPortChainForFC(flowClassifier.getId());
+        PortChain currentPortChain = await(currentPortChainFuture);
 
+        CompletableFuture<PortChain> removal = completedFuture(null);
         if (currentPortChain != null) {
             if (currentPortChain.getId().equals(providedInspectionPort.getElementId())) {
                 return;
             }
-            currentPortChain.getFlowClassifiers().remove(flowClassifier.getId());
-            this.osCalls.updatePortChain(currentPortChain.getId(), currentPortChain);
+            removal = this.coalescer.removeFlowClassifier(this.osCalls, currentPortChain.getId(),
+                    flowClassifier.getId());
         }
 
-        if (!providedPortChain.getFlowClassifiers().contains(flowClassifier.getId())) {
-            providedPortChain.getFlowClassifiers().add(flowClassifier.getId());
-        }
-
-        this.osCalls.updatePortChain(providedPortChain.getId(), providedPortChain);
+        // The flow classifier must leave the current chain before it joins the new one
+        await(removal);
+        await(this.coalescer.addFlowClassifier(this.osCalls, providedPortChain.getId(), flowClassifier.getId()));
     }
 
     @Override
     public void removeInspectionHook(String inspectionHookId) throws Exception {
+        accounted("removeInspectionHook", () -> {
+            doRemoveInspectionHook(inspectionHookId);
+            return null;
+        });
+    }
+
+    private void doRemoveInspectionHook(String inspectionHookId) throws Exception {
         if (inspectionHookId == null) {
             LOG.warn("Attempt to remove an Inspection Hook with null id");
             return;
@@ -304,8 +612,7 @@ public class NeutronSfcSdnRedirectionApi implements SdnRedirectionApi {
 
         PortChain portChain = this.utils.fetchContainingPortChainForFC(flowClassifier.getId());
         if (portChain != null) {
-            portChain.getFlowClassifiers().remove(flowClassifier.getId());
-            this.osCalls.updatePortChain(portChain.getId(), portChain);
+            await(this.coalescer.removeFlowClassifier(this.osCalls, portChain.getId(), flowClassifier.getId()));
         }
 
         this.osCalls.deleteFlowClassifier(flowClassifier.getId());
@@ -313,6 +620,10 @@ public class NeutronSfcSdnRedirectionApi implements SdnRedirectionApi {
 
     @Override
     public InspectionHookElement getInspectionHook(String inspectionHookId) throws Exception {
+        return accounted("getInspectionHook", () -> doGetInspectionHook(inspectionHookId));
+    }
+
+    private InspectionHookElement doGetInspectionHook(String inspectionHookId) throws Exception {
         if (inspectionHookId == null) {
             LOG.warn("Attempt to get Inspection Hook with null id");
             return null;
@@ -341,6 +652,10 @@ public class NeutronSfcSdnRedirectionApi implements SdnRedirectionApi {
     // SFC methods
     @Override
     public NetworkElement registerNetworkElement(List<NetworkElement> portPairGroupList) throws Exception {
+        return accounted("registerNetworkElement", () -> doRegisterNetworkElement(portPairGroupList));
+    }
+
+    private NetworkElement doRegisterNetworkElement(List<NetworkElement> portPairGroupList) throws Exception {
         //check for null or empty list
         throwExceptionIfNullOrEmptyNetworkElementList(portPairGroupList, "Port Pair Group member list");
 
@@ -372,25 +687,41 @@ public class NeutronSfcSdnRedirectionApi implements SdnRedirectionApi {
     @Override
     public NetworkElement updateNetworkElement(NetworkElement serviceFunctionChain, List<NetworkElement> portPairGroupList)
             throws Exception {
+        return accounted("updateNetworkElement",
+                () -> doUpdateNetworkElement(serviceFunctionChain, portPairGroupList));
+    }
+
+    private NetworkElement doUpdateNetworkElement(NetworkElement serviceFunctionChain,
+                                                  List<NetworkElement> portPairGroupList) throws Exception {
         checkArgument(serviceFunctionChain != null && serviceFunctionChain.getElementId() != null,
                 "null passed for %s !", "Service Function Chain Id");
         throwExceptionIfNullOrEmptyNetworkElementList(portPairGroupList, "Port Pair Group update member list");
 
-        PortChain portChain = this.osCalls.getPortChain(serviceFunctionChain.getElementId());
-        checkArgument(portChain != null,
-                      "Cannot find %s by id: %s!", "Service Function Chain", serviceFunctionChain.getElementId());
-
-        portChain = Builders.portChain().from(portChain)
-                            .portPairGroups(Collections.emptyList()).build();
-        this.osCalls.updatePortChain(portChain.getId(), portChain);
-
         List<String> portPairGroupIds = portPairGroupList
                 .stream()
                 .map(ppg -> ppg.getElementId())
                 .collect(toList());
 
-        portChain = Builders.portChain().portPairGroups(portPairGroupIds).build();
-        PortChain portChainUpdated = this.osCalls.updatePortChain(serviceFunctionChain.getElementId(), portChain);
+        String portChainId = serviceFunctionChain.getElementId();
+        PortChain portChainUpdated = this.locks.withPortChainLock(portChainId, () -> {
+            PortChain portChain;
+            try {
+                // Nothing is sent if the chain already has the requested groups in that order
+                portChain = this.osCalls.updatePortChain(portChainId,
+                        current -> portPairGroupIds.equals(current.getPortPairGroups()) ? null
+                                : current.toBuilder().portPairGroups(new ArrayList<>(portPairGroupIds)).build());
+            } catch (SdnControllerResponseNsfcException e) {
+                if (!isRejectedReplacement(e)) {
+                    throw e;
+                }
+                LOG.warn("Neutron rejected replacing the port pair groups of port chain {}, clearing them first",
+                        portChainId, e);
+                portChain = replacePortPairGroupsInTwoSteps(portChainId, portPairGroupIds);
+            }
+
+            checkArgument(portChain != null, "Cannot find %s by id: %s!", "Service Function Chain", portChainId);
+            return portChain;
+        });
 
         List<PortPairGroupElement> portPairGroups =
                 portPairGroupIds.stream().map(id -> new PortPairGroupElement(id)).collect(toList());
@@ -402,6 +733,13 @@ public class NeutronSfcSdnRedirectionApi implements SdnRedirectionApi {
 
     @Override
     public void deleteNetworkElement(NetworkElement serviceFunctionChain) throws Exception {
+        accounted("deleteNetworkElement", () -> {
+            doDeleteNetworkElement(serviceFunctionChain);
+            return null;
+        });
+    }
+
+    private void doDeleteNetworkElement(NetworkElement serviceFunctionChain) throws Exception {
         checkArgument(serviceFunctionChain != null && serviceFunctionChain.getElementId() != null,
                       "null passed for %s !", "Service Function Chain Id");
 
@@ -410,6 +748,10 @@ public class NeutronSfcSdnRedirectionApi implements SdnRedirectionApi {
 
     @Override
     public List<NetworkElement> getNetworkElements(NetworkElement serviceFunctionChain) throws Exception {
+        return accounted("getNetworkElements", () -> doGetNetworkElements(serviceFunctionChain));
+    }
+
+    private List<NetworkElement> doGetNetworkElements(NetworkElement serviceFunctionChain) throws Exception {
         checkArgument(serviceFunctionChain != null && serviceFunctionChain.getElementId() != null,
                       "null passed for %s !", "Service Function Chain Id");
 
@@ -495,7 +837,166 @@ public class NeutronSfcSdnRedirectionApi implements SdnRedirectionApi {
                 "Retrieving the network element given the device owner id is currently not supported.");
     }
 
+    public AsyncOsCalls getAsyncOsCalls() {
+        return this.asyncOsCalls;
+    }
+
+    public ResourceLocks getResourceLocks() {
+        return this.locks;
+    }
+
     @Override
     public void close() throws Exception {
+        if (this.asyncOsCalls != null) {
+            this.asyncOsCalls.close();
+        }
+    }
+
+    /**
+     * Runs an operation of the API with the Neutron requests it makes accounted to it.
+     */
+    private <T> T accounted(String apiOperation, Callable<T> operation) throws Exception {
+        try (Scope scope = this.accounting.begin(apiOperation)) {
+            return operation.call();
+        }
+    }
+
+    /**
+     * Adds the port pairs to the group as it currently is in Neutron, under the group lock so that no
+     * concurrent change of this process is overwritten and with a conditional update against other nodes.
+     */
+    private PortPairGroup addPortPairs(String portPairGroupId, Collection<String> portPairIds) {
+        return this.locks.withPortPairGroupLock(portPairGroupId, () -> {
+            PortPairGroup updated = this.osCalls.updatePortPairGroup(portPairGroupId, portPairGroup -> {
+                List<String> current = portPairGroup.getPortPairs() == null ? emptyList() : portPairGroup.getPortPairs();
+                List<String> ppIds = new ArrayList<>(current);
+                portPairIds.stream().filter(ppId -> !ppIds.contains(ppId)).forEach(ppIds::add);
+                return ppIds.size() == current.size() ? null : portPairGroup.toBuilder().portPairs(ppIds).build();
+            });
+            checkArgument(updated != null, "Cannot find %s by id: %s!", "Port Pair Group", portPairGroupId);
+            return updated;
+        });
+    }
+
+    /**
+     * Removes the port pair from the group under the group lock. A group that would be left empty is
+     * taken out of its chain under the chain lock and deleted instead.
+     *
+     * @param knownPortChain the chain of the group if already known, otherwise it is searched for
+     */
+    private void removePortPair(String portPairGroupId, String portPairId, PortChain knownPortChain) {
+        this.locks.withPortPairGroupLock(portPairGroupId, () -> {
+            PortPairGroup portPairGroup = this.osCalls.updatePortPairGroup(portPairGroupId, current -> {
+                List<String> ppIds = current.getPortPairs();
+                if (ppIds == null || !ppIds.contains(portPairId) || ppIds.size() == 1) {
+                    return null;
+                }
+
+                List<String> remaining = new ArrayList<>(ppIds);
+                remaining.remove(portPairId);
+                return Builders.portPairGroup().portPairs(remaining).build();
+            });
+
+            if (portPairGroup == null || !Collections.singletonList(portPairId).equals(portPairGroup.getPortPairs())) {
+                return;
+            }
+
+            PortChain portChain = knownPortChain != null ? knownPortChain
+                    : this.utils.fetchContainingPortChain(portPairGroupId);
+            if (portChain != null) {
+                removePortPairGroup(portChain.getId(), portPairGroupId);
+            }
+            this.osCalls.deletePortPairGroup(portPairGroupId);
+        });
+    }
+
+    /**
+     * Whether Neutron refused to replace the port pair groups at once, as opposed to failing the call.
+     * Outages, auth failures and revision conflicts are not worth a second, more disruptive attempt.
+     */
+    private static boolean isRejectedReplacement(SdnControllerResponseNsfcException e) {
+        if (!(e.getCause() instanceof ResponseException)) {
+            return false;
+        }
+
+        int status = ((ResponseException) e.getCause()).getStatus();
+        return status == 400 || status == 409;
+    }
+
+    /**
+     * Fallback for chains whose port pair groups Neutron does not let us replace at once.
+     * Leaves the chain briefly without groups, so the dataplane is programmed twice.
+     */
+    private PortChain replacePortPairGroupsInTwoSteps(String portChainId, List<String> portPairGroupIds) {
+        this.osCalls.getCache().invalidatePortChain(portChainId);
+        PortChain portChain = this.osCalls.getPortChain(portChainId);
+        if (portChain == null) {
+            return null;
+        }
+
+        portChain = Builders.portChain().from(portChain)
+                            .portPairGroups(Collections.emptyList()).build();
+        this.osCalls.updatePortChain(portChainId, portChain);
+
+        portChain = Builders.portChain().portPairGroups(portPairGroupIds).build();
+        return this.osCalls.updatePortChain(portChainId, portChain);
+    }
+
+    private void removePortPairGroup(String portChainId, String portPairGroupId) {
+        this.locks.withPortChainLock(portChainId, () -> this.osCalls.updatePortChain(portChainId, portChain -> {
+            List<String> ppgIds = new ArrayList<>(portChain.getPortPairGroups());
+            if (!ppgIds.remove(portPairGroupId)) {
+                return null;
+            }
+
+            // service function chain with with no port pair should be allowed to exist?
+            return Builders.portChain().portPairGroups(ppgIds).build();
+        }));
+    }
+
+    private static PortPair newPortPair(NetworkElement ingress, NetworkElement egress) {
+        return Builders.portPair().egressId(egress.getElementId())
+                        .ingressId(ingress.getElementId())
+                        .name("OSCPortPair-" + UUID.randomUUID().toString().substring(0, 8))
+                        .description("Port Pair created by OSC")
+                        .build();
+    }
+
+    private static PortPairGroup newPortPairGroup(String portPairId) {
+        PortPairGroup portPairGroup = Builders.portPairGroup()
+                .description("Port Pair Group created by OSC")
+                .name("OSCPortPairGroup-" + UUID.randomUUID().toString().substring(0, 8))
+                .portPairs(new ArrayList<>())
+                .build();
+        portPairGroup.getPortPairs().add(portPairId);
+        return portPairGroup;
+    }
+
+    private static List<String> portPairKey(InspectionPortElement inspectionPort) {
+        NetworkElement ingress = inspectionPort.getIngressPort();
+        NetworkElement egress = inspectionPort.getEgressPort();
+        return asList(ingress != null ? ingress.getElementId() : null, egress != null ? egress.getElementId() : null);
+    }
+
+    private static PortPairElement registeredInspectionPort(String portPairId, String portPairGroupId,
+                                                            NetworkElement ingress, NetworkElement egress) {
+        NetworkElementImpl ingressElement = null;
+        NetworkElementImpl egressElement = null;
+
+        if (ingress != null) {
+            ingressElement = new NetworkElementImpl(ingress.getElementId(), ingress.getMacAddresses(),
+                                                     ingress.getPortIPs(), ingress.getParentId());
+        }
+
+        if (egress != null) {
+            egressElement = new NetworkElementImpl(egress.getElementId(), egress.getMacAddresses(),
+                    egress.getPortIPs(), egress.getParentId());
+        }
+
+        // Only parent id of the return value is ever used
+        PortPairGroupElement ppgElement = new PortPairGroupElement(portPairGroupId);
+        PortPairElement retVal = new PortPairElement(portPairId, ppgElement, ingressElement, egressElement);
+        ppgElement.getPortPairs().add(retVal);
+        return retVal;
     }
 }
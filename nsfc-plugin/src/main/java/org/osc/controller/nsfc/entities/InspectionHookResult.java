@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.entities;
+
+import org.osc.sdk.controller.element.NetworkElement;
+
+/**
+ * Outcome of installing the inspection hook of one inspected port in a batch:
+ * either the hook id or the failure.
+ */
+public class InspectionHookResult {
+
+    private final NetworkElement inspectedPort;
+
+    private final String hookId;
+
+    private final Exception failure;
+
+    private InspectionHookResult(NetworkElement inspectedPort, String hookId, Exception failure) {
+        this.inspectedPort = inspectedPort;
+        this.hookId = hookId;
+        this.failure = failure;
+    }
+
+    public static InspectionHookResult installed(NetworkElement inspectedPort, String hookId) {
+        return new InspectionHookResult(inspectedPort, hookId, null);
+    }
+
+    public static InspectionHookResult failed(NetworkElement inspectedPort, Exception failure) {
+        return new InspectionHookResult(inspectedPort, null, failure);
+    }
+
+    public NetworkElement getInspectedPort() {
+        return this.inspectedPort;
+    }
+
+    public String getHookId() {
+        return this.hookId;
+    }
+
+    public Exception getFailure() {
+        return this.failure;
+    }
+
+    public boolean isInstalled() {
+        return this.failure == null;
+    }
+
+    @Override
+    public String toString() {
+        return "InspectionHookResult [inspectedPort=" + this.inspectedPort + ", hookId=" + this.hookId
+                + ", failure=" + this.failure + "]";
+    }
+}
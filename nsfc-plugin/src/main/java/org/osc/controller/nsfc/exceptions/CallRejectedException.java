@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.exceptions;
+
+/**
+ * A Neutron call was refused on the client side without being sent, e.g. to protect an overloaded Neutron.
+ */
+public class CallRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 2645312093318214790L;
+
+    public CallRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.exceptions;
+
+/**
+ * A Neutron call was not attempted because the circuit breaker of its endpoint is open.
+ */
+public class CircuitOpenException extends CallRejectedException {
+
+    private static final long serialVersionUID = -3215890442467151782L;
+
+    private final String endpoint;
+    private final long retryAfterMillis;
+
+    public CircuitOpenException(String endpoint, long retryAfterMillis) {
+        super(String.format("Neutron at %s is failing, calls are suspended for another %d ms", endpoint,
+                retryAfterMillis));
+        this.endpoint = endpoint;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public String getEndpoint() {
+        return this.endpoint;
+    }
+
+    public long getRetryAfterMillis() {
+        return this.retryAfterMillis;
+    }
+}
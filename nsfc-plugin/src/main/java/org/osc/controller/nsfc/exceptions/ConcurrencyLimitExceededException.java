@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.exceptions;
+
+/**
+ * A Neutron call was not sent because the calls of its VC stayed at the concurrency limit for longer
+ * than the wait limit.
+ */
+public class ConcurrencyLimitExceededException extends CallRejectedException {
+
+    private static final long serialVersionUID = 4467960012832217563L;
+
+    public ConcurrencyLimitExceededException(String message) {
+        super(message);
+    }
+}
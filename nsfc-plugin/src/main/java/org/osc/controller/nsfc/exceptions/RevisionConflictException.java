@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.exceptions;
+
+/**
+ * Neutron refused a conditional update because the resource changed since the revision it was read at.
+ */
+public class RevisionConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = 4316023479470148311L;
+
+    private final long revisionNumber;
+
+    public RevisionConflictException(String path, long revisionNumber, int status) {
+        super(String.format("%s is no longer at revision %d, Response %d", path, revisionNumber, status));
+        this.revisionNumber = revisionNumber;
+    }
+
+    public long getRevisionNumber() {
+        return this.revisionNumber;
+    }
+}
@@ -0,0 +1,379 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getInt;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.openstack4j.model.network.Port;
+import org.openstack4j.model.network.ext.FlowClassifier;
+import org.openstack4j.model.network.ext.PortChain;
+import org.openstack4j.model.network.ext.PortPair;
+import org.openstack4j.model.network.ext.PortPairGroup;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Non blocking counterpart of {@link OsCalls}. Every call is run by {@link OsCalls} on an executor thread,
+ * so results, caching and the {@code SdnControllerResponseNsfcException} mapping are the same; failures
+ * complete the returned future exceptionally instead of being thrown.
+ *
+ * At most max in flight calls run or wait for a thread at any time, further submissions block the caller
+ * until one ends. The permits can be shared, e.g. by all the instances of a VC's {@link VcSession}.
+ * Cancelling a returned future interrupts the call if it already started; its permit is released once
+ * the call has actually ended.
+ * {@link #close()} rejects new calls and waits for the in flight ones.
+ *
+ * The limit is set for a VC with the provider attribute {@value #MAX_IN_FLIGHT_ATTRIBUTE}.
+ */
+public class AsyncOsCalls implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncOsCalls.class);
+
+    public static final String MAX_IN_FLIGHT_ATTRIBUTE = "nsfc.async.maxInFlight";
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+    public static final long DEFAULT_CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final OsCalls osCalls;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+    private final Semaphore permits;
+
+    private final Set<Task<?>> inFlight = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean closed;
+
+    /**
+     * Runs the calls on a dedicated pool of max in flight threads which is shut down on close.
+     */
+    public AsyncOsCalls(OsCalls osCalls, int maxInFlight) {
+        this(osCalls, Executors.newFixedThreadPool(maxInFlight, OsClientPool.daemonThreadFactory("nsfc-async")), true,
+                maxInFlight);
+    }
+
+    /**
+     * Runs the calls on a shared executor which is left running on close, or on the calling thread
+     * with {@code Runnable::run}.
+     */
+    public AsyncOsCalls(OsCalls osCalls, Executor executor, int maxInFlight) {
+        this(osCalls, executor, false, maxInFlight);
+    }
+
+    /**
+     * Runs the calls on a shared executor which is left running on close, limited by shared permits.
+     */
+    public AsyncOsCalls(OsCalls osCalls, Executor executor, Semaphore permits) {
+        this(osCalls, executor, false, permits);
+    }
+
+    private AsyncOsCalls(OsCalls osCalls, Executor executor, boolean ownsExecutor, int maxInFlight) {
+        this(osCalls, executor, ownsExecutor, newPermits(maxInFlight));
+    }
+
+    private AsyncOsCalls(OsCalls osCalls, Executor executor, boolean ownsExecutor, Semaphore permits) {
+        this.osCalls = osCalls;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.permits = permits;
+    }
+
+    public static Semaphore newPermits(int maxInFlight) {
+        checkArgument(maxInFlight > 0, "max in flight must be positive but was %s", maxInFlight);
+        return new Semaphore(maxInFlight);
+    }
+
+    public static int maxInFlight(VirtualizationConnectorElement vc) {
+        return Math.max(1, getInt(vc.getProviderAttributes(), MAX_IN_FLIGHT_ATTRIBUTE, DEFAULT_MAX_IN_FLIGHT));
+    }
+
+    public OsCalls getOsCalls() {
+        return this.osCalls;
+    }
+
+    public int getInFlightCount() {
+        return this.inFlight.size();
+    }
+
+    public CompletableFuture<FlowClassifier> createFlowClassifier(FlowClassifier flowClassifier) {
+        return supply(() -> this.osCalls.createFlowClassifier(flowClassifier));
+    }
+
+    public CompletableFuture<PortChain> createPortChain(PortChain portChain) {
+        return supply(() -> this.osCalls.createPortChain(portChain));
+    }
+
+    public CompletableFuture<PortPairGroup> createPortPairGroup(PortPairGroup portPairGroup) {
+        return supply(() -> this.osCalls.createPortPairGroup(portPairGroup));
+    }
+
+    public CompletableFuture<PortPair> createPortPair(PortPair portPair) {
+        return supply(() -> this.osCalls.createPortPair(portPair));
+    }
+
+    public CompletableFuture<List<? extends PortPairGroup>> listPortPairGroups() {
+        return supply(this.osCalls::listPortPairGroups);
+    }
+
+    public CompletableFuture<List<? extends PortPair>> listPortPairs() {
+        return supply(this.osCalls::listPortPairs);
+    }
+
+    public CompletableFuture<List<? extends PortPair>> listPortPairs(Map<String, String> filters) {
+        return supply(() -> this.osCalls.listPortPairs(filters));
+    }
+
+    public CompletableFuture<List<? extends PortChain>> listPortChains() {
+        return supply(this.osCalls::listPortChains);
+    }
+
+    public CompletableFuture<List<? extends FlowClassifier>> listFlowClassifiers() {
+        return supply(this.osCalls::listFlowClassifiers);
+    }
+
+    public CompletableFuture<List<? extends Port>> listPorts() {
+        return supply(this.osCalls::listPorts);
+    }
+
+    public CompletableFuture<FlowClassifier> getFlowClassifier(String flowClassifierId) {
+        return supply(() -> this.osCalls.getFlowClassifier(flowClassifierId));
+    }
+
+    public CompletableFuture<PortChain> getPortChain(String portChainId) {
+        return supply(() -> this.osCalls.getPortChain(portChainId));
+    }
+
+    public CompletableFuture<PortPairGroup> getPortPairGroup(String portPairGroupId) {
+        return supply(() -> this.osCalls.getPortPairGroup(portPairGroupId));
+    }
+
+    public CompletableFuture<PortPair> getPortPair(String portPairId) {
+        return supply(() -> this.osCalls.getPortPair(portPairId));
+    }
+
+    public CompletableFuture<Port> getPort(String portId) {
+        return supply(() -> this.osCalls.getPort(portId));
+    }
+
+    public CompletableFuture<PortChain> updatePortChain(String portChainId, PortChain portChain) {
+        return supply(() -> this.osCalls.updatePortChain(portChainId, portChain));
+    }
+
+    public CompletableFuture<PortPairGroup> updatePortPairGroup(String portPairGroupId, PortPairGroup portPairGroup) {
+        return supply(() -> this.osCalls.updatePortPairGroup(portPairGroupId, portPairGroup));
+    }
+
+    public CompletableFuture<Void> deleteFlowClassifier(String flowClassifierId) {
+        return supply(() -> {
+            this.osCalls.deleteFlowClassifier(flowClassifierId);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deletePortChain(String portChainId) {
+        return supply(() -> {
+            this.osCalls.deletePortChain(portChainId);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deletePortPairGroup(String portPairGroupId) {
+        return supply(() -> {
+            this.osCalls.deletePortPairGroup(portPairGroupId);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deletePortPair(String portPairId) {
+        return supply(() -> {
+            this.osCalls.deletePortPair(portPairId);
+            return null;
+        });
+    }
+
+    /**
+     * Waits for the future and rethrows its failure as it would have been thrown by the synchronous call.
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Cancels the futures that are still pending, e.g. the lookups started ahead of a check that failed,
+     * so that they do not keep holding permits and threads. Completed futures are left as they are.
+     */
+    public static void cancelPending(Collection<? extends Future<?>> futures) {
+        futures.forEach(future -> future.cancel(true));
+    }
+
+    /**
+     * Rejects new calls and waits up to the default timeout for the in flight ones to complete.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        close(DEFAULT_CLOSE_TIMEOUT_MILLIS);
+    }
+
+    public void close(long timeoutMillis) throws InterruptedException {
+        this.closed = true;
+
+        CompletableFuture<?>[] pending = this.inFlight.stream().map(task -> task.finished)
+                .toArray(CompletableFuture<?>[]::new);
+        try {
+            CompletableFuture.allOf(pending).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOG.warn("{} Neutron calls still in flight after {} ms, cancelling them", this.inFlight.size(), timeoutMillis);
+            this.inFlight.forEach(task -> task.result.cancel(true));
+        } catch (ExecutionException e) {
+            // Not reached, failures are reported through the individual futures.
+        } finally {
+            if (this.ownsExecutor) {
+                ((ExecutorService) this.executor).shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Runs any sequence of calls against the wrapped {@link OsCalls}, e.g. a {@link RedirectionApiUtils} lookup.
+     * If the submitting thread holds a lock, the retries of the calls are limited to the {@link RetryPolicy}
+     * max lock hold time left to it.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (this.closed) {
+            result.completeExceptionally(new RejectedExecutionException("Asynchronous Neutron calls are closed"));
+            return result;
+        }
+
+        try {
+            this.permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        Task<T> task = new Task<>(result, RetryPolicy.propagateHold(this.osCalls.inSession(call)));
+        this.inFlight.add(task);
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                task.interrupt();
+            }
+        });
+        try {
+            this.executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            task.finish();
+        }
+
+        return result;
+    }
+
+    /**
+     * A call that holds its permit until it has actually ended. Cancelling its future only interrupts it,
+     * as the request it is waiting for may still be in flight.
+     */
+    private final class Task<T> implements Runnable {
+        private final CompletableFuture<T> result;
+        private final Supplier<T> call;
+        private final CompletableFuture<Void> finished = new CompletableFuture<>();
+
+        /** The thread running the call and whether it was interrupted, guarded by this */
+        private Thread runner;
+        private boolean interrupted;
+
+        private Task(CompletableFuture<T> result, Supplier<T> call) {
+            this.result = result;
+            this.call = call;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (start()) {
+                    try {
+                        this.result.complete(this.call.get());
+                    } catch (Throwable e) {
+                        this.result.completeExceptionally(e);
+                    }
+                }
+            } finally {
+                stop();
+                finish();
+            }
+        }
+
+        private synchronized boolean start() {
+            if (this.result.isDone()) {
+                return false;
+            }
+            this.runner = Thread.currentThread();
+            return true;
+        }
+
+        private synchronized void stop() {
+            this.runner = null;
+            if (this.interrupted) {
+                // Not to leak into the next task of the thread, or into the caller running it
+                Thread.interrupted();
+            }
+        }
+
+        private synchronized void interrupt() {
+            if (this.runner != null) {
+                this.runner.interrupt();
+                this.interrupted = true;
+            }
+        }
+
+        private void finish() {
+            AsyncOsCalls.this.inFlight.remove(this);
+            AsyncOsCalls.this.permits.release();
+            this.finished.complete(null);
+        }
+    }
+}
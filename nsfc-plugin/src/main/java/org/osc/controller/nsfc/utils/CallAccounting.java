@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getBoolean;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.Supplier;
+
+import org.openstack4j.core.transport.ObjectMapperSingleton;
+import org.osc.sdk.controller.api.SdnRedirectionApi;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Attributes the Neutron requests made by {@link OsCalls} to the {@link SdnRedirectionApi} operation
+ * they were made for, so the cost of an operation in round trips is visible and can be asserted on.
+ *
+ * An operation is accounted from {@link #begin(String)} until its scope is closed, on the calling
+ * thread and on the threads {@link OsCalls#inSession(Supplier)} hands its calls to. Port chain
+ * updates batched by the {@link PortChainMutationCoalescer} serve several operations, their requests
+ * are shared among them pro rata, see {@link #propagateShared(List, Supplier)}. Each VC has its own
+ * accounting with its own current operation per thread, so an operation on one VC never absorbs the
+ * requests of another. The redirection API begins an operation in each of its methods.
+ *
+ * Response bytes are estimated from the JSON encoding of the responses, which costs a serialization
+ * per request. They are only measured for a VC with the provider attribute
+ * {@value #RESPONSE_BYTES_ATTRIBUTE} set to {@code true}.
+ */
+public class CallAccounting {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CallAccounting.class);
+
+    public static final String RESPONSE_BYTES_ATTRIBUTE = "nsfc.accounting.responseBytes";
+
+    private static final Scope NESTED = new Scope(null, null, null);
+
+    private static final CallAccounting DISABLED = new CallAccounting(false, false);
+
+    private final ThreadLocal<Scope> current = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final boolean measureResponseBytes;
+
+    private final ConcurrentMap<String, OperationCost> costs = new ConcurrentHashMap<>();
+
+    public CallAccounting(boolean measureResponseBytes) {
+        this(true, measureResponseBytes);
+    }
+
+    private CallAccounting(boolean enabled, boolean measureResponseBytes) {
+        this.enabled = enabled;
+        this.measureResponseBytes = measureResponseBytes;
+    }
+
+    /**
+     * Accounting that records nothing, e.g. for a client without a session.
+     */
+    public static CallAccounting disabled() {
+        return DISABLED;
+    }
+
+    public static CallAccounting forVc(VirtualizationConnectorElement vc) {
+        return new CallAccounting(getBoolean(vc.getProviderAttributes(), RESPONSE_BYTES_ATTRIBUTE));
+    }
+
+    /**
+     * Accounts the requests of this thread to the operation until the scope is closed. Operations
+     * started within another operation are accounted to the outer one.
+     */
+    public Scope begin(String apiOperation) {
+        if (!this.enabled || this.current.get() != null) {
+            return NESTED;
+        }
+
+        OperationCost cost = this.costs.computeIfAbsent(apiOperation, OperationCost::new);
+        cost.invocationCount.incrementAndGet();
+        Scope scope = new Scope(this, cost, null);
+        this.current.set(scope);
+        return scope;
+    }
+
+    /**
+     * @return the scope of the operation accounted on this thread, null if there is none
+     */
+    public Scope current() {
+        return this.current.get();
+    }
+
+    /**
+     * Wraps a call so that it is accounted to the operation of this thread when executed on another thread.
+     */
+    public <T> Supplier<T> propagate(Supplier<T> call) {
+        return propagate(this.current.get(), call);
+    }
+
+    /**
+     * Wraps a call made on behalf of several operations, e.g. a port chain update applying the changes
+     * of several hooks, so that each of its requests is shared among them. An operation gets a share per
+     * scope given, so one that submitted two of the changes bears twice the share. A request made for a
+     * single operation is accounted to it in full. Scopes of other accountings and nulls are ignored.
+     */
+    public <T> Supplier<T> propagateShared(List<Scope> scopes, Supplier<T> call) {
+        List<OperationCost> shares = new ArrayList<>(scopes.size());
+        Scope single = null;
+        for (Scope scope : scopes) {
+            if (scope != null && scope.accounting == this) {
+                shares.add(scope.cost);
+                single = scope;
+            }
+        }
+
+        return propagate(shares.size() > 1 ? new Scope(this, null, shares) : single, call);
+    }
+
+    private <T> Supplier<T> propagate(Scope scope, Supplier<T> call) {
+        if (scope == null) {
+            return call;
+        }
+
+        return () -> {
+            Scope previous = this.current.get();
+            this.current.set(scope);
+            try {
+                return call.get();
+            } finally {
+                if (previous == null) {
+                    this.current.remove();
+                } else {
+                    this.current.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Accounts a request to the operation of this thread, if any.
+     *
+     * @param response the response of the request, null if it failed
+     */
+    void record(NeutronOperation operation, Object response) {
+        Scope scope = this.current.get();
+        if (scope == null) {
+            return;
+        }
+        long bytes = this.measureResponseBytes && response != null ? responseBytes(response) : 0;
+        if (scope.shares == null) {
+            scope.cost.callCounts.incrementAndGet(operation.ordinal());
+            scope.cost.responseBytes.addAndGet(bytes);
+            return;
+        }
+
+        double share = 1.0 / scope.shares.size();
+        for (OperationCost cost : scope.shares) {
+            cost.sharedCallCounts[operation.ordinal()].add(share);
+            cost.responseBytes.addAndGet(bytes / scope.shares.size());
+        }
+    }
+
+    /**
+     * @return the cost of the operation, null if it was never called
+     */
+    public OperationCost getCost(String apiOperation) {
+        return this.costs.get(apiOperation);
+    }
+
+    public Collection<OperationCost> getCosts() {
+        return new ArrayList<>(this.costs.values());
+    }
+
+    public void reset() {
+        this.costs.clear();
+    }
+
+    private static long responseBytes(Object response) {
+        try {
+            return ObjectMapperSingleton.getContext(response.getClass()).writeValueAsBytes(response).length;
+        } catch (Exception e) {
+            LOG.debug("Cannot estimate the size of {}", response.getClass().getSimpleName(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Accounting of one operation on one thread, closed when the operation returns.
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private final CallAccounting accounting;
+        private final OperationCost cost;
+        /** Operations sharing the requests, null if they are accounted to the operation in full */
+        private final List<OperationCost> shares;
+
+        private Scope(CallAccounting accounting, OperationCost cost, List<OperationCost> shares) {
+            this.accounting = accounting;
+            this.cost = cost;
+            this.shares = shares;
+        }
+
+        @Override
+        public void close() {
+            if (this != NESTED) {
+                this.accounting.current.remove();
+            }
+        }
+    }
+
+    /**
+     * Neutron requests and response bytes of all calls of one operation.
+     */
+    public static final class OperationCost {
+
+        private static final NeutronOperation[] OPERATIONS = NeutronOperation.values();
+
+        private final String apiOperation;
+        private final AtomicLong invocationCount = new AtomicLong();
+        private final AtomicLongArray callCounts = new AtomicLongArray(OPERATIONS.length);
+        private final DoubleAdder[] sharedCallCounts = new DoubleAdder[OPERATIONS.length];
+        private final AtomicLong responseBytes = new AtomicLong();
+
+        private OperationCost(String apiOperation) {
+            this.apiOperation = apiOperation;
+            for (int i = 0; i < this.sharedCallCounts.length; i++) {
+                this.sharedCallCounts[i] = new DoubleAdder();
+            }
+        }
+
+        public String getApiOperation() {
+            return this.apiOperation;
+        }
+
+        public long getInvocationCount() {
+            return this.invocationCount.get();
+        }
+
+        public long getCallCount(NeutronOperation operation) {
+            return this.callCounts.get(operation.ordinal());
+        }
+
+        public long getCallCount() {
+            long count = 0;
+            for (int i = 0; i < this.callCounts.length(); i++) {
+                count += this.callCounts.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * Share of the requests made for this and other operations at once, e.g. batched port chain updates.
+         */
+        public double getSharedCallCount(NeutronOperation operation) {
+            return this.sharedCallCounts[operation.ordinal()].sum();
+        }
+
+        public double getSharedCallCount() {
+            double count = 0;
+            for (DoubleAdder sharedCallCount : this.sharedCallCounts) {
+                count += sharedCallCount.sum();
+            }
+            return count;
+        }
+
+        /**
+         * Requests per invocation, including the shares of requests made for several operations.
+         */
+        public double getCallsPerInvocation() {
+            long invocations = getInvocationCount();
+            return invocations == 0 ? 0 : (getCallCount() + getSharedCallCount()) / invocations;
+        }
+
+        public long getResponseBytes() {
+            return this.responseBytes.get();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder calls = new StringBuilder();
+            for (NeutronOperation operation : OPERATIONS) {
+                long count = getCallCount(operation);
+                if (count > 0) {
+                    calls.append(calls.length() == 0 ? "" : ", ").append(operation).append('=').append(count);
+                }
+            }
+            return String.format("%s invocations=%d calls=%d [%s] sharedCalls=%.2f responseBytes=%d",
+                    this.apiOperation, getInvocationCount(), getCallCount(), calls, getSharedCallCount(),
+                    getResponseBytes());
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getDouble;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getInt;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getLong;
+
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.openstack4j.api.exceptions.ResponseException;
+import org.osc.controller.nsfc.exceptions.CircuitOpenException;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops calling a Neutron endpoint that is failing or too slow, so jobs fail fast instead of
+ * each waiting for the HTTP timeout.
+ *
+ * The breaker looks at the outcome of the last calls. It opens when enough of them failed on
+ * the server side (5xx, 429, connection errors) or took longer than the slow call threshold.
+ * List calls grow with the number of resources of the VC, so they are never counted as slow.
+ * While open, calls throw {@link CircuitOpenException} without reaching Neutron. After the open
+ * period a few trial calls are let through (half open); the breaker closes if they all succeed
+ * in time and opens again otherwise. Only the outcome of a call admitted in the current state
+ * counts, so a call started before the breaker opened is no trial.
+ *
+ * One breaker is shared by all sessions of an endpoint with the same {@code nsfc.breaker.*}
+ * provider attributes, see {@link #getKey()}.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public static final String WINDOW_SIZE_ATTRIBUTE = "nsfc.breaker.windowSize";
+    public static final String FAILURE_RATE_ATTRIBUTE = "nsfc.breaker.failureRate";
+    public static final String SLOW_CALL_ATTRIBUTE = "nsfc.breaker.slowCallMillis";
+    public static final String OPEN_ATTRIBUTE = "nsfc.breaker.openMillis";
+
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+    public static final double DEFAULT_FAILURE_RATE = 0.5;
+    public static final long DEFAULT_SLOW_CALL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    public static final long DEFAULT_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final int HALF_OPEN_CALLS = 3;
+
+    public enum State {
+        Closed, Open, HalfOpen
+    }
+
+    private final String endpoint;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRate;
+    private final long slowCallNanos;
+    private final long openMillis;
+
+    /** Outcome of the last calls, true for a failed or slow call */
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowBadCount;
+
+    private State state = State.Closed;
+    /** Changes with the state, to tell the calls admitted in the current state */
+    private long generation;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong openedCount = new AtomicLong();
+
+    public CircuitBreaker(String endpoint) {
+        this(endpoint, DEFAULT_WINDOW_SIZE, DEFAULT_FAILURE_RATE, DEFAULT_SLOW_CALL_MILLIS, DEFAULT_OPEN_MILLIS);
+    }
+
+    /**
+     * @param windowSize number of recent calls looked at, the breaker only opens once half of them are known
+     * @param failureRate share of failed or slow calls in the window that opens the breaker
+     */
+    public CircuitBreaker(String endpoint, int windowSize, double failureRate, long slowCallMillis, long openMillis) {
+        checkArgument(windowSize > 0, "window size must be positive but was %s", windowSize);
+        checkArgument(failureRate > 0 && failureRate <= 1, "failure rate must be in (0, 1] but was %s", failureRate);
+        this.endpoint = endpoint;
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.max(1, windowSize / 2);
+        this.failureRate = failureRate;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.openMillis = openMillis;
+        this.window = new boolean[windowSize];
+    }
+
+    public static CircuitBreaker forVc(VirtualizationConnectorElement vc) {
+        Map<String, String> attributes = vc.getProviderAttributes();
+        int windowSize = Math.max(1, getInt(attributes, WINDOW_SIZE_ATTRIBUTE, DEFAULT_WINDOW_SIZE));
+        double failureRate = getDouble(attributes, FAILURE_RATE_ATTRIBUTE, DEFAULT_FAILURE_RATE);
+        if (failureRate <= 0 || failureRate > 1) {
+            LOG.warn("Ignoring invalid {} value {}", FAILURE_RATE_ATTRIBUTE, failureRate);
+            failureRate = DEFAULT_FAILURE_RATE;
+        }
+        long slowCallMillis = getLong(attributes, SLOW_CALL_ATTRIBUTE, DEFAULT_SLOW_CALL_MILLIS);
+        long openMillis = getLong(attributes, OPEN_ATTRIBUTE, DEFAULT_OPEN_MILLIS);
+        return new CircuitBreaker(vc.getProviderIpAddress(), windowSize, failureRate, slowCallMillis, openMillis);
+    }
+
+    /**
+     * @throws CircuitOpenException if the breaker is open, without running the call
+     */
+    public <T> T call(Supplier<T> call) {
+        return call(true, call);
+    }
+
+    /**
+     * Runs the Neutron request, only timing it against the slow call threshold if it is not a list.
+     *
+     * @throws CircuitOpenException if the breaker is open, without running the call
+     */
+    public <T> T call(NeutronOperation operation, Supplier<T> call) {
+        return call(!operation.isList(), call);
+    }
+
+    private <T> T call(boolean timed, Supplier<T> call) {
+        long generation = acquire();
+
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            record(generation, timed && isSlow(start));
+            return result;
+        } catch (RuntimeException | Error e) {
+            record(generation, isServerFailure(e) || timed && isSlow(start));
+            throw e;
+        }
+    }
+
+    public synchronized State getState() {
+        if (this.state == State.Open && System.currentTimeMillis() - this.openedAt >= this.openMillis) {
+            return State.HalfOpen;
+        }
+        return this.state;
+    }
+
+    public String getEndpoint() {
+        return this.endpoint;
+    }
+
+    /**
+     * The endpoint and the thresholds of the breaker. Sessions of VCs with the same key share a
+     * breaker, VCs of an endpoint that set other thresholds get their own.
+     */
+    public String getKey() {
+        return String.join("|", String.valueOf(this.endpoint), String.valueOf(this.windowSize),
+                String.valueOf(this.failureRate), String.valueOf(this.slowCallNanos), String.valueOf(this.openMillis));
+    }
+
+    /**
+     * Number of calls failed fast while the breaker was open.
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    /**
+     * Number of times the breaker opened.
+     */
+    public long getOpenedCount() {
+        return this.openedCount.get();
+    }
+
+    private boolean isSlow(long startNanos) {
+        return System.nanoTime() - startNanos > this.slowCallNanos;
+    }
+
+    /**
+     * @return the generation the call is admitted in
+     */
+    private synchronized long acquire() {
+        if (this.state == State.Open) {
+            long openFor = System.currentTimeMillis() - this.openedAt;
+            if (openFor < this.openMillis) {
+                this.rejectedCount.incrementAndGet();
+                throw new CircuitOpenException(this.endpoint, this.openMillis - openFor);
+            }
+            LOG.info("Circuit breaker of {} half open, trying {} calls", this.endpoint, HALF_OPEN_CALLS);
+            this.state = State.HalfOpen;
+            this.generation++;
+            this.halfOpenPermits = HALF_OPEN_CALLS;
+            this.halfOpenSuccesses = 0;
+        }
+
+        if (this.state == State.HalfOpen) {
+            if (this.halfOpenPermits == 0) {
+                this.rejectedCount.incrementAndGet();
+                throw new CircuitOpenException(this.endpoint, 0);
+            }
+            this.halfOpenPermits--;
+        }
+        return this.generation;
+    }
+
+    private synchronized void record(long generation, boolean bad) {
+        if (generation != this.generation) {
+            // Call admitted before the state changed, e.g. started before the breaker opened
+            return;
+        }
+
+        if (this.state == State.HalfOpen) {
+            if (bad) {
+                open();
+            } else if (++this.halfOpenSuccesses == HALF_OPEN_CALLS) {
+                LOG.info("Circuit breaker of {} closed", this.endpoint);
+                this.state = State.Closed;
+                this.generation++;
+                resetWindow();
+            }
+            return;
+        }
+
+        if (this.windowCount == this.windowSize) {
+            this.windowBadCount -= this.window[this.windowIndex] ? 1 : 0;
+        } else {
+            this.windowCount++;
+        }
+        this.window[this.windowIndex] = bad;
+        this.windowBadCount += bad ? 1 : 0;
+        this.windowIndex = (this.windowIndex + 1) % this.windowSize;
+
+        if (this.windowCount >= this.minimumCalls && this.windowBadCount >= this.failureRate * this.windowCount) {
+            open();
+        }
+    }
+
+    private void open() {
+        LOG.warn("Circuit breaker of {} open for {} ms, {} of the last {} calls failed or were slow", this.endpoint,
+                this.openMillis, this.windowBadCount, this.windowCount);
+        this.state = State.Open;
+        this.generation++;
+        this.openedAt = System.currentTimeMillis();
+        this.openedCount.incrementAndGet();
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        this.windowIndex = 0;
+        this.windowCount = 0;
+        this.windowBadCount = 0;
+    }
+
+    static boolean isServerFailure(Throwable failure) {
+        for (Throwable e = failure; e != null; e = e.getCause() == e ? null : e.getCause()) {
+            if (e instanceof ResponseException && ((ResponseException) e).getStatus() > 0) {
+                int status = ((ResponseException) e).getStatus();
+                return status >= 500 || status == 429;
+            }
+            if (e instanceof SocketException || e instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getBoolean;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getDouble;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getInt;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getLong;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.osc.controller.nsfc.exceptions.ConcurrencyLimitExceededException;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adapts the number of Neutron calls a VC may have in flight to the capacity Neutron shows.
+ *
+ * The limit grows by about one call per round of calls while the latency stays close to its long
+ * term average, and shrinks by a fixed ratio when a call takes more than tolerance times that
+ * average or fails with a sign of overload, e.g. 503 or a timeout (additive increase, multiplicative
+ * decrease, at most once per average latency). Calls beyond the limit wait for a call to complete,
+ * at most the configured wait.
+ *
+ * List calls take longer the more resources the VC has, so they hold a slot in flight but neither
+ * feed the latency average nor lower the limit by being slow. The limiter is off unless the VC
+ * sets {@value #ENABLED_ATTRIBUTE} to true, it is tuned with the other {@code nsfc.concurrency.*}
+ * provider attributes.
+ */
+public class ConcurrencyLimiter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+    public static final String ENABLED_ATTRIBUTE = "nsfc.concurrency.enabled";
+    public static final String INITIAL_LIMIT_ATTRIBUTE = "nsfc.concurrency.initialLimit";
+    public static final String MIN_LIMIT_ATTRIBUTE = "nsfc.concurrency.minLimit";
+    public static final String MAX_LIMIT_ATTRIBUTE = "nsfc.concurrency.maxLimit";
+    public static final String TOLERANCE_ATTRIBUTE = "nsfc.concurrency.latencyTolerance";
+    public static final String MAX_WAIT_ATTRIBUTE = "nsfc.concurrency.maxWaitMillis";
+
+    public static final int DEFAULT_INITIAL_LIMIT = 10;
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    public static final int DEFAULT_MAX_LIMIT = 100;
+    public static final double DEFAULT_TOLERANCE = 2.0;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 30000;
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    /** Weight of a call in the long term latency average */
+    private static final double LATENCY_SMOOTHING = 0.05;
+
+    /** Calls needed for a latency average to compare to */
+    private static final int WARMUP_CALLS = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final long maxWaitNanos;
+
+    private double limit;
+    private int inFlight;
+    private double averageLatencyNanos;
+    private long sampleCount;
+    private long decreasedAt = System.nanoTime();
+
+    private final AtomicLong increaseCount = new AtomicLong();
+    private final AtomicLong decreaseCount = new AtomicLong();
+    private final AtomicLong delayedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param tolerance latency relative to the long term average above which a call signals overload
+     * @param maxWaitMillis longest wait of a call for the limit, a call that would wait longer is rejected
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance, long maxWaitMillis) {
+        checkArgument(minLimit > 0 && minLimit <= initialLimit && initialLimit <= maxLimit,
+                "invalid limits %s <= %s <= %s", minLimit, initialLimit, maxLimit);
+        checkArgument(tolerance > 1, "tolerance must be greater than 1 but was %s", tolerance);
+        checkArgument(maxWaitMillis >= 0, "max wait must not be negative but was %s", maxWaitMillis);
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * A limiter that never limits the calls, e.g. for a client without a session.
+     */
+    public static ConcurrencyLimiter unlimited() {
+        return new ConcurrencyLimiter(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, DEFAULT_TOLERANCE,
+                DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * @return the limiter configured for the VC, unlimited unless the VC enables it
+     */
+    public static ConcurrencyLimiter forVc(VirtualizationConnectorElement vc) {
+        Map<String, String> attributes = vc.getProviderAttributes();
+        if (!getBoolean(attributes, ENABLED_ATTRIBUTE)) {
+            return unlimited();
+        }
+
+        int minLimit = Math.max(1, getInt(attributes, MIN_LIMIT_ATTRIBUTE, DEFAULT_MIN_LIMIT));
+        int maxLimit = Math.max(minLimit, getInt(attributes, MAX_LIMIT_ATTRIBUTE, DEFAULT_MAX_LIMIT));
+        int initialLimit = Math.min(maxLimit,
+                Math.max(minLimit, getInt(attributes, INITIAL_LIMIT_ATTRIBUTE, DEFAULT_INITIAL_LIMIT)));
+        double tolerance = getDouble(attributes, TOLERANCE_ATTRIBUTE, DEFAULT_TOLERANCE);
+        if (tolerance <= 1) {
+            LOG.warn("Ignoring invalid {} value {}", TOLERANCE_ATTRIBUTE, tolerance);
+            tolerance = DEFAULT_TOLERANCE;
+        }
+        long maxWaitMillis = Math.max(0, getLong(attributes, MAX_WAIT_ATTRIBUTE, DEFAULT_MAX_WAIT_MILLIS));
+        return new ConcurrencyLimiter(initialLimit, minLimit, maxLimit, tolerance, maxWaitMillis);
+    }
+
+    /**
+     * Runs the call once the calls in flight are below the limit, and adapts the limit to its latency.
+     *
+     * @throws ConcurrencyLimitExceededException if the calls stay at the limit for longer than the max wait
+     */
+    public <T> T call(Supplier<T> call) {
+        return call(true, call);
+    }
+
+    /**
+     * Runs the Neutron request like {@link #call(Supplier)}, without sampling its latency if it is a list.
+     */
+    public <T> T call(NeutronOperation operation, Supplier<T> call) {
+        return call(operation, Long.MAX_VALUE, call);
+    }
+
+    /**
+     * Runs the Neutron request like {@link #call(NeutronOperation, Supplier)}, waiting for the limit at
+     * most the given time, e.g. what is left of the lock hold time of a caller holding a lock.
+     */
+    public <T> T call(NeutronOperation operation, long maxWaitMillis, Supplier<T> call) {
+        long maxWaitNanos = Math.min(this.maxWaitNanos, TimeUnit.MILLISECONDS.toNanos(maxWaitMillis));
+        return call(!operation.isList(), maxWaitNanos, call);
+    }
+
+    private <T> T call(boolean sampled, Supplier<T> call) {
+        return call(sampled, this.maxWaitNanos, call);
+    }
+
+    private <T> T call(boolean sampled, long maxWaitNanos, Supplier<T> call) {
+        acquire(maxWaitNanos);
+
+        long start = System.nanoTime();
+        boolean overloaded = false;
+        boolean completed = false;
+        try {
+            T result = call.get();
+            completed = true;
+            return result;
+        } catch (RuntimeException | Error e) {
+            overloaded = CircuitBreaker.isServerFailure(e);
+            throw e;
+        } finally {
+            release(System.nanoTime() - start, completed && sampled, overloaded);
+        }
+    }
+
+    public synchronized int getLimit() {
+        return (int) this.limit;
+    }
+
+    public synchronized int getInFlightCount() {
+        return this.inFlight;
+    }
+
+    public synchronized long getAverageLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis((long) this.averageLatencyNanos);
+    }
+
+    public long getIncreaseCount() {
+        return this.increaseCount.get();
+    }
+
+    public long getDecreaseCount() {
+        return this.decreaseCount.get();
+    }
+
+    /**
+     * Number of calls that waited for the limit.
+     */
+    public long getDelayedCount() {
+        return this.delayedCount.get();
+    }
+
+    /**
+     * Number of calls rejected after waiting the max wait.
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    private synchronized void acquire(long maxWaitNanos) {
+        if (this.inFlight >= (int) this.limit) {
+            this.delayedCount.incrementAndGet();
+            long deadline = System.nanoTime() + maxWaitNanos;
+            try {
+                while (this.inFlight >= (int) this.limit) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        this.rejectedCount.incrementAndGet();
+                        throw new ConcurrencyLimitExceededException(String.format(
+                                "%d Neutron calls in flight, the current limit", this.inFlight));
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConcurrencyLimitExceededException("Interrupted while waiting for the Neutron concurrency limit");
+            }
+        }
+        this.inFlight++;
+    }
+
+    /**
+     * @param completed whether the call returned and its latency is sampled, failures other than overload
+     * say nothing about the capacity
+     */
+    private synchronized void release(long latencyNanos, boolean completed, boolean overloaded) {
+        boolean utilized = this.inFlight * 2 >= this.limit;
+        this.inFlight--;
+
+        if (overloaded || completed && this.sampleCount >= WARMUP_CALLS
+                && latencyNanos > this.averageLatencyNanos * this.tolerance) {
+            decrease();
+        } else if (completed && utilized) {
+            increase();
+        }
+
+        if (completed) {
+            this.averageLatencyNanos = this.sampleCount++ == 0 ? latencyNanos
+                    : this.averageLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - this.averageLatencyNanos);
+        }
+        notifyAll();
+    }
+
+    private void increase() {
+        if (this.limit < this.maxLimit) {
+            this.limit = Math.min(this.maxLimit, this.limit + 1 / this.limit);
+            this.increaseCount.incrementAndGet();
+        }
+    }
+
+    private void decrease() {
+        // The calls in flight when the limit dropped report the same overload, back off once for them
+        long now = System.nanoTime();
+        if (this.limit > this.minLimit && now - this.decreasedAt > this.averageLatencyNanos) {
+            this.decreasedAt = now;
+            this.limit = Math.max(this.minLimit, this.limit * BACKOFF_RATIO);
+            this.decreaseCount.incrementAndGet();
+            LOG.debug("Neutron concurrency limit lowered to {}", (int) this.limit);
+        }
+    }
+}
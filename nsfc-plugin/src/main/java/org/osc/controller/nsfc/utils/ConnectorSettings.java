@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import org.openstack4j.core.transport.Config;
+
+/**
+ * HTTP settings of the openstack4j connector shipped in nsfc-uber-openstack4j.
+ *
+ * The timeouts go into a single openstack4j {@link Config}, which every client of the plugin must be
+ * built with: the connector keeps one HTTP client per config, so sharing the instance keeps connections
+ * and TLS sessions warm across calls. The Jersey connector's {@code HttpURLConnection} has no pool
+ * size of its own; the JDK pools its connections with its own defaults and {@code -D} settings, and
+ * nothing is set JVM wide.
+ */
+public class ConnectorSettings {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 60000;
+
+    public static final ConnectorSettings DEFAULTS = new ConnectorSettings(DEFAULT_CONNECT_TIMEOUT_MILLIS,
+            DEFAULT_READ_TIMEOUT_MILLIS);
+
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    private final Config config;
+
+    public ConnectorSettings(int connectTimeoutMillis, int readTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.config = Config.newConfig()
+                .withConnectionTimeout(connectTimeoutMillis)
+                .withReadTimeout(readTimeoutMillis);
+    }
+
+    /**
+     * The shared openstack4j config, to be passed to every client builder and session.
+     */
+    public Config getConfig() {
+        return this.config;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return this.connectTimeoutMillis;
+    }
+
+    public int getReadTimeoutMillis() {
+        return this.readTimeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectorSettings [connectTimeoutMillis=" + this.connectTimeoutMillis + ", readTimeoutMillis="
+                + this.readTimeoutMillis + "]";
+    }
+}
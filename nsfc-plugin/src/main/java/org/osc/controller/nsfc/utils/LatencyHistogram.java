@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with buckets of constant relative width, in the style of HdrHistogram.
+ *
+ * Every power of two is split into {@value #SUB_BUCKETS} linear buckets, so a percentile is
+ * accurate to about 3% from nanoseconds up to the highest trackable value of about 18 minutes,
+ * longer latencies are counted in the last bucket. Recording takes two atomic additions and
+ * allocates nothing, reading walks all buckets and may see a recording in progress partially.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 40;
+
+    static final long HIGHEST_TRACKABLE_NANOS = (1L << MAX_VALUE_BITS) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(index(HIGHEST_TRACKABLE_NANOS) + 1);
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.min(Math.max(0, nanos), HIGHEST_TRACKABLE_NANOS);
+        this.counts.incrementAndGet(index(value));
+        this.totalNanos.addAndGet(value);
+        if (value > this.maxNanos.get()) {
+            this.maxNanos.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            count += this.counts.get(i);
+        }
+        return count;
+    }
+
+    public long getMeanNanos() {
+        long count = getCount();
+        return count == 0 ? 0 : this.totalNanos.get() / count;
+    }
+
+    public long getMaxNanos() {
+        return this.maxNanos.get();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the highest latency of the bucket holding the percentile, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, "invalid percentile %s", percentile);
+
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValue(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    public long getValueAtPercentile(double percentile, TimeUnit unit) {
+        return unit.convert(getValueAtPercentile(percentile), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Values below {@value #SUB_BUCKETS} get a bucket each, above that a value is shifted right until
+     * it fits into {@value #SUB_BUCKET_BITS} + 1 bits and the shift picks the power of two.
+     */
+    static int index(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    static long highestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = index - ((long) shift << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
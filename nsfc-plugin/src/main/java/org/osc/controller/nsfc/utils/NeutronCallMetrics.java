@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram and error count of every {@link NeutronOperation} of one VC, recorded by
+ * {@link OsCalls} around each request including its retries, the retries made and given up by the
+ * VC's {@link RetryPolicy}, the state of the {@link RateLimiter}, the hits of the {@link OsCallsCache} and
+ * the batching of the {@link PortChainMutationCoalescer} and the contention of the {@link ResourceLocks} of
+ * the VC's current session, and the outcome of the background token refreshes of the VC's sessions.
+ *
+ * The histograms are allocated up front and indexed by operation, so recording a call allocates
+ * nothing and takes a few nanoseconds.
+ */
+public class NeutronCallMetrics implements NeutronCallMetricsMXBean {
+
+    private static final NeutronCallMetrics DISABLED = new NeutronCallMetrics(null, CallAccounting.disabled(), false);
+
+    private static final NeutronOperation[] OPERATIONS = NeutronOperation.values();
+
+    private final String vcName;
+    private final boolean enabled;
+    private final LatencyHistogram[] latencies;
+    private final AtomicLongArray errorCounts = new AtomicLongArray(OPERATIONS.length);
+    private final CallAccounting accounting;
+
+    private final AtomicLong tokenRefreshCount = new AtomicLong();
+    private final AtomicLong tokenRefreshFailureCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong retryGiveUpCount = new AtomicLong();
+
+    private volatile RateLimiter rateLimiter = RateLimiter.unlimited();
+    private volatile OsCallsCache cache = OsCallsCache.disabled();
+    private volatile PortChainMutationCoalescer coalescer;
+    private volatile ResourceLocks locks;
+
+    public NeutronCallMetrics(String vcName) {
+        this(vcName, new CallAccounting(false));
+    }
+
+    public NeutronCallMetrics(String vcName, CallAccounting accounting) {
+        this(vcName, accounting, true);
+    }
+
+    private NeutronCallMetrics(String vcName, CallAccounting accounting, boolean enabled) {
+        this.vcName = vcName;
+        this.accounting = accounting;
+        this.enabled = enabled;
+        this.latencies = new LatencyHistogram[enabled ? OPERATIONS.length : 0];
+        for (int i = 0; i < this.latencies.length; i++) {
+            this.latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Metrics that record nothing, e.g. for a client without a session.
+     */
+    public static NeutronCallMetrics disabled() {
+        return DISABLED;
+    }
+
+    public void record(NeutronOperation operation, long nanos, boolean failed) {
+        if (!this.enabled) {
+            return;
+        }
+        this.latencies[operation.ordinal()].record(nanos);
+        if (failed) {
+            this.errorCounts.incrementAndGet(operation.ordinal());
+        }
+    }
+
+    public void recordTokenRefresh(boolean failed) {
+        if (!this.enabled) {
+            return;
+        }
+        if (failed) {
+            this.tokenRefreshFailureCount.incrementAndGet();
+        } else {
+            this.tokenRefreshCount.incrementAndGet();
+        }
+    }
+
+    public void recordRetry() {
+        if (this.enabled) {
+            this.retryCount.incrementAndGet();
+        }
+    }
+
+    public void recordRetryGiveUp() {
+        if (this.enabled) {
+            this.retryGiveUpCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Exports the rate limiter of a new session of the VC in place of the previous one.
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        if (this.enabled) {
+            this.rateLimiter = rateLimiter;
+        }
+    }
+
+    /**
+     * Exports the cache of a new session of the VC in place of the previous one.
+     */
+    public void setCache(OsCallsCache cache) {
+        if (this.enabled) {
+            this.cache = cache;
+        }
+    }
+
+    /**
+     * Exports the coalescer of a new session of the VC in place of the previous one.
+     */
+    public void setCoalescer(PortChainMutationCoalescer coalescer) {
+        if (this.enabled) {
+            this.coalescer = coalescer;
+        }
+    }
+
+    /**
+     * Exports the resource locks of a new session of the VC in place of the previous one.
+     */
+    public void setLocks(ResourceLocks locks) {
+        if (this.enabled) {
+            this.locks = locks;
+        }
+    }
+
+    /**
+     * Neutron requests of the VC by SdnRedirectionApi operation.
+     */
+    public CallAccounting getAccounting() {
+        return this.accounting;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * @return the latencies of the operation, null if the metrics are disabled
+     */
+    public LatencyHistogram getLatency(NeutronOperation operation) {
+        return this.enabled ? this.latencies[operation.ordinal()] : null;
+    }
+
+    public long getErrorCount(NeutronOperation operation) {
+        return this.errorCounts.get(operation.ordinal());
+    }
+
+    public OperationLatency getOperation(NeutronOperation operation) {
+        LatencyHistogram latency = getLatency(operation);
+        if (latency == null) {
+            return new OperationLatency(operation.name(), 0, 0, 0, 0, 0, 0, 0);
+        }
+        return new OperationLatency(operation.name(), latency.getCount(), getErrorCount(operation),
+                micros(latency.getMeanNanos()), latency.getValueAtPercentile(50, TimeUnit.MICROSECONDS),
+                latency.getValueAtPercentile(99, TimeUnit.MICROSECONDS),
+                latency.getValueAtPercentile(99.9, TimeUnit.MICROSECONDS), micros(latency.getMaxNanos()));
+    }
+
+    @Override
+    public String getVcName() {
+        return this.vcName;
+    }
+
+    @Override
+    public long getCallCount() {
+        long count = 0;
+        for (LatencyHistogram latency : this.latencies) {
+            count += latency.getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getErrorCount() {
+        long count = 0;
+        for (int i = 0; i < this.errorCounts.length(); i++) {
+            count += this.errorCounts.get(i);
+        }
+        return count;
+    }
+
+    @Override
+    public long getTokenRefreshCount() {
+        return this.tokenRefreshCount.get();
+    }
+
+    @Override
+    public long getTokenRefreshFailureCount() {
+        return this.tokenRefreshFailureCount.get();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return this.retryCount.get();
+    }
+
+    @Override
+    public long getRetryGiveUpCount() {
+        return this.retryGiveUpCount.get();
+    }
+
+    @Override
+    public double getRateLimitAvailableReadPermits() {
+        return this.rateLimiter.getAvailableReadPermits();
+    }
+
+    @Override
+    public double getRateLimitAvailableWritePermits() {
+        return this.rateLimiter.getAvailableWritePermits();
+    }
+
+    @Override
+    public long getRateLimitDelayedCount() {
+        return this.rateLimiter.getDelayedCount();
+    }
+
+    @Override
+    public long getRateLimitRejectedCount() {
+        return this.rateLimiter.getRejectedCount();
+    }
+
+    @Override
+    public long getRateLimitTotalWaitMillis() {
+        return this.rateLimiter.getTotalWaitMillis();
+    }
+
+    @Override
+    public long getRateLimitMaxWaitMillis() {
+        return this.rateLimiter.getMaxWaitMillis();
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return this.cache.getTotalStats().hitCount();
+    }
+
+    @Override
+    public long getCacheMissCount() {
+        return this.cache.getTotalStats().missCount();
+    }
+
+    @Override
+    public long getCoalescedMutationCount() {
+        PortChainMutationCoalescer coalescer = this.coalescer;
+        return coalescer == null ? 0 : coalescer.getMutationCount();
+    }
+
+    @Override
+    public long getCoalescedUpdateCount() {
+        PortChainMutationCoalescer coalescer = this.coalescer;
+        return coalescer == null ? 0 : coalescer.getUpdateCount();
+    }
+
+    @Override
+    public long getLockContendedCount() {
+        ResourceLocks locks = this.locks;
+        return locks == null ? 0 : locks.getContendedCount();
+    }
+
+    @Override
+    public long getLockTotalWaitMillis() {
+        ResourceLocks locks = this.locks;
+        return locks == null ? 0 : locks.getTotalWaitMillis();
+    }
+
+    @Override
+    public long getLockMaxWaitMillis() {
+        ResourceLocks locks = this.locks;
+        return locks == null ? 0 : locks.getMaxWaitMillis();
+    }
+
+    @Override
+    public List<OperationLatency> getOperations() {
+        List<OperationLatency> operations = new ArrayList<>();
+        for (NeutronOperation operation : OPERATIONS) {
+            LatencyHistogram latency = getLatency(operation);
+            if (latency != null && latency.getCount() > 0) {
+                operations.add(getOperation(operation));
+            }
+        }
+        return operations;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import java.util.List;
+
+/**
+ * JMX view of the Neutron call latencies of one VC, registered as
+ * {@code org.osc.controller.nsfc:type=NeutronCallMetrics,vc=<VC name>}.
+ */
+public interface NeutronCallMetricsMXBean {
+
+    String getVcName();
+
+    long getCallCount();
+
+    long getErrorCount();
+
+    /**
+     * Tokens renewed in the background ahead of their expiry.
+     */
+    long getTokenRefreshCount();
+
+    long getTokenRefreshFailureCount();
+
+    /**
+     * Neutron calls repeated after a transient failure.
+     */
+    long getRetryCount();
+
+    /**
+     * Transient failures thrown without a retry, for lack of attempts, retry budget or lock hold time.
+     */
+    long getRetryGiveUpCount();
+
+    /**
+     * Read permits of the rate limiter usable right away, infinite if reads are not limited.
+     */
+    double getRateLimitAvailableReadPermits();
+
+    /**
+     * Write permits of the rate limiter usable right away, infinite if writes are not limited.
+     */
+    double getRateLimitAvailableWritePermits();
+
+    /**
+     * Calls that waited for a rate limiter permit.
+     */
+    long getRateLimitDelayedCount();
+
+    /**
+     * Calls rejected for lack of a rate limiter permit.
+     */
+    long getRateLimitRejectedCount();
+
+    long getRateLimitTotalWaitMillis();
+
+    long getRateLimitMaxWaitMillis();
+
+    /**
+     * Reads served from the SFC cache, zero while the cache of the VC is off.
+     */
+    long getCacheHitCount();
+
+    /**
+     * Reads of the SFC cache that went to Neutron.
+     */
+    long getCacheMissCount();
+
+    /**
+     * Flow classifier additions and removals submitted to the port chain coalescer.
+     */
+    long getCoalescedMutationCount();
+
+    /**
+     * Port chain updates the coalescer sent to apply them, at most one per chain and window.
+     */
+    long getCoalescedUpdateCount();
+
+    /**
+     * Port chain and port pair group lock acquisitions that waited for another holder.
+     */
+    long getLockContendedCount();
+
+    /**
+     * Time spent waiting for the port chain and port pair group locks.
+     */
+    long getLockTotalWaitMillis();
+
+    /**
+     * Longest wait for a port chain or port pair group lock.
+     */
+    long getLockMaxWaitMillis();
+
+    /**
+     * Operations that were called at least once.
+     */
+    List<OperationLatency> getOperations();
+}
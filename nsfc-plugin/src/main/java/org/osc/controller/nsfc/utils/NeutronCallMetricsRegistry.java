@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.osc.controller.nsfc.utils.CallAccounting.OperationCost;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link NeutronCallMetrics} of every VC, kept when its sessions are replaced or evicted.
+ *
+ * Once {@link #registerMBeans(MBeanServer)} is called the metrics of each VC are also
+ * registered as an MBean, until {@link #unregisterMBeans()}.
+ */
+public class NeutronCallMetricsRegistry implements NeutronCallMetricsService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NeutronCallMetricsRegistry.class);
+
+    public static final String OBJECT_NAME_PREFIX = "org.osc.controller.nsfc:type=NeutronCallMetrics,vc=";
+
+    private final ConcurrentMap<String, NeutronCallMetrics> metrics = new ConcurrentHashMap<>();
+
+    private MBeanServer mbeanServer;
+
+    public NeutronCallMetrics forVc(VirtualizationConnectorElement vc) {
+        String vcName = String.valueOf(vc.getName());
+        NeutronCallMetrics vcMetrics = this.metrics.get(vcName);
+        if (vcMetrics != null) {
+            return vcMetrics;
+        }
+
+        synchronized (this) {
+            return this.metrics.computeIfAbsent(vcName, name -> {
+                NeutronCallMetrics created = new NeutronCallMetrics(name, CallAccounting.forVc(vc));
+                if (this.mbeanServer != null) {
+                    register(created);
+                }
+                return created;
+            });
+        }
+    }
+
+    @Override
+    public Set<String> getVcNames() {
+        return new TreeSet<>(this.metrics.keySet());
+    }
+
+    @Override
+    public List<OperationLatency> getOperations(String vcName) {
+        NeutronCallMetrics vcMetrics = this.metrics.get(vcName);
+        return vcMetrics == null ? Collections.emptyList() : vcMetrics.getOperations();
+    }
+
+    @Override
+    public Collection<OperationCost> getApiOperationCosts(String vcName) {
+        NeutronCallMetrics vcMetrics = this.metrics.get(vcName);
+        return vcMetrics == null ? Collections.emptyList() : vcMetrics.getAccounting().getCosts();
+    }
+
+    public synchronized void registerMBeans(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+        this.metrics.values().forEach(this::register);
+    }
+
+    public synchronized void unregisterMBeans() {
+        if (this.mbeanServer == null) {
+            return;
+        }
+        for (String vcName : this.metrics.keySet()) {
+            try {
+                ObjectName name = objectName(vcName);
+                if (this.mbeanServer.isRegistered(name)) {
+                    this.mbeanServer.unregisterMBean(name);
+                }
+            } catch (JMException e) {
+                LOG.warn("Failed to unregister Neutron call metrics of VC {}", vcName, e);
+            }
+        }
+        this.mbeanServer = null;
+    }
+
+    public static ObjectName objectName(String vcName) throws JMException {
+        return new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(vcName));
+    }
+
+    private void register(NeutronCallMetrics vcMetrics) {
+        try {
+            ObjectName name = objectName(vcMetrics.getVcName());
+            if (!this.mbeanServer.isRegistered(name)) {
+                this.mbeanServer.registerMBean(vcMetrics, name);
+            }
+        } catch (JMException e) {
+            LOG.warn("Failed to register Neutron call metrics of VC {}", vcMetrics.getVcName(), e);
+        }
+    }
+}
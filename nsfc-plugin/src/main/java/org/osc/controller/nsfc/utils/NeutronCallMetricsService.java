@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import org.osc.controller.nsfc.utils.CallAccounting.OperationCost;
+
+/**
+ * OSGi service publishing the Neutron call latencies and costs of every VC the plugin has called.
+ */
+public interface NeutronCallMetricsService {
+
+    Set<String> getVcNames();
+
+    /**
+     * @return the operations of the VC that were called at least once, empty for an unknown VC
+     */
+    List<OperationLatency> getOperations(String vcName);
+
+    /**
+     * @return the Neutron requests of the VC by SdnRedirectionApi operation, empty for an unknown VC
+     */
+    Collection<OperationCost> getApiOperationCosts(String vcName);
+}
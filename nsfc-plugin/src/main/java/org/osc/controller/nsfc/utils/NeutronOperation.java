@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import org.osc.controller.nsfc.utils.RetryPolicy.Idempotency;
+
+/**
+ * The Neutron requests {@link OsCalls} makes, by operation and resource type.
+ */
+public enum NeutronOperation {
+
+    CreateFlowClassifier(Idempotency.NonIdempotent),
+    CreatePortChain(Idempotency.NonIdempotent),
+    CreatePortPairGroup(Idempotency.NonIdempotent),
+    CreatePortPair(Idempotency.NonIdempotent),
+
+    GetFlowClassifier(Idempotency.Safe),
+    GetPortChain(Idempotency.Safe),
+    GetPortPairGroup(Idempotency.Safe),
+    GetPortPair(Idempotency.Safe),
+    GetPort(Idempotency.Safe),
+
+    ListFlowClassifiers(Idempotency.Safe),
+    ListPortChains(Idempotency.Safe),
+    ListPortPairGroups(Idempotency.Safe),
+    ListPortPairs(Idempotency.Safe),
+    ListPorts(Idempotency.Safe),
+
+    UpdatePortChain(Idempotency.Idempotent),
+    UpdatePortPairGroup(Idempotency.Idempotent),
+
+    DeleteFlowClassifier(Idempotency.Idempotent),
+    DeletePortChain(Idempotency.Idempotent),
+    DeletePortPairGroup(Idempotency.Idempotent),
+    DeletePortPair(Idempotency.Idempotent);
+
+    private final Idempotency idempotency;
+
+    NeutronOperation(Idempotency idempotency) {
+        this.idempotency = idempotency;
+    }
+
+    public Idempotency getIdempotency() {
+        return this.idempotency;
+    }
+
+    public boolean isRead() {
+        return this.idempotency == Idempotency.Safe;
+    }
+
+    /**
+     * Whether the request lists a whole collection, which takes longer the more resources the VC has.
+     */
+    public boolean isList() {
+        return name().startsWith("List");
+    }
+}
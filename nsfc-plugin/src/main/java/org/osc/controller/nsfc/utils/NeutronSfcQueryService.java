@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getInt;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openstack4j.api.exceptions.ResponseException;
+import org.openstack4j.core.transport.HttpResponse;
+import org.openstack4j.model.ModelEntity;
+import org.openstack4j.model.network.ext.PortChain;
+import org.openstack4j.model.network.ext.PortPair;
+import org.openstack4j.model.network.ext.PortPairGroup;
+import org.openstack4j.openstack.networking.domain.ext.NeutronPortChain;
+import org.openstack4j.openstack.networking.domain.ext.NeutronPortPair.PortPairs;
+import org.openstack4j.openstack.networking.domain.ext.NeutronPortPairGroup;
+import org.openstack4j.openstack.networking.internal.BaseNetworkingServices;
+import org.osc.controller.nsfc.exceptions.RevisionConflictException;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+
+/**
+ * Neutron SFC list calls with query filters, which the openstack4j SFC services do not expose.
+ *
+ * Like the other openstack4j services, calls run against the session bound to the current thread.
+ * Once Neutron rejects a filter it is not sent again for this VC.
+ *
+ * Also reads port chains and port pair groups with their {@code revision_number} and updates them
+ * only if they are still at that revision, for the optimistic updates of {@link OsCalls}. The number
+ * of attempts of such an update is set for a VC with the provider attribute
+ * {@value #MAX_UPDATE_ATTEMPTS_ATTRIBUTE}, 0 turns conditional updates off.
+ */
+public class NeutronSfcQueryService extends BaseNetworkingServices {
+
+    public static final String MAX_UPDATE_ATTEMPTS_ATTRIBUTE = "nsfc.optimistic.maxAttempts";
+
+    public static final int DEFAULT_MAX_UPDATE_ATTEMPTS = 5;
+
+    private final int maxUpdateAttempts;
+
+    private final AtomicLong conflictCount = new AtomicLong();
+
+    private volatile boolean portPairFilteringSupported = true;
+
+    public NeutronSfcQueryService() {
+        this(DEFAULT_MAX_UPDATE_ATTEMPTS);
+    }
+
+    public NeutronSfcQueryService(int maxUpdateAttempts) {
+        this.maxUpdateAttempts = Math.max(0, maxUpdateAttempts);
+    }
+
+    public static int maxUpdateAttempts(VirtualizationConnectorElement vc) {
+        return Math.max(0, getInt(vc.getProviderAttributes(), MAX_UPDATE_ATTEMPTS_ATTRIBUTE,
+                DEFAULT_MAX_UPDATE_ATTEMPTS));
+    }
+
+    public List<? extends PortPair> listPortPairs(Map<String, String> filters) {
+        Invocation<PortPairs> invocation = get(PortPairs.class, uri("/sfc/port_pairs"));
+        filters.forEach(invocation::param);
+
+        PortPairs portPairs = invocation.execute();
+        return portPairs == null ? null : portPairs.getList();
+    }
+
+    public boolean isPortPairFilteringSupported() {
+        return this.portPairFilteringSupported;
+    }
+
+    public void disablePortPairFiltering() {
+        this.portPairFilteringSupported = false;
+    }
+
+    public boolean isConditionalUpdateEnabled() {
+        return this.maxUpdateAttempts > 0;
+    }
+
+    public int getMaxUpdateAttempts() {
+        return this.maxUpdateAttempts;
+    }
+
+    /**
+     * Number of conditional updates Neutron refused because the resource had changed.
+     */
+    public long getConflictCount() {
+        return this.conflictCount.get();
+    }
+
+    public RevisionedPortChain getPortChain(String portChainId) {
+        return get(RevisionedPortChain.class, uri("/sfc/port_chains/%s", portChainId)).execute();
+    }
+
+    public RevisionedPortPairGroup getPortPairGroup(String portPairGroupId) {
+        return get(RevisionedPortPairGroup.class, uri("/sfc/port_pair_groups/%s", portPairGroupId)).execute();
+    }
+
+    /**
+     * @throws RevisionConflictException if the port chain is no longer at the given revision
+     */
+    public RevisionedPortChain updatePortChain(String portChainId, PortChain portChain, long revisionNumber) {
+        return conditionalUpdate(RevisionedPortChain.class, uri("/sfc/port_chains/%s", portChainId), portChain,
+                revisionNumber);
+    }
+
+    /**
+     * @throws RevisionConflictException if the port pair group is no longer at the given revision
+     */
+    public RevisionedPortPairGroup updatePortPairGroup(String portPairGroupId, PortPairGroup portPairGroup,
+                                                       long revisionNumber) {
+        return conditionalUpdate(RevisionedPortPairGroup.class, uri("/sfc/port_pair_groups/%s", portPairGroupId),
+                portPairGroup, revisionNumber);
+    }
+
+    private <T> T conditionalUpdate(Class<T> returnType, String path, ModelEntity entity, long revisionNumber) {
+        HttpResponse response = put(returnType, path)
+                .entity(entity)
+                .header("If-Match", "revision_number=" + revisionNumber)
+                .executeWithResponse();
+
+        // Only a failed If-Match means the revision moved on, a 409 is Neutron refusing the change itself
+        int status = response.getStatus();
+        if (status == 412) {
+            response.readEntity(String.class);
+            this.conflictCount.incrementAndGet();
+            throw new RevisionConflictException(path, revisionNumber, status);
+        }
+        if (status >= 300) {
+            throw new ResponseException(String.format("Updating %s Response %d %s", path, status,
+                    response.readEntity(String.class)), status);
+        }
+
+        return response.readEntity(returnType);
+    }
+
+    /**
+     * Port chain as read from Neutron, with the revision it was read at.
+     */
+    @JsonRootName("port_chain")
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class RevisionedPortChain extends NeutronPortChain {
+
+        private static final long serialVersionUID = -2284650961306624507L;
+
+        @JsonProperty("revision_number")
+        private Long revisionNumber;
+
+        public Long getRevisionNumber() {
+            return this.revisionNumber;
+        }
+    }
+
+    /**
+     * Port pair group as read from Neutron, with the revision it was read at.
+     */
+    @JsonRootName("port_pair_group")
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class RevisionedPortPairGroup extends NeutronPortPairGroup {
+
+        private static final long serialVersionUID = 6905173390415432185L;
+
+        @JsonProperty("revision_number")
+        private Long revisionNumber;
+
+        public Long getRevisionNumber() {
+            return this.revisionNumber;
+        }
+    }
+}
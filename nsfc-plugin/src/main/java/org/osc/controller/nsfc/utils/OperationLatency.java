@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Latency percentiles and counts of one {@link NeutronOperation} of a VC, as published over JMX.
+ */
+public class OperationLatency {
+
+    private final String operation;
+    private final long count;
+    private final long errorCount;
+    private final long meanMicros;
+    private final long p50Micros;
+    private final long p99Micros;
+    private final long p999Micros;
+    private final long maxMicros;
+
+    @ConstructorProperties({ "operation", "count", "errorCount", "meanMicros", "p50Micros", "p99Micros", "p999Micros",
+            "maxMicros" })
+    public OperationLatency(String operation, long count, long errorCount, long meanMicros, long p50Micros,
+                            long p99Micros, long p999Micros, long maxMicros) {
+        this.operation = operation;
+        this.count = count;
+        this.errorCount = errorCount;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    public String getOperation() {
+        return this.operation;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public long getErrorCount() {
+        return this.errorCount;
+    }
+
+    public long getMeanMicros() {
+        return this.meanMicros;
+    }
+
+    public long getP50Micros() {
+        return this.p50Micros;
+    }
+
+    public long getP99Micros() {
+        return this.p99Micros;
+    }
+
+    public long getP999Micros() {
+        return this.p999Micros;
+    }
+
+    public long getMaxMicros() {
+        return this.maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s count=%d errors=%d p50=%dus p99=%dus p999=%dus max=%dus", this.operation, this.count,
+                this.errorCount, this.p50Micros, this.p99Micros, this.p999Micros, this.maxMicros);
+    }
+}
@@ -18,124 +18,296 @@ package org.osc.controller.nsfc.utils;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.osc.controller.nsfc.exceptions.SdnControllerResponseNsfcException.Operation.*;
+import static org.osc.controller.nsfc.utils.NeutronOperation.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+import org.openstack4j.api.Builders;
 import org.openstack4j.api.OSClient.OSClientV3;
+import org.openstack4j.api.exceptions.ClientResponseException;
+import org.openstack4j.api.exceptions.ResponseException;
+import org.openstack4j.api.types.Facing;
+import org.openstack4j.core.transport.Config;
 import org.openstack4j.model.common.ActionResponse;
+import org.openstack4j.model.common.Resource;
+import org.openstack4j.model.identity.v3.Token;
 import org.openstack4j.model.network.Port;
 import org.openstack4j.model.network.ext.FlowClassifier;
 import org.openstack4j.model.network.ext.PortChain;
 import org.openstack4j.model.network.ext.PortPair;
 import org.openstack4j.model.network.ext.PortPairGroup;
+import org.openstack4j.openstack.OSFactory;
+import org.osc.controller.nsfc.exceptions.CallRejectedException;
+import org.osc.controller.nsfc.exceptions.RevisionConflictException;
 import org.osc.controller.nsfc.exceptions.SdnControllerResponseNsfcException;
+import org.osc.controller.nsfc.exceptions.SdnControllerResponseNsfcException.Operation;
+import org.osc.controller.nsfc.utils.NeutronSfcQueryService.RevisionedPortChain;
+import org.osc.controller.nsfc.utils.NeutronSfcQueryService.RevisionedPortPairGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class OsCalls {
 
+    private static final Logger LOG = LoggerFactory.getLogger(OsCalls.class);
+
     private OSClientV3 osClient;
 
+    private OsCallsCache cache;
+
+    private NeutronSfcQueryService queryService;
+
+    private SfcIndex index;
+
+    private Config connectorConfig;
+
+    private RetryPolicy retryPolicy;
+
+    private CircuitBreaker circuitBreaker;
+
+    private RateLimiter rateLimiter;
+
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    private NeutronCallMetrics callMetrics;
+
     public OsCalls(OSClientV3 osClient) {
+        this(osClient, OsCallsCache.disabled(), null, new SfcIndex());
+    }
+
+    /**
+     * @param callMetrics records the latency of every request and accounts it to the API operation it was made for
+     */
+    public OsCalls(OSClientV3 osClient, NeutronCallMetrics callMetrics) {
+        this(osClient, OsCallsCache.disabled(), null, new SfcIndex(), ConnectorSettings.DEFAULTS.getConfig(),
+                new RetryPolicy(), new CircuitBreaker(null), RateLimiter.unlimited(), ConcurrencyLimiter.unlimited(),
+                callMetrics);
+    }
+
+    /**
+     * @param queryService used for server side filtering, may be null to always filter on the client
+     */
+    public OsCalls(OSClientV3 osClient, OsCallsCache cache, NeutronSfcQueryService queryService, SfcIndex index) {
+        this(osClient, cache, queryService, index, ConnectorSettings.DEFAULTS.getConfig());
+    }
+
+    /**
+     * @param connectorConfig the openstack4j config the client was built with, used to re-bind it on other threads
+     */
+    public OsCalls(OSClientV3 osClient, OsCallsCache cache, NeutronSfcQueryService queryService, SfcIndex index,
+                   Config connectorConfig) {
+        this(osClient, cache, queryService, index, connectorConfig, new RetryPolicy(), new CircuitBreaker(null),
+                RateLimiter.unlimited(), ConcurrencyLimiter.unlimited(), NeutronCallMetrics.disabled());
+    }
+
+    /**
+     * @param retryPolicy retries the calls that failed transiently, shared by the calls of a VC
+     * @param circuitBreaker fails the calls fast while Neutron is failing, shared by the calls of an endpoint
+     * @param rateLimiter limits the rate of the calls, shared by the calls of a VC
+     * @param concurrencyLimiter limits the calls in flight to what Neutron handles, shared by the calls of a VC
+     * @param callMetrics records the latency of every request, shared by the calls of a VC
+     */
+    public OsCalls(OSClientV3 osClient, OsCallsCache cache, NeutronSfcQueryService queryService, SfcIndex index,
+                   Config connectorConfig, RetryPolicy retryPolicy, CircuitBreaker circuitBreaker,
+                   RateLimiter rateLimiter, ConcurrencyLimiter concurrencyLimiter, NeutronCallMetrics callMetrics) {
         this.osClient = osClient;
+        this.cache = cache;
+        this.queryService = queryService;
+        this.index = index;
+        this.connectorConfig = connectorConfig;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.callMetrics = callMetrics;
+    }
+
+    public OsCallsCache getCache() {
+        return this.cache;
+    }
+
+    public SfcIndex getIndex() {
+        return this.index;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return this.retryPolicy;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return this.rateLimiter;
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return this.concurrencyLimiter;
+    }
+
+    public NeutronCallMetrics getCallMetrics() {
+        return this.callMetrics;
+    }
+
+    /**
+     * openstack4j keeps the session in a thread local. Wraps a call so that it runs
+     * against this client's session when executed on another thread, accounted to the
+     * API operation of the calling thread.
+     */
+    public <T> Supplier<T> inSession(Supplier<T> call) {
+        Token token = this.osClient.getToken();
+        Supplier<T> accountedCall = this.callMetrics.getAccounting().propagate(call);
+        return () -> {
+            if (token != null) {
+                OSFactory.clientFromToken(token, Facing.PUBLIC, this.connectorConfig);
+            }
+            return accountedCall.get();
+        };
     }
 
     public FlowClassifier createFlowClassifier(FlowClassifier flowClassifier) {
         checkArgument(flowClassifier != null, "null passed for %s !", "Flow Classifier");
 
-        flowClassifier = flowClassifier.toBuilder().id(null).build();
+        FlowClassifier request = flowClassifier.toBuilder().id(null).build();
 
-        try {
-            flowClassifier = this.osClient.sfc().flowclassifiers().create(flowClassifier);
-            if (flowClassifier == null) {
-                throw new RuntimeException("Create Flow Classifier operation returned null");
-            }
-        } catch (Exception e) {
-            throw new SdnControllerResponseNsfcException(Create, FlowClassifier.class, e);
+        flowClassifier = call(CreateFlowClassifier, Create, FlowClassifier.class,
+                () -> this.osClient.sfc().flowclassifiers().create(request));
+        if (flowClassifier == null) {
+            throw new SdnControllerResponseNsfcException(Create, FlowClassifier.class,
+                    new RuntimeException("Create Flow Classifier operation returned null"));
         }
 
+        this.cache.putFlowClassifier(flowClassifier);
         return flowClassifier;
 
     }
 
     public PortChain createPortChain(PortChain portChain) {
         checkArgument(portChain != null, "null passed for %s !", "Port Chain");
-        portChain = portChain.toBuilder().id(null).build();
+        PortChain request = portChain.toBuilder().id(null).build();
 
-        try {
-            portChain = this.osClient.sfc().portchains().create(portChain);
-            if (portChain == null) {
-                throw new RuntimeException("Create Port Chain operation returned null");
-            }
-        } catch (Exception e) {
-            throw new SdnControllerResponseNsfcException(Create, PortChain.class, e);
+        portChain = call(CreatePortChain, Create, PortChain.class,
+                () -> this.osClient.sfc().portchains().create(request));
+        if (portChain == null) {
+            throw new SdnControllerResponseNsfcException(Create, PortChain.class,
+                    new RuntimeException("Create Port Chain operation returned null"));
         }
 
-        return initializePortChainCollections(portChain);
+        portChain = initializePortChainCollections(portChain);
+        this.cache.putPortChain(portChain);
+        this.index.putPortChain(portChain);
+        return portChain;
     }
 
     public PortPairGroup createPortPairGroup(PortPairGroup portPairGroup) {
         checkArgument(portPairGroup != null, "null passed for %s !", "Port Pair Group");
-        portPairGroup = portPairGroup.toBuilder().id(null).build();
+        PortPairGroup request = portPairGroup.toBuilder().id(null).build();
 
-        try {
-            portPairGroup = this.osClient.sfc().portpairgroups().create(portPairGroup);
-            if (portPairGroup == null) {
-                throw new RuntimeException("Create Port Pair Group operation returned null");
-            }
-        } catch (Exception e) {
-            throw new SdnControllerResponseNsfcException(Create, PortPairGroup.class, e);
+        portPairGroup = call(CreatePortPairGroup, Create, PortPairGroup.class,
+                () -> this.osClient.sfc().portpairgroups().create(request));
+        if (portPairGroup == null) {
+            throw new SdnControllerResponseNsfcException(Create, PortPairGroup.class,
+                    new RuntimeException("Create Port Pair Group operation returned null"));
         }
 
+        this.cache.putPortPairGroup(portPairGroup);
+        this.index.putPortPairGroup(portPairGroup);
         return portPairGroup;
     }
 
     public PortPair createPortPair(PortPair portPair) {
         checkArgument(portPair != null, "null passed for %s !", "Port Pair");
-        portPair = portPair.toBuilder().id(null).build();
+        PortPair request = portPair.toBuilder().id(null).build();
 
-        try {
-            portPair = this.osClient.sfc().portpairs().create(portPair);
-            if (portPair == null) {
-                throw new RuntimeException("Create Port Pair operation returned null");
-            }
-        } catch (Exception e) {
-            throw new SdnControllerResponseNsfcException(Create, PortPair.class, e);
+        portPair = call(CreatePortPair, Create, PortPair.class,
+                () -> this.osClient.sfc().portpairs().create(request));
+        if (portPair == null) {
+            throw new SdnControllerResponseNsfcException(Create, PortPair.class,
+                    new RuntimeException("Create Port Pair operation returned null"));
         }
 
+        this.cache.putPortPair(portPair);
         return portPair;
     }
 
     public List<? extends PortPairGroup> listPortPairGroups() {
-        return this.osClient.sfc().portpairgroups().list();
+        long indexVersion = this.index.getVersion();
+        List<? extends PortPairGroup> portPairGroups = call(ListPortPairGroups, () -> this.osClient.sfc().portpairgroups().list());
+        this.index.rebuildPortPairGroups(portPairGroups, indexVersion);
+        return portPairGroups;
     }
 
     public List<? extends PortPair> listPortPairs() {
-        return this.osClient.sfc().portpairs().list();
+        return call(ListPortPairs, () -> this.osClient.sfc().portpairs().list());
+    }
+
+    /**
+     * Lists port pairs with the given attribute values, e.g. ingress and egress.
+     * Neutron does the filtering unless it rejected the query with a 400 before, in
+     * which case all port pairs are listed. Any other failure is rethrown. Callers must still check the attributes because
+     * older Neutron versions silently ignore unknown filters.
+     */
+    public List<? extends PortPair> listPortPairs(Map<String, String> filters) {
+        if (this.queryService != null && this.queryService.isPortPairFilteringSupported()) {
+            try {
+                List<? extends PortPair> portPairs = call(ListPortPairs, () -> this.queryService.listPortPairs(filters));
+                if (portPairs != null) {
+                    return portPairs;
+                }
+            } catch (ClientResponseException e) {
+                if (e.getStatus() != 400) {
+                    throw e;
+                }
+                LOG.warn("Neutron rejected port pair filters {}, falling back to full listing", filters, e);
+                this.queryService.disablePortPairFiltering();
+            }
+        }
+
+        return listPortPairs();
     }
 
     public List<? extends PortChain> listPortChains() {
-        return this.osClient.sfc().portchains().list();
+        long indexVersion = this.index.getVersion();
+        List<? extends PortChain> portChains = call(ListPortChains, () -> this.osClient.sfc().portchains().list());
+        this.index.rebuildPortChains(portChains, indexVersion);
+        return portChains;
+    }
+
+    public List<? extends FlowClassifier> listFlowClassifiers() {
+        return call(ListFlowClassifiers, () -> this.osClient.sfc().flowclassifiers().list());
+    }
+
+    public List<? extends Port> listPorts() {
+        return call(ListPorts, () -> this.osClient.networking().port().list());
     }
 
     public FlowClassifier getFlowClassifier(String flowClassifierId) {
-        return this.osClient.sfc().flowclassifiers().get(flowClassifierId);
+        return this.cache.getFlowClassifier(flowClassifierId,
+                id -> call(GetFlowClassifier, () -> this.osClient.sfc().flowclassifiers().get(id)));
     }
 
     public PortChain getPortChain(String portChainId) {
-        PortChain portChain = this.osClient.sfc().portchains().get(portChainId);
-        return initializePortChainCollections(portChain);
+        return this.cache.getPortChain(portChainId,
+                id -> initializePortChainCollections(
+                        call(GetPortChain, () -> this.osClient.sfc().portchains().get(id))));
     }
 
     public PortPairGroup getPortPairGroup(String portPairGroupId) {
-        return this.osClient.sfc().portpairgroups().get(portPairGroupId);
+        return this.cache.getPortPairGroup(portPairGroupId,
+                id -> call(GetPortPairGroup, () -> this.osClient.sfc().portpairgroups().get(id)));
     }
 
     public PortPair getPortPair(String portPairId) {
-        return this.osClient.sfc().portpairs().get(portPairId);
+        return this.cache.getPortPair(portPairId,
+                id -> call(GetPortPair, () -> this.osClient.sfc().portpairs().get(id)));
     }
 
     public Port getPort(String portId) {
-        return this.osClient.networking().port().get(portId);
+        return call(GetPort, () -> this.osClient.networking().port().get(portId));
     }
 
     public PortChain updatePortChain(String portChainId, PortChain portChain) {
@@ -143,18 +315,20 @@ public class OsCalls {
         checkArgument(portChain != null, "null passed for %s !", "Port Chain");
 
         // OS won't let us modify some attributes. Must be null on update object
-        portChain = portChain.toBuilder().id(null).projectId(null).chainParameters(null).chainId(null).build();
+        PortChain request = portChain.toBuilder().id(null).projectId(null).chainParameters(null).chainId(null).build();
 
-        try {
-            portChain = this.osClient.sfc().portchains().update(portChainId, portChain);
-            if (portChain == null) {
-                throw new RuntimeException("Update Port Chain operation returned null for port chain " + portChainId);
-            }
-        } catch (Exception e) {
-            throw new SdnControllerResponseNsfcException(Update, PortChain.class, e);
+        this.cache.invalidatePortChain(portChainId);
+        portChain = call(UpdatePortChain, Update, PortChain.class,
+                () -> this.osClient.sfc().portchains().update(portChainId, request));
+        if (portChain == null) {
+            throw new SdnControllerResponseNsfcException(Update, PortChain.class,
+                    new RuntimeException("Update Port Chain operation returned null for port chain " + portChainId));
         }
 
-        return initializePortChainCollections(portChain);
+        portChain = initializePortChainCollections(portChain);
+        this.cache.putPortChain(portChain);
+        this.index.putPortChain(portChain);
+        return portChain;
     }
 
     public PortPairGroup updatePortPairGroup(String portPairGroupId, PortPairGroup portPairGroup) {
@@ -162,79 +336,286 @@ public class OsCalls {
         checkArgument(portPairGroup != null, "null passed for %s !", "Port Pair Group");
 
         // OS won't let us modify some attributes. Must be null on update object
-        portPairGroup  = portPairGroup.toBuilder().id(null).projectId(null).portPairGroupParameters(null).build();
+        PortPairGroup request = portPairGroup.toBuilder().id(null).projectId(null).portPairGroupParameters(null).build();
+
+        this.cache.invalidatePortPairGroup(portPairGroupId);
+        portPairGroup = call(UpdatePortPairGroup, Update, PortPairGroup.class,
+                () -> this.osClient.sfc().portpairgroups().update(portPairGroupId, request));
+        if (portPairGroup == null) {
+            throw new SdnControllerResponseNsfcException(Update, PortPairGroup.class,
+                    new RuntimeException("Update Port Pair Group operation returned null for port pair" + portPairGroupId));
+        }
+
+        this.cache.putPortPairGroup(portPairGroup);
+        this.index.putPortPairGroup(portPairGroup);
+        return portPairGroup;
+    }
+
+    /**
+     * Applies a change to the port chain as it currently is in Neutron. The change is given the chain
+     * just read, bypassing the cache, and returns the chain to send or null if there is nothing to update.
+     * The chain read replaces the cached and indexed one, so that changes by other nodes are picked up.
+     *
+     * When the VC has conditional updates enabled and Neutron reports a {@code revision_number}, the update
+     * only succeeds if the chain is still at the revision read. Otherwise the chain is read again and the
+     * change applied anew, up to the attempt budget. Without a revision the update is unconditional.
+     *
+     * @return the updated chain, the unchanged chain if there was nothing to update or null if it does not exist
+     */
+    public PortChain updatePortChain(String portChainId, Function<PortChain, PortChain> change) {
+        checkArgument(portChainId != null, "null passed for %s !", "Port Chain Id");
+
+        for (int attempt = 1;; attempt++) {
+            Long revisionNumber = null;
+            PortChain portChain;
+            if (isConditionalUpdateEnabled()) {
+                RevisionedPortChain revisioned = call(GetPortChain,
+                        () -> this.queryService.getPortChain(portChainId));
+                revisionNumber = revisioned == null ? null : revisioned.getRevisionNumber();
+                portChain = initializePortChainCollections(revisioned);
+            } else {
+                portChain = initializePortChainCollections(
+                        call(GetPortChain, () -> this.osClient.sfc().portchains().get(portChainId)));
+            }
+
+            if (portChain == null) {
+                this.cache.invalidatePortChain(portChainId);
+                this.index.removePortChain(portChainId);
+                return null;
+            }
+            this.cache.putPortChain(portChain);
+            this.index.putPortChain(portChain);
+
+            PortChain update = change.apply(portChain);
+            if (update == null) {
+                return portChain;
+            }
+
+            if (revisionNumber == null) {
+                return updatePortChain(portChainId, update);
+            }
+
+            try {
+                return updatePortChain(portChainId, update, revisionNumber);
+            } catch (RevisionConflictException e) {
+                if (attempt >= this.queryService.getMaxUpdateAttempts()) {
+                    throw new SdnControllerResponseNsfcException(Update, PortChain.class, e);
+                }
+                LOG.debug("Port chain {} changed since revision {}, retrying update", portChainId, revisionNumber);
+            }
+        }
+    }
+
+    /**
+     * Applies a change to the port pair group as it currently is in Neutron, with the same
+     * conditional update and retries as {@link #updatePortChain(String, Function)}.
+     *
+     * @return the updated group, the unchanged group if there was nothing to update or null if it does not exist
+     */
+    public PortPairGroup updatePortPairGroup(String portPairGroupId, Function<PortPairGroup, PortPairGroup> change) {
+        checkArgument(portPairGroupId != null, "null passed for %s !", "Port Pair Group Id");
+
+        for (int attempt = 1;; attempt++) {
+            Long revisionNumber = null;
+            PortPairGroup portPairGroup;
+            if (isConditionalUpdateEnabled()) {
+                RevisionedPortPairGroup revisioned = call(GetPortPairGroup,
+                        () -> this.queryService.getPortPairGroup(portPairGroupId));
+                revisionNumber = revisioned == null ? null : revisioned.getRevisionNumber();
+                portPairGroup = revisioned;
+            } else {
+                portPairGroup = call(GetPortPairGroup,
+                        () -> this.osClient.sfc().portpairgroups().get(portPairGroupId));
+            }
 
-        try {
-            portPairGroup = this.osClient.sfc().portpairgroups().update(portPairGroupId, portPairGroup);
             if (portPairGroup == null) {
-                throw new RuntimeException("Update Port Pair Group operation returned null for port pair" + portPairGroupId);
+                this.cache.invalidatePortPairGroup(portPairGroupId);
+                this.index.removePortPairGroup(portPairGroupId);
+                return null;
+            }
+            this.cache.putPortPairGroup(portPairGroup);
+            this.index.putPortPairGroup(portPairGroup);
+
+            PortPairGroup update = change.apply(portPairGroup);
+            if (update == null) {
+                return portPairGroup;
+            }
+
+            if (revisionNumber == null) {
+                return updatePortPairGroup(portPairGroupId, update);
+            }
+
+            try {
+                return updatePortPairGroup(portPairGroupId, update, revisionNumber);
+            } catch (RevisionConflictException e) {
+                if (attempt >= this.queryService.getMaxUpdateAttempts()) {
+                    throw new SdnControllerResponseNsfcException(Update, PortPairGroup.class, e);
+                }
+                LOG.debug("Port pair group {} changed since revision {}, retrying update", portPairGroupId,
+                        revisionNumber);
             }
-        } catch (Exception e) {
-            throw new SdnControllerResponseNsfcException(Update, PortPairGroup.class, e);
         }
-        return portPairGroup;
     }
 
     public void deleteFlowClassifier(String flowClassifierId) {
-        try {
+        this.cache.invalidateFlowClassifier(flowClassifierId);
+        call(DeleteFlowClassifier, Delete, PortPair.class, () -> {
             ActionResponse response = this.osClient.sfc().flowclassifiers().delete(flowClassifierId);
-            if (!response.isSuccess()) {
-                if (response.getCode() == 404) {
-                    return;
-                }
+            if (!response.isSuccess() && response.getCode() != 404) {
                 String msg = String.format("Deleting flow classifier %s Response %d %s", flowClassifierId, response.getCode(), response.getFault());
-                throw new RuntimeException(msg);
+                throw new ResponseException(msg, response.getCode());
             }
-        } catch (Exception e) {
-            throw new SdnControllerResponseNsfcException(Delete, PortPair.class, e);
-        }
+            return response;
+        });
     }
 
     public void deletePortChain(String portChainId) {
-        try {
+        this.cache.invalidatePortChain(portChainId);
+        this.index.removePortChain(portChainId);
+        call(DeletePortChain, Delete, PortPair.class, () -> {
             ActionResponse response = this.osClient.sfc().portchains().delete(portChainId);
-            if (!response.isSuccess()) {
-                if (response.getCode() == 404) {
-                    return;
-                }
+            if (!response.isSuccess() && response.getCode() != 404) {
                 String msg = String.format("Deleting port chain %s Response %d %s", portChainId, response.getCode(), response.getFault());
-                throw new RuntimeException(msg);
+                throw new ResponseException(msg, response.getCode());
             }
-        } catch (Exception e) {
-            throw new SdnControllerResponseNsfcException(Delete, PortPair.class, e);
-        }
+            return response;
+        });
     }
 
     public void deletePortPairGroup(String portPairGroupId) {
-        try {
+        this.cache.invalidatePortPairGroup(portPairGroupId);
+        this.index.removePortPairGroup(portPairGroupId);
+        call(DeletePortPairGroup, Delete, PortPair.class, () -> {
             ActionResponse response = this.osClient.sfc().portpairgroups().delete(portPairGroupId);
-            if (!response.isSuccess()) {
-                if (response.getCode() == 404) {
-                    return;
-                }
+            if (!response.isSuccess() && response.getCode() != 404) {
                 String msg = String.format("Deleting port pair %s Response %d %s", portPairGroupId, response.getCode(), response.getFault());
-                throw new RuntimeException(msg);
+                throw new ResponseException(msg, response.getCode());
             }
-        } catch (Exception e) {
-            throw new SdnControllerResponseNsfcException(Delete, PortPair.class, e);
-        }
+            return response;
+        });
     }
 
     public void deletePortPair(String portPairId) {
-        try {
+        this.cache.invalidatePortPair(portPairId);
+        call(DeletePortPair, Delete, PortPair.class, () -> {
             ActionResponse response = this.osClient.sfc().portpairs().delete(portPairId);
-            if (!response.isSuccess()) {
-                if (response.getCode() == 404) {
-                    return;
-                }
+            if (!response.isSuccess() && response.getCode() != 404) {
                 String msg = String.format("Deleting port pair %s Response %d %s", portPairId, response.getCode(), response.getFault());
-                throw new RuntimeException(msg);
+                throw new ResponseException(msg, response.getCode());
             }
-        } catch (Exception e) {
-            throw new SdnControllerResponseNsfcException(Delete, PortPair.class, e);
+            return response;
+        });
+    }
+
+    /**
+     * Runs a single Neutron request through the rate limiter, the concurrency limiter and the circuit
+     * breaker, retrying it as the policy allows. Every attempt takes a permit and a slot in flight,
+     * the waits for them are not timed by the breaker. Under a resource lock they are bounded by what
+     * is left of the max lock hold time. The latency including retries and waits is
+     * recorded in the call metrics and the request is accounted to the API operation it was made for.
+     */
+    private <T> T call(NeutronOperation operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        T result = null;
+        try {
+            result = this.retryPolicy.call(operation.getIdempotency(),
+                    () -> this.rateLimiter.call(!operation.isRead(), this.retryPolicy.getRemainingHoldMillis(),
+                            () -> this.concurrencyLimiter.call(operation, this.retryPolicy.getRemainingHoldMillis(),
+                                    () -> this.circuitBreaker.call(operation, call))));
+            failed = false;
+            return result;
+        } finally {
+            this.callMetrics.record(operation, System.nanoTime() - start, failed);
+            this.callMetrics.getAccounting().record(operation, result);
+        }
+    }
+
+    /**
+     * Runs a Neutron request that creates, updates or deletes a resource. Its failure is thrown as a
+     * {@link SdnControllerResponseNsfcException}, except for a call the resilience policies rejected
+     * before sending it and a lost revision race, which callers handle themselves. Neutron may still
+     * have applied a failed request, so the index of the groups or chains it changes is no longer
+     * known to be complete.
+     */
+    private <T> T call(NeutronOperation operation, Operation failedOperation, Class<? extends Resource> resourceClass,
+                       Supplier<T> call) {
+        try {
+            return call(operation, call);
+        } catch (CallRejectedException | RevisionConflictException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            markIndexIncomplete(operation);
+            throw new SdnControllerResponseNsfcException(failedOperation, resourceClass, e);
         }
     }
 
+    private void markIndexIncomplete(NeutronOperation operation) {
+        switch (operation) {
+        case CreatePortPairGroup:
+        case UpdatePortPairGroup:
+        case DeletePortPairGroup:
+            this.index.markPortPairGroupsIncomplete();
+            break;
+        case CreatePortChain:
+        case UpdatePortChain:
+        case DeletePortChain:
+            this.index.markPortChainsIncomplete();
+            break;
+        default:
+            break;
+        }
+    }
+
+    private boolean isConditionalUpdateEnabled() {
+        return this.queryService != null && this.queryService.isConditionalUpdateEnabled();
+    }
+
+    private PortChain updatePortChain(String portChainId, PortChain portChain, long revisionNumber) {
+        // Only send the attributes OS lets us modify, never the revision read
+        PortChain update = Builders.portChain()
+                .name(portChain.getName())
+                .description(portChain.getDescription())
+                .portPairGroups(portChain.getPortPairGroups())
+                .flowClassifiers(portChain.getFlowClassifiers())
+                .build();
+
+        this.cache.invalidatePortChain(portChainId);
+        portChain = call(UpdatePortChain, Update, PortChain.class,
+                () -> this.queryService.updatePortChain(portChainId, update, revisionNumber));
+        if (portChain == null) {
+            throw new SdnControllerResponseNsfcException(Update, PortChain.class,
+                    new RuntimeException("Update Port Chain operation returned null for port chain " + portChainId));
+        }
+
+        portChain = initializePortChainCollections(portChain);
+        this.cache.putPortChain(portChain);
+        this.index.putPortChain(portChain);
+        return portChain;
+    }
+
+    private PortPairGroup updatePortPairGroup(String portPairGroupId, PortPairGroup portPairGroup,
+                                              long revisionNumber) {
+        // Only send the attributes OS lets us modify, never the revision read
+        PortPairGroup update = Builders.portPairGroup()
+                .name(portPairGroup.getName())
+                .description(portPairGroup.getDescription())
+                .portPairs(portPairGroup.getPortPairs())
+                .build();
+
+        this.cache.invalidatePortPairGroup(portPairGroupId);
+        portPairGroup = call(UpdatePortPairGroup, Update, PortPairGroup.class,
+                () -> this.queryService.updatePortPairGroup(portPairGroupId, update, revisionNumber));
+        if (portPairGroup == null) {
+            throw new SdnControllerResponseNsfcException(Update, PortPairGroup.class,
+                    new RuntimeException("Update Port Pair Group operation returned null for port pair" + portPairGroupId));
+        }
+
+        this.cache.putPortPairGroup(portPairGroup);
+        this.index.putPortPairGroup(portPairGroup);
+        return portPairGroup;
+    }
+
     private PortChain initializePortChainCollections(PortChain portChain) {
         if (portChain == null) {
             return null;
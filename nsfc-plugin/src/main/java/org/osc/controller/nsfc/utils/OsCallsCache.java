@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import org.openstack4j.api.Builders;
+import org.openstack4j.model.network.ext.FlowClassifier;
+import org.openstack4j.model.network.ext.PortChain;
+import org.openstack4j.model.network.ext.PortPair;
+import org.openstack4j.model.network.ext.PortPairGroup;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Read-through cache of SFC resources used by {@link OsCalls}, one per VC.
+ *
+ * Each resource type has its own TTL and the caches are size bounded. Port chains and
+ * port pair groups are copied in and out because callers modify their id lists in place
+ * before updating; port pairs and flow classifiers are never modified and are shared.
+ *
+ * Caching is off unless the provider attribute {@value #ENABLED_ATTRIBUTE} of the VC is {@code true}.
+ * Entries only reflect this node's writes and reads, a change made by another node is seen once the
+ * entry expires. {@link OsCalls} therefore never serves the read of a read-modify-write from the
+ * cache, it reads Neutron and stores what it read, and it drops an entry before every mutation.
+ */
+public class OsCallsCache {
+
+    public static final String ENABLED_ATTRIBUTE = "nsfc.cache.enabled";
+
+    public static final long DEFAULT_PORT_CHAIN_TTL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    public static final long DEFAULT_PORT_PAIR_GROUP_TTL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    public static final long DEFAULT_PORT_PAIR_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    public static final long DEFAULT_FLOW_CLASSIFIER_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    private final boolean enabled;
+
+    private final Cache<String, PortChain> portChains;
+    private final Cache<String, PortPairGroup> portPairGroups;
+    private final Cache<String, PortPair> portPairs;
+    private final Cache<String, FlowClassifier> flowClassifiers;
+
+    public OsCallsCache() {
+        this(DEFAULT_PORT_CHAIN_TTL_MILLIS, DEFAULT_PORT_PAIR_GROUP_TTL_MILLIS, DEFAULT_PORT_PAIR_TTL_MILLIS,
+                DEFAULT_FLOW_CLASSIFIER_TTL_MILLIS, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public OsCallsCache(long portChainTtlMillis, long portPairGroupTtlMillis, long portPairTtlMillis,
+                        long flowClassifierTtlMillis, long maximumSize) {
+        this(true, portChainTtlMillis, portPairGroupTtlMillis, portPairTtlMillis, flowClassifierTtlMillis, maximumSize);
+    }
+
+    private OsCallsCache(boolean enabled, long portChainTtlMillis, long portPairGroupTtlMillis,
+                         long portPairTtlMillis, long flowClassifierTtlMillis, long maximumSize) {
+        this.enabled = enabled;
+        this.portChains = newCache(portChainTtlMillis, maximumSize);
+        this.portPairGroups = newCache(portPairGroupTtlMillis, maximumSize);
+        this.portPairs = newCache(portPairTtlMillis, maximumSize);
+        this.flowClassifiers = newCache(flowClassifierTtlMillis, maximumSize);
+    }
+
+    public static OsCallsCache disabled() {
+        return new OsCallsCache(false, 0, 0, 0, 0, 0);
+    }
+
+    public static OsCallsCache forVc(VirtualizationConnectorElement vc) {
+        Map<String, String> attributes = vc.getProviderAttributes();
+        if (attributes != null && "true".equalsIgnoreCase(attributes.get(ENABLED_ATTRIBUTE))) {
+            return new OsCallsCache();
+        }
+        return disabled();
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public PortChain getPortChain(String id, Function<String, PortChain> loader) {
+        return read(this.portChains, id, loader, OsCallsCache::copy);
+    }
+
+    public PortPairGroup getPortPairGroup(String id, Function<String, PortPairGroup> loader) {
+        return read(this.portPairGroups, id, loader, OsCallsCache::copy);
+    }
+
+    public PortPair getPortPair(String id, Function<String, PortPair> loader) {
+        return read(this.portPairs, id, loader, UnaryOperator.identity());
+    }
+
+    public FlowClassifier getFlowClassifier(String id, Function<String, FlowClassifier> loader) {
+        return read(this.flowClassifiers, id, loader, UnaryOperator.identity());
+    }
+
+    public void putPortChain(PortChain portChain) {
+        write(this.portChains, portChain == null ? null : portChain.getId(), copy(portChain));
+    }
+
+    public void putPortPairGroup(PortPairGroup portPairGroup) {
+        write(this.portPairGroups, portPairGroup == null ? null : portPairGroup.getId(), copy(portPairGroup));
+    }
+
+    public void putPortPair(PortPair portPair) {
+        write(this.portPairs, portPair == null ? null : portPair.getId(), portPair);
+    }
+
+    public void putFlowClassifier(FlowClassifier flowClassifier) {
+        write(this.flowClassifiers, flowClassifier == null ? null : flowClassifier.getId(), flowClassifier);
+    }
+
+    public void invalidatePortChain(String id) {
+        invalidate(this.portChains, id);
+    }
+
+    public void invalidatePortPairGroup(String id) {
+        invalidate(this.portPairGroups, id);
+    }
+
+    public void invalidatePortPair(String id) {
+        invalidate(this.portPairs, id);
+    }
+
+    public void invalidateFlowClassifier(String id) {
+        invalidate(this.flowClassifiers, id);
+    }
+
+    public void invalidateAll() {
+        this.portChains.invalidateAll();
+        this.portPairGroups.invalidateAll();
+        this.portPairs.invalidateAll();
+        this.flowClassifiers.invalidateAll();
+    }
+
+    /**
+     * @return hit and miss statistics keyed by resource type
+     */
+    public Map<String, CacheStats> getStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        stats.put("PortChain", this.portChains.stats());
+        stats.put("PortPairGroup", this.portPairGroups.stats());
+        stats.put("PortPair", this.portPairs.stats());
+        stats.put("FlowClassifier", this.flowClassifiers.stats());
+        return stats;
+    }
+
+    /**
+     * @return hit and miss statistics of all resource types together
+     */
+    public CacheStats getTotalStats() {
+        return this.portChains.stats()
+                .plus(this.portPairGroups.stats())
+                .plus(this.portPairs.stats())
+                .plus(this.flowClassifiers.stats());
+    }
+
+    private <T> T read(Cache<String, T> cache, String id, Function<String, T> loader, UnaryOperator<T> copier) {
+        if (!this.enabled || id == null) {
+            return loader.apply(id);
+        }
+
+        T cached = cache.getIfPresent(id);
+        if (cached != null) {
+            return copier.apply(cached);
+        }
+
+        T loaded = loader.apply(id);
+        if (loaded != null) {
+            cache.put(id, copier.apply(loaded));
+        }
+        return loaded;
+    }
+
+    private <T> void write(Cache<String, T> cache, String id, T value) {
+        if (this.enabled && id != null && value != null) {
+            cache.put(id, value);
+        }
+    }
+
+    private <T> void invalidate(Cache<String, T> cache, String id) {
+        if (this.enabled && id != null) {
+            cache.invalidate(id);
+        }
+    }
+
+    private static <T> Cache<String, T> newCache(long ttlMillis, long maximumSize) {
+        return CacheBuilder.newBuilder()
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    private static PortChain copy(PortChain portChain) {
+        if (portChain == null) {
+            return null;
+        }
+
+        return Builders.portChain()
+                .id(portChain.getId())
+                .name(portChain.getName())
+                .description(portChain.getDescription())
+                .projectId(portChain.getProjectId())
+                .chainId(portChain.getChainId())
+                .chainParameters(portChain.getChainParameters())
+                .portPairGroups(portChain.getPortPairGroups() == null ? null : new ArrayList<>(portChain.getPortPairGroups()))
+                .flowClassifiers(portChain.getFlowClassifiers() == null ? null : new ArrayList<>(portChain.getFlowClassifiers()))
+                .build();
+    }
+
+    private static PortPairGroup copy(PortPairGroup portPairGroup) {
+        if (portPairGroup == null) {
+            return null;
+        }
+
+        return Builders.portPairGroup()
+                .id(portPairGroup.getId())
+                .name(portPairGroup.getName())
+                .description(portPairGroup.getDescription())
+                .projectId(portPairGroup.getProjectId())
+                .portPairGroupParameters(portPairGroup.getPortPairGroupParameters())
+                .portPairs(portPairGroup.getPortPairs() == null ? null : new ArrayList<>(portPairGroup.getPortPairs()))
+                .build();
+    }
+}
@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.openstack4j.api.OSClient.OSClientV3;
+import org.openstack4j.core.transport.Config;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of authenticated sessions keyed by Virtualization Connector identity
+ * (provider IP, domain, project and user).
+ *
+ * A session is replaced when the VC name, credentials or provider attributes change, so
+ * new {@code nsfc.*} settings apply at once, and dropped when it has not been used for the
+ * idle timeout, which is how VCs removed from OSC go away.
+ * Once {@link #startTokenRefresh(long, long)} is called, tokens are renewed in the
+ * background before they expire so that callers never authenticate inline.
+ */
+public class OsClientPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OsClientPool.class);
+
+    public static final long DEFAULT_EXPIRY_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.HOURS.toMillis(1);
+    public static final long DEFAULT_REFRESH_LEAD_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    public static final long DEFAULT_REFRESH_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    public static final int DEFAULT_WORKER_THREADS = 8;
+
+    private final ConcurrentMap<String, VcSession> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final NeutronCallMetricsRegistry callMetrics = new NeutronCallMetricsRegistry();
+
+    private final Function<VirtualizationConnectorElement, OSClientV3> authenticator;
+    private final long expiryMarginMillis;
+    private final long idleTimeoutMillis;
+
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile Config connectorConfig = ConnectorSettings.DEFAULTS.getConfig();
+
+    private ScheduledExecutorService refreshScheduler;
+
+    public OsClientPool(Function<VirtualizationConnectorElement, OSClientV3> authenticator) {
+        this(authenticator, DEFAULT_EXPIRY_MARGIN_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public OsClientPool(Function<VirtualizationConnectorElement, OSClientV3> authenticator,
+                        long expiryMarginMillis, long idleTimeoutMillis) {
+        this.authenticator = authenticator;
+        this.expiryMarginMillis = expiryMarginMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.workers = new ThreadPoolExecutor(DEFAULT_WORKER_THREADS, DEFAULT_WORKER_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), daemonThreadFactory("nsfc-worker"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("nsfc-scheduler"));
+    }
+
+    public VcSession getSession(VirtualizationConnectorElement vc) {
+        evictIdleSessions();
+
+        return this.sessions.compute(sessionKey(vc), (key, existing) -> {
+            if (existing != null) {
+                if (existing.hasSettingsOf(vc)) {
+                    return existing;
+                }
+                LOG.info("Replacing session {}, its VC settings changed", key);
+                existing.invalidate();
+            }
+            ensureWorkerThreads(AsyncOsCalls.maxInFlight(vc));
+            return new VcSession(key, vc, this.authenticator, this.expiryMarginMillis, this.workers,
+                    this.scheduler, this.connectorConfig, circuitBreaker(vc), this.callMetrics.forVc(vc));
+        });
+    }
+
+    /**
+     * @return the circuit breaker the session of the VC uses, null if the VC has no session. Does
+     * not create one, so polling the status of unused VCs leaves no breakers behind.
+     */
+    public CircuitBreaker findCircuitBreaker(VirtualizationConnectorElement vc) {
+        VcSession session = this.sessions.get(sessionKey(vc));
+        return session == null ? null : session.getCircuitBreaker();
+    }
+
+    /**
+     * Neutron call latencies of all VCs, kept when their sessions are replaced or evicted.
+     */
+    public NeutronCallMetricsRegistry getCallMetrics() {
+        return this.callMetrics;
+    }
+
+    public OSClientV3 getClient(VirtualizationConnectorElement vc) {
+        return getSession(vc).getClient();
+    }
+
+    public void evict(VirtualizationConnectorElement vc) {
+        VcSession session = this.sessions.remove(sessionKey(vc));
+        if (session != null) {
+            session.invalidate();
+            removeUnusedCircuitBreakers();
+        }
+    }
+
+    public void evictIdleSessions() {
+        long now = System.currentTimeMillis();
+        boolean evicted = this.sessions.values().removeIf(session -> {
+            if (now - session.getLastAccess() > this.idleTimeoutMillis) {
+                LOG.info("Evicting idle session {}", session.getKey());
+                session.invalidate();
+                return true;
+            }
+            return false;
+        });
+        if (evicted) {
+            removeUnusedCircuitBreakers();
+        }
+    }
+
+    public Collection<VcSession> getSessions() {
+        return new ArrayList<>(this.sessions.values());
+    }
+
+    /**
+     * Starts re-authenticating every session whose token expires within the lead time.
+     * The lead time should be larger than the expiry margin so the inline path in
+     * {@link VcSession#getClient()} is only hit if background refresh keeps failing.
+     */
+    public synchronized void startTokenRefresh(long leadMillis, long periodMillis) {
+        if (this.refreshScheduler != null) {
+            return;
+        }
+
+        this.refreshScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("nsfc-token-refresh"));
+        this.refreshScheduler.scheduleWithFixedDelay(() -> refreshSessions(leadMillis),
+                periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopTokenRefresh() {
+        if (this.refreshScheduler != null) {
+            this.refreshScheduler.shutdownNow();
+            this.refreshScheduler = null;
+        }
+    }
+
+    void refreshSessions(long leadMillis) {
+        try {
+            evictIdleSessions();
+            this.sessions.values().forEach(session -> session.refreshIfExpiring(leadMillis));
+        } catch (RuntimeException e) {
+            // keep the scheduler alive, next run will retry
+            LOG.error("Token refresh run failed", e);
+        }
+    }
+
+    public int size() {
+        return this.sessions.size();
+    }
+
+    public void clear() {
+        this.sessions.values().forEach(VcSession::invalidate);
+        this.sessions.clear();
+        this.circuitBreakers.clear();
+    }
+
+    public Config getConnectorConfig() {
+        return this.connectorConfig;
+    }
+
+    /**
+     * Sets the openstack4j config for sessions created from now on.
+     */
+    public void setConnectorConfig(Config connectorConfig) {
+        this.connectorConfig = connectorConfig;
+    }
+
+    /**
+     * Shared threads for fanning out Neutron calls of all sessions, e.g. the asynchronous calls of
+     * the redirection APIs. There are at least as many as the largest max in flight of any session.
+     */
+    public ExecutorService getWorkers() {
+        return this.workers;
+    }
+
+    /**
+     * Circuit breaker of the Neutron endpoint of the VC, shared by all sessions of that endpoint
+     * whose VCs set the same breaker thresholds. It is kept when a session is replaced and dropped
+     * once the last session using it is evicted or closed.
+     */
+    private CircuitBreaker circuitBreaker(VirtualizationConnectorElement vc) {
+        CircuitBreaker circuitBreaker = CircuitBreaker.forVc(vc);
+        return this.circuitBreakers.computeIfAbsent(circuitBreaker.getKey(), key -> circuitBreaker);
+    }
+
+    /**
+     * Drops the circuit breakers no session uses anymore, e.g. of a VC removed from OSC.
+     */
+    private void removeUnusedCircuitBreakers() {
+        this.circuitBreakers.values().removeIf(breaker -> this.sessions.values().stream()
+                .noneMatch(session -> session.getCircuitBreaker() == breaker));
+    }
+
+    /**
+     * Grows the workers so that a VC can have all its asynchronous calls in flight at once.
+     * The pool never shrinks, the extra threads of a removed VC are kept.
+     */
+    private synchronized void ensureWorkerThreads(int threads) {
+        if (threads > this.workers.getMaximumPoolSize()) {
+            this.workers.setMaximumPoolSize(threads);
+            this.workers.setCorePoolSize(threads);
+        }
+    }
+
+    public void close() {
+        stopTokenRefresh();
+        clear();
+        this.workers.shutdownNow();
+        this.scheduler.shutdownNow();
+    }
+
+    static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    static String sessionKey(VirtualizationConnectorElement vc) {
+        return String.join("|", vc.getProviderIpAddress(), vc.getProviderAdminDomainId(),
+                vc.getProviderAdminTenantName(), vc.getProviderUsername());
+    }
+}
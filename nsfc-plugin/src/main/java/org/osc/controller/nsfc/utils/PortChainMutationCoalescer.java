@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getLong;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openstack4j.model.network.ext.PortChain;
+import org.osc.controller.nsfc.utils.CallAccounting.Scope;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects flow classifier additions and removals per port chain for a short window and applies
+ * them with a single read-modify-write of the chain. Every caller gets a future that completes
+ * with the updated chain once its change is in Neutron, or with the failure of the update.
+ *
+ * Updates of the same chain never overlap and run under its {@link ResourceLocks} port chain lock,
+ * so neither concurrent hook changes nor other writers of the chain are lost. A window of
+ * zero applies each change right away on the calling thread. The window is set for a VC with the
+ * provider attribute {@value #WINDOW_ATTRIBUTE}. The requests of an update are accounted pro rata
+ * to the operations that submitted its changes.
+ */
+public class PortChainMutationCoalescer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PortChainMutationCoalescer.class);
+
+    public static final String WINDOW_ATTRIBUTE = "nsfc.coalesce.windowMillis";
+
+    public static final long DEFAULT_WINDOW_MILLIS = 20;
+
+    private final ScheduledExecutorService scheduler;
+    private final Executor workers;
+    private final long windowMillis;
+    private final ResourceLocks locks;
+    private final CallAccounting accounting;
+
+    private final ConcurrentMap<String, Batch> openBatches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Void>> lastFlushes = new ConcurrentHashMap<>();
+
+    private final AtomicLong mutationCount = new AtomicLong();
+    private final AtomicLong updateCount = new AtomicLong();
+
+    /**
+     * @param scheduler closes the windows
+     * @param workers apply the batches
+     * @param locks guard the updates against other writers of the chains
+     */
+    public PortChainMutationCoalescer(ScheduledExecutorService scheduler, Executor workers, long windowMillis,
+                                      ResourceLocks locks) {
+        this(scheduler, workers, windowMillis, locks, CallAccounting.disabled());
+    }
+
+    /**
+     * @param accounting shares the requests of an update among the operations that submitted its changes
+     */
+    public PortChainMutationCoalescer(ScheduledExecutorService scheduler, Executor workers, long windowMillis,
+                                      ResourceLocks locks, CallAccounting accounting) {
+        checkArgument(windowMillis <= 0 || scheduler != null, "a scheduler is required for a window of %s ms",
+                windowMillis);
+        this.scheduler = scheduler;
+        this.workers = workers;
+        this.windowMillis = windowMillis;
+        this.locks = locks;
+        this.accounting = accounting;
+    }
+
+    /**
+     * Applies every change right away on the calling thread, one at a time per chain.
+     */
+    public static PortChainMutationCoalescer immediate(ResourceLocks locks) {
+        return new PortChainMutationCoalescer(null, null, 0, locks);
+    }
+
+    public static long windowMillis(VirtualizationConnectorElement vc) {
+        return Math.max(0, getLong(vc.getProviderAttributes(), WINDOW_ATTRIBUTE, DEFAULT_WINDOW_MILLIS));
+    }
+
+    public CompletableFuture<PortChain> addFlowClassifier(OsCalls osCalls, String portChainId, String flowClassifierId) {
+        return addFlowClassifiers(osCalls, portChainId, singletonList(flowClassifierId));
+    }
+
+    /**
+     * Adds all flow classifiers with the same update of the chain.
+     */
+    public CompletableFuture<PortChain> addFlowClassifiers(OsCalls osCalls, String portChainId,
+                                                           List<String> flowClassifierIds) {
+        return submit(osCalls, portChainId, new Mutation(flowClassifierIds, true, this.accounting.current()));
+    }
+
+    public CompletableFuture<PortChain> removeFlowClassifier(OsCalls osCalls, String portChainId,
+                                                             String flowClassifierId) {
+        return submit(osCalls, portChainId,
+                new Mutation(singletonList(flowClassifierId), false, this.accounting.current()));
+    }
+
+    public long getWindowMillis() {
+        return this.windowMillis;
+    }
+
+    /**
+     * Number of flow classifier changes submitted.
+     */
+    public long getMutationCount() {
+        return this.mutationCount.get();
+    }
+
+    /**
+     * Number of port chain updates sent to apply them.
+     */
+    public long getUpdateCount() {
+        return this.updateCount.get();
+    }
+
+    private CompletableFuture<PortChain> submit(OsCalls osCalls, String portChainId, Mutation mutation) {
+        checkArgument(portChainId != null, "null passed for %s !", "Port Chain Id");
+        checkArgument(mutation.flowClassifierIds != null && !mutation.flowClassifierIds.contains(null),
+                "null passed for %s !", "Flow Classifier Id");
+        this.mutationCount.incrementAndGet();
+
+        if (this.windowMillis <= 0) {
+            Batch batch = new Batch(osCalls);
+            batch.add(mutation);
+            apply(portChainId, batch);
+            return mutation.result;
+        }
+
+        this.openBatches.compute(portChainId, (id, batch) -> {
+            if (batch == null) {
+                Batch opened = new Batch(osCalls);
+                this.scheduler.schedule(() -> close(id, opened), this.windowMillis, TimeUnit.MILLISECONDS);
+                batch = opened;
+            }
+            batch.add(mutation);
+            return batch;
+        });
+        return mutation.result;
+    }
+
+    /**
+     * Stops the batch from taking more changes and queues it behind the previous update of the chain.
+     */
+    private void close(String portChainId, Batch batch) {
+        this.openBatches.remove(portChainId, batch);
+
+        CompletableFuture<Void> flush = this.lastFlushes.compute(portChainId, (id, previous) -> {
+            CompletableFuture<?> after = previous == null ? CompletableFuture.completedFuture(null) : previous;
+            return after.handle((r, e) -> null).thenRunAsync(() -> apply(id, batch), this.workers);
+        });
+        flush.whenComplete((r, e) -> this.lastFlushes.remove(portChainId, flush));
+    }
+
+    private void apply(String portChainId, Batch batch) {
+        try {
+            List<Scope> submitters = batch.mutations.stream().map(mutation -> mutation.submitter).collect(toList());
+            PortChain portChain = batch.osCalls.inSession(this.accounting.propagateShared(submitters,
+                    () -> this.locks.withPortChainLock(portChainId, () -> update(portChainId, batch)))).get();
+            batch.mutations.forEach(mutation -> mutation.result.complete(portChain));
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to apply {} flow classifier changes to port chain {}", batch.mutations.size(),
+                    portChainId, e);
+            batch.mutations.forEach(mutation -> mutation.result.completeExceptionally(e));
+        }
+    }
+
+    private PortChain update(String portChainId, Batch batch) {
+        // Applied to the chain as read from Neutron, again if the chain changed before the update got there
+        PortChain updated = batch.osCalls.updatePortChain(portChainId, portChain -> {
+            List<String> flowClassifiers = portChain.getFlowClassifiers();
+            boolean changed = false;
+            for (Mutation mutation : batch.mutations) {
+                for (String flowClassifierId : mutation.flowClassifierIds) {
+                    if (mutation.add && !flowClassifiers.contains(flowClassifierId)) {
+                        changed = flowClassifiers.add(flowClassifierId) || changed;
+                    } else if (!mutation.add) {
+                        changed = flowClassifiers.remove(flowClassifierId) || changed;
+                    }
+                }
+            }
+
+            if (!changed) {
+                return null;
+            }
+
+            this.updateCount.incrementAndGet();
+            return portChain;
+        });
+        checkArgument(updated != null, "Cannot find %s by id: %s!", "Service Function Chain", portChainId);
+        return updated;
+    }
+
+    private static final class Batch {
+        private final OsCalls osCalls;
+        private final List<Mutation> mutations = new ArrayList<>();
+
+        private Batch(OsCalls osCalls) {
+            this.osCalls = osCalls;
+        }
+
+        private void add(Mutation mutation) {
+            this.mutations.add(mutation);
+        }
+    }
+
+    private static final class Mutation {
+        private final List<String> flowClassifierIds;
+        private final boolean add;
+        private final Scope submitter;
+        private final CompletableFuture<PortChain> result = new CompletableFuture<>();
+
+        private Mutation(List<String> flowClassifierIds, boolean add, Scope submitter) {
+            this.flowClassifierIds = flowClassifierIds;
+            this.add = add;
+            this.submitter = submitter;
+        }
+    }
+}
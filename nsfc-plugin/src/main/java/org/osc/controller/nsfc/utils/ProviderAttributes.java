@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the {@code nsfc.*} settings from the provider attributes of a VC. A missing or
+ * invalid value yields the default, an invalid one is logged.
+ */
+public class ProviderAttributes {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProviderAttributes.class);
+
+    private ProviderAttributes() {
+    }
+
+    public static double getDouble(Map<String, String> attributes, String attribute, double defaultValue) {
+        String value = get(attributes, attribute);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return invalid(attribute, value, defaultValue);
+        }
+    }
+
+    public static long getLong(Map<String, String> attributes, String attribute, long defaultValue) {
+        String value = get(attributes, attribute);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return invalid(attribute, value, defaultValue);
+        }
+    }
+
+    public static int getInt(Map<String, String> attributes, String attribute, int defaultValue) {
+        String value = get(attributes, attribute);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return invalid(attribute, value, defaultValue);
+        }
+    }
+
+    /**
+     * @return whether the attribute is {@code true}, ignoring case
+     */
+    public static boolean getBoolean(Map<String, String> attributes, String attribute) {
+        return Boolean.parseBoolean(get(attributes, attribute));
+    }
+
+    private static String get(Map<String, String> attributes, String attribute) {
+        String value = attributes == null ? null : attributes.get(attribute);
+        return value == null ? null : value.trim();
+    }
+
+    private static <T> T invalid(String attribute, String value, T defaultValue) {
+        LOG.warn("Ignoring invalid {} value {}", attribute, value);
+        return defaultValue;
+    }
+}
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getBoolean;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getDouble;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getLong;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.osc.controller.nsfc.exceptions.RateLimitExceededException;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the rate of the Neutron calls of a VC, so a sync of a large project does not exhaust the
+ * Neutron API workers shared with other tenants.
+ *
+ * Reads and writes draw on separate token buckets. A bucket holds up to a burst of permits and is
+ * refilled at its rate. Without a permit a call waits for its turn, at most the configured wait,
+ * or is rejected right away in fail fast mode. The limits are set for a VC with the
+ * {@code nsfc.rateLimit.*} provider attributes, a rate of 0 does not limit the calls.
+ */
+public class RateLimiter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RateLimiter.class);
+
+    public static final String READS_PER_SECOND_ATTRIBUTE = "nsfc.rateLimit.readsPerSecond";
+    public static final String WRITES_PER_SECOND_ATTRIBUTE = "nsfc.rateLimit.writesPerSecond";
+    public static final String BURST_SECONDS_ATTRIBUTE = "nsfc.rateLimit.burstSeconds";
+    public static final String FAIL_FAST_ATTRIBUTE = "nsfc.rateLimit.failFast";
+    public static final String MAX_WAIT_ATTRIBUTE = "nsfc.rateLimit.maxWaitMillis";
+
+    public static final double DEFAULT_READS_PER_SECOND = 0;
+    public static final double DEFAULT_WRITES_PER_SECOND = 0;
+    public static final double DEFAULT_BURST_SECONDS = 1;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 30000;
+
+    private final TokenBucket reads;
+    private final TokenBucket writes;
+    private final boolean failFast;
+    private final long maxWaitNanos;
+
+    private final AtomicLong delayedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitedNanos = new AtomicLong();
+
+    /**
+     * @param readsPerSecond rate of the reads, 0 for no limit
+     * @param writesPerSecond rate of the creates, updates and deletes, 0 for no limit
+     * @param burstSeconds calls that can be saved up, in seconds of the rate
+     * @param failFast reject a call that finds no permit instead of waiting for one
+     * @param maxWaitMillis longest wait for a permit, a call that would wait longer is rejected
+     */
+    public RateLimiter(double readsPerSecond, double writesPerSecond, double burstSeconds, boolean failFast,
+                       long maxWaitMillis) {
+        checkArgument(readsPerSecond >= 0 && writesPerSecond >= 0, "invalid rates %s, %s", readsPerSecond,
+                writesPerSecond);
+        checkArgument(burstSeconds > 0, "burst must be positive but was %s", burstSeconds);
+        checkArgument(maxWaitMillis >= 0, "max wait must not be negative but was %s", maxWaitMillis);
+        this.reads = readsPerSecond > 0 ? new TokenBucket(readsPerSecond, burstSeconds) : null;
+        this.writes = writesPerSecond > 0 ? new TokenBucket(writesPerSecond, burstSeconds) : null;
+        this.failFast = failFast;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    public static RateLimiter unlimited() {
+        return new RateLimiter(0, 0, DEFAULT_BURST_SECONDS, false, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    public static RateLimiter forVc(VirtualizationConnectorElement vc) {
+        Map<String, String> attributes = vc.getProviderAttributes();
+        double readsPerSecond = Math.max(0, getDouble(attributes, READS_PER_SECOND_ATTRIBUTE, DEFAULT_READS_PER_SECOND));
+        double writesPerSecond = Math.max(0,
+                getDouble(attributes, WRITES_PER_SECOND_ATTRIBUTE, DEFAULT_WRITES_PER_SECOND));
+        double burstSeconds = getDouble(attributes, BURST_SECONDS_ATTRIBUTE, DEFAULT_BURST_SECONDS);
+        if (burstSeconds <= 0) {
+            LOG.warn("Ignoring invalid {} value {}", BURST_SECONDS_ATTRIBUTE, burstSeconds);
+            burstSeconds = DEFAULT_BURST_SECONDS;
+        }
+        long maxWaitMillis = Math.max(0, getLong(attributes, MAX_WAIT_ATTRIBUTE, DEFAULT_MAX_WAIT_MILLIS));
+        boolean failFast = getBoolean(attributes, FAIL_FAST_ATTRIBUTE);
+        return new RateLimiter(readsPerSecond, writesPerSecond, burstSeconds, failFast, maxWaitMillis);
+    }
+
+    /**
+     * Runs the call once a permit of its bucket is available.
+     *
+     * @throws RateLimitExceededException if no permit is available right away in fail fast mode,
+     * or within the max wait otherwise
+     */
+    public <T> T call(boolean write, Supplier<T> call) {
+        return call(write, Long.MAX_VALUE, call);
+    }
+
+    /**
+     * Runs the call like {@link #call(boolean, Supplier)}, waiting for a permit at most the given time,
+     * e.g. what is left of the lock hold time of a caller holding a lock.
+     */
+    public <T> T call(boolean write, long maxWaitMillis, Supplier<T> call) {
+        TokenBucket bucket = write ? this.writes : this.reads;
+        if (bucket != null) {
+            long maxWaitNanos = Math.min(this.maxWaitNanos, TimeUnit.MILLISECONDS.toNanos(maxWaitMillis));
+            acquire(bucket, write ? "write" : "read", maxWaitNanos);
+        }
+        return call.get();
+    }
+
+    public boolean isFailFast() {
+        return this.failFast;
+    }
+
+    /**
+     * Permits the reads can use right away, negative while calls wait for them, or
+     * {@link Double#POSITIVE_INFINITY} if reads are not limited.
+     */
+    public double getAvailableReadPermits() {
+        return this.reads == null ? Double.POSITIVE_INFINITY : this.reads.getAvailablePermits();
+    }
+
+    /**
+     * Permits the writes can use right away, negative while calls wait for them, or
+     * {@link Double#POSITIVE_INFINITY} if writes are not limited.
+     */
+    public double getAvailableWritePermits() {
+        return this.writes == null ? Double.POSITIVE_INFINITY : this.writes.getAvailablePermits();
+    }
+
+    /**
+     * Number of calls that waited for a permit.
+     */
+    public long getDelayedCount() {
+        return this.delayedCount.get();
+    }
+
+    /**
+     * Number of calls rejected for lack of a permit.
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.totalWaitNanos.get());
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.maxWaitedNanos.get());
+    }
+
+    private void acquire(TokenBucket bucket, String kind, long maxWaitNanos) {
+        long waitNanos = bucket.reserve(this.failFast ? 0 : maxWaitNanos);
+        if (waitNanos < 0) {
+            this.rejectedCount.incrementAndGet();
+            throw new RateLimitExceededException(String.format("Neutron %s rate limit of %s calls per second exceeded",
+                    kind, bucket.permitsPerSecond));
+        }
+        if (waitNanos == 0) {
+            return;
+        }
+
+        this.delayedCount.incrementAndGet();
+        this.totalWaitNanos.addAndGet(waitNanos);
+        this.maxWaitedNanos.accumulateAndGet(waitNanos, Math::max);
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RateLimitExceededException(String.format("Interrupted while waiting for a Neutron %s permit",
+                    kind));
+        }
+    }
+
+    private static final class TokenBucket {
+
+        private final double permitsPerSecond;
+        private final double capacity;
+
+        private double permits;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(double permitsPerSecond, double burstSeconds) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.capacity = Math.max(1, permitsPerSecond * burstSeconds);
+            this.permits = this.capacity;
+        }
+
+        /**
+         * Takes a permit, borrowing it from the refill if none is left, so the callers waiting
+         * are served in order.
+         *
+         * @return how long to wait for the permit, or -1 if that is longer than the max wait
+         * and no permit was taken
+         */
+        synchronized long reserve(long maxWaitNanos) {
+            refill();
+            if (this.permits >= 1) {
+                this.permits--;
+                return 0;
+            }
+
+            long waitNanos = (long) Math.ceil((1 - this.permits) / this.permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            this.permits--;
+            return waitNanos;
+        }
+
+        synchronized double getAvailablePermits() {
+            refill();
+            return this.permits;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            double refilled = (now - this.refilledAt) * this.permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.permits = Math.min(this.capacity, this.permits + refilled);
+            this.refilledAt = now;
+        }
+    }
+}
@@ -16,10 +16,15 @@
  *******************************************************************************/
 package org.osc.controller.nsfc.utils;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import org.openstack4j.api.Builders;
 import org.openstack4j.model.network.Port;
@@ -27,6 +32,8 @@ import org.openstack4j.model.network.ext.FlowClassifier;
 import org.openstack4j.model.network.ext.PortChain;
 import org.openstack4j.model.network.ext.PortPair;
 import org.openstack4j.model.network.ext.PortPairGroup;
+import org.osc.controller.nsfc.entities.PortPairElement;
+import org.osc.controller.nsfc.utils.SfcIndex.Lookup;
 import org.osc.sdk.controller.element.InspectionPortElement;
 import org.osc.sdk.controller.element.NetworkElement;
 import org.slf4j.Logger;
@@ -37,9 +44,19 @@ public class RedirectionApiUtils {
     private static final Logger LOG = LoggerFactory.getLogger(RedirectionApiUtils.class);
 
     private OsCalls osCalls;
+    private Supplier<SfcTopology> topology;
 
     public RedirectionApiUtils(OsCalls osCalls) {
+        this(osCalls, () -> SfcTopology.EMPTY);
+    }
+
+    /**
+     * @param topology the latest topology snapshot of the VC, used to find resources by their
+     * attributes without listing
+     */
+    public RedirectionApiUtils(OsCalls osCalls, Supplier<SfcTopology> topology) {
         this.osCalls = osCalls;
+        this.topology = topology;
     }
 
     public Port fetchProtectedPort(FlowClassifier flowClassifier) {
@@ -47,7 +64,9 @@ public class RedirectionApiUtils {
     }
 
     /**
-     * Expensive call: Searches through the list port pairs from openstack.
+     * Looks up the port pair by ingress and egress ids in the topology snapshot and confirms it
+     * with a single get. Otherwise lists the port pairs, filtered by Neutron where possible.
+     * Searches through the whole list of port pairs if Neutron does not support the filters.
      * @param ingress
      * @param egress
      *
@@ -57,7 +76,25 @@ public class RedirectionApiUtils {
         String ingressId = ingress != null ? ingress.getElementId() : null;
         String egressId = egress != null ? egress.getElementId() : null;
 
-        List<? extends PortPair> portPairs = this.osCalls.listPortPairs();
+        PortPairElement loaded = this.topology.get().getPortPair(ingressId, egressId);
+        if (loaded != null) {
+            PortPair portPair = this.osCalls.getPortPair(loaded.getElementId());
+            if (portPair != null && Objects.equals(ingressId, portPair.getIngressId())
+                    && Objects.equals(egressId, portPair.getEgressId())) {
+                return portPair;
+            }
+            LOG.info("Port pair {} of the topology snapshot changed, listing port pairs", loaded.getElementId());
+        }
+
+        Map<String, String> filters = new HashMap<>();
+        if (ingressId != null) {
+            filters.put("ingress", ingressId);
+        }
+        if (egressId != null) {
+            filters.put("egress", egressId);
+        }
+
+        List<? extends PortPair> portPairs = this.osCalls.listPortPairs(filters);
 
         return portPairs.stream()
                         .filter(pp -> Objects.equals(ingressId, pp.getIngressId())
@@ -86,7 +123,28 @@ public class RedirectionApiUtils {
         return portPair;
     }
 
+    /**
+     * Looks the group up in the membership index and confirms it with a single get. A miss on a
+     * complete index means there is no such group. Lists all port pair groups if the index is
+     * incomplete or gave a wrong answer, which also rebuilds it.
+     */
     public PortPairGroup fetchContainingPortPairGroup(String portPairId) {
+        SfcIndex index = this.osCalls.getIndex();
+
+        Lookup lookup = index.findPortPairGroup(portPairId);
+        String portPairGroupId = lookup.getId();
+        if (portPairGroupId != null) {
+            PortPairGroup portPairGroup = this.osCalls.getPortPairGroup(portPairGroupId);
+            if (portPairGroup != null && portPairGroup.getPortPairs() != null
+                    && portPairGroup.getPortPairs().contains(portPairId)) {
+                return portPairGroup;
+            }
+            LOG.info("Stale index entry for port pair {}, listing port pair groups", portPairId);
+            index.markPortPairGroupsIncomplete();
+        } else if (lookup.isNone()) {
+            return null;
+        }
+
         List<? extends PortPairGroup> portPairGroups = this.osCalls.listPortPairGroups();
         Optional<? extends PortPairGroup> ppgOpt = portPairGroups.stream()
                                         .filter(ppg -> ppg.getPortPairs().contains(portPairId))
@@ -95,20 +153,15 @@ public class RedirectionApiUtils {
     }
 
     public PortChain fetchContainingPortChain(String portPairGroupId) {
-        List<? extends PortChain> portChains = this.osCalls.listPortChains();
-        Optional<? extends PortChain> pcOpt = portChains.stream()
-                                        .filter(pc -> pc.getPortPairGroups().contains(portPairGroupId))
-                                        .findFirst();
-        return pcOpt.orElse(null);
+        return fetchContainingPortChain(portPairGroupId,
+                index -> index.findPortChainForPortPairGroup(portPairGroupId),
+                pc -> pc.getPortPairGroups() != null && pc.getPortPairGroups().contains(portPairGroupId));
     }
 
     public PortChain fetchContainingPortChainForFC(String flowClassifierId) {
-        List<? extends PortChain> portChains = this.osCalls.listPortChains();
-        Optional<? extends PortChain> pcOpt = portChains.stream()
-                                        .filter(pc -> pc.getFlowClassifiers() != null
-                                                          && pc.getFlowClassifiers().contains(flowClassifierId))
-                                        .findFirst();
-        return pcOpt.orElse(null);
+        return fetchContainingPortChain(flowClassifierId,
+                index -> index.findPortChainForFlowClassifier(flowClassifierId),
+                pc -> pc.getFlowClassifiers() != null && pc.getFlowClassifiers().contains(flowClassifierId));
     }
 
     public FlowClassifier buildFlowClassifier(String inspectedPortId) {
@@ -121,4 +174,31 @@ public class RedirectionApiUtils {
                              .build();
         return flowClassifier;
     }
+
+    /**
+     * Looks the chain up in the membership index like {@link #fetchContainingPortPairGroup(String)}.
+     */
+    private PortChain fetchContainingPortChain(String memberId, Function<SfcIndex, Lookup> indexLookup,
+                                               Predicate<PortChain> contains) {
+        SfcIndex index = this.osCalls.getIndex();
+
+        Lookup lookup = indexLookup.apply(index);
+        String portChainId = lookup.getId();
+        if (portChainId != null) {
+            PortChain portChain = this.osCalls.getPortChain(portChainId);
+            if (portChain != null && contains.test(portChain)) {
+                return portChain;
+            }
+            LOG.info("Stale index entry for {}, listing port chains", memberId);
+            index.markPortChainsIncomplete();
+        } else if (lookup.isNone()) {
+            return null;
+        }
+
+        List<? extends PortChain> portChains = this.osCalls.listPortChains();
+        Optional<? extends PortChain> pcOpt = portChains.stream()
+                                        .filter(contains)
+                                        .findFirst();
+        return pcOpt.orElse(null);
+    }
 }
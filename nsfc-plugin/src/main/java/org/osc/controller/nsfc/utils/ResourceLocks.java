@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+import com.google.common.util.concurrent.Striped;
+
+/**
+ * Striped locks that order the read-modify-write sequences on one port chain or port pair group
+ * of a VC, while sequences on different resources run in parallel.
+ *
+ * The locks are reentrant. A port pair group lock may be held while taking a port chain lock,
+ * never the other way around. Do not wait for {@link PortChainMutationCoalescer} results while
+ * holding a port chain lock, its updates take the same lock on another thread. Neutron calls made
+ * while holding a lock limit their retries to the {@link RetryPolicy} max lock hold time.
+ */
+public class ResourceLocks {
+
+    public static final int DEFAULT_STRIPES = 256;
+
+    private final Striped<Lock> portChainLocks;
+    private final Striped<Lock> portPairGroupLocks;
+
+    private final AtomicLong acquisitionCount = new AtomicLong();
+    private final AtomicLong contendedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public ResourceLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public ResourceLocks(int stripes) {
+        this.portChainLocks = Striped.lock(stripes);
+        this.portPairGroupLocks = Striped.lock(stripes);
+    }
+
+    public <T> T withPortChainLock(String portChainId, Supplier<T> action) {
+        return withLock(this.portChainLocks, portChainId, action);
+    }
+
+    public void withPortChainLock(String portChainId, Runnable action) {
+        withPortChainLock(portChainId, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public <T> T withPortPairGroupLock(String portPairGroupId, Supplier<T> action) {
+        return withLock(this.portPairGroupLocks, portPairGroupId, action);
+    }
+
+    public void withPortPairGroupLock(String portPairGroupId, Runnable action) {
+        withPortPairGroupLock(portPairGroupId, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public long getAcquisitionCount() {
+        return this.acquisitionCount.get();
+    }
+
+    /**
+     * Number of acquisitions that had to wait for another holder.
+     */
+    public long getContendedCount() {
+        return this.contendedCount.get();
+    }
+
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.totalWaitNanos.get());
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.maxWaitNanos.get());
+    }
+
+    private <T> T withLock(Striped<Lock> locks, String id, Supplier<T> action) {
+        checkArgument(id != null, "null passed for %s !", "Resource Id");
+
+        Lock lock = locks.get(id);
+        acquire(lock);
+        try {
+            return RetryPolicy.whileHolding(action);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acquire(Lock lock) {
+        this.acquisitionCount.incrementAndGet();
+        if (lock.tryLock()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        lock.lock();
+        long waited = System.nanoTime() - start;
+
+        this.contendedCount.incrementAndGet();
+        this.totalWaitNanos.addAndGet(waited);
+        this.maxWaitNanos.accumulateAndGet(waited, Math::max);
+    }
+}
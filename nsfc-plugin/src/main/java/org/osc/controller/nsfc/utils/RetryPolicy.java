@@ -0,0 +1,359 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getDouble;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getInt;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getLong;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.openstack4j.api.exceptions.ResponseException;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retries Neutron calls that failed for a transient reason, e.g. 503 while Neutron restarts
+ * or a reset connection.
+ *
+ * Whether a failure may be retried depends on the call: reads are always safe to repeat,
+ * updates and deletes have the same effect when repeated, but a create is only repeated if
+ * it never reached Neutron. Retries back off exponentially with jitter. A 409 an update or delete
+ * may get while the SFC agents resync is retried too, but only once, as it is just as likely a
+ * conflict Neutron will keep refusing.
+ *
+ * Retries draw on a budget shared by all calls of the VC. Every call adds a fraction of a retry
+ * to it, so during an outage the retries stay a small share of the calls instead of multiplying
+ * the load on Neutron.
+ *
+ * A call made while holding a resource lock, see {@link #whileHolding(Supplier)}, makes every other
+ * caller of that resource wait out its backoff. Such a call, or one handed off to another thread by
+ * the holder, see {@link #propagateHold(Supplier)}, gives up instead of backing off past the max lock
+ * hold time, counted from when the outermost lock was taken. Retries and give ups are published
+ * with the VC's {@link NeutronCallMetrics}.
+ * The policy is set for a VC with the {@code nsfc.retry.*} provider attributes.
+ */
+public class RetryPolicy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RetryPolicy.class);
+
+    public static final String MAX_ATTEMPTS_ATTRIBUTE = "nsfc.retry.maxAttempts";
+    public static final String BASE_DELAY_ATTRIBUTE = "nsfc.retry.baseDelayMillis";
+    public static final String MAX_DELAY_ATTRIBUTE = "nsfc.retry.maxDelayMillis";
+    public static final String BUDGET_RATIO_ATTRIBUTE = "nsfc.retry.budgetRatio";
+    public static final String BUDGET_CAPACITY_ATTRIBUTE = "nsfc.retry.budgetCapacity";
+    public static final String MAX_LOCK_HOLD_ATTRIBUTE = "nsfc.retry.maxLockHoldMillis";
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 100;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 2000;
+    public static final double DEFAULT_BUDGET_RATIO = 0.1;
+    public static final int DEFAULT_BUDGET_CAPACITY = 20;
+    public static final long DEFAULT_MAX_LOCK_HOLD_MILLIS = 1000;
+
+    private static final Set<Integer> TRANSIENT_STATUSES = new HashSet<>(Arrays.asList(429, 502, 503, 504));
+
+    private static final int CONFLICT = 409;
+
+    /** Attempts of a call that keeps failing with a conflict, including the first one */
+    private static final int CONFLICT_MAX_ATTEMPTS = 2;
+
+    private static final ThreadLocal<Hold> HOLD = ThreadLocal.withInitial(Hold::new);
+
+    public enum Idempotency {
+        /** Reads, repeated on any transient failure */
+        Safe,
+        /** Updates and deletes, repeated on any transient failure and once on a conflict */
+        Idempotent,
+        /** Creates, only repeated if the request never reached Neutron */
+        NonIdempotent
+    }
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final double budgetRatio;
+    private final int budgetCapacity;
+    private final long maxLockHoldMillis;
+    private final NeutronCallMetrics callMetrics;
+
+    private double budget;
+
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong budgetExhaustedCount = new AtomicLong();
+    private final AtomicLong lockHoldExceededCount = new AtomicLong();
+
+    public RetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, DEFAULT_BUDGET_RATIO,
+                DEFAULT_BUDGET_CAPACITY);
+    }
+
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, double budgetRatio,
+                       int budgetCapacity) {
+        this(maxAttempts, baseDelayMillis, maxDelayMillis, budgetRatio, budgetCapacity, DEFAULT_MAX_LOCK_HOLD_MILLIS,
+                NeutronCallMetrics.disabled());
+    }
+
+    /**
+     * @param maxAttempts attempts per call including the first one, 1 disables retries
+     * @param budgetRatio retries earned by every call
+     * @param budgetCapacity retries that can be saved up, available right away
+     * @param maxLockHoldMillis time a lock may be held before a call made under it stops backing off
+     * @param callMetrics metrics of the VC the retries and give ups are published with
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, double budgetRatio,
+                       int budgetCapacity, long maxLockHoldMillis, NeutronCallMetrics callMetrics) {
+        checkArgument(maxAttempts > 0, "max attempts must be positive but was %s", maxAttempts);
+        checkArgument(baseDelayMillis >= 0 && maxDelayMillis >= baseDelayMillis,
+                "invalid retry delays %s, %s", baseDelayMillis, maxDelayMillis);
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.budgetRatio = budgetRatio;
+        this.budgetCapacity = budgetCapacity;
+        this.maxLockHoldMillis = maxLockHoldMillis;
+        this.callMetrics = callMetrics;
+        this.budget = budgetCapacity;
+    }
+
+    public static RetryPolicy forVc(VirtualizationConnectorElement vc, NeutronCallMetrics callMetrics) {
+        Map<String, String> attributes = vc.getProviderAttributes();
+        int maxAttempts = Math.max(1, getInt(attributes, MAX_ATTEMPTS_ATTRIBUTE, DEFAULT_MAX_ATTEMPTS));
+        long baseDelayMillis = Math.max(0, getLong(attributes, BASE_DELAY_ATTRIBUTE, DEFAULT_BASE_DELAY_MILLIS));
+        long maxDelayMillis = Math.max(baseDelayMillis,
+                getLong(attributes, MAX_DELAY_ATTRIBUTE, DEFAULT_MAX_DELAY_MILLIS));
+        double budgetRatio = Math.max(0, getDouble(attributes, BUDGET_RATIO_ATTRIBUTE, DEFAULT_BUDGET_RATIO));
+        int budgetCapacity = Math.max(0, getInt(attributes, BUDGET_CAPACITY_ATTRIBUTE, DEFAULT_BUDGET_CAPACITY));
+        long maxLockHoldMillis = Math.max(0,
+                getLong(attributes, MAX_LOCK_HOLD_ATTRIBUTE, DEFAULT_MAX_LOCK_HOLD_MILLIS));
+        return new RetryPolicy(maxAttempts, baseDelayMillis, maxDelayMillis, budgetRatio, budgetCapacity,
+                maxLockHoldMillis, callMetrics);
+    }
+
+    /**
+     * Runs the call, repeating it while it fails transiently and attempts, budget and lock hold
+     * time remain. The last failure is thrown as is.
+     */
+    public <T> T call(Idempotency idempotency, Supplier<T> call) {
+        this.callCount.incrementAndGet();
+        deposit();
+
+        for (int attempt = 1;; attempt++) {
+            try {
+                return call.get();
+            } catch (RuntimeException e) {
+                if (!isRetryable(idempotency, e)) {
+                    throw e;
+                }
+                if (attempt >= this.maxAttempts || (attempt >= CONFLICT_MAX_ATTEMPTS && isConflict(e))) {
+                    this.callMetrics.recordRetryGiveUp();
+                    throw e;
+                }
+
+                long delayMillis = delayMillis(attempt);
+                long heldMillis = heldMillis();
+                if (heldMillis >= 0 && heldMillis + delayMillis > this.maxLockHoldMillis) {
+                    this.lockHoldExceededCount.incrementAndGet();
+                    this.callMetrics.recordRetryGiveUp();
+                    LOG.warn("Lock held for {} ms, not retrying failed Neutron call: {}", heldMillis, e.getMessage());
+                    throw e;
+                }
+                if (!withdraw()) {
+                    this.budgetExhaustedCount.incrementAndGet();
+                    this.callMetrics.recordRetryGiveUp();
+                    LOG.warn("Retry budget exhausted, not retrying failed Neutron call: {}", e.getMessage());
+                    throw e;
+                }
+
+                this.retryCount.incrementAndGet();
+                this.callMetrics.recordRetry();
+                LOG.info("Retrying Neutron call in {} ms after attempt {} failed: {}", delayMillis, attempt,
+                        e.getMessage());
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the action as the holder of a lock other callers wait for, which limits the
+     * backoff of the retries made within it. Nested holds count from the outermost one.
+     */
+    public static <T> T whileHolding(Supplier<T> action) {
+        Hold hold = HOLD.get();
+        if (hold.depth++ == 0) {
+            hold.sinceNanos = System.nanoTime();
+        }
+        try {
+            return action.get();
+        } finally {
+            hold.depth--;
+        }
+    }
+
+    /**
+     * Carries the hold of the current thread, if any, over to the thread that runs the action, so
+     * that work handed off while holding a lock is limited by the same max lock hold time. Returns
+     * the action as is if the current thread holds no lock.
+     */
+    public static <T> Supplier<T> propagateHold(Supplier<T> action) {
+        Hold hold = HOLD.get();
+        if (hold.depth == 0) {
+            return action;
+        }
+
+        long sinceNanos = hold.sinceNanos;
+        return () -> {
+            Hold current = HOLD.get();
+            if (current.depth++ == 0) {
+                current.sinceNanos = sinceNanos;
+            }
+            try {
+                return action.get();
+            } finally {
+                current.depth--;
+            }
+        };
+    }
+
+    public static boolean isRetryable(Idempotency idempotency, Throwable failure) {
+        for (Throwable e = failure; e != null; e = e.getCause() == e ? null : e.getCause()) {
+            if (e instanceof ConnectException || e instanceof NoRouteToHostException
+                    || e instanceof UnknownHostException) {
+                // The request never reached Neutron
+                return true;
+            }
+            if (idempotency == Idempotency.NonIdempotent) {
+                continue;
+            }
+            if (e instanceof ResponseException && ((ResponseException) e).getStatus() > 0) {
+                int status = ((ResponseException) e).getStatus();
+                return TRANSIENT_STATUSES.contains(status)
+                        || status == CONFLICT && idempotency == Idempotency.Idempotent;
+            }
+            if (e instanceof SocketException || e instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    public long getCallCount() {
+        return this.callCount.get();
+    }
+
+    /**
+     * Number of calls repeated after a transient failure.
+     */
+    public long getRetryCount() {
+        return this.retryCount.get();
+    }
+
+    /**
+     * Number of transient failures that were not retried for lack of budget.
+     */
+    public long getBudgetExhaustedCount() {
+        return this.budgetExhaustedCount.get();
+    }
+
+    /**
+     * Number of transient failures that were not retried because a lock was held for too long.
+     */
+    public long getLockHoldExceededCount() {
+        return this.lockHoldExceededCount.get();
+    }
+
+    public long getMaxLockHoldMillis() {
+        return this.maxLockHoldMillis;
+    }
+
+    /**
+     * How much longer the current thread may keep the lock it holds, so that it does not wait for a
+     * permit or a slot in flight past the max lock hold time. {@link Long#MAX_VALUE} if it holds none.
+     */
+    public long getRemainingHoldMillis() {
+        long heldMillis = heldMillis();
+        return heldMillis < 0 ? Long.MAX_VALUE : Math.max(0, this.maxLockHoldMillis - heldMillis);
+    }
+
+    public synchronized double getBudget() {
+        return this.budget;
+    }
+
+    private long delayMillis(int attempt) {
+        long ceiling = Math.min(this.maxDelayMillis, this.baseDelayMillis << Math.min(attempt - 1, 20));
+        // Equal jitter: at least half the backoff, so retries neither stampede nor fire at once
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    /**
+     * @return how long the current thread has held a lock, -1 if it holds none
+     */
+    private static long heldMillis() {
+        Hold hold = HOLD.get();
+        return hold.depth == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - hold.sinceNanos);
+    }
+
+    private static boolean isConflict(Throwable failure) {
+        for (Throwable e = failure; e != null; e = e.getCause() == e ? null : e.getCause()) {
+            if (e instanceof ResponseException && ((ResponseException) e).getStatus() > 0) {
+                return ((ResponseException) e).getStatus() == CONFLICT;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void deposit() {
+        this.budget = Math.min(this.budgetCapacity, this.budget + this.budgetRatio);
+    }
+
+    private synchronized boolean withdraw() {
+        if (this.budget < 1) {
+            return false;
+        }
+        this.budget--;
+        return true;
+    }
+
+    private static class Hold {
+        private int depth;
+        private long sinceNanos;
+    }
+}
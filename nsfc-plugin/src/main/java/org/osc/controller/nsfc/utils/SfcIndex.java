@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openstack4j.model.network.ext.PortChain;
+import org.openstack4j.model.network.ext.PortPairGroup;
+
+/**
+ * Reverse membership indexes of one VC: port pair to port pair group,
+ * port pair group to port chain and flow classifier to port chain.
+ *
+ * {@link OsCalls} applies every mutation it makes and every group or chain it reads for a
+ * read-modify-write, and rebuilds an index whenever it lists all port pair groups or port chains.
+ * A rebuilt index is complete: a resource it has no entry for is in no group or chain, so lookups
+ * answer a miss without calling Neutron. An index is incomplete until it is first rebuilt, after a
+ * mutation whose outcome is unknown and after a caller found an entry changed outside of this
+ * plugin; callers list on a miss then, which rebuilds it. Entries found must still be verified.
+ *
+ * The mutations are also kept in a short journal. A rebuild applies the ones made while its listing
+ * was in flight on top of the listing, so that it does not lose them.
+ */
+public class SfcIndex {
+
+    static final int JOURNAL_SIZE = 1024;
+
+    private final Map<String, String> portPairToGroup = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> groupToPortPairs = new ConcurrentHashMap<>();
+
+    private final Map<String, String> groupToChain = new ConcurrentHashMap<>();
+    private final Map<String, String> flowClassifierToChain = new ConcurrentHashMap<>();
+    private final Map<String, PortChainMembers> chainToMembers = new ConcurrentHashMap<>();
+
+    private final Journal portPairGroupChanges = new Journal();
+    private final Journal portChainChanges = new Journal();
+
+    private volatile boolean portPairGroupsComplete;
+    private volatile boolean portChainsComplete;
+
+    /** Number of mutations so far, guarded by this */
+    private long version;
+
+    public String getPortPairGroupId(String portPairId) {
+        return portPairId == null ? null : this.portPairToGroup.get(portPairId);
+    }
+
+    public String getPortChainIdForPortPairGroup(String portPairGroupId) {
+        return portPairGroupId == null ? null : this.groupToChain.get(portPairGroupId);
+    }
+
+    public String getPortChainIdForFlowClassifier(String flowClassifierId) {
+        return flowClassifierId == null ? null : this.flowClassifierToChain.get(flowClassifierId);
+    }
+
+    /**
+     * Looks the group up together with whether the index is complete, so a rebuild or mutation in
+     * between cannot turn an unknown into a known miss.
+     */
+    public synchronized Lookup findPortPairGroup(String portPairId) {
+        return new Lookup(getPortPairGroupId(portPairId), this.portPairGroupsComplete);
+    }
+
+    public synchronized Lookup findPortChainForPortPairGroup(String portPairGroupId) {
+        return new Lookup(getPortChainIdForPortPairGroup(portPairGroupId), this.portChainsComplete);
+    }
+
+    public synchronized Lookup findPortChainForFlowClassifier(String flowClassifierId) {
+        return new Lookup(getPortChainIdForFlowClassifier(flowClassifierId), this.portChainsComplete);
+    }
+
+    public boolean isPortPairGroupsComplete() {
+        return this.portPairGroupsComplete;
+    }
+
+    public boolean isPortChainsComplete() {
+        return this.portChainsComplete;
+    }
+
+    /**
+     * @return the version to pass to a rebuild from a listing started now
+     */
+    public synchronized long getVersion() {
+        return this.version;
+    }
+
+    public synchronized void putPortPairGroup(PortPairGroup portPairGroup) {
+        if (portPairGroup == null || portPairGroup.getId() == null) {
+            return;
+        }
+
+        String portPairGroupId = portPairGroup.getId();
+        List<String> portPairs = copyOf(portPairGroup.getPortPairs());
+        apply(this.portPairGroupChanges, () -> indexPortPairGroup(portPairGroupId, portPairs));
+    }
+
+    public synchronized void removePortPairGroup(String portPairGroupId) {
+        if (portPairGroupId == null) {
+            return;
+        }
+
+        apply(this.portPairGroupChanges, () -> unindexPortPairGroup(portPairGroupId));
+    }
+
+    public synchronized void putPortChain(PortChain portChain) {
+        if (portChain == null || portChain.getId() == null) {
+            return;
+        }
+
+        String portChainId = portChain.getId();
+        PortChainMembers members = new PortChainMembers(copyOf(portChain.getPortPairGroups()),
+                copyOf(portChain.getFlowClassifiers()));
+        apply(this.portChainChanges, () -> indexPortChain(portChainId, members));
+    }
+
+    public synchronized void removePortChain(String portChainId) {
+        if (portChainId == null) {
+            return;
+        }
+
+        apply(this.portChainChanges, () -> unindexPortChain(portChainId));
+    }
+
+    /**
+     * Makes lookups list port pair groups on a miss until the next rebuild, e.g. when a group may
+     * have changed without the index knowing how.
+     */
+    public synchronized void markPortPairGroupsIncomplete() {
+        this.portPairGroupsComplete = false;
+        this.portPairGroupChanges.incompleteAt = ++this.version;
+    }
+
+    /**
+     * Makes lookups list port chains on a miss until the next rebuild.
+     */
+    public synchronized void markPortChainsIncomplete() {
+        this.portChainsComplete = false;
+        this.portChainChanges.incompleteAt = ++this.version;
+    }
+
+    /**
+     * @param listedAtVersion the {@link #getVersion() version} taken before the listing was requested
+     */
+    public synchronized void rebuildPortPairGroups(List<? extends PortPairGroup> portPairGroups, long listedAtVersion) {
+        this.portPairToGroup.clear();
+        this.groupToPortPairs.clear();
+        portPairGroups.stream()
+                .filter(ppg -> ppg != null && ppg.getId() != null)
+                .forEach(ppg -> indexPortPairGroup(ppg.getId(), copyOf(ppg.getPortPairs())));
+        this.portPairGroupsComplete = this.portPairGroupChanges.replaySince(listedAtVersion);
+    }
+
+    /**
+     * @param listedAtVersion the {@link #getVersion() version} taken before the listing was requested
+     */
+    public synchronized void rebuildPortChains(List<? extends PortChain> portChains, long listedAtVersion) {
+        this.groupToChain.clear();
+        this.flowClassifierToChain.clear();
+        this.chainToMembers.clear();
+        portChains.stream()
+                .filter(pc -> pc != null && pc.getId() != null)
+                .forEach(pc -> indexPortChain(pc.getId(), new PortChainMembers(copyOf(pc.getPortPairGroups()),
+                        copyOf(pc.getFlowClassifiers()))));
+        this.portChainsComplete = this.portChainChanges.replaySince(listedAtVersion);
+    }
+
+    public synchronized void clear() {
+        this.portPairToGroup.clear();
+        this.groupToPortPairs.clear();
+        this.groupToChain.clear();
+        this.flowClassifierToChain.clear();
+        this.chainToMembers.clear();
+        this.portPairGroupChanges.clear();
+        this.portChainChanges.clear();
+        // A listing in flight cannot tell what was cleared
+        markPortPairGroupsIncomplete();
+        markPortChainsIncomplete();
+    }
+
+    private void apply(Journal journal, Runnable change) {
+        change.run();
+        journal.add(++this.version, change);
+    }
+
+    private void indexPortPairGroup(String portPairGroupId, List<String> portPairs) {
+        unindexPortPairGroup(portPairGroupId);
+        this.groupToPortPairs.put(portPairGroupId, portPairs);
+        portPairs.forEach(portPairId -> this.portPairToGroup.put(portPairId, portPairGroupId));
+    }
+
+    private void unindexPortPairGroup(String portPairGroupId) {
+        List<String> portPairs = this.groupToPortPairs.remove(portPairGroupId);
+        if (portPairs != null) {
+            portPairs.forEach(portPairId -> this.portPairToGroup.remove(portPairId, portPairGroupId));
+        }
+    }
+
+    private void indexPortChain(String portChainId, PortChainMembers members) {
+        unindexPortChain(portChainId);
+        this.chainToMembers.put(portChainId, members);
+        members.portPairGroups.forEach(ppgId -> this.groupToChain.put(ppgId, portChainId));
+        members.flowClassifiers.forEach(fcId -> this.flowClassifierToChain.put(fcId, portChainId));
+    }
+
+    private void unindexPortChain(String portChainId) {
+        PortChainMembers members = this.chainToMembers.remove(portChainId);
+        if (members != null) {
+            members.portPairGroups.forEach(ppgId -> this.groupToChain.remove(ppgId, portChainId));
+            members.flowClassifiers.forEach(fcId -> this.flowClassifierToChain.remove(fcId, portChainId));
+        }
+    }
+
+    private static List<String> copyOf(List<String> ids) {
+        return ids == null ? Collections.emptyList() : ids.stream().filter(Objects::nonNull).collect(toList());
+    }
+
+    /**
+     * Answer of the index for one resource.
+     */
+    public static final class Lookup {
+        private final String id;
+        private final boolean complete;
+
+        private Lookup(String id, boolean complete) {
+            this.id = id;
+            this.complete = complete;
+        }
+
+        /**
+         * @return the id of the group or chain indexed for the resource, null if there is none
+         */
+        public String getId() {
+            return this.id;
+        }
+
+        /**
+         * @return whether the resource is in no group or chain, known from a complete index
+         */
+        public boolean isNone() {
+            return this.id == null && this.complete;
+        }
+    }
+
+    private static final class PortChainMembers {
+        private final List<String> portPairGroups;
+        private final List<String> flowClassifiers;
+
+        private PortChainMembers(List<String> portPairGroups, List<String> flowClassifiers) {
+            this.portPairGroups = portPairGroups;
+            this.flowClassifiers = flowClassifiers;
+        }
+    }
+
+    /**
+     * The last mutations of one index, guarded by the index.
+     */
+    private static final class Journal {
+        private final Deque<Change> changes = new ArrayDeque<>();
+        /** Version of the newest change dropped from the journal */
+        private long droppedAt;
+        /** Version at which the index was last marked incomplete */
+        private long incompleteAt;
+
+        private void add(long version, Runnable change) {
+            this.changes.addLast(new Change(version, change));
+            if (this.changes.size() > JOURNAL_SIZE) {
+                this.droppedAt = this.changes.removeFirst().version;
+            }
+        }
+
+        /**
+         * Applies the changes made since the version again.
+         *
+         * @return whether the index is complete, i.e. no change since the version is missing and the
+         * index was not marked incomplete since
+         */
+        private boolean replaySince(long version) {
+            this.changes.stream().filter(change -> change.version > version).forEach(change -> change.change.run());
+            return this.droppedAt <= version && this.incompleteAt <= version;
+        }
+
+        private void clear() {
+            this.changes.clear();
+        }
+    }
+
+    private static final class Change {
+        private final long version;
+        private final Runnable change;
+
+        private Change(long version, Runnable change) {
+            this.version = version;
+            this.change = change;
+        }
+    }
+}
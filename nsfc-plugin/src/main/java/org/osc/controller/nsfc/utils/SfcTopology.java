@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openstack4j.model.network.Port;
+import org.openstack4j.model.network.ext.FlowClassifier;
+import org.openstack4j.model.network.ext.PortChain;
+import org.openstack4j.model.network.ext.PortPair;
+import org.openstack4j.model.network.ext.PortPairGroup;
+import org.osc.controller.nsfc.entities.FlowClassifierElement;
+import org.osc.controller.nsfc.entities.NetworkElementImpl;
+import org.osc.controller.nsfc.entities.PortPairElement;
+import org.osc.controller.nsfc.entities.PortPairGroupElement;
+import org.osc.controller.nsfc.entities.ServiceFunctionChainElement;
+
+/**
+ * Point-in-time, cross-linked graph of the SFC resources of one VC.
+ *
+ * The graph is fully built before it is published and never modified afterwards, so it can be
+ * read from any thread without locking. Elements handed out must be treated as read-only.
+ */
+public final class SfcTopology {
+
+    public static final SfcTopology EMPTY = new SfcTopology(Collections.emptyMap(), Collections.emptyMap(),
+            Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), 0);
+
+    private final Map<String, PortPairElement> portPairs;
+    private final Map<String, PortPairElement> portPairsByPorts;
+    private final Map<String, PortPairGroupElement> portPairGroups;
+    private final Map<String, ServiceFunctionChainElement> serviceFunctionChains;
+    private final Map<String, FlowClassifierElement> flowClassifiers;
+    private final long loadedAt;
+
+    private SfcTopology(Map<String, PortPairElement> portPairs, Map<String, PortPairElement> portPairsByPorts,
+                        Map<String, PortPairGroupElement> portPairGroups,
+                        Map<String, ServiceFunctionChainElement> serviceFunctionChains,
+                        Map<String, FlowClassifierElement> flowClassifiers, long loadedAt) {
+        this.portPairs = unmodifiableMap(portPairs);
+        this.portPairsByPorts = unmodifiableMap(portPairsByPorts);
+        this.portPairGroups = unmodifiableMap(portPairGroups);
+        this.serviceFunctionChains = unmodifiableMap(serviceFunctionChains);
+        this.flowClassifiers = unmodifiableMap(flowClassifiers);
+        this.loadedAt = loadedAt;
+    }
+
+    public static SfcTopology build(List<? extends PortPair> portPairList, List<? extends PortPairGroup> portPairGroupList,
+                                    List<? extends PortChain> portChainList, List<? extends FlowClassifier> flowClassifierList,
+                                    List<? extends Port> portList) {
+        Map<String, Port> ports = new HashMap<>();
+        portList.forEach(port -> ports.put(port.getId(), port));
+
+        Map<String, PortPairElement> portPairs = new HashMap<>();
+        Map<String, PortPairElement> portPairsByPorts = new HashMap<>();
+        for (PortPair portPair : portPairList) {
+            PortPairElement ppElement = new PortPairElement(portPair.getId(), null,
+                    networkElement(ports, portPair.getIngressId(), portPair.getId()),
+                    networkElement(ports, portPair.getEgressId(), portPair.getId()));
+            portPairs.put(portPair.getId(), ppElement);
+            portPairsByPorts.put(portsKey(portPair.getIngressId(), portPair.getEgressId()), ppElement);
+        }
+
+        Map<String, PortPairGroupElement> portPairGroups = new HashMap<>();
+        for (PortPairGroup portPairGroup : portPairGroupList) {
+            PortPairGroupElement ppgElement = new PortPairGroupElement(portPairGroup.getId());
+            for (String portPairId : nonNull(portPairGroup.getPortPairs())) {
+                PortPairElement ppElement = portPairs.get(portPairId);
+                if (ppElement != null) {
+                    ppElement.setPortPairGroup(ppgElement);
+                    ppgElement.getPortPairs().add(ppElement);
+                }
+            }
+            portPairGroups.put(portPairGroup.getId(), ppgElement);
+        }
+
+        Map<String, ServiceFunctionChainElement> chains = new HashMap<>();
+        Map<String, ServiceFunctionChainElement> chainByFlowClassifier = new HashMap<>();
+        for (PortChain portChain : portChainList) {
+            ServiceFunctionChainElement sfcElement = new ServiceFunctionChainElement(portChain.getId());
+            List<PortPairGroupElement> ppgElements = new ArrayList<>();
+            for (String portPairGroupId : nonNull(portChain.getPortPairGroups())) {
+                PortPairGroupElement ppgElement = portPairGroups.get(portPairGroupId);
+                if (ppgElement != null) {
+                    ppgElement.setServiceFunctionChain(sfcElement);
+                    ppgElements.add(ppgElement);
+                }
+            }
+            sfcElement.setPortPairGroups(ppgElements);
+            nonNull(portChain.getFlowClassifiers()).forEach(fcId -> chainByFlowClassifier.put(fcId, sfcElement));
+            chains.put(portChain.getId(), sfcElement);
+        }
+
+        Map<String, FlowClassifierElement> flowClassifiers = new HashMap<>();
+        for (FlowClassifier flowClassifier : flowClassifierList) {
+            ServiceFunctionChainElement sfcElement = chainByFlowClassifier.get(flowClassifier.getId());
+            FlowClassifierElement fcElement = new FlowClassifierElement(flowClassifier.getId(),
+                    networkElement(ports, flowClassifier.getLogicalDestinationPort(), null), sfcElement);
+            if (sfcElement != null) {
+                sfcElement.getInspectionHooks().add(fcElement);
+            }
+            flowClassifiers.put(flowClassifier.getId(), fcElement);
+        }
+
+        return new SfcTopology(portPairs, portPairsByPorts, portPairGroups, chains, flowClassifiers,
+                System.currentTimeMillis());
+    }
+
+    public PortPairElement getPortPair(String portPairId) {
+        return this.portPairs.get(portPairId);
+    }
+
+    /**
+     * @return the port pair that had the ingress and egress ports when the topology was loaded
+     */
+    public PortPairElement getPortPair(String ingressId, String egressId) {
+        return this.portPairsByPorts.get(portsKey(ingressId, egressId));
+    }
+
+    public PortPairGroupElement getPortPairGroup(String portPairGroupId) {
+        return this.portPairGroups.get(portPairGroupId);
+    }
+
+    public ServiceFunctionChainElement getServiceFunctionChain(String portChainId) {
+        return this.serviceFunctionChains.get(portChainId);
+    }
+
+    public FlowClassifierElement getFlowClassifier(String flowClassifierId) {
+        return this.flowClassifiers.get(flowClassifierId);
+    }
+
+    public Collection<PortPairElement> getPortPairs() {
+        return this.portPairs.values();
+    }
+
+    public Collection<PortPairGroupElement> getPortPairGroups() {
+        return this.portPairGroups.values();
+    }
+
+    public Collection<ServiceFunctionChainElement> getServiceFunctionChains() {
+        return this.serviceFunctionChains.values();
+    }
+
+    public Collection<FlowClassifierElement> getFlowClassifiers() {
+        return this.flowClassifiers.values();
+    }
+
+    public long getLoadedAt() {
+        return this.loadedAt;
+    }
+
+    private static NetworkElementImpl networkElement(Map<String, Port> ports, String portId, String parentId) {
+        if (portId == null) {
+            return null;
+        }
+
+        Port port = ports.get(portId);
+        if (port == null) {
+            return new NetworkElementImpl(portId, null, null, parentId);
+        }
+
+        List<String> ips = port.getFixedIps() == null ? new ArrayList<>()
+                : port.getFixedIps().stream().map(ip -> ip.getIpAddress()).collect(toList());
+        return new NetworkElementImpl(port.getId(), singletonList(port.getMacAddress()), ips, parentId);
+    }
+
+    private static String portsKey(String ingressId, String egressId) {
+        return ingressId + "|" + egressId;
+    }
+
+    private static List<String> nonNull(List<String> ids) {
+        return ids == null ? Collections.emptyList() : ids;
+    }
+}
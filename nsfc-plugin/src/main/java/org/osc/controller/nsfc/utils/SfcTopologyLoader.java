@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static org.osc.controller.nsfc.utils.ProviderAttributes.getLong;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openstack4j.model.network.Port;
+import org.openstack4j.model.network.ext.FlowClassifier;
+import org.openstack4j.model.network.ext.PortChain;
+import org.openstack4j.model.network.ext.PortPair;
+import org.openstack4j.model.network.ext.PortPairGroup;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the whole SFC topology of a VC with all list calls in flight at once, so a load
+ * takes about as long as the slowest list. The latest snapshot is swapped in atomically.
+ * Loading also rebuilds the membership index as a side effect of listing.
+ *
+ * A {@link VcSession} loads the topology when it is first used and reloads it every
+ * {@value #REFRESH_ATTRIBUTE} milliseconds, to pick up changes made outside of this plugin.
+ */
+public class SfcTopologyLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SfcTopologyLoader.class);
+
+    public static final String REFRESH_ATTRIBUTE = "nsfc.topology.refreshMillis";
+
+    public static final long DEFAULT_REFRESH_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Executor executor;
+
+    private final AtomicReference<SfcTopology> topology = new AtomicReference<>(SfcTopology.EMPTY);
+
+    public SfcTopologyLoader(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return the reload period of the VC, 0 to load the topology only once
+     */
+    public static long refreshMillis(VirtualizationConnectorElement vc) {
+        return Math.max(0, getLong(vc.getProviderAttributes(), REFRESH_ATTRIBUTE, DEFAULT_REFRESH_MILLIS));
+    }
+
+    public SfcTopology getTopology() {
+        return this.topology.get();
+    }
+
+    public SfcTopology load(OsCalls osCalls) {
+        try {
+            return loadAsync(osCalls).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Loads without blocking the calling thread, e.g. a scheduler thread. The topology is
+     * only swapped in if every list call succeeds.
+     */
+    public CompletableFuture<SfcTopology> loadAsync(OsCalls osCalls) {
+        long start = System.currentTimeMillis();
+
+        CompletableFuture<List<? extends PortPair>> portPairs =
+                supplyAsync(osCalls.inSession(osCalls::listPortPairs), this.executor);
+        CompletableFuture<List<? extends PortPairGroup>> portPairGroups =
+                supplyAsync(osCalls.inSession(osCalls::listPortPairGroups), this.executor);
+        CompletableFuture<List<? extends PortChain>> portChains =
+                supplyAsync(osCalls.inSession(osCalls::listPortChains), this.executor);
+        CompletableFuture<List<? extends FlowClassifier>> flowClassifiers =
+                supplyAsync(osCalls.inSession(osCalls::listFlowClassifiers), this.executor);
+        CompletableFuture<List<? extends Port>> ports =
+                supplyAsync(osCalls.inSession(osCalls::listPorts), this.executor);
+
+        return CompletableFuture.allOf(portPairs, portPairGroups, portChains, flowClassifiers, ports)
+                .thenApply(loaded -> {
+                    SfcTopology topology = SfcTopology.build(portPairs.join(), portPairGroups.join(),
+                            portChains.join(), flowClassifiers.join(), ports.join());
+                    this.topology.set(topology);
+                    LOG.info("Loaded SFC topology with {} port chains in {} ms",
+                            topology.getServiceFunctionChains().size(), System.currentTimeMillis() - start);
+                    return topology;
+                });
+    }
+
+    /**
+     * Drops the loaded topology, e.g. when the session it belongs to is invalidated.
+     */
+    public void clear() {
+        this.topology.set(SfcTopology.EMPTY);
+    }
+}
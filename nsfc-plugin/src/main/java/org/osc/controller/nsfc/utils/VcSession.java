@@ -0,0 +1,347 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.utils;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import org.openstack4j.api.OSClient.OSClientV3;
+import org.openstack4j.api.types.Facing;
+import org.openstack4j.core.transport.Config;
+import org.openstack4j.model.identity.v3.Token;
+import org.openstack4j.openstack.OSFactory;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Authenticated Keystone session of a single Virtualization Connector.
+ *
+ * The token is shared by every caller and only re-acquired when it gets within
+ * the expiry margin. openstack4j binds a client to the thread that created it,
+ * so each call to {@link #getClient()} hands out a client built from the cached token.
+ *
+ * {@link OsClientPool} refreshes the token in the background ahead of expiry; the new
+ * client and token are swapped in together so readers never see a mixed pair.
+ */
+public class VcSession {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VcSession.class);
+
+    private final String key;
+    private final VirtualizationConnectorElement vc;
+    private final Map<String, String> providerAttributes;
+    private final Function<VirtualizationConnectorElement, OSClientV3> authenticator;
+    private final long expiryMarginMillis;
+    private final OsCallsCache cache;
+    private final NeutronSfcQueryService queryService;
+    private final SfcIndex index = new SfcIndex();
+    private final SfcTopologyLoader topologyLoader;
+    private final AtomicBoolean topologyLoaded = new AtomicBoolean();
+    private final long topologyRefreshMillis;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService scheduler;
+    private final Semaphore asyncPermits;
+    private final Config connectorConfig;
+    private final ResourceLocks locks = new ResourceLocks();
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final RateLimiter rateLimiter;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final NeutronCallMetrics callMetrics;
+    private final PortChainMutationCoalescer coalescer;
+
+    private volatile Authenticated current;
+    private volatile long lastAccess = System.currentTimeMillis();
+    private volatile ScheduledFuture<?> topologyRefresh;
+    private volatile CompletableFuture<SfcTopology> topologyReload = CompletableFuture.completedFuture(null);
+
+    VcSession(String key, VirtualizationConnectorElement vc,
+              Function<VirtualizationConnectorElement, OSClientV3> authenticator, long expiryMarginMillis,
+              ExecutorService workers, ScheduledExecutorService scheduler, Config connectorConfig,
+              CircuitBreaker circuitBreaker, NeutronCallMetrics callMetrics) {
+        this.key = key;
+        this.vc = vc;
+        this.providerAttributes = vc.getProviderAttributes() == null ? Collections.emptyMap()
+                : new HashMap<>(vc.getProviderAttributes());
+        this.authenticator = authenticator;
+        this.expiryMarginMillis = expiryMarginMillis;
+        this.cache = OsCallsCache.forVc(vc);
+        this.queryService = new NeutronSfcQueryService(NeutronSfcQueryService.maxUpdateAttempts(vc));
+        this.retryPolicy = RetryPolicy.forVc(vc, callMetrics);
+        this.circuitBreaker = circuitBreaker;
+        this.rateLimiter = RateLimiter.forVc(vc);
+        callMetrics.setRateLimiter(this.rateLimiter);
+        callMetrics.setCache(this.cache);
+        this.concurrencyLimiter = ConcurrencyLimiter.forVc(vc);
+        this.callMetrics = callMetrics;
+        this.workers = workers;
+        this.scheduler = scheduler;
+        this.topologyLoader = new SfcTopologyLoader(workers);
+        this.topologyRefreshMillis = SfcTopologyLoader.refreshMillis(vc);
+        this.asyncPermits = AsyncOsCalls.newPermits(AsyncOsCalls.maxInFlight(vc));
+        this.connectorConfig = connectorConfig;
+        this.coalescer = new PortChainMutationCoalescer(scheduler, workers, PortChainMutationCoalescer.windowMillis(vc),
+                this.locks, callMetrics.getAccounting());
+        callMetrics.setCoalescer(this.coalescer);
+        callMetrics.setLocks(this.locks);
+    }
+
+    public String getKey() {
+        return this.key;
+    }
+
+    public OSClientV3 getClient() {
+        this.lastAccess = System.currentTimeMillis();
+        return client();
+    }
+
+    /**
+     * Builds the calls of a redirection API or of the session itself from the limits, cache and
+     * index shared by the whole session.
+     */
+    public OsCalls newOsCalls(OSClientV3 osClient) {
+        return new OsCalls(osClient, this.cache, this.queryService, this.index, this.connectorConfig,
+                this.retryPolicy, this.circuitBreaker, this.rateLimiter, this.concurrencyLimiter, this.callMetrics);
+    }
+
+    private OSClientV3 client() {
+        Authenticated authenticated = this.current;
+        if (authenticated == null || isExpiring(authenticated.token, this.expiryMarginMillis)) {
+            synchronized (this) {
+                authenticated = this.current;
+                if (authenticated == null || isExpiring(authenticated.token, this.expiryMarginMillis)) {
+                    authenticated = authenticate();
+                    this.current = authenticated;
+                }
+            }
+        }
+
+        return authenticated.token == null ? authenticated.client
+                : OSFactory.clientFromToken(authenticated.token, Facing.PUBLIC, this.connectorConfig);
+    }
+
+    public Token getToken() {
+        Authenticated authenticated = this.current;
+        return authenticated == null ? null : authenticated.token;
+    }
+
+    public OsCallsCache getCache() {
+        return this.cache;
+    }
+
+    public NeutronSfcQueryService getQueryService() {
+        return this.queryService;
+    }
+
+    public SfcIndex getIndex() {
+        return this.index;
+    }
+
+    /**
+     * @return the latest topology snapshot, {@link SfcTopology#EMPTY} until the first load succeeds
+     */
+    public SfcTopology getTopology() {
+        return this.topologyLoader.getTopology();
+    }
+
+    /**
+     * Loads the SFC topology once per session, which also builds the membership index, so that the
+     * first lookups do not each list on their own. Then reloads it in the background every
+     * {@value SfcTopologyLoader#REFRESH_ATTRIBUTE} milliseconds. A failure is only logged; lookups
+     * then list on demand.
+     */
+    public void loadTopology(OsCalls osCalls) {
+        if (!this.topologyLoaded.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            this.topologyLoader.load(osCalls);
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to load the SFC topology of session {}", this.key, e);
+        }
+
+        if (this.topologyRefreshMillis > 0) {
+            this.topologyRefresh = this.scheduler.scheduleWithFixedDelay(this::reloadTopology,
+                    this.topologyRefreshMillis, this.topologyRefreshMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Starts a reload on the workers unless the previous one is still running. Does not count
+     * as an access, so an unused session still expires.
+     */
+    private void reloadTopology() {
+        if (!this.topologyReload.isDone()) {
+            return;
+        }
+
+        try {
+            this.topologyReload = this.topologyLoader.loadAsync(newOsCalls(client()));
+            this.topologyReload.whenComplete((topology, e) -> {
+                if (e != null) {
+                    LOG.warn("Failed to reload the SFC topology of session {}", this.key, e);
+                }
+            });
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to reload the SFC topology of session {}", this.key, e);
+        }
+    }
+
+    public VirtualizationConnectorElement getVc() {
+        return this.vc;
+    }
+
+    public Config getConnectorConfig() {
+        return this.connectorConfig;
+    }
+
+    public ExecutorService getWorkers() {
+        return this.workers;
+    }
+
+    /**
+     * Limits the asynchronous Neutron calls of all the redirection APIs of this VC together.
+     */
+    public Semaphore getAsyncPermits() {
+        return this.asyncPermits;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return this.retryPolicy;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return this.rateLimiter;
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return this.concurrencyLimiter;
+    }
+
+    public NeutronCallMetrics getCallMetrics() {
+        return this.callMetrics;
+    }
+
+    public ResourceLocks getLocks() {
+        return this.locks;
+    }
+
+    public PortChainMutationCoalescer getCoalescer() {
+        return this.coalescer;
+    }
+
+    long getLastAccess() {
+        return this.lastAccess;
+    }
+
+    /**
+     * @return whether the other VC has the identity, credentials and provider attributes this
+     * session was built from, so its client, cache and limits still apply to it
+     */
+    boolean hasSettingsOf(VirtualizationConnectorElement other) {
+        Map<String, String> otherAttributes = other.getProviderAttributes() == null ? Collections.emptyMap()
+                : other.getProviderAttributes();
+        return Objects.equals(this.vc.getName(), other.getName())
+                && Objects.equals(this.vc.getProviderIpAddress(), other.getProviderIpAddress())
+                && Objects.equals(this.vc.getProviderAdminDomainId(), other.getProviderAdminDomainId())
+                && Objects.equals(this.vc.getProviderAdminTenantName(), other.getProviderAdminTenantName())
+                && Objects.equals(this.vc.getProviderUsername(), other.getProviderUsername())
+                && Objects.equals(this.vc.getProviderPassword(), other.getProviderPassword())
+                && this.providerAttributes.equals(otherAttributes);
+    }
+
+    /**
+     * Re-authenticates if the token expires within the lead time. Keystone is called
+     * outside of the lock so callers keep using the old, still valid token meanwhile.
+     * The outcome is counted in the VC's {@link NeutronCallMetrics}.
+     */
+    void refreshIfExpiring(long leadMillis) {
+        Authenticated authenticated = this.current;
+        if (authenticated == null || !isExpiring(authenticated.token, leadMillis)) {
+            return;
+        }
+
+        try {
+            Authenticated refreshed = authenticate();
+            synchronized (this) {
+                if (this.current != null) {
+                    this.current = refreshed;
+                }
+            }
+            this.callMetrics.recordTokenRefresh(false);
+        } catch (RuntimeException e) {
+            this.callMetrics.recordTokenRefresh(true);
+            LOG.warn("Background token refresh failed for session {}", this.key, e);
+        }
+    }
+
+    void invalidate() {
+        synchronized (this) {
+            this.current = null;
+        }
+        ScheduledFuture<?> refresh = this.topologyRefresh;
+        if (refresh != null) {
+            refresh.cancel(false);
+        }
+        this.cache.invalidateAll();
+        this.index.clear();
+        this.topologyLoader.clear();
+        this.topologyLoaded.set(false);
+    }
+
+    private Authenticated authenticate() {
+        LOG.info("Authenticating session {}", this.key);
+        OSClientV3 client = this.authenticator.apply(this.vc);
+        return new Authenticated(client, client.getToken());
+    }
+
+    private static boolean isExpiring(Token token, long marginMillis) {
+        if (token == null) {
+            return false;
+        }
+
+        Date expires = token.getExpires();
+        return expires != null && expires.getTime() - System.currentTimeMillis() <= marginMillis;
+    }
+
+    private static final class Authenticated {
+        private final OSClientV3 client;
+        private final Token token;
+
+        private Authenticated(OSClientV3 client, Token token) {
+            this.client = client;
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.mockito.MockitoAnnotations;
+import org.osc.controller.nsfc.api.NeutronSfcSdnRedirectionApi;
+import org.osc.controller.nsfc.utils.CallAccounting;
+import org.osc.controller.nsfc.utils.CallAccounting.OperationCost;
+import org.osc.controller.nsfc.utils.NeutronOperation;
+import org.osc.sdk.controller.api.SdnRedirectionApi;
+
+/**
+ * Base of the tests that hold {@link SdnRedirectionApi} methods to a budget of Neutron requests
+ * against the mocked Neutron, so a change that adds round trips fails the build.
+ *
+ * Call the methods under test through {@link #redirApi} and reset the accounting after arranging.
+ * The budgets count requests as made with the cache disabled and without server side filtering.
+ */
+public abstract class AbstractCallBudgetTest extends AbstractNeutronSfcPluginTest {
+
+    protected CallAccounting accounting;
+
+    protected SdnRedirectionApi redirApi;
+
+    @Before
+    @Override
+    public void setup() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        super.setup();
+        this.accounting = new CallAccounting(true);
+        this.redirApi = new NeutronSfcSdnRedirectionApi(this.osClient, this.accounting);
+    }
+
+    protected void resetAccounting() {
+        this.accounting.reset();
+    }
+
+    /**
+     * Asserts that each call of the method made at most the given number of Neutron requests, counting its
+     * shares of requests made for several calls.
+     */
+    protected void assertCallBudget(String method, long maxCalls) {
+        OperationCost cost = cost(method);
+        double calls = cost.getCallCount() + cost.getSharedCallCount();
+        assertTrue(String.format("%s exceeded its budget of %d Neutron calls per invocation: %s", method, maxCalls,
+                cost), calls <= maxCalls * cost.getInvocationCount());
+    }
+
+    /**
+     * Asserts that each call of the method made at most the given number of requests of one kind.
+     */
+    protected void assertCallBudget(String method, NeutronOperation operation, long maxCalls) {
+        OperationCost cost = cost(method);
+        double calls = cost.getCallCount(operation) + cost.getSharedCallCount(operation);
+        assertTrue(String.format("%s exceeded its budget of %d %s calls per invocation: %s", method, maxCalls,
+                operation, cost), calls <= maxCalls * cost.getInvocationCount());
+    }
+
+    protected OperationCost cost(String method) {
+        OperationCost cost = this.accounting.getCost(method);
+        assertNotNull(method + " was not called", cost);
+        return cost;
+    }
+}
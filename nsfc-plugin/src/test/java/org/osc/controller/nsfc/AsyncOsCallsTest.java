@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+import static org.osc.controller.nsfc.TestData.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openstack4j.api.Builders;
+import org.openstack4j.model.network.ext.PortChain;
+import org.osc.controller.nsfc.exceptions.SdnControllerResponseNsfcException;
+import org.osc.controller.nsfc.utils.AsyncOsCalls;
+import org.osc.controller.nsfc.utils.OsCalls;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncOsCallsTest extends AbstractNeutronSfcPluginTest {
+
+    private AsyncOsCalls asyncOsCalls;
+
+    @Before
+    @Override
+    public void setup() throws Exception {
+        super.setup();
+
+        this.asyncOsCalls = new AsyncOsCalls(new OsCalls(this.osClient), 4);
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        this.asyncOsCalls.close(0);
+    }
+
+    @Test
+    public void testCreatePortChain_Succeeds_CompletesWithPortChain() throws Exception {
+        // Act.
+        PortChain created = this.asyncOsCalls.createPortChain(Builders.portChain()
+                .portPairGroups(singletonList("ppg"))
+                .build()).get(5, TimeUnit.SECONDS);
+
+        // Assert.
+        assertNotNull(created.getId());
+        assertNotNull(portChainService.get(created.getId()));
+        assertNotNull(created.getFlowClassifiers());
+    }
+
+    @Test
+    public void testCreatePortChain_NeutronFails_CompletesWithMappedException() throws Exception {
+        // Arrange.
+        Mockito.when(this.sfcService.portchains()).thenThrow(new IllegalStateException("Neutron down"));
+
+        // Act.
+        CompletableFuture<PortChain> future = this.asyncOsCalls.createPortChain(Builders.portChain().build());
+
+        // Assert.
+        try {
+            future.join();
+            fail("Expected the future to complete exceptionally");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof SdnControllerResponseNsfcException);
+        }
+    }
+
+    @Test
+    public void testCancel_CallBlocked_InterruptsCall() throws Exception {
+        // Arrange.
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Mockito.when(this.sfcService.portchains()).thenAnswer(invocation -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return portChainService;
+        });
+        CompletableFuture<PortChain> future = this.asyncOsCalls.getPortChain("pc");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Act.
+        future.cancel(true);
+
+        // Assert.
+        assertTrue(future.isCancelled());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        this.asyncOsCalls.close();
+        assertEquals(0, this.asyncOsCalls.getInFlightCount());
+    }
+
+    @Test
+    public void testCancel_CallIgnoresInterrupt_PermitHeldUntilCallEnds() throws Exception {
+        // Arrange.
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Semaphore permits = AsyncOsCalls.newPermits(1);
+        AsyncOsCalls asyncOsCalls = new AsyncOsCalls(new OsCalls(this.osClient), executor, permits);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(this.sfcService.portchains()).thenAnswer(invocation -> {
+            started.countDown();
+            while (release.getCount() > 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // Like a blocking socket read, which an interrupt does not end
+                }
+            }
+            return portChainService;
+        });
+        CompletableFuture<PortChain> future = asyncOsCalls.getPortChain("pc");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        try {
+            // Act.
+            future.cancel(true);
+
+            // Assert.
+            assertTrue(future.isCancelled());
+            assertEquals(0, permits.availablePermits());
+            assertEquals(1, asyncOsCalls.getInFlightCount());
+
+            release.countDown();
+            asyncOsCalls.close();
+            assertEquals(1, permits.availablePermits());
+            assertEquals(0, asyncOsCalls.getInFlightCount());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSupply_CallerRunsExecutor_RunsOnCallingThread() throws Exception {
+        // Arrange.
+        AsyncOsCalls asyncOsCalls = new AsyncOsCalls(new OsCalls(this.osClient), Runnable::run, 1);
+        Thread caller = Thread.currentThread();
+
+        // Act.
+        CompletableFuture<Thread> future = asyncOsCalls.supply(Thread::currentThread);
+
+        // Assert.
+        assertTrue(future.isDone());
+        assertSame(caller, future.get());
+        assertEquals(0, asyncOsCalls.getInFlightCount());
+    }
+
+    @Test
+    public void testClose_CallsInFlight_WaitsForThem() throws Exception {
+        // Arrange.
+        portChain = portChainService.create(Builders.portChain().portPairGroups(singletonList("ppg")).build());
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(this.sfcService.portchains()).thenAnswer(invocation -> {
+            release.await();
+            return portChainService;
+        });
+        CompletableFuture<PortChain> future = this.asyncOsCalls.getPortChain(portChain.getId());
+
+        // Act.
+        new Thread(() -> {
+            sleepQuietly(100);
+            release.countDown();
+        }).start();
+        this.asyncOsCalls.close();
+
+        // Assert.
+        assertTrue(future.isDone());
+        assertEquals(portChain.getId(), future.get().getId());
+    }
+
+    @Test
+    public void testSubmit_AfterClose_Rejected() throws Exception {
+        // Arrange.
+        this.asyncOsCalls.close();
+
+        // Act.
+        CompletableFuture<PortChain> future = this.asyncOsCalls.getPortChain("pc");
+
+        // Assert.
+        try {
+            future.join();
+            fail("Expected the future to be rejected");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void testSharedPermits_OtherInstanceHoldsThem_SubmissionWaits() throws Exception {
+        // Arrange.
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Semaphore permits = AsyncOsCalls.newPermits(1);
+        AsyncOsCalls first = new AsyncOsCalls(new OsCalls(this.osClient), executor, permits);
+        AsyncOsCalls second = new AsyncOsCalls(new OsCalls(this.osClient), executor, permits);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(this.sfcService.portchains()).thenAnswer(invocation -> {
+            release.await();
+            return portChainService;
+        });
+        CompletableFuture<PortChain> holding = first.getPortChain("pc");
+
+        // Act.
+        CompletableFuture<CompletableFuture<PortChain>> waiting =
+                CompletableFuture.supplyAsync(() -> second.getPortChain("pc"));
+
+        // Assert.
+        try {
+            sleepQuietly(100);
+            assertFalse(waiting.isDone());
+            release.countDown();
+            holding.get(5, TimeUnit.SECONDS);
+            waiting.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+            assertEquals(1, permits.availablePermits());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCancelPending_OneCompletedOnePending_CancelsPendingOnly() throws Exception {
+        // Arrange.
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(this.sfcService.portchains()).thenAnswer(invocation -> {
+            release.await();
+            return portChainService;
+        });
+        CompletableFuture<PortChain> pending = this.asyncOsCalls.getPortChain("pc");
+        CompletableFuture<PortChain> completed = CompletableFuture.completedFuture(null);
+
+        // Act.
+        AsyncOsCalls.cancelPending(asList(pending, completed));
+
+        // Assert.
+        assertTrue(pending.isCancelled());
+        assertFalse(completed.isCancelled());
+        assertEquals(0, this.asyncOsCalls.getInFlightCount());
+        release.countDown();
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openstack4j.api.exceptions.ResponseException;
+import org.osc.controller.nsfc.exceptions.CircuitOpenException;
+import org.osc.controller.nsfc.utils.CircuitBreaker;
+import org.osc.controller.nsfc.utils.CircuitBreaker.State;
+import org.osc.controller.nsfc.utils.NeutronOperation;
+
+public class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 100;
+
+    @Test
+    public void testCall_ServerFailures_OpensAndFailsFast() throws Exception {
+        // Arrange.
+        CircuitBreaker circuitBreaker = new CircuitBreaker("neutron", 4, 0.5, 1000, OPEN_MILLIS);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act.
+        for (int i = 0; i < 2; i++) {
+            failQuietly(circuitBreaker, attempts, 503);
+        }
+        try {
+            circuitBreaker.call(() -> attempts.incrementAndGet());
+            fail("Expected the breaker to be open");
+        } catch (CircuitOpenException e) {
+            // Assert.
+            assertEquals(State.Open, circuitBreaker.getState());
+            assertEquals(2, attempts.get());
+            assertEquals(1, circuitBreaker.getRejectedCount());
+            assertEquals(1, circuitBreaker.getOpenedCount());
+        }
+    }
+
+    @Test
+    public void testCall_ClientErrors_StaysClosed() throws Exception {
+        // Arrange.
+        CircuitBreaker circuitBreaker = new CircuitBreaker("neutron", 4, 0.5, 1000, OPEN_MILLIS);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act.
+        for (int i = 0; i < 4; i++) {
+            failQuietly(circuitBreaker, attempts, 404);
+        }
+
+        // Assert.
+        assertEquals(State.Closed, circuitBreaker.getState());
+        assertEquals(0, circuitBreaker.getOpenedCount());
+    }
+
+    @Test
+    public void testCall_TrialCallsSucceedAfterOpenPeriod_Closes() throws Exception {
+        // Arrange.
+        CircuitBreaker circuitBreaker = new CircuitBreaker("neutron", 4, 0.5, 1000, OPEN_MILLIS);
+        AtomicInteger attempts = new AtomicInteger();
+        failQuietly(circuitBreaker, attempts, 503);
+        failQuietly(circuitBreaker, attempts, 503);
+        assertEquals(State.Open, circuitBreaker.getState());
+
+        // Act.
+        Thread.sleep(OPEN_MILLIS + 20);
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.call(() -> attempts.incrementAndGet());
+        }
+
+        // Assert.
+        assertEquals(State.Closed, circuitBreaker.getState());
+        assertEquals(5, attempts.get());
+    }
+
+    @Test
+    public void testCall_StartedBeforeOpen_NotCountedAsTrial() throws Exception {
+        // Arrange.
+        CircuitBreaker circuitBreaker = new CircuitBreaker("neutron", 4, 0.5, 1000, OPEN_MILLIS);
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> earlyCall = CompletableFuture.supplyAsync(() -> circuitBreaker.call(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return attempts.incrementAndGet();
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        failQuietly(circuitBreaker, attempts, 503);
+        failQuietly(circuitBreaker, attempts, 503);
+        Thread.sleep(OPEN_MILLIS + 20);
+
+        // Act.
+        for (int i = 0; i < 2; i++) {
+            circuitBreaker.call(() -> attempts.incrementAndGet());
+        }
+        release.countDown();
+        earlyCall.get(5, TimeUnit.SECONDS);
+
+        // Assert.
+        assertEquals(State.HalfOpen, circuitBreaker.getState());
+        circuitBreaker.call(() -> attempts.incrementAndGet());
+        assertEquals(State.Closed, circuitBreaker.getState());
+    }
+
+    @Test
+    public void testCall_SlowCalls_Opens() throws Exception {
+        // Arrange.
+        CircuitBreaker circuitBreaker = new CircuitBreaker("neutron", 2, 1, 10, OPEN_MILLIS);
+
+        // Act.
+        circuitBreaker.call(() -> {
+            sleepQuietly(30);
+            return null;
+        });
+
+        // Assert.
+        assertEquals(State.Open, circuitBreaker.getState());
+    }
+
+    @Test
+    public void testCall_SlowListCalls_StaysClosed() throws Exception {
+        // Arrange.
+        CircuitBreaker circuitBreaker = new CircuitBreaker("neutron", 2, 1, 10, OPEN_MILLIS);
+
+        // Act.
+        for (int i = 0; i < 2; i++) {
+            circuitBreaker.call(NeutronOperation.ListPortPairs, () -> {
+                sleepQuietly(30);
+                return null;
+            });
+        }
+
+        // Assert.
+        assertEquals(State.Closed, circuitBreaker.getState());
+    }
+
+    private static void failQuietly(CircuitBreaker circuitBreaker, AtomicInteger attempts, int status) {
+        try {
+            circuitBreaker.call(() -> {
+                attempts.incrementAndGet();
+                throw new ResponseException("Neutron failed", status);
+            });
+            fail("Expected the call to fail");
+        } catch (ResponseException e) {
+            // expected
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.openstack4j.api.exceptions.ResponseException;
+import org.osc.controller.nsfc.exceptions.ConcurrencyLimitExceededException;
+import org.osc.controller.nsfc.utils.ConcurrencyLimiter;
+import org.osc.controller.nsfc.utils.NeutronOperation;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void testCall_LimitUsedAndLatencyFlat_LimitGrows() throws Exception {
+        // Arrange.
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 10, 1000.0, 1000);
+
+        // Act.
+        for (int i = 0; i < 20; i++) {
+            limiter.call(() -> null);
+        }
+
+        // Assert.
+        assertTrue("limit " + limiter.getLimit(), limiter.getLimit() > 1);
+        assertEquals(0, limiter.getDecreaseCount());
+    }
+
+    @Test
+    public void testCall_Overloaded_LimitShrinks() throws Exception {
+        // Arrange.
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10, 2.0, 1000);
+
+        // Act.
+        try {
+            limiter.call(() -> {
+                throw new ResponseException("Service Unavailable", 503);
+            });
+            fail("Expected the failure to be thrown");
+        } catch (ResponseException e) {
+            // Assert.
+            assertEquals(9, limiter.getLimit());
+            assertEquals(1, limiter.getDecreaseCount());
+            assertEquals(0, limiter.getInFlightCount());
+        }
+    }
+
+    @Test
+    public void testCall_SlowListAfterWarmup_LimitUnchanged() throws Exception {
+        // Arrange.
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10, 2.0, 1000);
+        for (int i = 0; i < 10; i++) {
+            limiter.call(() -> null);
+        }
+
+        // Act.
+        limiter.call(NeutronOperation.ListPortChains, () -> {
+            sleepQuietly(50);
+            return null;
+        });
+
+        // Assert.
+        assertEquals(0, limiter.getDecreaseCount());
+        assertEquals(0, limiter.getAverageLatencyMillis());
+    }
+
+    @Test
+    public void testForVc_NotEnabled_Unlimited() throws Exception {
+        // Arrange.
+        VirtualizationConnectorElement vc = Mockito.mock(VirtualizationConnectorElement.class);
+        VirtualizationConnectorElement enabledVc = Mockito.mock(VirtualizationConnectorElement.class);
+        Mockito.when(enabledVc.getProviderAttributes())
+               .thenReturn(Collections.singletonMap(ConcurrencyLimiter.ENABLED_ATTRIBUTE, "true"));
+
+        // Act.
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.forVc(vc);
+        ConcurrencyLimiter enabledLimiter = ConcurrencyLimiter.forVc(enabledVc);
+
+        // Assert.
+        assertEquals(Integer.MAX_VALUE, limiter.getLimit());
+        assertEquals(ConcurrencyLimiter.DEFAULT_INITIAL_LIMIT, enabledLimiter.getLimit());
+    }
+
+    @Test
+    public void testCall_ClientError_LimitUnchanged() throws Exception {
+        // Arrange.
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10, 2.0, 1000);
+
+        // Act.
+        try {
+            limiter.call(() -> {
+                throw new ResponseException("Not Found", 404);
+            });
+            fail("Expected the failure to be thrown");
+        } catch (ResponseException e) {
+            // Assert.
+            assertEquals(10, limiter.getLimit());
+            assertEquals(0, limiter.getDecreaseCount());
+        }
+    }
+
+    @Test
+    public void testCall_LimitReached_WaitsThenRejects() throws Exception {
+        // Arrange.
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 2.0, 50);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> limiter.call(() -> {
+            started.countDown();
+            awaitQuietly(release);
+            return null;
+        }));
+        holder.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Act.
+        try {
+            limiter.call(() -> null);
+            fail("Expected the call to be rejected");
+        } catch (ConcurrencyLimitExceededException e) {
+            // Assert.
+            assertEquals(1, limiter.getDelayedCount());
+            assertEquals(1, limiter.getRejectedCount());
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+        assertEquals(0, limiter.getInFlightCount());
+    }
+
+    @Test
+    public void testCall_LimitReachedBoundedWait_RejectsWithinBound() throws Exception {
+        // Arrange.
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 2.0, ConcurrencyLimiter.DEFAULT_MAX_WAIT_MILLIS);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> limiter.call(() -> {
+            started.countDown();
+            awaitQuietly(release);
+            return null;
+        }));
+        holder.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        long start = System.nanoTime();
+
+        // Act.
+        try {
+            limiter.call(NeutronOperation.GetPortChain, 50, () -> null);
+            fail("Expected the call to be rejected");
+        } catch (ConcurrencyLimitExceededException e) {
+            // Assert.
+            assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+            assertEquals(1, limiter.getRejectedCount());
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+        assertEquals(0, limiter.getInFlightCount());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
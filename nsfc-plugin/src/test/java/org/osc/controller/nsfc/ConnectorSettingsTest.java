@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.openstack4j.core.transport.Config;
+import org.osc.controller.nsfc.utils.ConnectorSettings;
+
+public class ConnectorSettingsTest {
+
+    @Test
+    public void testGetConfig_CustomSettings_CarriesTimeouts() {
+        // Arrange.
+        ConnectorSettings settings = new ConnectorSettings(1000, 2000);
+
+        // Act.
+        Config config = settings.getConfig();
+
+        // Assert.
+        assertSame(config, settings.getConfig());
+        assertEquals(1000, config.getConnectTimeout());
+        assertEquals(2000, config.getReadTimeout());
+    }
+
+    @Test
+    public void testNew_CustomSettings_LeavesJvmPropertiesAlone() {
+        // Arrange.
+        String keepAlive = System.getProperty("http.keepAlive");
+        String maxConnections = System.getProperty("http.maxConnections");
+
+        // Act.
+        new ConnectorSettings(1000, 2000).getConfig();
+
+        // Assert.
+        assertEquals(keepAlive, System.getProperty("http.keepAlive"));
+        assertEquals(maxConnections, System.getProperty("http.maxConnections"));
+    }
+}
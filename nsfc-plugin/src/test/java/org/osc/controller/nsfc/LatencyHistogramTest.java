@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.osc.controller.nsfc.utils.LatencyHistogram;
+import org.osc.controller.nsfc.utils.NeutronCallMetrics;
+import org.osc.controller.nsfc.utils.NeutronOperation;
+import org.osc.controller.nsfc.utils.OperationLatency;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testGetValueAtPercentile_UniformLatencies_WithinPrecision() throws Exception {
+        // Arrange.
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // Act.
+        for (int millis = 1; millis <= 1000; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        // Assert.
+        assertEquals(1000, histogram.getCount());
+        assertWithin(500, histogram.getValueAtPercentile(50, TimeUnit.MILLISECONDS));
+        assertWithin(990, histogram.getValueAtPercentile(99, TimeUnit.MILLISECONDS));
+        assertWithin(999, histogram.getValueAtPercentile(99.9, TimeUnit.MILLISECONDS));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), histogram.getMaxNanos());
+    }
+
+    @Test
+    public void testGetValueAtPercentile_NothingRecorded_Zero() throws Exception {
+        // Arrange.
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // Act.
+        long p99 = histogram.getValueAtPercentile(99);
+
+        // Assert.
+        assertEquals(0, p99);
+        assertEquals(0, histogram.getMeanNanos());
+    }
+
+    @Test
+    public void testRecord_FailedCall_CountedPerOperation() throws Exception {
+        // Arrange.
+        NeutronCallMetrics metrics = new NeutronCallMetrics("vc");
+
+        // Act.
+        metrics.record(NeutronOperation.GetPortChain, TimeUnit.MILLISECONDS.toNanos(2), false);
+        metrics.record(NeutronOperation.GetPortChain, TimeUnit.MILLISECONDS.toNanos(4), true);
+        metrics.record(NeutronOperation.DeletePortPair, TimeUnit.MILLISECONDS.toNanos(8), false);
+
+        // Assert.
+        List<OperationLatency> operations = metrics.getOperations();
+        assertEquals(2, operations.size());
+        assertEquals("GetPortChain", operations.get(0).getOperation());
+        assertEquals(2, operations.get(0).getCount());
+        assertEquals(1, operations.get(0).getErrorCount());
+        assertEquals(3, metrics.getCallCount());
+        assertEquals(1, metrics.getErrorCount());
+    }
+
+    @Test
+    public void testRecord_Disabled_RecordsNothing() throws Exception {
+        // Arrange.
+        NeutronCallMetrics metrics = NeutronCallMetrics.disabled();
+
+        // Act.
+        metrics.record(NeutronOperation.ListPorts, 1000, true);
+
+        // Assert.
+        assertTrue(metrics.getOperations().isEmpty());
+        assertEquals(0, metrics.getCallCount());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual, Math.abs(actual - expected) <= expected * 0.04);
+    }
+}
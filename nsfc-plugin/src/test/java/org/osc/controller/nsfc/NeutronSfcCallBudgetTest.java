@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static org.junit.Assert.*;
+import static org.osc.controller.nsfc.TestData.*;
+import static org.osc.sdk.controller.FailurePolicyType.NA;
+import static org.osc.sdk.controller.TagEncapsulationType.VLAN;
+
+import org.junit.Test;
+import org.osc.controller.nsfc.entities.PortPairElement;
+import org.osc.controller.nsfc.entities.PortPairGroupElement;
+import org.osc.controller.nsfc.utils.CallAccounting;
+import org.osc.controller.nsfc.utils.CallAccounting.Scope;
+import org.osc.controller.nsfc.utils.NeutronOperation;
+
+public class NeutronSfcCallBudgetTest extends AbstractCallBudgetTest {
+
+    @Test
+    public void testGetInspectionPort_PortPairExists_SingleGet() throws Exception {
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+
+        // Act.
+        this.redirApi.getInspectionPort(new PortPairElement(portPair.getId(), null, ingressPortElement,
+                egressPortElement));
+
+        // Assert.
+        assertCallBudget("getInspectionPort", 1);
+        assertTrue(cost("getInspectionPort").getResponseBytes() > 0);
+    }
+
+    @Test
+    public void testGetInspectionPort_WithinOperationOfOtherVc_AccountedSeparately() throws Exception {
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        CallAccounting otherVcAccounting = new CallAccounting(false);
+
+        // Act.
+        try (Scope scope = otherVcAccounting.begin("syncOtherVc")) {
+            this.redirApi.getInspectionPort(new PortPairElement(portPair.getId(), null, ingressPortElement,
+                    egressPortElement));
+        }
+
+        // Assert.
+        assertEquals(1, cost("getInspectionPort").getCallCount());
+        assertEquals(0, otherVcAccounting.getCost("syncOtherVc").getCallCount());
+    }
+
+    @Test
+    public void testRegisterInspectionPort_PortPairNonexistent_WithinBudget() throws Exception {
+        // Arrange.
+        persistIngress();
+        persistEgress();
+
+        // Act.
+        this.redirApi.registerInspectionPort(new PortPairElement(null, null, ingressPortElement, egressPortElement));
+
+        // Assert.
+        assertCallBudget("registerInspectionPort", 3);
+        assertCallBudget("registerInspectionPort", NeutronOperation.ListPortPairs, 1);
+    }
+
+    @Test
+    public void testRemoveInspectionPort_PortPairNonexistent_ParentChainNotLookedUp() throws Exception {
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        persistPortPairGroup();
+        persistPortChainAndSfcElement();
+        PortPairElement inspectionPortElement = new PortPairElement("nosuchportpair",
+                new PortPairGroupElement(portPairGroup.getId()), ingressPortElement, egressPortElement);
+        portPairService.delete(portPair.getId());
+
+        // Act.
+        this.redirApi.removeInspectionPort(inspectionPortElement);
+
+        // Assert.
+        assertCallBudget("removeInspectionPort", NeutronOperation.ListPortChains, 0);
+        assertCallBudget("removeInspectionPort", NeutronOperation.GetPortChain, 0);
+        assertCallBudget("removeInspectionPort", NeutronOperation.GetPortPairGroup, 1);
+    }
+
+    @Test
+    public void testRemoveInspectionPort_LastPortPairOfChainedGroup_WithinBudget() throws Exception {
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        persistPortPairGroup();
+        persistPortChainAndSfcElement();
+        PortPairElement inspectionPortElement = new PortPairElement(portPair.getId(),
+                new PortPairGroupElement(portPairGroup.getId()), ingressPortElement, egressPortElement);
+
+        // Act.
+        this.redirApi.removeInspectionPort(inspectionPortElement);
+
+        // Assert.
+        assertNull(portPairService.get(portPair.getId()));
+        assertCallBudget("removeInspectionPort", 8);
+        assertCallBudget("removeInspectionPort", NeutronOperation.ListPortChains, 1);
+        assertCallBudget("removeInspectionPort", NeutronOperation.ListPortPairGroups, 0);
+        assertCallBudget("removeInspectionPort", NeutronOperation.UpdatePortChain, 1);
+    }
+
+    @Test
+    public void testInstallInspectionHook_ExistingChain_WithinBudget() throws Exception {
+        // Arrange.
+        persistInspectedPort();
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        persistPortPairGroup();
+        persistPortChainAndSfcElement();
+
+        // Act.
+        this.redirApi.installInspectionHook(inspectedPortElement, sfc, 0L, VLAN, 0L, NA);
+        this.redirApi.installInspectionHook(inspectedPortElement, sfc, 0L, VLAN, 0L, NA);
+
+        // Assert.
+        assertEquals(2, cost("installInspectionHook").getInvocationCount());
+        assertCallBudget("installInspectionHook", 4);
+        assertCallBudget("installInspectionHook", NeutronOperation.CreateFlowClassifier, 1);
+    }
+}
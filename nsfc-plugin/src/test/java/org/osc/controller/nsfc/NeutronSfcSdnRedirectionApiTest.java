@@ -19,13 +19,18 @@ package org.osc.controller.nsfc;
 import static java.util.Arrays.asList;
 import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.osc.controller.nsfc.TestData.*;
 import static org.osc.sdk.controller.FailurePolicyType.NA;
 import static org.osc.sdk.controller.TagEncapsulationType.VLAN;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
@@ -33,22 +38,34 @@ import org.hamcrest.core.StringStartsWith;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.openstack4j.api.Builders;
+import org.openstack4j.api.exceptions.ResponseException;
+import org.openstack4j.api.networking.ext.PortChainService;
+import org.openstack4j.api.networking.ext.PortPairGroupService;
 import org.openstack4j.model.network.ext.FlowClassifier;
 import org.openstack4j.model.network.ext.PortChain;
 import org.openstack4j.model.network.ext.PortPairGroup;
 import org.osc.controller.nsfc.api.NeutronSfcSdnRedirectionApi;
 import org.osc.controller.nsfc.entities.FlowClassifierElement;
+import org.osc.controller.nsfc.entities.InspectionHookResult;
 import org.osc.controller.nsfc.entities.NetworkElementImpl;
 import org.osc.controller.nsfc.entities.PortPairElement;
 import org.osc.controller.nsfc.entities.PortPairGroupElement;
 import org.osc.controller.nsfc.entities.ServiceFunctionChainElement;
+import org.osc.controller.nsfc.exceptions.SdnControllerResponseNsfcException;
+import org.osc.controller.nsfc.utils.NeutronSfcQueryService;
+import org.osc.controller.nsfc.utils.OsClientPool;
+import org.osc.controller.nsfc.utils.PortChainMutationCoalescer;
+import org.osc.controller.nsfc.utils.VcSession;
 import org.osc.sdk.controller.DefaultNetworkPort;
 import org.osc.sdk.controller.element.Element;
 import org.osc.sdk.controller.element.InspectionHookElement;
 import org.osc.sdk.controller.element.InspectionPortElement;
 import org.osc.sdk.controller.element.NetworkElement;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
 
 public class NeutronSfcSdnRedirectionApiTest extends AbstractNeutronSfcPluginTest {
 
@@ -156,6 +173,77 @@ public class NeutronSfcSdnRedirectionApiTest extends AbstractNeutronSfcPluginTes
         this.redirApi.registerInspectionPort(inspectionPortElement);
     }
 
+    @Test
+    public void testApi_RegisterInspectionPorts_MixedParents_Succeeds() throws Exception {
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        persistPortPairGroup();
+        ppgElement = new PortPairGroupElement(portPairGroup.getId());
+
+        NetworkElementImpl ingress2 = new NetworkElementImpl("ingress2", asList("IngressMac2"), asList("IngressIP2"), null);
+        NetworkElementImpl egress2 = new NetworkElementImpl("egress2", asList("EgressMac2"), asList("EgressIP2"), null);
+        NetworkElementImpl ingress3 = new NetworkElementImpl("ingress3", asList("IngressMac3"), asList("IngressIP3"), null);
+        NetworkElementImpl egress3 = new NetworkElementImpl("egress3", asList("EgressMac3"), asList("EgressIP3"), null);
+
+        List<InspectionPortElement> inspectionPorts = asList(
+                new PortPairElement(null, ppgElement, ingressPortElement, egressPortElement),
+                new PortPairElement(null, ppgElement, ingress2, egress2),
+                new PortPairElement(null, null, ingress3, egress3));
+
+        // Act.
+        List<Element> registered = this.redirApi.registerInspectionPorts(inspectionPorts);
+
+        // Assert.
+        assertEquals(3, registered.size());
+        assertEquals(portPair.getId(), registered.get(0).getElementId());
+        assertEquals(3, this.osClient.sfc().portpairs().list().size());
+
+        PortPairGroup updatedGroup = this.osClient.sfc().portpairgroups().get(portPairGroup.getId());
+        assertEquals(2, updatedGroup.getPortPairs().size());
+        assertTrue(updatedGroup.getPortPairs().contains(registered.get(1).getElementId()));
+        assertEquals(portPairGroup.getId(), registered.get(1).getParentId());
+
+        String newGroupId = registered.get(2).getParentId();
+        assertNotNull(newGroupId);
+        assertNotEquals(portPairGroup.getId(), newGroupId);
+        assertEquals(Collections.singletonList(registered.get(2).getElementId()),
+                this.osClient.sfc().portpairgroups().get(newGroupId).getPortPairs());
+    }
+
+    @Test
+    public void testApi_RegisterInspectionPorts_GroupCreationFails_DeletesCreatedPortPairs() throws Exception {
+        // Arrange.
+        NetworkElementImpl ingress2 = new NetworkElementImpl("ingress2", asList("IngressMac2"), asList("IngressIP2"), null);
+        NetworkElementImpl egress2 = new NetworkElementImpl("egress2", asList("EgressMac2"), asList("EgressIP2"), null);
+        NetworkElementImpl ingress3 = new NetworkElementImpl("ingress3", asList("IngressMac3"), asList("IngressIP3"), null);
+        NetworkElementImpl egress3 = new NetworkElementImpl("egress3", asList("EgressMac3"), asList("EgressIP3"), null);
+
+        PortPairGroupService failingGroups = Mockito.mock(PortPairGroupService.class,
+                AdditionalAnswers.delegatesTo(portPairGroupService));
+        Mockito.doAnswer(AdditionalAnswers.delegatesTo(portPairGroupService))
+               .doThrow(new IllegalStateException("Neutron down"))
+               .when(failingGroups).create(any());
+        Mockito.when(this.sfcService.portpairgroups()).thenReturn(failingGroups);
+
+        List<InspectionPortElement> inspectionPorts = asList(
+                new PortPairElement(null, null, ingress2, egress2),
+                new PortPairElement(null, null, ingress3, egress3));
+
+        // Act.
+        try {
+            this.redirApi.registerInspectionPorts(inspectionPorts);
+            fail("Expected the group creation failure to be thrown");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        // Assert.
+        assertTrue(this.osClient.sfc().portpairs().list().isEmpty());
+        assertTrue(this.osClient.sfc().portpairgroups().list().isEmpty());
+    }
+
     @Test
     public void testApi_RemoveSingleInspectionPort_VerifyPPGDeleted() throws Exception {
         // Arrange.
@@ -247,6 +335,28 @@ public class NeutronSfcSdnRedirectionApiTest extends AbstractNeutronSfcPluginTes
         assertTrue(portPairGroup.getPortPairs().contains(inspectionPortElement2.getElementId()));
     }
 
+    @Test
+    public void testApi_RemoveInspectionPortWithStaleParentId_VerifyPPGDeleted() throws Exception {
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        persistPortPairGroup();
+        PortPairGroup otherPortPairGroup = this.osClient.sfc().portpairgroups()
+                .create(Builders.portPairGroup().portPairs(new ArrayList<>()).build());
+
+        InspectionPortElement inspectionPortElement = new PortPairElement(portPair.getId(),
+                new PortPairGroupElement(otherPortPairGroup.getId()), ingressPortElement, egressPortElement);
+
+        // Act.
+        this.redirApi.removeInspectionPort(inspectionPortElement);
+
+        // Assert.
+        assertNull(this.osClient.sfc().portpairs().get(portPair.getId()));
+        assertNull(this.osClient.sfc().portpairgroups().get(portPairGroup.getId()));
+        assertNotNull(this.osClient.sfc().portpairgroups().get(otherPortPairGroup.getId()));
+    }
+
     // Inspection hooks tests
     @Test
     public void testApi_InstallInspectionHook_VerifySucceeds() throws Exception {
@@ -293,6 +403,80 @@ public class NeutronSfcSdnRedirectionApiTest extends AbstractNeutronSfcPluginTes
         this.redirApi.installInspectionHook(inspectedPortElement, new ServiceFunctionChainElement("foo"), 0L, VLAN, 0L, NA);
     }
 
+    @Test
+    public void testApi_InstallInspectionHooks_OneInvalidPort_OthersInstalled() throws Exception {
+        // Arrange.
+        persistInspectedPort();
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        persistPortPairGroup();
+        persistPortChainAndSfcElement();
+        NetworkElementImpl otherInspectedPort = new NetworkElementImpl("otherInspected", asList("OtherMac"),
+                asList("OtherIP"), null);
+
+        // Act.
+        List<InspectionHookResult> results = this.redirApi.installInspectionHooks(
+                asList(inspectedPortElement, new NetworkElementImpl(), otherInspectedPort), sfc, 0L, VLAN, 0L, NA);
+
+        // Assert.
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isInstalled());
+        assertFalse(results.get(1).isInstalled());
+        assertTrue(results.get(1).getFailure() instanceof IllegalArgumentException);
+        assertTrue(results.get(2).isInstalled());
+
+        PortChain updatedChain = this.osClient.sfc().portchains().get(sfc.getElementId());
+        assertEquals(asList(results.get(0).getHookId(), results.get(2).getHookId()), updatedChain.getFlowClassifiers());
+        assertEquals(2, this.osClient.sfc().flowclassifiers().list().size());
+    }
+
+    @Test
+    public void testApi_InstallInspectionHooks_ChainUpdateFails_KeepsPerPortFailures() throws Exception {
+        // Arrange.
+        persistInspectedPort();
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        persistPortPairGroup();
+        persistPortChainAndSfcElement();
+
+        PortChainService portChains = Mockito.mock(PortChainService.class, AdditionalAnswers.delegatesTo(portChainService));
+        Mockito.doThrow(new IllegalStateException("Neutron down")).when(portChains).update(anyString(), any(PortChain.class));
+        Mockito.when(this.sfcService.portchains()).thenReturn(portChains);
+
+        // Act.
+        List<InspectionHookResult> results = this.redirApi.installInspectionHooks(
+                asList(inspectedPortElement, new NetworkElementImpl()), sfc, 0L, VLAN, 0L, NA);
+
+        // Assert.
+        assertEquals(2, results.size());
+        assertFalse(results.get(0).isInstalled());
+        assertNotNull(results.get(0).getFailure());
+        assertFalse(results.get(0).getFailure() instanceof IllegalArgumentException);
+        assertFalse(results.get(1).isInstalled());
+        assertTrue(results.get(1).getFailure() instanceof IllegalArgumentException);
+        assertTrue(this.osClient.sfc().flowclassifiers().list().isEmpty());
+    }
+
+    @Test
+    public void testApi_InstallInspectionHooks_PortChainMissing_NoFlowClassifierCreated() throws Exception {
+        // Arrange.
+        persistInspectedPort();
+
+        // Act.
+        try {
+            this.redirApi.installInspectionHooks(asList(inspectedPortElement),
+                    new ServiceFunctionChainElement("foo"), 0L, VLAN, 0L, NA);
+            fail("Expected the missing Service Function Chain to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("Cannot find Service Function Chain"));
+        }
+
+        // Assert.
+        Mockito.verify(this.sfcService, Mockito.never()).flowclassifiers();
+    }
+
     @Test
     public void testApi_UpdateInspectionHook_WithExistingHook_VerifySucceeds() throws Exception {
         // Arrange.
@@ -325,6 +509,62 @@ public class NeutronSfcSdnRedirectionApiTest extends AbstractNeutronSfcPluginTes
         assertEquals(sfcOther.getElementId(), updatedHook.getInspectionPort().getElementId());
     }
 
+    @Test
+    public void testApi_UpdateInspectionHook_CoalescedChanges_RemovesBeforeAdding() throws Exception {
+        // Arrange.
+        persistInspectedPort();
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        persistPortPairGroup();
+        persistPortChainAndSfcElement();
+        String oldChainId = sfc.getElementId();
+        String hookId = this.redirApi.installInspectionHook(inspectedPortElement, sfc, 0L, VLAN, 0L, NA);
+
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        persistPortPairGroup();
+        persistPortChainAndSfcElement();
+        String newChainId = sfc.getElementId();
+
+        // The removal is slow, an addition sent alongside it would start before it ends
+        List<String> updates = new CopyOnWriteArrayList<>();
+        PortChainService portChains = Mockito.mock(PortChainService.class, AdditionalAnswers.delegatesTo(portChainService));
+        Mockito.doAnswer(invocation -> {
+            String portChainId = (String) invocation.getArguments()[0];
+            updates.add("start " + portChainId);
+            if (portChainId.equals(oldChainId)) {
+                Thread.sleep(100);
+            }
+            PortChain updated = portChainService.update(portChainId, (PortChain) invocation.getArguments()[1]);
+            updates.add("end " + portChainId);
+            return updated;
+        }).when(portChains).update(anyString(), any(PortChain.class));
+        Mockito.when(this.sfcService.portchains()).thenReturn(portChains);
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put(PortChainMutationCoalescer.WINDOW_ATTRIBUTE, "20");
+        attributes.put(NeutronSfcQueryService.MAX_UPDATE_ATTEMPTS_ATTRIBUTE, "0");
+        VirtualizationConnectorElement vc = Mockito.mock(VirtualizationConnectorElement.class);
+        Mockito.when(vc.getProviderAttributes()).thenReturn(attributes);
+        OsClientPool pool = new OsClientPool(connector -> this.osClient);
+
+        // Act.
+        try {
+            VcSession session = pool.getSession(vc);
+            new NeutronSfcSdnRedirectionApi(session.getClient(), session)
+                    .updateInspectionHook(new FlowClassifierElement(hookId, inspectedPortElement, sfc));
+        } finally {
+            pool.close();
+        }
+
+        // Assert.
+        assertEquals(asList("start " + oldChainId, "end " + oldChainId, "start " + newChainId, "end " + newChainId),
+                updates);
+        assertEquals(Collections.singletonList(hookId), portChainService.get(newChainId).getFlowClassifiers());
+    }
+
     @Test
     public void testApi_UpdateInspectionHook_WithMissingHook_VerifyFailure() throws Exception {
         // Arrange.
@@ -339,6 +579,25 @@ public class NeutronSfcSdnRedirectionApiTest extends AbstractNeutronSfcPluginTes
         this.redirApi.updateInspectionHook(updatedHook);
     }
 
+    @Test
+    public void testApi_UpdateInspectionHook_WithMissingHook_NoLookupsLeftInFlight() throws Exception {
+        // Arrange.
+        persistPortChainAndSfcElement();
+
+        FlowClassifierElement updatedHook = new FlowClassifierElement("non-existing-id", inspectedPortElement, sfc);
+
+        // Act.
+        try {
+            this.redirApi.updateInspectionHook(updatedHook);
+            fail("Expected the missing Flow Classifier to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // Assert.
+        assertEquals(0, this.redirApi.getAsyncOsCalls().getInFlightCount());
+    }
+
     @Test
     public void testApi_RemoveInspectionHookById_InspectionHookDisappears() throws Exception {
         // Arrange.
@@ -560,6 +819,90 @@ public class NeutronSfcSdnRedirectionApiTest extends AbstractNeutronSfcPluginTes
         Assert.assertEquals("The list of port pair group ids is different than expected", ppgListSrc, ppgListTarget);
     }
 
+    @Test
+    public void testApi_UpdateNetworkElement_SinglePortChainUpdate() throws Exception {
+        // Arrange
+        List<PortPairGroup> ppgList = persistNInspectionPort(3);
+        PortChain pChain = portChainService.create(Builders.portChain()
+                .portPairGroups(asList(ppgList.get(0).getId(), ppgList.get(1).getId()))
+                .build());
+        PortChainService portChains = Mockito.mock(PortChainService.class, AdditionalAnswers.delegatesTo(portChainService));
+        Mockito.when(this.sfcService.portchains()).thenReturn(portChains);
+
+        DefaultNetworkPort sfcTest = new DefaultNetworkPort();
+        sfcTest.setElementId(pChain.getId());
+        List<NetworkElement> neList = new ArrayList<NetworkElement>();
+        for (PortPairGroup ppg : asList(ppgList.get(2), ppgList.get(0))) {
+            DefaultNetworkPort ne = new DefaultNetworkPort();
+            ne.setElementId(ppg.getId());
+            neList.add(ne);
+        }
+
+        // Act
+        this.redirApi.updateNetworkElement(sfcTest, neList);
+
+        // Assert
+        Mockito.verify(portChains, Mockito.times(1)).update(anyString(), any(PortChain.class));
+        assertEquals(asList(ppgList.get(2).getId(), ppgList.get(0).getId()),
+                portChainService.get(pChain.getId()).getPortPairGroups());
+    }
+
+    @Test
+    public void testApi_UpdateNetworkElement_DirectUpdateRejected_FallsBackToTwoSteps() throws Exception {
+        // Arrange
+        List<PortPairGroup> ppgList = persistNInspectionPort(2);
+        PortChain pChain = portChainService.create(Builders.portChain()
+                .portPairGroups(asList(ppgList.get(0).getId()))
+                .build());
+        PortChainService portChains = Mockito.mock(PortChainService.class, AdditionalAnswers.delegatesTo(portChainService));
+        Mockito.doThrow(new ResponseException("Port pair group in use", 400))
+               .doAnswer(AdditionalAnswers.delegatesTo(portChainService))
+               .when(portChains).update(anyString(), any(PortChain.class));
+        Mockito.when(this.sfcService.portchains()).thenReturn(portChains);
+
+        DefaultNetworkPort sfcTest = new DefaultNetworkPort();
+        sfcTest.setElementId(pChain.getId());
+        DefaultNetworkPort ne = new DefaultNetworkPort();
+        ne.setElementId(ppgList.get(1).getId());
+
+        // Act
+        this.redirApi.updateNetworkElement(sfcTest, asList(ne));
+
+        // Assert
+        Mockito.verify(portChains, Mockito.times(3)).update(anyString(), any(PortChain.class));
+        assertEquals(asList(ppgList.get(1).getId()), portChainService.get(pChain.getId()).getPortPairGroups());
+    }
+
+    @Test
+    public void testApi_UpdateNetworkElement_DirectUpdateUnauthorized_NoFallback() throws Exception {
+        // Arrange
+        List<PortPairGroup> ppgList = persistNInspectionPort(2);
+        PortChain pChain = portChainService.create(Builders.portChain()
+                .portPairGroups(asList(ppgList.get(0).getId()))
+                .build());
+        PortChainService portChains = Mockito.mock(PortChainService.class, AdditionalAnswers.delegatesTo(portChainService));
+        Mockito.doThrow(new ResponseException("Authentication required", 401))
+               .when(portChains).update(anyString(), any(PortChain.class));
+        Mockito.when(this.sfcService.portchains()).thenReturn(portChains);
+
+        DefaultNetworkPort sfcTest = new DefaultNetworkPort();
+        sfcTest.setElementId(pChain.getId());
+        DefaultNetworkPort ne = new DefaultNetworkPort();
+        ne.setElementId(ppgList.get(1).getId());
+
+        // Act
+        try {
+            this.redirApi.updateNetworkElement(sfcTest, asList(ne));
+            fail("Expected the failed update to be thrown");
+        } catch (SdnControllerResponseNsfcException e) {
+            assertEquals(401, ((ResponseException) e.getCause()).getStatus());
+        }
+
+        // Assert
+        Mockito.verify(portChains, Mockito.times(1)).update(anyString(), any(PortChain.class));
+        assertEquals(asList(ppgList.get(0).getId()), portChainService.get(pChain.getId()).getPortPairGroups());
+    }
+
     @Test
     public void testApi_DeleteNetworkElementWhenSfcElementIsNull_ThrowsIllegalArgumentException() throws Exception {
         // Arrange
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+import static org.osc.controller.nsfc.TestData.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openstack4j.api.Builders;
+import org.openstack4j.model.network.ext.PortChain;
+import org.osc.controller.nsfc.utils.OsCalls;
+import org.osc.controller.nsfc.utils.OsCallsCache;
+import org.osc.controller.nsfc.utils.SfcIndex;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OsCallsCacheTest extends AbstractNeutronSfcPluginTest {
+
+    private OsCallsCache cache;
+
+    private OsCalls osCalls;
+
+    @Before
+    @Override
+    public void setup() throws Exception {
+        super.setup();
+
+        this.cache = new OsCallsCache();
+        this.osCalls = new OsCalls(this.osClient, this.cache, null, new SfcIndex());
+    }
+
+    @Test
+    public void testCache_GetPortChainTwice_SecondIsHit() throws Exception {
+        // Arrange.
+        portChain = portChainService.create(Builders.portChain().portPairGroups(singletonList("ppg")).build());
+
+        // Act.
+        this.osCalls.getPortChain(portChain.getId());
+        portChainService.delete(portChain.getId());
+        PortChain cached = this.osCalls.getPortChain(portChain.getId());
+
+        // Assert.
+        assertNotNull(cached);
+        assertEquals(portChain.getId(), cached.getId());
+        assertEquals(1, this.cache.getStats().get("PortChain").hitCount());
+        assertEquals(1, this.cache.getStats().get("PortChain").missCount());
+    }
+
+    @Test
+    public void testCache_ModifyReturnedPortChain_CacheUnchanged() throws Exception {
+        // Arrange.
+        portChain = this.osCalls.createPortChain(Builders.portChain()
+                .portPairGroups(singletonList("ppg"))
+                .flowClassifiers(new ArrayList<>())
+                .build());
+
+        // Act.
+        this.osCalls.getPortChain(portChain.getId()).getFlowClassifiers().add("fc");
+        PortChain cached = this.osCalls.getPortChain(portChain.getId());
+
+        // Assert.
+        assertTrue(cached.getFlowClassifiers().isEmpty());
+    }
+
+    @Test
+    public void testCache_UpdatePortChain_WritesThrough() throws Exception {
+        // Arrange.
+        portChain = this.osCalls.createPortChain(Builders.portChain()
+                .portPairGroups(singletonList("ppg"))
+                .flowClassifiers(new ArrayList<>())
+                .build());
+        String portChainId = portChain.getId();
+
+        // Act.
+        this.osCalls.updatePortChain(portChainId, Builders.portChain()
+                .portPairGroups(singletonList("ppg"))
+                .flowClassifiers(singletonList("fc"))
+                .build());
+        PortChain cached = this.osCalls.getPortChain(portChainId);
+
+        // Assert.
+        assertEquals(singletonList("fc"), cached.getFlowClassifiers());
+        assertEquals(0, this.cache.getStats().get("PortChain").missCount());
+    }
+
+    @Test
+    public void testCache_DeletePortChain_Invalidates() throws Exception {
+        // Arrange.
+        portChain = this.osCalls.createPortChain(Builders.portChain().portPairGroups(singletonList("ppg")).build());
+
+        // Act.
+        this.osCalls.deletePortChain(portChain.getId());
+
+        // Assert.
+        assertNull(this.osCalls.getPortChain(portChain.getId()));
+    }
+
+    @Test
+    public void testCache_Disabled_AlwaysReadsThrough() throws Exception {
+        // Arrange.
+        this.osCalls = new OsCalls(this.osClient, OsCallsCache.disabled(), null, new SfcIndex());
+        portChain = portChainService.create(Builders.portChain().portPairGroups(singletonList("ppg")).build());
+        this.osCalls.getPortChain(portChain.getId());
+
+        // Act.
+        portChainService.delete(portChain.getId());
+
+        // Assert.
+        assertNull(this.osCalls.getPortChain(portChain.getId()));
+    }
+
+    @Test
+    public void testForVc_NoAttribute_Disabled() throws Exception {
+        // Arrange.
+        VirtualizationConnectorElement vc = Mockito.mock(VirtualizationConnectorElement.class);
+
+        // Act.
+        OsCallsCache vcCache = OsCallsCache.forVc(vc);
+
+        // Assert.
+        assertFalse(vcCache.isEnabled());
+    }
+
+    @Test
+    public void testForVc_EnabledAttribute_Enabled() throws Exception {
+        // Arrange.
+        VirtualizationConnectorElement vc = Mockito.mock(VirtualizationConnectorElement.class);
+        Mockito.when(vc.getProviderAttributes())
+                .thenReturn(Collections.singletonMap(OsCallsCache.ENABLED_ATTRIBUTE, "true"));
+
+        // Act.
+        OsCallsCache vcCache = OsCallsCache.forVc(vc);
+
+        // Assert.
+        assertTrue(vcCache.isEnabled());
+    }
+
+    @Test
+    public void testCache_UpdateWithChange_ReadsNeutronNotCache() throws Exception {
+        // Arrange.
+        portChain = this.osCalls.createPortChain(Builders.portChain()
+                .portPairGroups(singletonList("ppg"))
+                .flowClassifiers(new ArrayList<>())
+                .build());
+        String portChainId = portChain.getId();
+        this.osCalls.getPortChain(portChainId);
+        // Another node adds its flow classifier meanwhile
+        portChainService.update(portChainId, Builders.portChain()
+                .portPairGroups(singletonList("ppg"))
+                .flowClassifiers(new ArrayList<>(singletonList("other")))
+                .build());
+
+        // Act.
+        PortChain updated = this.osCalls.updatePortChain(portChainId, current -> {
+            List<String> flowClassifiers = new ArrayList<>(current.getFlowClassifiers());
+            flowClassifiers.add("fc");
+            return current.toBuilder().flowClassifiers(flowClassifiers).build();
+        });
+
+        // Assert.
+        assertEquals(asList("other", "fc"), updated.getFlowClassifiers());
+        assertEquals(asList("other", "fc"), this.osCalls.getPortChain(portChainId).getFlowClassifiers());
+    }
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openstack4j.api.exceptions.ResponseException;
+import org.openstack4j.model.network.ext.PortChain;
+import org.osc.controller.nsfc.exceptions.RevisionConflictException;
+import org.osc.controller.nsfc.exceptions.SdnControllerResponseNsfcException;
+import org.osc.controller.nsfc.utils.NeutronSfcQueryService;
+import org.osc.controller.nsfc.utils.NeutronSfcQueryService.RevisionedPortChain;
+import org.osc.controller.nsfc.utils.OsCalls;
+import org.osc.controller.nsfc.utils.OsCallsCache;
+import org.osc.controller.nsfc.utils.SfcIndex;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OsCallsTest extends AbstractNeutronSfcPluginTest {
+
+    private static final String PORT_CHAIN_ID = "pc";
+
+    @Mock
+    private NeutronSfcQueryService queryService;
+
+    private OsCalls osCalls;
+
+    @Before
+    @Override
+    public void setup() throws Exception {
+        super.setup();
+
+        Mockito.when(this.queryService.isConditionalUpdateEnabled()).thenReturn(true);
+        Mockito.when(this.queryService.getMaxUpdateAttempts()).thenReturn(2);
+        this.osCalls = new OsCalls(this.osClient, OsCallsCache.disabled(), this.queryService, new SfcIndex());
+    }
+
+    @Test
+    public void testUpdatePortChain_RevisionConflict_ChangeReappliedToNewRevision() throws Exception {
+        // Arrange.
+        RevisionedPortChain updated = revisionedPortChain(3L);
+        Mockito.when(this.queryService.getPortChain(PORT_CHAIN_ID))
+                .thenReturn(revisionedPortChain(1L), revisionedPortChain(2L));
+        Mockito.when(this.queryService.updatePortChain(eq(PORT_CHAIN_ID), any(PortChain.class), eq(1L)))
+                .thenThrow(new RevisionConflictException("/sfc/port_chains/" + PORT_CHAIN_ID, 1L, 412));
+        Mockito.when(this.queryService.updatePortChain(eq(PORT_CHAIN_ID), any(PortChain.class), eq(2L)))
+                .thenReturn(updated);
+        AtomicInteger applied = new AtomicInteger();
+
+        // Act.
+        PortChain result = this.osCalls.updatePortChain(PORT_CHAIN_ID, portChain -> {
+            applied.incrementAndGet();
+            portChain.getFlowClassifiers().add("fc");
+            return portChain;
+        });
+
+        // Assert.
+        assertSame(updated, result);
+        assertEquals(2, applied.get());
+        ArgumentCaptor<PortChain> sent = ArgumentCaptor.forClass(PortChain.class);
+        Mockito.verify(this.queryService).updatePortChain(eq(PORT_CHAIN_ID), sent.capture(), eq(2L));
+        assertEquals(singletonList("fc"), sent.getValue().getFlowClassifiers());
+    }
+
+    @Test
+    public void testUpdatePortChain_ConflictsExhaustAttempts_Throws() throws Exception {
+        // Arrange.
+        Mockito.when(this.queryService.getPortChain(PORT_CHAIN_ID))
+                .thenReturn(revisionedPortChain(1L), revisionedPortChain(2L));
+        Mockito.when(this.queryService.updatePortChain(eq(PORT_CHAIN_ID), any(PortChain.class), anyLong()))
+                .thenThrow(new RevisionConflictException("/sfc/port_chains/" + PORT_CHAIN_ID, 1L, 412));
+
+        // Act.
+        try {
+            this.osCalls.updatePortChain(PORT_CHAIN_ID, portChain -> portChain);
+            fail("Expected the update to fail");
+        } catch (SdnControllerResponseNsfcException e) {
+            // Assert.
+            assertTrue(e.getCause() instanceof RevisionConflictException);
+        }
+        Mockito.verify(this.queryService, Mockito.times(2)).getPortChain(PORT_CHAIN_ID);
+    }
+
+    @Test
+    public void testUpdatePortChain_NeutronRefusesChange_FailsWithoutReapplying() throws Exception {
+        // Arrange.
+        Mockito.when(this.queryService.getPortChain(PORT_CHAIN_ID)).thenReturn(revisionedPortChain(1L));
+        Mockito.when(this.queryService.updatePortChain(eq(PORT_CHAIN_ID), any(PortChain.class), anyLong()))
+                .thenThrow(new ResponseException("Port pair group in use", 409));
+
+        // Act.
+        try {
+            this.osCalls.updatePortChain(PORT_CHAIN_ID, portChain -> portChain);
+            fail("Expected the update to fail");
+        } catch (SdnControllerResponseNsfcException e) {
+            // Assert.
+            assertTrue(e.getCause() instanceof ResponseException);
+            assertEquals(409, ((ResponseException) e.getCause()).getStatus());
+        }
+        Mockito.verify(this.queryService, Mockito.times(1)).getPortChain(PORT_CHAIN_ID);
+        Mockito.verify(this.queryService, Mockito.times(2))
+                .updatePortChain(eq(PORT_CHAIN_ID), any(PortChain.class), eq(1L));
+    }
+
+    @Test
+    public void testUpdatePortChain_NoChange_NothingSent() throws Exception {
+        // Arrange.
+        RevisionedPortChain current = revisionedPortChain(1L);
+        Mockito.when(this.queryService.getPortChain(PORT_CHAIN_ID)).thenReturn(current);
+
+        // Act.
+        PortChain result = this.osCalls.updatePortChain(PORT_CHAIN_ID, portChain -> null);
+
+        // Assert.
+        assertSame(current, result);
+        Mockito.verify(this.queryService, Mockito.never()).updatePortChain(any(), any(), anyLong());
+    }
+
+    private static RevisionedPortChain revisionedPortChain(long revisionNumber) {
+        RevisionedPortChain portChain = Mockito.mock(RevisionedPortChain.class);
+        Mockito.when(portChain.getId()).thenReturn(PORT_CHAIN_ID);
+        Mockito.when(portChain.getRevisionNumber()).thenReturn(revisionNumber);
+        Mockito.when(portChain.getFlowClassifiers()).thenReturn(new ArrayList<>());
+        Mockito.when(portChain.getPortPairGroups()).thenReturn(new ArrayList<>());
+        return portChain;
+    }
+}
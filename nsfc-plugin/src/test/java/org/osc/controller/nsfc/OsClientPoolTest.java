@@ -0,0 +1,485 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.openstack4j.api.Builders;
+import org.openstack4j.api.OSClient.OSClientV3;
+import org.openstack4j.model.identity.v3.Token;
+import org.openstack4j.model.network.ext.PortChain;
+import org.osc.controller.nsfc.exceptions.RateLimitExceededException;
+import org.osc.controller.nsfc.utils.AsyncOsCalls;
+import org.osc.controller.nsfc.utils.CircuitBreaker;
+import org.osc.controller.nsfc.utils.NeutronCallMetrics;
+import org.osc.controller.nsfc.utils.NeutronCallMetricsRegistry;
+import org.osc.controller.nsfc.utils.OsCalls;
+import org.osc.controller.nsfc.utils.OsCallsCache;
+import org.osc.controller.nsfc.utils.OsClientPool;
+import org.osc.controller.nsfc.utils.PortChainMutationCoalescer;
+import org.osc.controller.nsfc.utils.RateLimiter;
+import org.osc.controller.nsfc.utils.ResourceLocks;
+import org.osc.controller.nsfc.utils.SfcTopology;
+import org.osc.controller.nsfc.utils.VcSession;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+
+public class OsClientPoolTest {
+
+    private AtomicInteger authentications;
+
+    private OsClientPool pool;
+
+    @Before
+    public void setup() {
+        this.authentications = new AtomicInteger();
+        this.pool = new OsClientPool(vc -> {
+            this.authentications.incrementAndGet();
+            return Mockito.mock(OSClientV3.class);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        this.pool.close();
+    }
+
+    @Test
+    public void testPool_SameVc_AuthenticatesOnce() {
+        // Arrange.
+        VirtualizationConnectorElement vc = mockVc("10.0.0.1", "admin123");
+
+        // Act.
+        OSClientV3 first = this.pool.getClient(vc);
+        OSClientV3 second = this.pool.getClient(vc);
+
+        // Assert.
+        assertSame(first, second);
+        assertEquals(1, this.authentications.get());
+        assertEquals(1, this.pool.size());
+    }
+
+    @Test
+    public void testPool_DifferentVcs_KeepSeparateSessions() {
+        // Act.
+        this.pool.getClient(mockVc("10.0.0.1", "admin123"));
+        this.pool.getClient(mockVc("10.0.0.2", "admin123"));
+
+        // Assert.
+        assertEquals(2, this.authentications.get());
+        assertEquals(2, this.pool.size());
+    }
+
+    @Test
+    public void testPool_PasswordChanged_Reauthenticates() {
+        // Arrange.
+        this.pool.getClient(mockVc("10.0.0.1", "admin123"));
+
+        // Act.
+        this.pool.getClient(mockVc("10.0.0.1", "newpassword"));
+
+        // Assert.
+        assertEquals(2, this.authentications.get());
+        assertEquals(1, this.pool.size());
+    }
+
+    @Test
+    public void testPool_ProviderAttributeChanged_NewSessionWithNewSettings() {
+        // Arrange.
+        VcSession session = this.pool.getSession(mockVc("10.0.0.1", "admin123"));
+        VirtualizationConnectorElement changed = mockVc("10.0.0.1", "admin123");
+        Mockito.when(changed.getProviderAttributes())
+                .thenReturn(Collections.singletonMap(AsyncOsCalls.MAX_IN_FLIGHT_ATTRIBUTE, "32"));
+
+        // Act.
+        VcSession replaced = this.pool.getSession(changed);
+
+        // Assert.
+        assertNotSame(session, replaced);
+        assertEquals(32, replaced.getAsyncPermits().availablePermits());
+        assertSame(replaced, this.pool.getSession(changed));
+        assertEquals(1, this.pool.size());
+    }
+
+    @Test
+    public void testPool_EvictedVc_Reauthenticates() {
+        // Arrange.
+        VirtualizationConnectorElement vc = mockVc("10.0.0.1", "admin123");
+        this.pool.getClient(vc);
+
+        // Act.
+        this.pool.evict(vc);
+        this.pool.getClient(vc);
+
+        // Assert.
+        assertEquals(2, this.authentications.get());
+    }
+
+    @Test
+    public void testPool_IdleSession_Evicted() {
+        // Arrange.
+        this.pool = new OsClientPool(vc -> Mockito.mock(OSClientV3.class), OsClientPool.DEFAULT_EXPIRY_MARGIN_MILLIS, -1);
+        this.pool.getClient(mockVc("10.0.0.1", "admin123"));
+
+        // Act.
+        this.pool.evictIdleSessions();
+
+        // Assert.
+        assertEquals(0, this.pool.size());
+    }
+
+    @Test
+    public void testEvict_LastSessionOfEndpoint_DropsCircuitBreaker() {
+        // Arrange.
+        VirtualizationConnectorElement vc = mockVc("10.0.0.1", "admin123");
+        VirtualizationConnectorElement other = mockVc("10.0.0.2", "admin123");
+        CircuitBreaker circuitBreaker = this.pool.getSession(vc).getCircuitBreaker();
+        CircuitBreaker otherCircuitBreaker = this.pool.getSession(other).getCircuitBreaker();
+
+        // Act.
+        this.pool.evict(vc);
+
+        // Assert.
+        assertNull(this.pool.findCircuitBreaker(vc));
+        assertNotSame(circuitBreaker, this.pool.getSession(vc).getCircuitBreaker());
+        assertSame(otherCircuitBreaker, this.pool.findCircuitBreaker(other));
+    }
+
+    @Test
+    public void testGetSession_SameEndpointOtherBreakerSettings_OwnCircuitBreaker() {
+        // Arrange.
+        VirtualizationConnectorElement vc = mockVc("10.0.0.1", "admin123");
+        VirtualizationConnectorElement sameSettings = mockVc("10.0.0.1", "admin123");
+        Mockito.when(sameSettings.getProviderAdminTenantName()).thenReturn("tenant-a");
+        VirtualizationConnectorElement otherSettings = mockVc("10.0.0.1", "admin123");
+        Mockito.when(otherSettings.getProviderAdminTenantName()).thenReturn("tenant-b");
+        Mockito.when(otherSettings.getProviderAttributes())
+               .thenReturn(Collections.singletonMap(CircuitBreaker.OPEN_ATTRIBUTE, "1000"));
+
+        // Act.
+        CircuitBreaker circuitBreaker = this.pool.getSession(vc).getCircuitBreaker();
+        CircuitBreaker sameSettingsCircuitBreaker = this.pool.getSession(sameSettings).getCircuitBreaker();
+        CircuitBreaker otherSettingsCircuitBreaker = this.pool.getSession(otherSettings).getCircuitBreaker();
+
+        // Assert.
+        assertEquals(3, this.pool.size());
+        assertSame(circuitBreaker, sameSettingsCircuitBreaker);
+        assertNotSame(circuitBreaker, otherSettingsCircuitBreaker);
+        assertEquals(circuitBreaker.getEndpoint(), otherSettingsCircuitBreaker.getEndpoint());
+    }
+
+    @Test
+    public void testFindCircuitBreaker_VcWithoutSession_NoneCreated() {
+        // Arrange.
+        VirtualizationConnectorElement vc = mockVc("10.0.0.1", "admin123");
+
+        // Act.
+        CircuitBreaker circuitBreaker = this.pool.findCircuitBreaker(vc);
+
+        // Assert.
+        assertNull(circuitBreaker);
+        assertNull(this.pool.findCircuitBreaker(vc));
+        assertEquals(0, this.pool.size());
+    }
+
+    @Test
+    public void testTokenRefresh_TokenNearExpiry_RenewedInBackground() throws Exception {
+        // Arrange.
+        Token expiring = mockToken(TimeUnit.MINUTES.toMillis(8));
+        Token renewed = mockToken(TimeUnit.HOURS.toMillis(1));
+        VirtualizationConnectorElement vc = mockVc("10.0.0.1", "admin123");
+        VcSession session = authenticatedSession(vc, expiring, renewed);
+        NeutronCallMetrics metrics = this.pool.getCallMetrics().forVc(vc);
+
+        // Act.
+        this.pool.startTokenRefresh(TimeUnit.MINUTES.toMillis(10), 10);
+
+        // Assert.
+        assertTrue(waitFor(() -> metrics.getTokenRefreshCount() == 1));
+        assertSame(renewed, session.getToken());
+        assertEquals(2, this.authentications.get());
+        assertEquals(0, metrics.getTokenRefreshFailureCount());
+    }
+
+    @Test
+    public void testTokenRefresh_KeystoneFails_KeepsValidToken() throws Exception {
+        // Arrange.
+        Token expiring = mockToken(TimeUnit.MINUTES.toMillis(8));
+        VirtualizationConnectorElement vc = mockVc("10.0.0.1", "admin123");
+        VcSession session = authenticatedSession(vc, expiring, null);
+        NeutronCallMetrics metrics = this.pool.getCallMetrics().forVc(vc);
+
+        // Act.
+        this.pool.startTokenRefresh(TimeUnit.MINUTES.toMillis(10), 10);
+
+        // Assert.
+        assertTrue(waitFor(() -> metrics.getTokenRefreshFailureCount() > 0));
+        assertSame(expiring, session.getToken());
+        assertEquals(0, metrics.getTokenRefreshCount());
+    }
+
+    @Test
+    public void testStopTokenRefresh_Running_NoMoreRefreshes() throws Exception {
+        // Arrange.
+        VirtualizationConnectorElement vc = mockVc("10.0.0.1", "admin123");
+        authenticatedSession(vc, mockToken(TimeUnit.MINUTES.toMillis(8)), null);
+        this.pool.startTokenRefresh(TimeUnit.MINUTES.toMillis(10), 10);
+        assertTrue(waitFor(() -> this.authentications.get() > 2));
+
+        // Act.
+        this.pool.stopTokenRefresh();
+
+        // Assert.
+        Thread.sleep(50);
+        int attempts = this.authentications.get();
+        Thread.sleep(100);
+        assertEquals(attempts, this.authentications.get());
+    }
+
+    @Test
+    public void testGetSession_LargerMaxInFlight_GrowsWorkers() {
+        // Arrange.
+        VirtualizationConnectorElement vc = mockVc("10.0.0.1", "admin123");
+        Mockito.when(vc.getProviderAttributes())
+               .thenReturn(Collections.singletonMap(AsyncOsCalls.MAX_IN_FLIGHT_ATTRIBUTE, "32"));
+
+        // Act.
+        VcSession session = this.pool.getSession(vc);
+
+        // Assert.
+        assertEquals(32, ((ThreadPoolExecutor) this.pool.getWorkers()).getMaximumPoolSize());
+        assertEquals(32, session.getAsyncPermits().availablePermits());
+    }
+
+    @Test
+    public void testCallMetrics_RateLimitedCalls_ExportedThroughMBean() throws Exception {
+        // Arrange.
+        VirtualizationConnectorElement vc = mockVc("10.0.0.1", "admin123");
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put(RateLimiter.WRITES_PER_SECOND_ATTRIBUTE, "1");
+        attributes.put(RateLimiter.FAIL_FAST_ATTRIBUTE, "true");
+        Mockito.when(vc.getProviderAttributes()).thenReturn(attributes);
+        RateLimiter rateLimiter = this.pool.getSession(vc).getRateLimiter();
+        rateLimiter.call(true, () -> null);
+        try {
+            rateLimiter.call(true, () -> null);
+            fail("Expected the call to be rejected");
+        } catch (RateLimitExceededException e) {
+            // expected
+        }
+        MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+
+        // Act.
+        this.pool.getCallMetrics().registerMBeans(mbeanServer);
+
+        // Assert.
+        ObjectName name = NeutronCallMetricsRegistry.objectName(vc.getName());
+        assertEquals(1L, mbeanServer.getAttribute(name, "RateLimitRejectedCount"));
+        assertEquals(0L, mbeanServer.getAttribute(name, "RateLimitDelayedCount"));
+        assertTrue((Double) mbeanServer.getAttribute(name, "RateLimitAvailableWritePermits") < 1);
+        assertEquals(Double.POSITIVE_INFINITY, mbeanServer.getAttribute(name, "RateLimitAvailableReadPermits"));
+    }
+
+    @Test
+    public void testCallMetrics_CachedReads_ExportedThroughMBean() throws Exception {
+        // Arrange.
+        VirtualizationConnectorElement vc = mockVc("10.0.0.1", "admin123");
+        Mockito.when(vc.getProviderAttributes())
+               .thenReturn(Collections.singletonMap(OsCallsCache.ENABLED_ATTRIBUTE, "true"));
+        OsCallsCache cache = this.pool.getSession(vc).getCache();
+        PortChain portChain = Builders.portChain().id("pc-1").build();
+        cache.getPortChain("pc-1", id -> portChain);
+        cache.getPortChain("pc-1", id -> portChain);
+        MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+
+        // Act.
+        this.pool.getCallMetrics().registerMBeans(mbeanServer);
+
+        // Assert.
+        ObjectName name = NeutronCallMetricsRegistry.objectName(vc.getName());
+        assertEquals(1L, mbeanServer.getAttribute(name, "CacheHitCount"));
+        assertEquals(1L, mbeanServer.getAttribute(name, "CacheMissCount"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCallMetrics_CoalescedMutations_ExportedThroughMBean() throws Exception {
+        // Arrange.
+        VirtualizationConnectorElement vc = mockVc("10.0.0.1", "admin123");
+        Mockito.when(vc.getProviderAttributes())
+               .thenReturn(Collections.singletonMap(PortChainMutationCoalescer.WINDOW_ATTRIBUTE, "500"));
+        PortChainMutationCoalescer coalescer = this.pool.getSession(vc).getCoalescer();
+        PortChain portChain = Builders.portChain().id("pc-1").flowClassifiers(new ArrayList<>()).build();
+        OsCalls osCalls = Mockito.mock(OsCalls.class);
+        Mockito.when(osCalls.inSession(Matchers.any())).thenAnswer(invocation -> invocation.getArguments()[0]);
+        Mockito.when(osCalls.updatePortChain(Matchers.eq("pc-1"), Matchers.any(Function.class)))
+               .thenAnswer(invocation -> ((Function<PortChain, PortChain>) invocation.getArguments()[1]).apply(portChain));
+        CompletableFuture<PortChain> first = coalescer.addFlowClassifier(osCalls, "pc-1", "fc-1");
+        CompletableFuture<PortChain> second = coalescer.addFlowClassifier(osCalls, "pc-1", "fc-2");
+        CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+        MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+
+        // Act.
+        this.pool.getCallMetrics().registerMBeans(mbeanServer);
+
+        // Assert.
+        ObjectName name = NeutronCallMetricsRegistry.objectName(vc.getName());
+        assertEquals(2L, mbeanServer.getAttribute(name, "CoalescedMutationCount"));
+        assertEquals(1L, mbeanServer.getAttribute(name, "CoalescedUpdateCount"));
+    }
+
+    @Test
+    public void testCallMetrics_LockContended_ExportedThroughMBean() throws Exception {
+        // Arrange.
+        VirtualizationConnectorElement vc = mockVc("10.0.0.1", "admin123");
+        ResourceLocks locks = this.pool.getSession(vc).getLocks();
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> locks.withPortChainLock("pc-1", () -> {
+            held.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> waiter = CompletableFuture.runAsync(() -> locks.withPortChainLock("pc-1", () -> {
+        }));
+        Thread.sleep(100);
+        release.countDown();
+        waiter.get(5, TimeUnit.SECONDS);
+        holder.get(5, TimeUnit.SECONDS);
+        MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+
+        // Act.
+        this.pool.getCallMetrics().registerMBeans(mbeanServer);
+
+        // Assert.
+        ObjectName name = NeutronCallMetricsRegistry.objectName(vc.getName());
+        assertEquals(1L, mbeanServer.getAttribute(name, "LockContendedCount"));
+        assertEquals(locks.getMaxWaitMillis(), mbeanServer.getAttribute(name, "LockMaxWaitMillis"));
+        assertEquals(locks.getTotalWaitMillis(), mbeanServer.getAttribute(name, "LockTotalWaitMillis"));
+    }
+
+    @Test
+    public void testLoadTopology_CalledTwice_ListsOnce() {
+        // Arrange.
+        VcSession session = this.pool.getSession(mockVc("10.0.0.1", "admin123"));
+        OsCalls osCalls = Mockito.mock(OsCalls.class);
+        Mockito.when(osCalls.inSession(Matchers.any())).thenAnswer(invocation -> invocation.getArguments()[0]);
+
+        // Act.
+        session.loadTopology(osCalls);
+        session.loadTopology(osCalls);
+
+        // Assert.
+        Mockito.verify(osCalls).listPortPairs();
+        Mockito.verify(osCalls).listPortPairGroups();
+        Mockito.verify(osCalls).listPortChains();
+        Mockito.verify(osCalls).listFlowClassifiers();
+        Mockito.verify(osCalls).listPorts();
+        assertNotSame(SfcTopology.EMPTY, session.getTopology());
+    }
+
+    @Test
+    public void testLoadTopology_NeutronFails_SessionStillUsable() {
+        // Arrange.
+        VcSession session = this.pool.getSession(mockVc("10.0.0.1", "admin123"));
+        OsCalls osCalls = Mockito.mock(OsCalls.class);
+        Mockito.when(osCalls.inSession(Matchers.any())).thenAnswer(invocation -> invocation.getArguments()[0]);
+        Mockito.when(osCalls.listPortChains()).thenThrow(new IllegalStateException("Neutron unavailable"));
+
+        // Act.
+        session.loadTopology(osCalls);
+
+        // Assert.
+        assertNotNull(session.getClient());
+        assertSame(SfcTopology.EMPTY, session.getTopology());
+        Mockito.verify(osCalls).listPortPairGroups();
+    }
+
+    /**
+     * Authenticates a session of the VC with the first token. Later authentications return the
+     * second token or fail if it is null.
+     */
+    private VcSession authenticatedSession(VirtualizationConnectorElement vc, Token first, Token later) {
+        this.pool.close();
+        this.pool = new OsClientPool(connector -> {
+            Token token = this.authentications.incrementAndGet() == 1 ? first : later;
+            if (token == null) {
+                throw new IllegalStateException("Keystone unavailable");
+            }
+            OSClientV3 client = Mockito.mock(OSClientV3.class);
+            Mockito.when(client.getToken()).thenReturn(token);
+            return client;
+        });
+
+        VcSession session = this.pool.getSession(vc);
+        session.getClient();
+        return session;
+    }
+
+    private static Token mockToken(long expiresInMillis) {
+        Token token = Mockito.mock(Token.class);
+        Mockito.when(token.getExpires()).thenReturn(new Date(System.currentTimeMillis() + expiresInMillis));
+        return token;
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private static VirtualizationConnectorElement mockVc(String ip, String password) {
+        VirtualizationConnectorElement vc = Mockito.mock(VirtualizationConnectorElement.class);
+        Mockito.when(vc.getName()).thenReturn("vc-" + ip);
+        Mockito.when(vc.getProviderIpAddress()).thenReturn(ip);
+        Mockito.when(vc.getProviderAdminDomainId()).thenReturn("default");
+        Mockito.when(vc.getProviderAdminTenantName()).thenReturn("admin");
+        Mockito.when(vc.getProviderUsername()).thenReturn("admin");
+        Mockito.when(vc.getProviderPassword()).thenReturn(password);
+        return vc;
+    }
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+import static org.osc.controller.nsfc.TestData.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openstack4j.api.Builders;
+import org.openstack4j.model.network.ext.PortChain;
+import org.osc.controller.nsfc.utils.CallAccounting;
+import org.osc.controller.nsfc.utils.CallAccounting.OperationCost;
+import org.osc.controller.nsfc.utils.CallAccounting.Scope;
+import org.osc.controller.nsfc.utils.NeutronCallMetrics;
+import org.osc.controller.nsfc.utils.NeutronOperation;
+import org.osc.controller.nsfc.utils.OsCalls;
+import org.osc.controller.nsfc.utils.PortChainMutationCoalescer;
+import org.osc.controller.nsfc.utils.ResourceLocks;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PortChainMutationCoalescerTest extends AbstractNeutronSfcPluginTest {
+
+    private static final long WINDOW_MILLIS = 200;
+
+    private ScheduledExecutorService scheduler;
+
+    private ExecutorService workers;
+
+    private OsCalls osCalls;
+
+    @Before
+    @Override
+    public void setup() throws Exception {
+        super.setup();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.workers = Executors.newFixedThreadPool(2);
+        this.osCalls = new OsCalls(this.osClient);
+        portChain = portChainService.create(Builders.portChain()
+                .portPairGroups(singletonList("ppg"))
+                .flowClassifiers(new ArrayList<>(singletonList("fc-old")))
+                .build());
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        this.scheduler.shutdownNow();
+        this.workers.shutdownNow();
+    }
+
+    @Test
+    public void testCoalescer_ChangesWithinWindow_AppliedWithOneUpdate() throws Exception {
+        // Arrange.
+        PortChainMutationCoalescer coalescer = new PortChainMutationCoalescer(this.scheduler, this.workers,
+                WINDOW_MILLIS, new ResourceLocks());
+        List<CompletableFuture<PortChain>> futures = new ArrayList<>();
+
+        // Act.
+        for (int i = 0; i < 10; i++) {
+            futures.add(coalescer.addFlowClassifier(this.osCalls, portChain.getId(), "fc" + i));
+        }
+        futures.add(coalescer.removeFlowClassifier(this.osCalls, portChain.getId(), "fc-old"));
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+        // Assert.
+        List<String> flowClassifiers = portChainService.get(portChain.getId()).getFlowClassifiers();
+        assertEquals(10, flowClassifiers.size());
+        assertFalse(flowClassifiers.contains("fc-old"));
+        assertEquals(11, coalescer.getMutationCount());
+        assertEquals(1, coalescer.getUpdateCount());
+    }
+
+    @Test
+    public void testCoalescer_ChangesOfSeveralOperations_RequestsSharedProRata() throws Exception {
+        // Arrange.
+        CallAccounting accounting = new CallAccounting(false);
+        OsCalls osCalls = new OsCalls(this.osClient, new NeutronCallMetrics(null, accounting));
+        PortChainMutationCoalescer coalescer = new PortChainMutationCoalescer(this.scheduler, this.workers,
+                WINDOW_MILLIS, new ResourceLocks(), accounting);
+        List<CompletableFuture<PortChain>> futures = new ArrayList<>();
+
+        // Act.
+        try (Scope scope = accounting.begin("installInspectionHooks")) {
+            for (int i = 0; i < 3; i++) {
+                futures.add(coalescer.addFlowClassifier(osCalls, portChain.getId(), "fc" + i));
+            }
+        }
+        try (Scope scope = accounting.begin("removeInspectionHook")) {
+            futures.add(coalescer.removeFlowClassifier(osCalls, portChain.getId(), "fc-old"));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+        // Assert.
+        OperationCost install = accounting.getCost("installInspectionHooks");
+        OperationCost remove = accounting.getCost("removeInspectionHook");
+        assertEquals(0, install.getCallCount());
+        assertEquals(0, remove.getCallCount());
+        assertEquals(0.75, install.getSharedCallCount(NeutronOperation.UpdatePortChain), 1e-9);
+        assertEquals(0.25, remove.getSharedCallCount(NeutronOperation.UpdatePortChain), 1e-9);
+        assertEquals(3 * remove.getSharedCallCount(), install.getSharedCallCount(), 1e-9);
+    }
+
+    @Test
+    public void testCoalescer_PortChainMissing_EveryCallerFails() throws Exception {
+        // Arrange.
+        PortChainMutationCoalescer coalescer = new PortChainMutationCoalescer(this.scheduler, this.workers,
+                WINDOW_MILLIS, new ResourceLocks());
+
+        // Act.
+        CompletableFuture<PortChain> first = coalescer.addFlowClassifier(this.osCalls, "missing", "fc1");
+        CompletableFuture<PortChain> second = coalescer.addFlowClassifier(this.osCalls, "missing", "fc2");
+
+        // Assert.
+        for (CompletableFuture<PortChain> future : asList(first, second)) {
+            try {
+                future.join();
+                fail("Expected the change to fail");
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+        }
+        assertEquals(0, coalescer.getUpdateCount());
+    }
+
+    @Test
+    public void testCoalescer_Immediate_AppliedBeforeReturning() throws Exception {
+        // Arrange.
+        PortChainMutationCoalescer coalescer = PortChainMutationCoalescer.immediate(new ResourceLocks());
+
+        // Act.
+        CompletableFuture<PortChain> future = coalescer.addFlowClassifier(this.osCalls, portChain.getId(), "fc1");
+
+        // Assert.
+        assertTrue(future.isDone());
+        assertTrue(portChainService.get(portChain.getId()).getFlowClassifiers().contains("fc1"));
+        assertEquals(1, coalescer.getUpdateCount());
+    }
+
+    @Test
+    public void testCoalescer_AddExistingFlowClassifier_NoUpdate() throws Exception {
+        // Arrange.
+        PortChainMutationCoalescer coalescer = PortChainMutationCoalescer.immediate(new ResourceLocks());
+
+        // Act.
+        coalescer.addFlowClassifier(this.osCalls, portChain.getId(), "fc-old").join();
+
+        // Assert.
+        assertEquals(0, coalescer.getUpdateCount());
+    }
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+import org.osc.controller.nsfc.utils.ProviderAttributes;
+
+public class ProviderAttributesTest {
+
+    private static final String ATTRIBUTE = "nsfc.test.value";
+
+    @Test
+    public void testGet_ValidValues_Parsed() throws Exception {
+        // Arrange.
+        Map<String, String> attributes = Collections.singletonMap(ATTRIBUTE, " 42 ");
+
+        // Act.
+        int intValue = ProviderAttributes.getInt(attributes, ATTRIBUTE, 1);
+        long longValue = ProviderAttributes.getLong(attributes, ATTRIBUTE, 1);
+        double doubleValue = ProviderAttributes.getDouble(attributes, ATTRIBUTE, 1);
+
+        // Assert.
+        assertEquals(42, intValue);
+        assertEquals(42L, longValue);
+        assertEquals(42.0, doubleValue, 0);
+    }
+
+    @Test
+    public void testGet_MissingOrInvalidValues_DefaultUsed() throws Exception {
+        // Arrange.
+        Map<String, String> attributes = Collections.singletonMap(ATTRIBUTE, "fast");
+
+        // Act.
+        int invalid = ProviderAttributes.getInt(attributes, ATTRIBUTE, 7);
+        long missing = ProviderAttributes.getLong(null, ATTRIBUTE, 7);
+
+        // Assert.
+        assertEquals(7, invalid);
+        assertEquals(7L, missing);
+        assertFalse(ProviderAttributes.getBoolean(attributes, ATTRIBUTE));
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.osc.controller.nsfc.exceptions.RateLimitExceededException;
+import org.osc.controller.nsfc.utils.RateLimiter;
+
+public class RateLimiterTest {
+
+    @Test
+    public void testCall_BurstExhaustedFailFast_Rejected() throws Exception {
+        // Arrange.
+        RateLimiter rateLimiter = new RateLimiter(0, 2, 1, true, 1000);
+        AtomicInteger calls = new AtomicInteger();
+        rateLimiter.call(true, () -> calls.incrementAndGet());
+        rateLimiter.call(true, () -> calls.incrementAndGet());
+
+        // Act.
+        try {
+            rateLimiter.call(true, () -> calls.incrementAndGet());
+            fail("Expected the call to be rejected");
+        } catch (RateLimitExceededException e) {
+            // Assert.
+            assertEquals(2, calls.get());
+            assertEquals(1, rateLimiter.getRejectedCount());
+            assertTrue(rateLimiter.getAvailableWritePermits() < 1);
+        }
+    }
+
+    @Test
+    public void testCall_BurstExhausted_WaitsForPermit() throws Exception {
+        // Arrange.
+        RateLimiter rateLimiter = new RateLimiter(20, 0, 0.05, false, 1000);
+        rateLimiter.call(false, () -> null);
+
+        // Act.
+        long start = System.nanoTime();
+        rateLimiter.call(false, () -> null);
+        long waitedMillis = (System.nanoTime() - start) / 1000000;
+
+        // Assert.
+        assertTrue("waited " + waitedMillis + " ms", waitedMillis >= 30);
+        assertEquals(1, rateLimiter.getDelayedCount());
+        assertTrue(rateLimiter.getMaxWaitMillis() > 0);
+        assertEquals(0, rateLimiter.getRejectedCount());
+    }
+
+    @Test
+    public void testCall_WaitLongerThanMax_Rejected() throws Exception {
+        // Arrange.
+        RateLimiter rateLimiter = new RateLimiter(1, 0, 1, false, 10);
+        rateLimiter.call(false, () -> null);
+
+        // Act.
+        try {
+            rateLimiter.call(false, () -> null);
+            fail("Expected the call to be rejected");
+        } catch (RateLimitExceededException e) {
+            // Assert.
+            assertEquals(1, rateLimiter.getRejectedCount());
+            assertEquals(0, rateLimiter.getDelayedCount());
+        }
+    }
+
+    @Test
+    public void testCall_BoundedWaitShorterThanPermit_Rejected() throws Exception {
+        // Arrange.
+        RateLimiter rateLimiter = new RateLimiter(1, 0, 1, false, RateLimiter.DEFAULT_MAX_WAIT_MILLIS);
+        rateLimiter.call(false, () -> null);
+
+        // Act.
+        try {
+            rateLimiter.call(false, 10, () -> null);
+            fail("Expected the call to be rejected");
+        } catch (RateLimitExceededException e) {
+            // Assert.
+            assertEquals(1, rateLimiter.getRejectedCount());
+            assertEquals(0, rateLimiter.getDelayedCount());
+        }
+    }
+
+    @Test
+    public void testCall_ReadsExhausted_WritesUnaffected() throws Exception {
+        // Arrange.
+        RateLimiter rateLimiter = new RateLimiter(1, 0, 1, true, 0);
+        rateLimiter.call(false, () -> null);
+
+        // Act.
+        Integer written = rateLimiter.call(true, () -> 1);
+
+        // Assert.
+        assertEquals(Integer.valueOf(1), written);
+        assertEquals(Double.POSITIVE_INFINITY, rateLimiter.getAvailableWritePermits(), 0);
+        assertTrue(rateLimiter.getAvailableReadPermits() < 1);
+    }
+}
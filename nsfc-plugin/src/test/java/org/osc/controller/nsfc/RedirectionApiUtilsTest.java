@@ -16,25 +16,35 @@
  *******************************************************************************/
 package org.osc.controller.nsfc;
 
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.*;
 import static org.osc.controller.nsfc.TestData.*;
 
 import java.util.ArrayList;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.openstack4j.api.Builders;
+import org.openstack4j.api.exceptions.ClientResponseException;
 import org.openstack4j.model.network.Port;
 import org.openstack4j.model.network.ext.FlowClassifier;
 import org.openstack4j.model.network.ext.PortChain;
 import org.openstack4j.model.network.ext.PortPair;
 import org.openstack4j.model.network.ext.PortPairGroup;
 import org.osc.controller.nsfc.entities.NetworkElementImpl;
+import org.osc.controller.nsfc.utils.NeutronSfcQueryService;
 import org.osc.controller.nsfc.utils.OsCalls;
+import org.osc.controller.nsfc.utils.OsCallsCache;
 import org.osc.controller.nsfc.utils.RedirectionApiUtils;
+import org.osc.controller.nsfc.utils.SfcIndex;
+import org.osc.controller.nsfc.utils.SfcTopology;
 
 @RunWith(MockitoJUnitRunner.class)
 public class RedirectionApiUtilsTest extends AbstractNeutronSfcPluginTest {
@@ -122,6 +132,126 @@ public class RedirectionApiUtilsTest extends AbstractNeutronSfcPluginTest {
         assertNull(foundByWrongPort);
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testUtils_FetchPortPairByNetworkElements_InTopology_GetsWithoutListing() throws Exception {
+
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        SfcTopology topology = SfcTopology.build(singletonList(portPair), emptyList(), emptyList(), emptyList(),
+                emptyList());
+
+        NeutronSfcQueryService queryService = Mockito.mock(NeutronSfcQueryService.class);
+        this.utils = new RedirectionApiUtils(new OsCalls(this.osClient, OsCallsCache.disabled(), queryService, new SfcIndex()),
+                () -> topology);
+
+        // Act.
+        PortPair foundPortPair = this.utils.fetchPortPairByNetworkElements(ingressPortElement, egressPortElement);
+
+        // Assert.
+        assertNotNull(foundPortPair);
+        assertEquals(portPair.getId(), foundPortPair.getId());
+        Mockito.verify(queryService, Mockito.never()).listPortPairs(Matchers.anyMap());
+    }
+
+    @Test
+    public void testUtils_FetchPortPairByNetworkElements_DeletedSinceTopologyLoaded_ListsAndReturnsNull() throws Exception {
+
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        SfcTopology topology = SfcTopology.build(singletonList(portPair), emptyList(), emptyList(), emptyList(),
+                emptyList());
+        this.utils = new RedirectionApiUtils(this.osCalls, () -> topology);
+
+        portPairService.delete(portPair.getId());
+
+        // Act.
+        PortPair foundPortPair = this.utils.fetchPortPairByNetworkElements(ingressPortElement, egressPortElement);
+
+        // Assert.
+        assertNull(foundPortPair);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void testUtils_FetchPortPairByNetworkElements_ServerFiltering_SendsIngressAndEgress() throws Exception {
+
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+
+        NeutronSfcQueryService queryService = Mockito.mock(NeutronSfcQueryService.class);
+        Mockito.when(queryService.isPortPairFilteringSupported()).thenReturn(true);
+        Mockito.doReturn(singletonList(portPair)).when(queryService).listPortPairs(Matchers.anyMap());
+        this.utils = new RedirectionApiUtils(new OsCalls(this.osClient, OsCallsCache.disabled(), queryService, new SfcIndex()));
+
+        // Act.
+        PortPair foundPortPair = this.utils.fetchPortPairByNetworkElements(ingressPortElement, egressPortElement);
+
+        // Assert.
+        assertNotNull(foundPortPair);
+        assertEquals(portPair.getId(), foundPortPair.getId());
+        ArgumentCaptor<Map> filters = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(queryService).listPortPairs(filters.capture());
+        assertEquals(ingressPort.getId(), filters.getValue().get("ingress"));
+        assertEquals(egressPort.getId(), filters.getValue().get("egress"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testUtils_FetchPortPairByNetworkElements_ServerRejectsFilters_FallsBackToFullScan() throws Exception {
+
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+
+        NeutronSfcQueryService queryService = Mockito.mock(NeutronSfcQueryService.class);
+        Mockito.when(queryService.isPortPairFilteringSupported()).thenReturn(true);
+        Mockito.when(queryService.listPortPairs(Matchers.anyMap()))
+               .thenThrow(new ClientResponseException("Invalid filter", 400));
+        this.utils = new RedirectionApiUtils(new OsCalls(this.osClient, OsCallsCache.disabled(), queryService, new SfcIndex()));
+
+        // Act.
+        PortPair foundPortPair = this.utils.fetchPortPairByNetworkElements(ingressPortElement, egressPortElement);
+
+        // Assert.
+        assertNotNull(foundPortPair);
+        assertEquals(portPair.getId(), foundPortPair.getId());
+        Mockito.verify(queryService).disablePortPairFiltering();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testUtils_FetchPortPairByNetworkElements_Forbidden_RethrowsAndKeepsFiltering() throws Exception {
+
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+
+        NeutronSfcQueryService queryService = Mockito.mock(NeutronSfcQueryService.class);
+        Mockito.when(queryService.isPortPairFilteringSupported()).thenReturn(true);
+        Mockito.when(queryService.listPortPairs(Matchers.anyMap()))
+               .thenThrow(new ClientResponseException("Policy does not allow this request", 403));
+        this.utils = new RedirectionApiUtils(new OsCalls(this.osClient, OsCallsCache.disabled(), queryService, new SfcIndex()));
+
+        // Act.
+        try {
+            this.utils.fetchPortPairByNetworkElements(ingressPortElement, egressPortElement);
+            fail("Expected the Neutron failure to be rethrown");
+        } catch (ClientResponseException e) {
+            // Assert.
+            assertEquals(403, e.getStatus());
+        }
+        Mockito.verify(queryService, Mockito.never()).disablePortPairFiltering();
+    }
+
     @Test
     public void testUtils_FetchContainingPortPairGroup_PortPairGroupExists_Success() throws Exception {
 
@@ -207,6 +337,111 @@ public class RedirectionApiUtilsTest extends AbstractNeutronSfcPluginTest {
         assertNull(foundPortChain);
     }
 
+    @Test
+    public void testUtils_FetchContainingPortPairGroup_StaleIndex_FindsCurrentGroup() throws Exception {
+
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        persistPortPairGroup();
+        this.utils.fetchContainingPortPairGroup(portPair.getId());
+
+        // Move the port pair to another group behind the plugin's back
+        portPairGroupService.delete(portPairGroup.getId());
+        persistPortPairGroup();
+
+        // Act
+        PortPairGroup foundPortPairGroup = this.utils.fetchContainingPortPairGroup(portPair.getId());
+
+        // Assert.
+        assertNotNull(foundPortPairGroup);
+        assertEquals(portPairGroup.getId(), foundPortPairGroup.getId());
+    }
+
+    @Test
+    public void testUtils_FetchContainingPortChain_CompleteIndexMiss_ReturnsNullWithoutListing() throws Exception {
+
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        persistPortPairGroup();
+        this.osCalls.listPortChains();
+
+        // Create the chain behind the plugin's back, a listing would find it
+        persistPortChainAndSfcElement();
+
+        // Act
+        PortChain foundPortChain = this.utils.fetchContainingPortChain(portPairGroup.getId());
+
+        // Assert.
+        assertNull(foundPortChain);
+    }
+
+    @Test
+    public void testUtils_FetchContainingPortChain_IndexMarkedIncomplete_ListsAndFindsChain() throws Exception {
+
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        persistPortPairGroup();
+        this.osCalls.listPortChains();
+        persistPortChainAndSfcElement();
+
+        this.osCalls.getIndex().markPortChainsIncomplete();
+
+        // Act
+        PortChain foundPortChain = this.utils.fetchContainingPortChain(portPairGroup.getId());
+
+        // Assert.
+        assertNotNull(foundPortChain);
+        assertEquals(portChain.getId(), foundPortChain.getId());
+        assertTrue(this.osCalls.getIndex().isPortChainsComplete());
+    }
+
+    @Test
+    public void testUtils_FetchContainingPortChain_NeverListed_ListsAndFindsChain() throws Exception {
+
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        persistPortPairGroup();
+        persistPortChainAndSfcElement();
+
+        // Act
+        PortChain foundPortChain = this.utils.fetchContainingPortChain(portPairGroup.getId());
+
+        // Assert.
+        assertNotNull(foundPortChain);
+        assertEquals(portChain.getId(), foundPortChain.getId());
+    }
+
+    @Test
+    public void testUtils_FetchContainingPortChainForFC_AfterUpdateThroughOsCalls_UsesIndex() throws Exception {
+
+        // Arrange.
+        portChain = this.osCalls.createPortChain(Builders.portChain()
+                .portPairGroups(singletonList("ppg"))
+                .flowClassifiers(new ArrayList<>())
+                .build());
+        this.osCalls.listPortChains();
+
+        // Act
+        this.osCalls.updatePortChain(portChain.getId(), Builders.portChain()
+                .portPairGroups(singletonList("ppg"))
+                .flowClassifiers(singletonList("fc"))
+                .build());
+
+        // Assert.
+        assertEquals(portChain.getId(), this.osCalls.getIndex().getPortChainIdForFlowClassifier("fc"));
+        PortChain foundPortChain = this.utils.fetchContainingPortChainForFC("fc");
+        assertNotNull(foundPortChain);
+        assertEquals(portChain.getId(), foundPortChain.getId());
+    }
+
     @Test
     public void testUtils_BuildFlowClassifier_NonNullInspectedPortId_Success() throws Exception {
 
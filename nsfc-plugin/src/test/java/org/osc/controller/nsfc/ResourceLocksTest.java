@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.osc.controller.nsfc.utils.ResourceLocks;
+
+public class ResourceLocksTest {
+
+    @Test
+    public void testWithPortChainLock_SameChainHeld_WaitIsRecorded() throws Exception {
+        // Arrange.
+        ResourceLocks locks = new ResourceLocks();
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> locks.withPortChainLock("pc", () -> {
+            held.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+
+        // Act.
+        CompletableFuture<String> waiter = CompletableFuture.supplyAsync(
+                () -> locks.withPortChainLock("pc", () -> "done"));
+        Thread.sleep(100);
+        release.countDown();
+
+        // Assert.
+        assertEquals("done", waiter.get(5, TimeUnit.SECONDS));
+        holder.get(5, TimeUnit.SECONDS);
+        assertEquals(2, locks.getAcquisitionCount());
+        assertEquals(1, locks.getContendedCount());
+        assertTrue(locks.getMaxWaitMillis() > 0);
+        assertEquals(locks.getMaxWaitMillis(), locks.getTotalWaitMillis());
+    }
+
+    @Test
+    public void testWithPortPairGroupLock_NestedChainLock_NotContended() throws Exception {
+        // Arrange.
+        ResourceLocks locks = new ResourceLocks();
+
+        // Act.
+        String result = locks.withPortPairGroupLock("ppg",
+                () -> locks.withPortChainLock("pc", () -> locks.withPortChainLock("pc", () -> "nested")));
+
+        // Assert.
+        assertEquals("nested", result);
+        assertEquals(3, locks.getAcquisitionCount());
+        assertEquals(0, locks.getContendedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithPortChainLock_NullId_Throws() throws Exception {
+        // Act.
+        new ResourceLocks().withPortChainLock(null, () -> "never");
+    }
+}
@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static org.junit.Assert.*;
+import static org.osc.controller.nsfc.utils.RetryPolicy.Idempotency.*;
+
+import java.net.ConnectException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openstack4j.api.exceptions.ResponseException;
+import org.osc.controller.nsfc.utils.NeutronCallMetrics;
+import org.osc.controller.nsfc.utils.RetryPolicy;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testCall_TransientFailure_RetriedUntilSuccess() throws Exception {
+        // Arrange.
+        RetryPolicy retryPolicy = new RetryPolicy(3, 1, 5, 0.1, 10);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act.
+        String result = retryPolicy.call(Safe, () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ResponseException("Service Unavailable", 503);
+            }
+            return "ok";
+        });
+
+        // Assert.
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2, retryPolicy.getRetryCount());
+    }
+
+    @Test
+    public void testCall_CreateRejectedByNeutron_NotRetried() throws Exception {
+        // Arrange.
+        RetryPolicy retryPolicy = new RetryPolicy(3, 1, 5, 0.1, 10);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act.
+        try {
+            retryPolicy.call(NonIdempotent, () -> {
+                attempts.incrementAndGet();
+                throw new ResponseException("Service Unavailable", 503);
+            });
+            fail("Expected the call to fail");
+        } catch (ResponseException e) {
+            // Assert.
+            assertEquals(1, attempts.get());
+            assertEquals(0, retryPolicy.getRetryCount());
+        }
+    }
+
+    @Test
+    public void testIsRetryable_ConnectionRefused_RetriedEvenForCreate() throws Exception {
+        // Arrange.
+        RuntimeException failure = new RuntimeException(new ConnectException("Connection refused"));
+
+        // Act.
+        boolean retryable = RetryPolicy.isRetryable(NonIdempotent, failure);
+
+        // Assert.
+        assertTrue(retryable);
+        assertFalse(RetryPolicy.isRetryable(Idempotent, new ResponseException("Bad Request", 400)));
+    }
+
+    @Test
+    public void testCall_BudgetExhausted_FailsWithoutRetry() throws Exception {
+        // Arrange.
+        RetryPolicy retryPolicy = new RetryPolicy(3, 1, 5, 0, 1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act.
+        for (int i = 0; i < 2; i++) {
+            try {
+                retryPolicy.call(Idempotent, () -> {
+                    attempts.incrementAndGet();
+                    throw new ResponseException("Service Unavailable", 503);
+                });
+                fail("Expected the call to fail");
+            } catch (ResponseException e) {
+                // expected
+            }
+        }
+
+        // Assert.
+        assertEquals(3, attempts.get());
+        assertEquals(1, retryPolicy.getRetryCount());
+        assertEquals(2, retryPolicy.getBudgetExhaustedCount());
+    }
+
+    @Test
+    public void testCall_RetriedAndGivenUp_PublishedWithCallMetrics() throws Exception {
+        // Arrange.
+        NeutronCallMetrics metrics = new NeutronCallMetrics("vc");
+        RetryPolicy retryPolicy = new RetryPolicy(2, 1, 5, 0.1, 10, RetryPolicy.DEFAULT_MAX_LOCK_HOLD_MILLIS, metrics);
+
+        // Act.
+        try {
+            retryPolicy.call(Safe, () -> {
+                throw new ResponseException("Service Unavailable", 503);
+            });
+            fail("Expected the call to fail");
+        } catch (ResponseException e) {
+            // expected
+        }
+
+        // Assert.
+        assertEquals(1, metrics.getRetryCount());
+        assertEquals(1, metrics.getRetryGiveUpCount());
+    }
+
+    @Test
+    public void testCall_LockHeldTooLong_FailsWithoutBackingOff() throws Exception {
+        // Arrange.
+        NeutronCallMetrics metrics = new NeutronCallMetrics("vc");
+        RetryPolicy retryPolicy = new RetryPolicy(3, 100, 100, 0.1, 10, 10, metrics);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act.
+        try {
+            RetryPolicy.whileHolding(() -> retryPolicy.call(Idempotent, () -> {
+                attempts.incrementAndGet();
+                throw new ResponseException("Service Unavailable", 503);
+            }));
+            fail("Expected the call to fail");
+        } catch (ResponseException e) {
+            // expected
+        }
+
+        // Assert.
+        assertEquals(1, attempts.get());
+        assertEquals(1, retryPolicy.getLockHoldExceededCount());
+        assertEquals(1, metrics.getRetryGiveUpCount());
+    }
+
+    @Test
+    public void testCall_HandedOffWhileLockHeld_FailsWithoutBackingOff() throws Exception {
+        // Arrange.
+        RetryPolicy retryPolicy = new RetryPolicy(3, 100, 100, 0.1, 10, 10, NeutronCallMetrics.disabled());
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act.
+        try {
+            RetryPolicy.whileHolding(() -> CompletableFuture.supplyAsync(RetryPolicy.propagateHold(
+                    () -> retryPolicy.call(Idempotent, () -> {
+                        attempts.incrementAndGet();
+                        throw new ResponseException("Service Unavailable", 503);
+                    }))).join());
+            fail("Expected the call to fail");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof ResponseException);
+        }
+
+        // Assert.
+        assertEquals(1, attempts.get());
+        assertEquals(1, retryPolicy.getLockHoldExceededCount());
+    }
+
+    @Test
+    public void testCall_HandedOffWithoutLock_BacksOff() throws Exception {
+        // Arrange.
+        RetryPolicy retryPolicy = new RetryPolicy(3, 10, 10, 0.1, 10, 10, NeutronCallMetrics.disabled());
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act.
+        try {
+            CompletableFuture.supplyAsync(RetryPolicy.propagateHold(() -> retryPolicy.call(Idempotent, () -> {
+                attempts.incrementAndGet();
+                throw new ResponseException("Service Unavailable", 503);
+            }))).join();
+            fail("Expected the call to fail");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof ResponseException);
+        }
+
+        // Assert.
+        assertEquals(3, attempts.get());
+        assertEquals(0, retryPolicy.getLockHoldExceededCount());
+    }
+
+    @Test
+    public void testGetRemainingHoldMillis_LockHeldPastMax_NoTimeLeft() throws Exception {
+        // Arrange.
+        RetryPolicy retryPolicy = new RetryPolicy(3, 1, 5, 0.1, 10, 10, NeutronCallMetrics.disabled());
+
+        // Act.
+        long remainingMillis = RetryPolicy.whileHolding(() -> {
+            sleepQuietly(20);
+            return retryPolicy.getRemainingHoldMillis();
+        });
+
+        // Assert.
+        assertEquals(0, remainingMillis);
+        assertEquals(Long.MAX_VALUE, retryPolicy.getRemainingHoldMillis());
+    }
+
+    @Test
+    public void testIsRetryable_ConflictOnUpdate_Retried() throws Exception {
+        // Act.
+        boolean retryable = RetryPolicy.isRetryable(Idempotent, new ResponseException("Conflict", 409));
+
+        // Assert.
+        assertTrue(retryable);
+    }
+
+    @Test
+    public void testIsRetryable_ConflictOnCreate_NotRetried() throws Exception {
+        // Act.
+        boolean retryable = RetryPolicy.isRetryable(NonIdempotent, new ResponseException("Conflict", 409));
+
+        // Assert.
+        assertFalse(retryable);
+    }
+
+    @Test
+    public void testCall_ConflictPersists_RetriedOnce() throws Exception {
+        // Arrange.
+        RetryPolicy retryPolicy = new RetryPolicy(5, 1, 5, 0.1, 10);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act.
+        try {
+            retryPolicy.call(Idempotent, () -> {
+                attempts.incrementAndGet();
+                throw new ResponseException("Conflict", 409);
+            });
+            fail("Expected the call to fail");
+        } catch (ResponseException e) {
+            // expected
+        }
+
+        // Assert.
+        assertEquals(2, attempts.get());
+        assertEquals(1, retryPolicy.getRetryCount());
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
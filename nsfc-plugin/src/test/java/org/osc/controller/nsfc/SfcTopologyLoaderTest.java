@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+import static org.osc.controller.nsfc.TestData.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openstack4j.api.Builders;
+import org.openstack4j.model.network.ext.FlowClassifier;
+import org.osc.controller.nsfc.entities.FlowClassifierElement;
+import org.osc.controller.nsfc.entities.PortPairElement;
+import org.osc.controller.nsfc.entities.PortPairGroupElement;
+import org.osc.controller.nsfc.entities.ServiceFunctionChainElement;
+import org.osc.controller.nsfc.utils.OsCalls;
+import org.osc.controller.nsfc.utils.OsClientPool;
+import org.osc.controller.nsfc.utils.SfcTopology;
+import org.osc.controller.nsfc.utils.SfcTopologyLoader;
+import org.osc.controller.nsfc.utils.VcSession;
+import org.osc.sdk.controller.element.VirtualizationConnectorElement;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SfcTopologyLoaderTest extends AbstractNeutronSfcPluginTest {
+
+    private ExecutorService executor;
+
+    private SfcTopologyLoader loader;
+
+    @Before
+    @Override
+    public void setup() throws Exception {
+        super.setup();
+
+        this.executor = Executors.newFixedThreadPool(5);
+        this.loader = new SfcTopologyLoader(this.executor);
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void testLoad_FullChain_CrossLinksElements() throws Exception {
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        persistPortPairGroup();
+        persistPortChainAndSfcElement();
+        FlowClassifier flowClassifier = flowClassifierService.create(Builders.flowClassifier()
+                .logicalDestinationPort(ingressPort.getId())
+                .build());
+        portChainService.update(portChain.getId(), portChain.toBuilder()
+                .flowClassifiers(singletonList(flowClassifier.getId()))
+                .build());
+
+        // Act.
+        SfcTopology topology = this.loader.load(new OsCalls(this.osClient));
+
+        // Assert.
+        assertSame(topology, this.loader.getTopology());
+
+        PortPairElement ppElement = topology.getPortPair(portPair.getId());
+        assertSame(ppElement, topology.getPortPair(ingressPort.getId(), egressPort.getId()));
+        assertEquals(ingressPort.getId(), ppElement.getIngressPort().getElementId());
+        assertEquals(ingressPort.getMacAddress(), ppElement.getIngressPort().getMacAddresses().get(0));
+        assertEquals(portPair.getId(), ppElement.getEgressPort().getParentId());
+
+        PortPairGroupElement ppgElement = ppElement.getPortPairGroup();
+        assertSame(topology.getPortPairGroup(portPairGroup.getId()), ppgElement);
+
+        ServiceFunctionChainElement sfcElement = ppgElement.getServiceFunctionChain();
+        assertSame(topology.getServiceFunctionChain(portChain.getId()), sfcElement);
+        assertEquals(singletonList(ppgElement), sfcElement.getPortPairGroups());
+
+        FlowClassifierElement fcElement = topology.getFlowClassifier(flowClassifier.getId());
+        assertSame(sfcElement, fcElement.getServiceFunctionChain());
+        assertTrue(sfcElement.getInspectionHooks().contains(fcElement));
+    }
+
+    @Test
+    public void testLoad_NothingDeployed_ReturnsEmptyTopology() throws Exception {
+        // Act.
+        SfcTopology topology = this.loader.load(new OsCalls(this.osClient));
+
+        // Assert.
+        assertTrue(topology.getPortPairs().isEmpty());
+        assertTrue(topology.getServiceFunctionChains().isEmpty());
+        assertTrue(topology.getLoadedAt() > 0);
+    }
+
+    @Test
+    public void testLoadAsync_NothingDeployed_DoesNotBlockCaller() throws Exception {
+        // Act.
+        CompletableFuture<SfcTopology> loading = this.loader.loadAsync(new OsCalls(this.osClient));
+
+        // Assert.
+        SfcTopology topology = loading.get(5, TimeUnit.SECONDS);
+        assertSame(topology, this.loader.getTopology());
+    }
+
+    @Test
+    public void testSession_RefreshAttribute_PicksUpChainCreatedOutsidePlugin() throws Exception {
+        // Arrange.
+        persistIngress();
+        persistEgress();
+        persistInspectionPort(true, true);
+        persistPortPairGroup();
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put(SfcTopologyLoader.REFRESH_ATTRIBUTE, "20");
+        VirtualizationConnectorElement vc = Mockito.mock(VirtualizationConnectorElement.class);
+        Mockito.when(vc.getProviderAttributes()).thenReturn(attributes);
+        OsClientPool pool = new OsClientPool(connector -> this.osClient);
+
+        try {
+            VcSession session = pool.getSession(vc);
+            session.loadTopology(session.newOsCalls(session.getClient()));
+            assertTrue(session.getTopology().getServiceFunctionChains().isEmpty());
+
+            // Act.
+            persistPortChainAndSfcElement();
+
+            // Assert.
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+            while (session.getTopology().getServiceFunctionChain(portChain.getId()) == null
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertNotNull(session.getTopology().getServiceFunctionChain(portChain.getId()));
+            assertEquals(portChain.getId(), session.getIndex().getPortChainIdForPortPairGroup(portPairGroup.getId()));
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testLoad_ListFails_KeepsPreviousTopology() throws Exception {
+        // Arrange.
+        SfcTopology previous = this.loader.load(new OsCalls(this.osClient));
+        Mockito.when(this.sfcService.portchains()).thenThrow(new IllegalStateException("Neutron down"));
+
+        this.exception.expect(IllegalStateException.class);
+
+        try {
+            // Act.
+            this.loader.load(new OsCalls(this.osClient));
+        } finally {
+            // Assert.
+            assertSame(previous, this.loader.getTopology());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.simulator;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time the simulator takes to serve a request, sampled anew for every request.
+ */
+@FunctionalInterface
+public interface Latency {
+
+    long nextNanos();
+
+    static Latency none() {
+        return () -> 0;
+    }
+
+    static Latency fixed(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Negative latency " + millis);
+        }
+        long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return () -> nanos;
+    }
+
+    static Latency uniform(long minMillis, long maxMillis) {
+        if (minMillis < 0 || minMillis > maxMillis) {
+            throw new IllegalArgumentException("Invalid latency range " + minMillis + "-" + maxMillis);
+        }
+        long min = TimeUnit.MILLISECONDS.toNanos(minMillis);
+        long max = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        return () -> min == max ? min : ThreadLocalRandom.current().nextLong(min, max + 1);
+    }
+
+    /**
+     * Log-normal latency with the given median and 99th percentile, the long tail of a loaded service.
+     */
+    static Latency logNormal(double medianMillis, double p99Millis) {
+        if (medianMillis <= 0 || p99Millis < medianMillis) {
+            throw new IllegalArgumentException("Invalid latency median " + medianMillis + " and p99 " + p99Millis);
+        }
+        double mu = Math.log(TimeUnit.MILLISECONDS.toNanos(1) * medianMillis);
+        // 2.326 is the z-score of the 99th percentile of the standard normal distribution
+        double sigma = Math.log(p99Millis / medianMillis) / 2.326;
+        return () -> (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+    }
+
+    /**
+     * Parses {@code none}, {@code fixed:<ms>}, {@code uniform:<min ms>,<max ms>} or
+     * {@code lognormal:<median ms>,<p99 ms>}.
+     */
+    static Latency parse(String spec) {
+        String[] parts = spec.trim().split(":", 2);
+        String[] values = parts.length > 1 ? parts[1].split(",") : new String[0];
+        try {
+            switch (parts[0]) {
+            case "none":
+                return none();
+            case "fixed":
+                return fixed(Long.parseLong(values[0].trim()));
+            case "uniform":
+                return uniform(Long.parseLong(values[0].trim()), Long.parseLong(values[1].trim()));
+            case "lognormal":
+                return logNormal(Double.parseDouble(values[0].trim()), Double.parseDouble(values[1].trim()));
+            default:
+                break;
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid latency " + spec, e);
+        }
+        throw new IllegalArgumentException("Invalid latency " + spec);
+    }
+}
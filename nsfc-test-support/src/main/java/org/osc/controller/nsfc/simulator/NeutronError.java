@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.simulator;
+
+/**
+ * A request the simulator answers with an error status and a {@code NeutronError} body.
+ */
+final class NeutronError extends RuntimeException {
+
+    private static final long serialVersionUID = 2412043125640924374L;
+
+    private final int status;
+    private final String type;
+
+    NeutronError(int status, String type, String message) {
+        super(message);
+        this.status = status;
+        this.type = type;
+    }
+
+    int getStatus() {
+        return this.status;
+    }
+
+    String getType() {
+        return this.type;
+    }
+}
@@ -0,0 +1,705 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.simulator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Keystone v3 token API and Neutron SFC API served from memory over HTTP, so that the real
+ * openstack4j client and the plugin can be load tested on one machine without OpenStack.
+ *
+ * Keystone issues tokens at {@code POST /v3/auth/tokens} with a catalog pointing Neutron back to
+ * the simulator. Neutron serves {@code ports} and the SFC {@code port_pairs}, {@code port_pair_groups},
+ * {@code port_chains} and {@code flow_classifiers} with list filters, {@code limit} and {@code marker}
+ * pagination and {@code revision_number} checks of {@code If-Match} updates. Membership constraints
+ * between the resources are not enforced.
+ *
+ * Every Neutron request waits for the read or write latency and may then fail with an injected
+ * error. Requests are served by a fixed number of workers, so they queue like on a busy Neutron.
+ * Latency and errors can be changed while the simulator runs.
+ */
+public class NeutronSimulator implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NeutronSimulator.class);
+
+    public static final String DEFAULT_HOST = "127.0.0.1";
+    public static final int DEFAULT_PORT = 5000;
+    public static final int DEFAULT_WORKERS = 64;
+    public static final long DEFAULT_TOKEN_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    public static final String PROJECT_ID = idOf("project");
+    public static final String NETWORK_ID = idOf("network");
+    public static final String SUBNET_ID = idOf("subnet");
+
+    private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private static final String AUTH_PATH = "/v3/auth/tokens";
+    private static final String NEUTRON_VERSION = "/v2.0";
+
+    private static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    private final String host;
+    private final int port;
+    private final int workers;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<ResourceType, ResourceCollection> collections = new EnumMap<>(ResourceType.class);
+    private final Map<String, Long> tokenExpiries = new ConcurrentHashMap<>();
+
+    private volatile Latency readLatency = Latency.none();
+    private volatile Latency writeLatency = Latency.none();
+    private volatile Latency authLatency = Latency.none();
+    private volatile double errorRate;
+    private volatile int errorStatus = 500;
+    private final AtomicInteger failNextCount = new AtomicInteger();
+    private volatile long tokenTtlMillis = DEFAULT_TOKEN_TTL_MILLIS;
+    private volatile String username;
+    private volatile String password;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong authCount = new AtomicLong();
+    private final AtomicLong injectedErrorCount = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private volatile int boundPort;
+
+    /**
+     * Simulator on a free port of the loopback address.
+     */
+    public NeutronSimulator() {
+        this(DEFAULT_HOST, 0, DEFAULT_WORKERS);
+    }
+
+    /**
+     * @param port port to listen on, 0 for a free one. The plugin authenticates on port {@value #DEFAULT_PORT}
+     * @param workers number of requests served at a time, the others queue
+     */
+    public NeutronSimulator(String host, int port, int workers) {
+        this.host = host;
+        this.port = port;
+        this.workers = workers;
+        for (ResourceType type : ResourceType.values()) {
+            this.collections.put(type, new ResourceCollection(type));
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        if (this.server != null) {
+            return;
+        }
+
+        // The JDK server sends headers and body in separate writes. Without TCP_NODELAY each
+        // response then waits for the client's delayed ACK, some 40 ms. Read once per JVM.
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.workers, r -> {
+            Thread thread = new Thread(r, "neutron-simulator-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(this.host, this.port), 1024);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(this.executor);
+        this.server.start();
+        this.boundPort = this.server.getAddress().getPort();
+        LOG.info("Simulating Keystone at {} and Neutron at {}", getAuthUrl(), getNeutronUrl());
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.server == null) {
+            return;
+        }
+
+        this.server.stop(0);
+        this.executor.shutdownNow();
+        this.server = null;
+        LOG.info("Stopped simulator after {} requests", this.requestCount.get());
+    }
+
+    public int getPort() {
+        return this.boundPort != 0 ? this.boundPort : this.port;
+    }
+
+    public String getAuthUrl() {
+        return "http://" + this.host + ":" + getPort() + "/v3";
+    }
+
+    public String getNeutronUrl() {
+        return "http://" + this.host + ":" + getPort();
+    }
+
+    /**
+     * Stable resource id for a name, as used by {@link #populatePorts} and {@link #populateChains}.
+     */
+    public static String idOf(String name) {
+        return UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Adds workload ports named {@code port-0} to {@code port-<count - 1>}, with ids {@link #idOf} their name.
+     */
+    public void populatePorts(int count) {
+        for (int i = 0; i < count; i++) {
+            addPort("port-" + i, portIpOf(i), "vm-" + i);
+        }
+    }
+
+    /**
+     * Fixed IP of the workload port {@code port-i}.
+     */
+    public static String portIpOf(int i) {
+        return ip(10, i);
+    }
+
+    /**
+     * Adds service chains, chain {@code i} made of the ports {@code ingress-i} and {@code egress-i}, port pair
+     * {@code pp-i}, port pair group {@code ppg-i} and port chain {@code pc-i} without flow classifiers. The ids
+     * are {@link #idOf} the names.
+     */
+    public void populateChains(int count) {
+        for (int i = 0; i < count; i++) {
+            String ingressId = addPort("ingress-" + i, ip(172, 2 * i), "vnf-" + i);
+            String egressId = addPort("egress-" + i, ip(172, 2 * i + 1), "vnf-" + i);
+
+            ObjectNode portPair = named(ResourceType.PortPair, "pp-" + i);
+            portPair.put("ingress", ingressId);
+            portPair.put("egress", egressId);
+            this.collections.get(ResourceType.PortPair).create(portPair);
+
+            ObjectNode portPairGroup = named(ResourceType.PortPairGroup, "ppg-" + i);
+            portPairGroup.putArray("port_pairs").add(portPair.get("id").asText());
+            this.collections.get(ResourceType.PortPairGroup).create(portPairGroup);
+
+            ObjectNode portChain = named(ResourceType.PortChain, "pc-" + i);
+            portChain.putArray("port_pair_groups").add(portPairGroup.get("id").asText());
+            this.collections.get(ResourceType.PortChain).create(portChain);
+        }
+    }
+
+    public int getResourceCount(ResourceType type) {
+        return this.collections.get(type).size();
+    }
+
+    public void clear() {
+        this.collections.values().forEach(ResourceCollection::clear);
+    }
+
+    public void setReadLatency(Latency readLatency) {
+        this.readLatency = readLatency;
+    }
+
+    public void setWriteLatency(Latency writeLatency) {
+        this.writeLatency = writeLatency;
+    }
+
+    public void setAuthLatency(Latency authLatency) {
+        this.authLatency = authLatency;
+    }
+
+    /**
+     * Fails this fraction of the Neutron requests, at random, with the error status.
+     */
+    public void setErrorRate(double errorRate) {
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("Invalid error rate " + errorRate);
+        }
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Status of the injected errors, 500 by default.
+     */
+    public void setErrorStatus(int errorStatus) {
+        this.errorStatus = errorStatus;
+    }
+
+    /**
+     * Fails the next Neutron requests with the error status, regardless of the error rate.
+     */
+    public void failNextRequests(int count) {
+        this.failNextCount.set(count);
+    }
+
+    public void setTokenTtlMillis(long tokenTtlMillis) {
+        this.tokenTtlMillis = tokenTtlMillis;
+    }
+
+    /**
+     * Only issues tokens for these credentials. By default any credentials are accepted.
+     */
+    public void setCredentials(String username, String password) {
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * Revokes every token issued, so that the clients must authenticate again.
+     */
+    public void revokeTokens() {
+        this.tokenExpiries.clear();
+    }
+
+    public long getRequestCount() {
+        return this.requestCount.get();
+    }
+
+    public long getAuthCount() {
+        return this.authCount.get();
+    }
+
+    public long getInjectedErrorCount() {
+        return this.injectedErrorCount.get();
+    }
+
+    /**
+     * Runs a simulator until the JVM is stopped. Options, all optional:
+     * {@code --host}, {@code --port} (default {@value #DEFAULT_PORT}), {@code --workers}, {@code --ports <count>},
+     * {@code --chains <count>}, {@code --read-latency <latency>}, {@code --write-latency <latency>},
+     * {@code --error-rate <fraction>}, {@code --error-status <status>} and {@code --token-ttl-seconds}.
+     * Latencies are given as in {@link Latency#parse}.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected --<option> <value>, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+
+        NeutronSimulator simulator = new NeutronSimulator(options.getOrDefault("host", DEFAULT_HOST),
+                Integer.parseInt(options.getOrDefault("port", String.valueOf(DEFAULT_PORT))),
+                Integer.parseInt(options.getOrDefault("workers", String.valueOf(DEFAULT_WORKERS))));
+        simulator.populatePorts(Integer.parseInt(options.getOrDefault("ports", "0")));
+        simulator.populateChains(Integer.parseInt(options.getOrDefault("chains", "0")));
+        simulator.setReadLatency(Latency.parse(options.getOrDefault("read-latency", "none")));
+        simulator.setWriteLatency(Latency.parse(options.getOrDefault("write-latency", "none")));
+        simulator.setErrorRate(Double.parseDouble(options.getOrDefault("error-rate", "0")));
+        simulator.setErrorStatus(Integer.parseInt(options.getOrDefault("error-status", "500")));
+        if (options.containsKey("token-ttl-seconds")) {
+            simulator.setTokenTtlMillis(TimeUnit.SECONDS.toMillis(Long.parseLong(options.get("token-ttl-seconds"))));
+        }
+
+        simulator.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::close));
+        Thread.currentThread().join();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            this.requestCount.incrementAndGet();
+            String path = exchange.getRequestURI().getPath();
+            if (path.startsWith(AUTH_PATH)) {
+                authenticate(exchange);
+                return;
+            }
+
+            try {
+                serveNeutron(exchange, path);
+            } catch (NeutronError e) {
+                sendNeutronError(exchange, e);
+            } catch (JsonProcessingException e) {
+                sendNeutronError(exchange, new NeutronError(400, "BadRequest", e.getOriginalMessage()));
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to serve {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+                sendNeutronError(exchange, new NeutronError(500, "InternalServerError", e.toString()));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void authenticate(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendKeystoneError(exchange, 405, "Method Not Allowed", "Only token creation is simulated");
+            return;
+        }
+
+        pause(this.authLatency);
+        this.authCount.incrementAndGet();
+
+        JsonNode auth;
+        try {
+            auth = this.mapper.readTree(exchange.getRequestBody()).path("auth");
+        } catch (JsonProcessingException e) {
+            sendKeystoneError(exchange, 400, "Bad Request", e.getOriginalMessage());
+            return;
+        }
+
+        JsonNode user = auth.path("identity").path("password").path("user");
+        String expectedUsername = this.username;
+        if (expectedUsername != null && (!expectedUsername.equals(user.path("name").asText())
+                || !String.valueOf(this.password).equals(user.path("password").asText()))) {
+            sendKeystoneError(exchange, 401, "Unauthorized", "The request you have made requires authentication.");
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long expires = now + this.tokenTtlMillis;
+        this.tokenExpiries.values().removeIf(expiry -> expiry < now);
+
+        String tokenId = UUID.randomUUID().toString().replace("-", "");
+        this.tokenExpiries.put(tokenId, expires);
+
+        JsonNode project = auth.path("scope").path("project");
+        ObjectNode token = this.mapper.createObjectNode();
+        token.putArray("methods").add("password");
+        token.put("expires_at", TIMESTAMP.format(Instant.ofEpochMilli(expires)));
+        token.put("issued_at", TIMESTAMP.format(Instant.ofEpochMilli(now)));
+        token.putArray("audit_ids").add(tokenId.substring(0, 22));
+        named(token.putObject("user"), idOf("user-" + user.path("name").asText()), user.path("name").asText())
+                .set("domain", domain(user.path("domain")));
+        named(token.putObject("project"), PROJECT_ID, project.path("name").asText())
+                .set("domain", domain(project.path("domain")));
+        named(token.putArray("roles").addObject(), idOf("admin"), "admin");
+
+        ArrayNode catalog = token.putArray("catalog");
+        addService(catalog, "network", "neutron", getNeutronUrl());
+        addService(catalog, "identity", "keystone", getAuthUrl());
+
+        ObjectNode body = this.mapper.createObjectNode();
+        body.set("token", token);
+        exchange.getResponseHeaders().set("X-Subject-Token", tokenId);
+        send(exchange, 201, this.mapper.writeValueAsBytes(body));
+    }
+
+    private void serveNeutron(HttpExchange exchange, String path) throws IOException {
+        checkToken(exchange.getRequestHeaders().getFirst("X-Auth-Token"));
+
+        String resourcePath = path.startsWith(NEUTRON_VERSION + "/") ? path.substring(NEUTRON_VERSION.length()) : path;
+        ResourceType type = ResourceType.forPath(resourcePath);
+        if (type == null) {
+            throw new NeutronError(404, "HTTPNotFound", "The resource could not be found: " + path);
+        }
+        String id = resourcePath.length() > type.getPath().length()
+                ? resourcePath.substring(type.getPath().length() + 1) : null;
+        ResourceCollection collection = this.collections.get(type);
+
+        String method = exchange.getRequestMethod();
+        pause("GET".equals(method) ? this.readLatency : this.writeLatency);
+        injectError();
+
+        if ("GET".equals(method) && id == null) {
+            list(exchange, type, collection);
+        } else if ("GET".equals(method)) {
+            sendResource(exchange, 200, type, collection.get(id));
+        } else if ("POST".equals(method) && id == null) {
+            create(exchange, type, collection);
+        } else if ("PUT".equals(method) && id != null) {
+            ObjectNode changes = resourceBody(exchange, type);
+            sendResource(exchange, 200, type, collection.update(id, changes, ifMatchRevision(exchange)));
+        } else if ("DELETE".equals(method) && id != null) {
+            collection.delete(id);
+            send(exchange, 204, null);
+        } else {
+            throw new NeutronError(405, "HTTPMethodNotAllowed", method + " is not allowed on " + path);
+        }
+    }
+
+    private void list(HttpExchange exchange, ResourceType type, ResourceCollection collection) throws IOException {
+        Map<String, List<String>> filters = parseQuery(exchange.getRequestURI().getRawQuery());
+        List<String> limits = filters.remove("limit");
+        List<String> markers = filters.remove("marker");
+        filters.remove("fields");
+        filters.remove("sort_key");
+        filters.remove("sort_dir");
+        filters.remove("page_reverse");
+
+        int limit;
+        try {
+            limit = limits == null ? 0 : Integer.parseInt(limits.get(0));
+        } catch (NumberFormatException e) {
+            throw new NeutronError(400, "BadRequest", "Invalid limit " + limits.get(0));
+        }
+        String marker = markers == null ? null : markers.get(0);
+
+        List<ObjectNode> page = collection.list(filters, marker, limit);
+
+        ObjectNode body = this.mapper.createObjectNode();
+        body.putArray(type.getPlural()).addAll(new ArrayList<>(page));
+        if (limit > 0 && page.size() == limit) {
+            String next = getNeutronUrl() + NEUTRON_VERSION + type.getPath() + "?limit=" + limit + "&marker="
+                    + page.get(page.size() - 1).get("id").asText();
+            ObjectNode link = body.putArray(type.getPlural() + "_links").addObject();
+            link.put("rel", "next");
+            link.put("href", next);
+        }
+        send(exchange, 200, this.mapper.writeValueAsBytes(body));
+    }
+
+    private void create(HttpExchange exchange, ResourceType type, ResourceCollection collection) throws IOException {
+        JsonNode body = this.mapper.readTree(exchange.getRequestBody());
+
+        // Bulk creation, as openstack4j does for lists of ports
+        JsonNode bulk = body.get(type.getPlural());
+        if (bulk != null && bulk.isArray()) {
+            ObjectNode created = this.mapper.createObjectNode();
+            ArrayNode resources = created.putArray(type.getPlural());
+            for (JsonNode resource : bulk) {
+                if (!resource.isObject()) {
+                    throw new NeutronError(400, "BadRequest", "Invalid " + type.getPlural());
+                }
+                resources.add(collection.create(withDefaults(type, (ObjectNode) resource)));
+            }
+            send(exchange, 201, this.mapper.writeValueAsBytes(created));
+            return;
+        }
+
+        sendResource(exchange, 201, type, collection.create(withDefaults(type, resourceBody(body, type))));
+    }
+
+    private ObjectNode resourceBody(HttpExchange exchange, ResourceType type) throws IOException {
+        return resourceBody(this.mapper.readTree(exchange.getRequestBody()), type);
+    }
+
+    private static ObjectNode resourceBody(JsonNode body, ResourceType type) {
+        JsonNode resource = body == null ? null : body.get(type.getSingular());
+        if (resource == null || !resource.isObject()) {
+            throw new NeutronError(400, "BadRequest", "Request body must contain " + type.getSingular());
+        }
+        return (ObjectNode) resource;
+    }
+
+    private ObjectNode withDefaults(ResourceType type, ObjectNode resource) {
+        ObjectNode defaults = named(type, "");
+        switch (type) {
+        case Port:
+            defaults.put("mac_address", mac(ThreadLocalRandom.current().nextInt(1 << 24)));
+            defaults.putArray("fixed_ips");
+            defaults.put("device_id", "");
+            defaults.put("device_owner", "");
+            break;
+        case PortPairGroup:
+            defaults.putArray("port_pairs");
+            break;
+        case PortChain:
+            defaults.putArray("flow_classifiers");
+            break;
+        case FlowClassifier:
+            defaults.put("ethertype", "IPv4");
+            break;
+        default:
+            break;
+        }
+
+        // Attributes sent as null keep their default
+        resource.fields().forEachRemaining(attribute -> {
+            if (!attribute.getValue().isNull()) {
+                defaults.set(attribute.getKey(), attribute.getValue());
+            }
+        });
+        return defaults;
+    }
+
+    private ObjectNode named(ResourceType type, String name) {
+        ObjectNode resource = this.mapper.createObjectNode();
+        resource.put("name", name);
+        resource.put("description", "");
+        resource.put("project_id", PROJECT_ID);
+        resource.put("tenant_id", PROJECT_ID);
+        if (type == ResourceType.Port) {
+            resource.put("network_id", NETWORK_ID);
+            resource.put("status", "ACTIVE");
+            resource.put("admin_state_up", true);
+        }
+        if (!name.isEmpty()) {
+            resource.put("id", idOf(name));
+        }
+        return resource;
+    }
+
+    private String addPort(String name, String ip, String deviceName) {
+        ObjectNode port = withDefaults(ResourceType.Port, named(ResourceType.Port, name));
+        port.put("mac_address", mac(name.hashCode() & 0xffffff));
+        ObjectNode fixedIp = port.putArray("fixed_ips").addObject();
+        fixedIp.put("ip_address", ip);
+        fixedIp.put("subnet_id", SUBNET_ID);
+        port.put("device_id", idOf(deviceName));
+        port.put("device_owner", "compute:nova");
+        return this.collections.get(ResourceType.Port).create(port).get("id").asText();
+    }
+
+    private void checkToken(String tokenId) {
+        Long expiry = tokenId == null ? null : this.tokenExpiries.get(tokenId);
+        if (expiry == null || expiry < System.currentTimeMillis()) {
+            throw new NeutronError(401, "Unauthorized", "Authentication required");
+        }
+    }
+
+    private void injectError() {
+        boolean fail = this.failNextCount.getAndUpdate(count -> Math.max(0, count - 1)) > 0;
+        double rate = this.errorRate;
+        if (fail || rate > 0 && ThreadLocalRandom.current().nextDouble() < rate) {
+            this.injectedErrorCount.incrementAndGet();
+            throw new NeutronError(this.errorStatus, "InjectedError", "Error injected by the simulator");
+        }
+    }
+
+    private static Long ifMatchRevision(HttpExchange exchange) {
+        String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+        if (ifMatch == null || !ifMatch.startsWith("revision_number=")) {
+            return null;
+        }
+        try {
+            return Long.valueOf(ifMatch.substring("revision_number=".length()).trim());
+        } catch (NumberFormatException e) {
+            throw new NeutronError(400, "BadRequest", "Invalid If-Match " + ifMatch);
+        }
+    }
+
+    private static void pause(Latency latency) {
+        long nanos = latency.nextNanos();
+        long deadline = System.nanoTime() + nanos;
+        for (long remaining = nanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static Map<String, List<String>> parseQuery(String query) {
+        Map<String, List<String>> parameters = new LinkedHashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+
+        for (String parameter : query.split("&")) {
+            String[] nameValue = parameter.split("=", 2);
+            parameters.computeIfAbsent(decode(nameValue[0]), name -> new ArrayList<>())
+                    .add(nameValue.length > 1 ? decode(nameValue[1]) : "");
+        }
+        return parameters;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ObjectNode named(ObjectNode node, String id, String name) {
+        node.put("id", id);
+        node.put("name", name);
+        return node;
+    }
+
+    private ObjectNode domain(JsonNode requested) {
+        String name = requested.hasNonNull("name") ? requested.get("name").asText() : "Default";
+        String id = requested.hasNonNull("id") ? requested.get("id").asText() : idOf("domain-" + name);
+        return named(this.mapper.createObjectNode(), id, name);
+    }
+
+    private static void addService(ArrayNode catalog, String type, String name, String url) {
+        ObjectNode service = named(catalog.addObject(), idOf("service-" + name), name);
+        service.put("type", type);
+        ArrayNode endpoints = service.putArray("endpoints");
+        for (String facing : new String[] { "public", "internal", "admin" }) {
+            ObjectNode endpoint = endpoints.addObject();
+            endpoint.put("id", idOf(name + "-" + facing));
+            endpoint.put("interface", facing);
+            endpoint.put("region", "RegionOne");
+            endpoint.put("region_id", "RegionOne");
+            endpoint.put("url", url);
+        }
+    }
+
+    private static String ip(int firstOctet, int i) {
+        return firstOctet + "." + (i >> 16 & 0xff) + "." + (i >> 8 & 0xff) + "." + (i & 0xff);
+    }
+
+    private static String mac(int i) {
+        return String.format("fa:16:3e:%02x:%02x:%02x", i >> 16 & 0xff, i >> 8 & 0xff, i & 0xff);
+    }
+
+    private void sendResource(HttpExchange exchange, int status, ResourceType type, ObjectNode resource)
+            throws IOException {
+        ObjectNode body = this.mapper.createObjectNode();
+        body.set(type.getSingular(), resource);
+        send(exchange, status, this.mapper.writeValueAsBytes(body));
+    }
+
+    private void sendNeutronError(HttpExchange exchange, NeutronError error) throws IOException {
+        ObjectNode body = this.mapper.createObjectNode();
+        ObjectNode neutronError = body.putObject("NeutronError");
+        neutronError.put("type", error.getType());
+        neutronError.put("message", error.getMessage());
+        neutronError.put("detail", "");
+        send(exchange, error.getStatus(), this.mapper.writeValueAsBytes(body));
+    }
+
+    private void sendKeystoneError(HttpExchange exchange, int status, String title, String message)
+            throws IOException {
+        ObjectNode body = this.mapper.createObjectNode();
+        ObjectNode error = body.putObject("error");
+        error.put("code", status);
+        error.put("title", title);
+        error.put("message", message);
+        send(exchange, status, this.mapper.writeValueAsBytes(body));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.simulator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Resources of one type, in creation order.
+ *
+ * Stored resources are never modified, updates store a changed copy. Readers may therefore
+ * serialize what they got outside of the lock.
+ */
+final class ResourceCollection {
+
+    private final ResourceType type;
+
+    private final Map<String, ObjectNode> resources = new LinkedHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    ResourceCollection(ResourceType type) {
+        this.type = type;
+    }
+
+    int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.resources.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    ObjectNode get(String id) {
+        this.lock.readLock().lock();
+        try {
+            ObjectNode resource = this.resources.get(id);
+            if (resource == null) {
+                throw notFound(id);
+            }
+            return resource;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param filters attribute values to match, a resource matches if each attribute has one of the values
+     * @param marker id of the last resource of the previous page, or null
+     * @param limit maximum number of resources to return, 0 for all
+     */
+    List<ObjectNode> list(Map<String, List<String>> filters, String marker, int limit) {
+        List<ObjectNode> page = new ArrayList<>();
+        this.lock.readLock().lock();
+        try {
+            if (marker != null && !this.resources.containsKey(marker)) {
+                throw notFound(marker);
+            }
+
+            boolean afterMarker = marker == null;
+            for (ObjectNode resource : this.resources.values()) {
+                if (!afterMarker) {
+                    afterMarker = marker.equals(resource.get("id").asText());
+                } else if (matches(resource, filters)) {
+                    page.add(resource);
+                    if (page.size() == limit) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        return page;
+    }
+
+    ObjectNode create(ObjectNode resource) {
+        for (String attribute : this.type.getRequiredAttributes()) {
+            JsonNode value = resource.get(attribute);
+            if (value == null || value.isNull() || value.isArray() && value.size() == 0) {
+                throw new NeutronError(400, "BadRequest",
+                        String.format("Failed to create %s, %s is required", this.type.getSingular(), attribute));
+            }
+        }
+
+        String id = resource.hasNonNull("id") ? resource.get("id").asText() : UUID.randomUUID().toString();
+        resource.put("id", id);
+        resource.put("revision_number", 0);
+
+        this.lock.writeLock().lock();
+        try {
+            if (this.resources.containsKey(id)) {
+                throw new NeutronError(409, "Conflict", String.format("%s %s already exists",
+                        this.type.getSingular(), id));
+            }
+            this.resources.put(id, resource);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        return resource;
+    }
+
+    /**
+     * @param expectedRevision the revision the resource must be at, or null to update unconditionally
+     */
+    ObjectNode update(String id, ObjectNode changes, Long expectedRevision) {
+        this.lock.writeLock().lock();
+        try {
+            ObjectNode current = this.resources.get(id);
+            if (current == null) {
+                throw notFound(id);
+            }
+
+            long revision = current.path("revision_number").asLong();
+            if (expectedRevision != null && expectedRevision != revision) {
+                throw new NeutronError(412, "RevisionNumberConstraintFailed", String.format(
+                        "Constrained to %d, but current revision is %d", expectedRevision, revision));
+            }
+
+            ObjectNode updated = current.deepCopy();
+            changes.fields().forEachRemaining(change -> {
+                if (!change.getValue().isNull()) {
+                    updated.set(change.getKey(), change.getValue());
+                }
+            });
+            updated.put("id", id);
+            updated.put("revision_number", revision + 1);
+
+            this.resources.put(id, updated);
+            return updated;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    void delete(String id) {
+        this.lock.writeLock().lock();
+        try {
+            if (this.resources.remove(id) == null) {
+                throw notFound(id);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    void clear() {
+        this.lock.writeLock().lock();
+        try {
+            this.resources.clear();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private NeutronError notFound(String id) {
+        return new NeutronError(404, this.type.errorType("NotFound"),
+                String.format("%s %s could not be found", this.type.getSingular(), id));
+    }
+
+    private static boolean matches(ObjectNode resource, Map<String, List<String>> filters) {
+        for (Map.Entry<String, List<String>> filter : filters.entrySet()) {
+            JsonNode value = resource.get(filter.getKey());
+            if (value == null || !matches(value, filter.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(JsonNode value, List<String> accepted) {
+        if (value.isArray()) {
+            for (JsonNode element : value) {
+                if (accepted.contains(element.asText())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return accepted.contains(value.asText());
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.simulator;
+
+/**
+ * Neutron resources the simulator serves, with their paths and JSON names.
+ */
+public enum ResourceType {
+    Port("/ports", "port", "ports"),
+    PortPair("/sfc/port_pairs", "port_pair", "port_pairs", "ingress", "egress"),
+    PortPairGroup("/sfc/port_pair_groups", "port_pair_group", "port_pair_groups"),
+    PortChain("/sfc/port_chains", "port_chain", "port_chains", "port_pair_groups"),
+    FlowClassifier("/sfc/flow_classifiers", "flow_classifier", "flow_classifiers");
+
+    private final String path;
+    private final String singular;
+    private final String plural;
+    private final String[] requiredAttributes;
+
+    ResourceType(String path, String singular, String plural, String... requiredAttributes) {
+        this.path = path;
+        this.singular = singular;
+        this.plural = plural;
+        this.requiredAttributes = requiredAttributes;
+    }
+
+    public String getPath() {
+        return this.path;
+    }
+
+    public String getSingular() {
+        return this.singular;
+    }
+
+    public String getPlural() {
+        return this.plural;
+    }
+
+    String[] getRequiredAttributes() {
+        return this.requiredAttributes.clone();
+    }
+
+    /**
+     * Name of the Neutron error type for this resource, e.g. {@code PortPairNotFound}.
+     */
+    String errorType(String error) {
+        return name() + error;
+    }
+
+    static ResourceType forPath(String path) {
+        for (ResourceType type : values()) {
+            if (path.equals(type.path) || path.startsWith(type.path + "/")) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyTest {
+
+    @Test
+    public void testUniform_ManySamples_WithinRange() {
+        // Arrange.
+        Latency latency = Latency.uniform(5, 10);
+
+        // Act.
+        long[] samples = sample(latency, 10000);
+
+        // Assert.
+        assertTrue(samples[0] >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(samples[samples.length - 1] <= TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Test
+    public void testLogNormal_ManySamples_MatchesMedianAndP99() {
+        // Arrange.
+        Latency latency = Latency.logNormal(10, 100);
+
+        // Act.
+        long[] samples = sample(latency, 100000);
+
+        // Assert.
+        assertEquals(10.0, samples[samples.length / 2] / 1e6, 1.0);
+        assertEquals(100.0, samples[samples.length * 99 / 100] / 1e6, 15.0);
+    }
+
+    @Test
+    public void testParse_Fixed_ReturnsFixedLatency() {
+        // Act.
+        Latency latency = Latency.parse("fixed:20");
+
+        // Assert.
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), latency.nextNanos());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_Unknown_Rejected() {
+        // Act.
+        Latency.parse("pareto:1,2");
+    }
+
+    private static long[] sample(Latency latency, int count) {
+        long[] samples = new long[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = latency.nextNanos();
+        }
+        Arrays.sort(samples);
+        return samples;
+    }
+}
@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright (c) Intel Corporation
+ * Copyright (c) 2017
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.osc.controller.nsfc.simulator;
+
+import static org.junit.Assert.*;
+import static org.osc.controller.nsfc.simulator.NeutronSimulator.idOf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openstack4j.api.Builders;
+import org.openstack4j.api.OSClient.OSClientV3;
+import org.openstack4j.model.common.Identifier;
+import org.openstack4j.model.network.ext.PortPair;
+import org.openstack4j.openstack.OSFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class NeutronSimulatorTest {
+
+    private static final String AUTH_BODY = "{\"auth\": {\"identity\": {\"methods\": [\"password\"], \"password\": "
+            + "{\"user\": {\"name\": \"admin\", \"password\": \"admin123\", \"domain\": {\"name\": \"default\"}}}}, "
+            + "\"scope\": {\"project\": {\"name\": \"admin\", \"domain\": {\"name\": \"default\"}}}}}";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private NeutronSimulator simulator;
+    private String neutronUrl;
+    private String token;
+
+    @Before
+    public void setup() throws Exception {
+        this.simulator = new NeutronSimulator();
+        this.simulator.populateChains(10);
+        this.simulator.populatePorts(10);
+        this.simulator.start();
+        this.neutronUrl = this.simulator.getNeutronUrl() + "/v2.0";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.simulator.close();
+    }
+
+    @Test
+    public void testAuthenticate_Openstack4jClient_ListsPopulatedPortPairs() throws Exception {
+        // Act.
+        List<? extends PortPair> portPairs = authenticate().sfc().portpairs().list();
+
+        // Assert.
+        assertEquals(10, portPairs.size());
+        assertEquals(idOf("ingress-0"), portPairs.get(0).getIngressId());
+        assertEquals(1, this.simulator.getAuthCount());
+    }
+
+    @Test
+    public void testCreatePortPair_Openstack4jClient_ReadBackById() throws Exception {
+        // Arrange.
+        OSClientV3 osClient = authenticate();
+
+        // Act.
+        PortPair created = osClient.sfc().portpairs().create(Builders.portPair()
+                .ingressId(idOf("port-1"))
+                .egressId(idOf("port-2"))
+                .build());
+
+        // Assert.
+        assertNotNull(created.getId());
+        assertEquals(idOf("port-2"), osClient.sfc().portpairs().get(created.getId()).getEgressId());
+        assertEquals(11, this.simulator.getResourceCount(ResourceType.PortPair));
+    }
+
+    @Test
+    public void testGet_WithoutToken_Unauthorized() throws Exception {
+        // Act.
+        Response response = call("GET", "/sfc/port_pairs", null, null);
+
+        // Assert.
+        assertEquals(401, response.status);
+    }
+
+    @Test
+    public void testAuthenticate_WrongPassword_Unauthorized() throws Exception {
+        // Arrange.
+        this.simulator.setCredentials("admin", "secret");
+
+        // Act.
+        Response response = request("POST", this.simulator.getAuthUrl() + "/auth/tokens", AUTH_BODY, null);
+
+        // Assert.
+        assertEquals(401, response.status);
+        assertEquals(401, response.body.path("error").path("code").asInt());
+    }
+
+    @Test
+    public void testList_WithLimit_ReturnsPageAndNextLink() throws Exception {
+        // Arrange.
+        authenticateRaw();
+
+        // Act.
+        Response first = call("GET", "/sfc/port_pairs?limit=4", null, null);
+        Response second = call("GET", "/sfc/port_pairs?limit=4&marker=" + idOf("pp-3"), null, null);
+
+        // Assert.
+        assertEquals(4, first.body.get("port_pairs").size());
+        assertTrue(first.body.get("port_pairs_links").get(0).get("href").asText().endsWith("marker=" + idOf("pp-3")));
+        assertEquals(idOf("pp-4"), second.body.get("port_pairs").get(0).get("id").asText());
+    }
+
+    @Test
+    public void testList_WithFilter_ReturnsMatchingOnly() throws Exception {
+        // Arrange.
+        authenticateRaw();
+
+        // Act.
+        Response response = call("GET", "/sfc/port_pairs?ingress=" + idOf("ingress-7") + "&egress=" + idOf("egress-7"),
+                null, null);
+
+        // Assert.
+        assertEquals(1, response.body.get("port_pairs").size());
+        assertEquals(idOf("pp-7"), response.body.get("port_pairs").get(0).get("id").asText());
+    }
+
+    @Test
+    public void testUpdate_StaleRevision_PreconditionFailed() throws Exception {
+        // Arrange.
+        authenticateRaw();
+        String body = "{\"port_chain\": {\"flow_classifiers\": [\"fc\"]}}";
+        Response updated = call("PUT", "/sfc/port_chains/" + idOf("pc-1"), body, "revision_number=0");
+
+        // Act.
+        Response stale = call("PUT", "/sfc/port_chains/" + idOf("pc-1"), body, "revision_number=0");
+
+        // Assert.
+        assertEquals(200, updated.status);
+        assertEquals(1, updated.body.get("port_chain").get("revision_number").asLong());
+        assertEquals(412, stale.status);
+        assertEquals("RevisionNumberConstraintFailed", stale.body.get("NeutronError").get("type").asText());
+    }
+
+    @Test
+    public void testFailNextRequests_Get_InjectedErrorThenServed() throws Exception {
+        // Arrange.
+        authenticateRaw();
+        this.simulator.setErrorStatus(503);
+        this.simulator.failNextRequests(1);
+
+        // Act.
+        Response failed = call("GET", "/ports/" + idOf("port-1"), null, null);
+        Response served = call("GET", "/ports/" + idOf("port-1"), null, null);
+
+        // Assert.
+        assertEquals(503, failed.status);
+        assertEquals(200, served.status);
+        assertEquals(1, this.simulator.getInjectedErrorCount());
+    }
+
+    @Test
+    public void testReadLatency_Fixed_DelaysResponses() throws Exception {
+        // Arrange.
+        authenticateRaw();
+        this.simulator.setReadLatency(Latency.fixed(100));
+
+        // Act.
+        long start = System.nanoTime();
+        call("GET", "/ports/" + idOf("port-1"), null, null);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        // Assert.
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis >= 100);
+    }
+
+    @Test
+    public void testDelete_Twice_SecondNotFound() throws Exception {
+        // Arrange.
+        authenticateRaw();
+
+        // Act.
+        Response deleted = call("DELETE", "/sfc/flow_classifiers/missing", null, null);
+
+        // Assert.
+        assertEquals(404, deleted.status);
+        assertEquals("FlowClassifierNotFound", deleted.body.get("NeutronError").get("type").asText());
+    }
+
+    private OSClientV3 authenticate() {
+        return OSFactory.builderV3()
+                .endpoint(this.simulator.getAuthUrl())
+                .credentials("admin", "admin123", Identifier.byName("default"))
+                .scopeToProject(Identifier.byName("admin"), Identifier.byName("default"))
+                .authenticate();
+    }
+
+    private void authenticateRaw() throws IOException {
+        Response response = request("POST", this.simulator.getAuthUrl() + "/auth/tokens", AUTH_BODY, null);
+        assertEquals(201, response.status);
+        this.token = response.subjectToken;
+    }
+
+    private Response call(String method, String path, String body, String ifMatch) throws IOException {
+        return request(method, this.neutronUrl + path, body, ifMatch);
+    }
+
+    private Response request(String method, String url, String body, String ifMatch) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if (this.token != null) {
+            connection.setRequestProperty("X-Auth-Token", this.token);
+        }
+        if (ifMatch != null) {
+            connection.setRequestProperty("If-Match", ifMatch);
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        Response response = new Response();
+        response.status = connection.getResponseCode();
+        response.subjectToken = connection.getHeaderField("X-Subject-Token");
+        InputStream in = response.status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (in != null) {
+            try (InputStream stream = in) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                for (int read = stream.read(buffer); read > 0; read = stream.read(buffer)) {
+                    bytes.write(buffer, 0, read);
+                }
+                response.body = bytes.size() > 0 ? this.mapper.readTree(bytes.toByteArray()) : null;
+            }
+        }
+        return response;
+    }
+
+    private static final class Response {
+        private int status;
+        private JsonNode body;
+        private String subjectToken;
+    }
+}